@@ -18,9 +18,8 @@ package com.android.tools.adtui.model;
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 
 public abstract class BaseDataSeries<E> implements DataSeries<E> {
@@ -29,21 +28,58 @@ public abstract class BaseDataSeries<E> implements DataSeries<E> {
 
   @NotNull
   private List<SeriesData<E>> getDataSubList(final int fromIndex, final int toIndex) {
-    return IntStream.range(fromIndex, toIndex).mapToObj(index ->
-      new SeriesData<>(getX(index), getY(index))
-    ).collect(Collectors.toList());
+    List<SeriesData<E>> data = new ArrayList<>(toIndex - fromIndex);
+    for (int index = fromIndex; index < toIndex; index++) {
+      data.add(new SeriesData<>(getX(index), getY(index)));
+    }
+    return data;
   }
 
   @Override
   public List<SeriesData<E>> getDataForXRange(Range xRange) {
-    //If the size of our data is 0, early return an empty list.
-    if(size() == 0 || xRange.isEmpty()) {
-      return getDataSubList(0, 0);
-    }
+    return getDataSubList(getFromIndex(xRange), getToIndex(xRange));
+  }
+
+  @Override
+  public SeriesView<E> getViewForXRange(Range xRange) {
+    final int fromIndex = getFromIndex(xRange);
+    final int toIndex = getToIndex(xRange);
+    return new SeriesView<E>() {
+      @Override
+      public int size() {
+        return toIndex - fromIndex;
+      }
 
-    int fromIndex = getNearestXIndex((long)xRange.getMin());
-    int toIndex = getNearestXIndex((long)xRange.getMax()) + 1;
-    return getDataSubList(fromIndex, toIndex);
+      @Override
+      public long getX(int index) {
+        return BaseDataSeries.this.getX(fromIndex + index);
+      }
+
+      @Override
+      public E getValue(int index) {
+        return getY(fromIndex + index);
+      }
+    };
+  }
+
+  @Override
+  public SeriesView<E> getViewForXRange(Range xRange, int pixelWidth) {
+    return getViewForXRange(xRange);
+  }
+
+  /**
+   * @return the index of the first point returned for {@code xRange}, which is the closest point at or before its min.
+   */
+  protected int getFromIndex(Range xRange) {
+    // If the size of our data is 0, return an empty range.
+    return size() == 0 || xRange.isEmpty() ? 0 : getNearestXIndex((long)xRange.getMin());
+  }
+
+  /**
+   * @return the index following the last point returned for {@code xRange}.
+   */
+  protected int getToIndex(Range xRange) {
+    return size() == 0 || xRange.isEmpty() ? 0 : getNearestXIndex((long)xRange.getMax()) + 1;
   }
 
   public List<SeriesData<E>> getAllData() {
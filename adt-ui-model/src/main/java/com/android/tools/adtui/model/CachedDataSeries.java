@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link DataSeries} decorator that keeps the data of the last queried range, so that when the range slides (e.g. while the timeline
+ * is streaming) only the samples for the part of the range that was not queried before are requested from the underlying series.
+ *
+ * The cached window is the queried range extended by {@link #MARGIN_RATIO} of its length on each side. Data outside of it is evicted.
+ * The window is reset when the range jumps or is zoomed, as the underlying series may return a different level of detail for a range
+ * of a different length (e.g. the datastore serves wide ranges from downsampled tiers). For the same reason, if the samples fetched
+ * for the new part of a range are more than {@link #MAX_RESOLUTION_RATIO} times finer or coarser than the cached ones, the source
+ * is serving them at another level of detail than the window, so the window is dropped and the ranges are queried from the source
+ * directly until the window is reset. Point ranges (e.g. the time under the mouse for legends) are served from the cache when possible,
+ * but never move the window.
+ *
+ * The underlying series must return the same samples for a given x regardless of the range queried, and samples are only ever appended
+ * after the latest one, which is the case of series that simply convert sampled data (e.g. memory or cpu usage). Series whose values
+ * depend on the whole range (e.g. a running total) must not be cached.
+ */
+public class CachedDataSeries implements DataSeries<Long> {
+  static final double MARGIN_RATIO = 0.5;
+  // Relative change of the range length under which the range is considered to be scrolled rather than zoomed.
+  static final double ZOOM_TOLERANCE = 0.01;
+  static final double MAX_RESOLUTION_RATIO = 2;
+
+  @NotNull private final DataSeries<Long> mySource;
+
+  // Cached samples, sorted by x.
+  @NotNull private final TLongArrayList myX = new TLongArrayList();
+  @NotNull private final TLongArrayList myY = new TLongArrayList();
+
+  // All the source data in [myCoveredMin, myCoveredMax] is cached. Data after myCoveredMax may still be added to the source.
+  private long myCoveredMin;
+  private long myCoveredMax;
+  private double myWindowLength = -1;
+  // Set when the source serves the window at another level of detail than the new parts of the range.
+  private boolean myIsResolutionMismatch;
+
+  public CachedDataSeries(@NotNull DataSeries<Long> source) {
+    mySource = source;
+  }
+
+  @NotNull
+  public DataSeries<Long> getSource() {
+    return mySource;
+  }
+
+  @Override
+  public synchronized List<SeriesData<Long>> getDataForXRange(Range xRange) {
+    if (!update(xRange)) {
+      return mySource.getDataForXRange(xRange);
+    }
+    LongSeriesView view = getCachedView(xRange);
+    List<SeriesData<Long>> data = new ArrayList<>(view.size());
+    for (int i = 0; i < view.size(); i++) {
+      data.add(new SeriesData<>(view.getX(i), view.getY(i)));
+    }
+    return data;
+  }
+
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(Range xRange, int pixelWidth) {
+    return SeriesDecimator.decimate(getDataForXRange(xRange), xRange, pixelWidth);
+  }
+
+  /**
+   * The returned view is backed by the cache, and is only valid until the next query.
+   */
+  @Override
+  public synchronized LongSeriesView getViewForXRange(Range xRange) {
+    return update(xRange) ? getCachedView(xRange) : LongSeriesView.of(mySource.getViewForXRange(xRange));
+  }
+
+  @Override
+  public LongSeriesView getViewForXRange(Range xRange, int pixelWidth) {
+    return SeriesDecimator.decimate(getViewForXRange(xRange), xRange, pixelWidth);
+  }
+
+  /**
+   * Drops all the cached data.
+   */
+  public synchronized void invalidate() {
+    myX.clear();
+    myY.clear();
+    myWindowLength = -1;
+    myIsResolutionMismatch = false;
+  }
+
+  /**
+   * Moves the cached window to {@code xRange} if needed.
+   *
+   * @return false if {@code xRange} is a point outside of the cached window, or if the source doesn't serve {@code xRange} at the
+   * level of detail of the window. It should then be queried from the source directly.
+   */
+  private boolean update(@NotNull Range xRange) {
+    long min = (long)xRange.getMin();
+    long max = (long)xRange.getMax();
+    boolean isCached = myWindowLength >= 0 && min >= myCoveredMin && max <= myCoveredMax;
+    if (xRange.isPoint()) {
+      return isCached && !myIsResolutionMismatch;
+    }
+
+    double length = xRange.getLength();
+    boolean overlaps = min <= myCoveredMax && max >= myCoveredMin;
+    boolean zoomed = Math.abs(length - myWindowLength) > myWindowLength * ZOOM_TOLERANCE;
+    if (myWindowLength < 0 || !overlaps || zoomed) {
+      reset(xRange);
+    }
+    else if (myIsResolutionMismatch) {
+      return false;
+    }
+    else if (!isCached) {
+      if (min < myCoveredMin && !fetchHead(min) || max > myCoveredMax && !fetchTail(max)) {
+        // The window no longer matches what the source returns for the range, keep it only to detect when the range moves away.
+        myX.clear();
+        myY.clear();
+        myIsResolutionMismatch = true;
+        return false;
+      }
+    }
+    evict(min, max);
+    return true;
+  }
+
+  private void reset(@NotNull Range xRange) {
+    invalidate();
+    myWindowLength = xRange.getLength();
+    myCoveredMin = (long)xRange.getMin();
+    myCoveredMax = myCoveredMin;
+    fetchTail((long)xRange.getMax());
+  }
+
+  /**
+   * @return false if the fetched samples are not at the level of detail of the window, in which case they are not added.
+   */
+  private boolean fetchHead(long min) {
+    double windowInterval = getAverageInterval(myX, 0, myX.size());
+    TLongArrayList headX = new TLongArrayList();
+    TLongArrayList headY = new TLongArrayList();
+    long firstX = myX.isEmpty() ? Long.MAX_VALUE : myX.get(0);
+    for (SeriesData<Long> data : mySource.getDataForXRange(new Range(min, myCoveredMin))) {
+      if (data.x >= firstX) {
+        break;
+      }
+      if (headX.isEmpty() || data.x > headX.get(headX.size() - 1)) {
+        headX.add(data.x);
+        headY.add(data.value);
+      }
+    }
+    if (!isWindowResolution(windowInterval, getAverageInterval(headX, 0, headX.size()))) {
+      return false;
+    }
+    myX.insert(0, headX.toNativeArray());
+    myY.insert(0, headY.toNativeArray());
+    myCoveredMin = min;
+    return true;
+  }
+
+  /**
+   * @return false if the fetched samples are not at the level of detail of the window, in which case they are not added.
+   */
+  private boolean fetchTail(long max) {
+    int windowSize = myX.size();
+    double windowInterval = getAverageInterval(myX, 0, windowSize);
+    for (SeriesData<Long> data : mySource.getDataForXRange(new Range(myCoveredMax, max))) {
+      if (myX.isEmpty() || data.x > myX.get(myX.size() - 1)) {
+        myX.add(data.x);
+        myY.add(data.value);
+      }
+    }
+    if (!isWindowResolution(windowInterval, getAverageInterval(myX, windowSize, myX.size()))) {
+      myX.remove(windowSize, myX.size() - windowSize);
+      myY.remove(windowSize, myY.size() - windowSize);
+      return false;
+    }
+    // Samples can still be added to the source after the latest one we got, so only that far is known.
+    myCoveredMax = myX.isEmpty() ? myCoveredMin : Math.max(myCoveredMin, myX.get(myX.size() - 1));
+    return true;
+  }
+
+  /**
+   * @return the average interval between the samples {@code x[from, to)}, or NaN if there are less than two of them.
+   */
+  private static double getAverageInterval(@NotNull TLongArrayList x, int from, int to) {
+    return to - from < 2 ? Double.NaN : (double)(x.get(to - 1) - x.get(from)) / (to - from - 1);
+  }
+
+  /**
+   * @return false if the intervals between the fetched samples and between the window's samples are known, and differ by more than
+   * {@link #MAX_RESOLUTION_RATIO}.
+   */
+  private static boolean isWindowResolution(double windowInterval, double interval) {
+    return Double.isNaN(windowInterval) || Double.isNaN(interval) ||
+           (interval * MAX_RESOLUTION_RATIO >= windowInterval && interval <= windowInterval * MAX_RESOLUTION_RATIO);
+  }
+
+  private void evict(long min, long max) {
+    long margin = (long)((max - min) * MARGIN_RATIO);
+    long windowMin = min - margin;
+    long windowMax = max + margin;
+
+    int head = lowerBound(windowMin);
+    if (head > 0) {
+      myX.remove(0, head);
+      myY.remove(0, head);
+      myCoveredMin = Math.max(myCoveredMin, windowMin);
+    }
+
+    int tail = lowerBound(windowMax + 1);
+    if (tail < myX.size()) {
+      myX.remove(tail, myX.size() - tail);
+      myY.remove(tail, myY.size() - tail);
+      myCoveredMax = myX.isEmpty() ? myCoveredMin : Math.max(myCoveredMin, myX.get(myX.size() - 1));
+    }
+  }
+
+  /**
+   * @return the cached samples in [min, max], plus the closest sample on each side so the data can be drawn up to the range edges.
+   */
+  @NotNull
+  private LongSeriesView getCachedView(@NotNull Range xRange) {
+    if (myX.isEmpty()) {
+      return LongSeriesView.of(myX, myY, 0, 0);
+    }
+    int from = Math.max(0, lowerBound((long)xRange.getMin() + 1) - 1);
+    int to = Math.min(myX.size() - 1, lowerBound((long)xRange.getMax()));
+    return LongSeriesView.of(myX, myY, from, to + 1);
+  }
+
+  /**
+   * @return the index of the first cached sample whose x is greater or equal to {@code x}, or the number of samples if there is none.
+   */
+  private int lowerBound(long x) {
+    int index = myX.binarySearch(x);
+    return index >= 0 ? index : -index - 1;
+  }
+}
@@ -23,4 +23,27 @@ import java.util.List;
 public interface DataSeries<E> {
 
   List<SeriesData<E>> getDataForXRange(Range xRange);
+
+  /**
+   * Same as {@link #getDataForXRange(Range)}, but lets the series reduce the level of detail of the data when the range is going to be
+   * displayed in only {@code pixelWidth} pixels, e.g. using {@link SeriesDecimator}. Series that can't be reduced return all the data.
+   */
+  default List<SeriesData<E>> getDataForXRange(Range xRange, int pixelWidth) {
+    return getDataForXRange(xRange);
+  }
+
+  /**
+   * Same as {@link #getDataForXRange(Range)}, but as a {@link SeriesView}. Series that have their data in memory should override this
+   * to avoid allocating a {@link SeriesData} for every point.
+   */
+  default SeriesView<E> getViewForXRange(Range xRange) {
+    return SeriesView.of(getDataForXRange(xRange));
+  }
+
+  /**
+   * Same as {@link #getDataForXRange(Range, int)}, but as a {@link SeriesView}.
+   */
+  default SeriesView<E> getViewForXRange(Range xRange, int pixelWidth) {
+    return SeriesView.of(getDataForXRange(xRange, pixelWidth));
+  }
 }
@@ -33,4 +33,14 @@ public class LongDataSeries extends BaseDataSeries<Long> {
   public Long getY(int index) {
     return mY.get(index);
   }
+
+  @Override
+  public LongSeriesView getViewForXRange(Range xRange) {
+    return LongSeriesView.of(mX, mY, getFromIndex(xRange), getToIndex(xRange));
+  }
+
+  @Override
+  public LongSeriesView getViewForXRange(Range xRange, int pixelWidth) {
+    return getViewForXRange(xRange);
+  }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link SeriesView} over long values, which gives access to the values without boxing them.
+ */
+public interface LongSeriesView extends SeriesView<Long> {
+
+  long getY(int index);
+
+  /**
+   * Prefer {@link #getY(int)}, which doesn't box the value.
+   */
+  @Override
+  default Long getValue(int index) {
+    return getY(index);
+  }
+
+  /**
+   * @return {@code view} itself if it is already a {@link LongSeriesView}, otherwise a view unboxing its values.
+   */
+  @NotNull
+  static LongSeriesView of(@NotNull SeriesView<Long> view) {
+    if (view instanceof LongSeriesView) {
+      return (LongSeriesView)view;
+    }
+    return new LongSeriesView() {
+      @Override
+      public int size() {
+        return view.size();
+      }
+
+      @Override
+      public long getX(int index) {
+        return view.getX(index);
+      }
+
+      @Override
+      public long getY(int index) {
+        return view.getValue(index);
+      }
+    };
+  }
+
+  /**
+   * @return a view over the first {@code size} elements of the arrays. The arrays are not copied.
+   */
+  @NotNull
+  static LongSeriesView of(@NotNull long[] x, @NotNull long[] y, int size) {
+    return new LongSeriesView() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public long getX(int index) {
+        return x[index];
+      }
+
+      @Override
+      public long getY(int index) {
+        return y[index];
+      }
+    };
+  }
+
+  /**
+   * @return a view over the elements [fromIndex, toIndex) of the lists. The lists are not copied.
+   */
+  @NotNull
+  static LongSeriesView of(@NotNull TLongArrayList x, @NotNull TLongArrayList y, int fromIndex, int toIndex) {
+    return new LongSeriesView() {
+      @Override
+      public int size() {
+        return toIndex - fromIndex;
+      }
+
+      @Override
+      public long getX(int index) {
+        return x.get(fromIndex + index);
+      }
+
+      @Override
+      public long getY(int index) {
+        return y.get(fromIndex + index);
+      }
+    };
+  }
+}
@@ -45,4 +45,16 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   public String getName() {
     return myName;
   }
+
+  @NotNull
+  @Override
+  public LongSeriesView getSeriesView() {
+    return LongSeriesView.of(super.getSeriesView());
+  }
+
+  @NotNull
+  @Override
+  public LongSeriesView getSeriesView(int pixelWidth) {
+    return LongSeriesView.of(super.getSeriesView(pixelWidth));
+  }
 }
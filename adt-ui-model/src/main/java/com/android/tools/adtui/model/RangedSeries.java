@@ -50,6 +50,31 @@ public class RangedSeries<E> {
     return mSeries.getDataForXRange(mXRange);
   }
 
+  /**
+   * Same as {@link #getSeries()}, but hints the underlying {@link DataSeries} that the xRange will be displayed in {@code pixelWidth}
+   * pixels, so it may return fewer points than it has.
+   */
+  @NotNull
+  public List<SeriesData<E>> getSeries(int pixelWidth) {
+    return mSeries.getDataForXRange(mXRange, pixelWidth);
+  }
+
+  /**
+   * Same as {@link #getSeries()}, but as a {@link SeriesView} which may be backed by the data series' storage.
+   */
+  @NotNull
+  public SeriesView<E> getSeriesView() {
+    return mSeries.getViewForXRange(mXRange);
+  }
+
+  /**
+   * Same as {@link #getSeries(int)}, but as a {@link SeriesView} which may be backed by the data series' storage.
+   */
+  @NotNull
+  public SeriesView<E> getSeriesView(int pixelWidth) {
+    return mSeries.getViewForXRange(mXRange, pixelWidth);
+  }
+
   /**
    * @return The {@link Range} object that represents the xRange of this series.
    */
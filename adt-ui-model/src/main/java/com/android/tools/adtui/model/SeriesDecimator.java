@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reduces numeric series to the level of detail that can actually be displayed, using the M4 aggregation: the x range is split into
+ * buckets one pixel wide and, for each bucket, only the first, last, min and max samples are kept. A line drawn through the result is
+ * rasterized into the same pixels as a line drawn through the full series, so peaks are never lost.
+ *
+ * Buckets are aligned on multiples of their width rather than on the start of the range, so that while a range scrolls without changing
+ * its length, the samples already in view keep being picked the same way. This lets the line chart reuse the line it already built.
+ *
+ * Samples outside of the x range (e.g. padding fetched to render the edges smoothly) are always kept.
+ */
+public final class SeriesDecimator {
+  /**
+   * Number of samples kept per bucket: first, min, max and last.
+   */
+  private static final int SAMPLES_PER_BUCKET = 4;
+
+  private SeriesDecimator() {
+  }
+
+  /**
+   * @param data       samples sorted by x.
+   * @param pixelWidth number of buckets to split {@code xRange} into. If not positive, the data is returned as is.
+   * @return the decimated samples, or {@code data} itself if it is already small enough.
+   */
+  @NotNull
+  public static List<SeriesData<Long>> decimate(@NotNull List<SeriesData<Long>> data, @NotNull Range xRange, int pixelWidth) {
+    if (!shouldDecimate(data.size(), xRange, pixelWidth)) {
+      return data;
+    }
+    TIntArrayList indices = selectIndices(LongSeriesView.of(SeriesView.of(data)), xRange, pixelWidth);
+    List<SeriesData<Long>> result = new ArrayList<>(indices.size());
+    for (int i = 0; i < indices.size(); i++) {
+      result.add(data.get(indices.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@link #decimate(List, Range, int)}, but doesn't box the values.
+   */
+  @NotNull
+  public static LongSeriesView decimate(@NotNull LongSeriesView data, @NotNull Range xRange, int pixelWidth) {
+    if (!shouldDecimate(data.size(), xRange, pixelWidth)) {
+      return data;
+    }
+    TIntArrayList indices = selectIndices(data, xRange, pixelWidth);
+    long[] x = new long[indices.size()];
+    long[] y = new long[indices.size()];
+    for (int i = 0; i < indices.size(); i++) {
+      x[i] = data.getX(indices.get(i));
+      y[i] = data.getY(indices.get(i));
+    }
+    return LongSeriesView.of(x, y, x.length);
+  }
+
+  private static boolean shouldDecimate(int size, @NotNull Range xRange, int pixelWidth) {
+    return pixelWidth > 0 && size > pixelWidth * SAMPLES_PER_BUCKET && !xRange.isEmpty() && !xRange.isPoint();
+  }
+
+  /**
+   * @return the sorted indices of the samples to keep.
+   */
+  @NotNull
+  private static TIntArrayList selectIndices(@NotNull LongSeriesView data, @NotNull Range xRange, int pixelWidth) {
+    double xMin = xRange.getMin();
+    double xMax = xRange.getMax();
+    double bucketsPerX = pixelWidth / xRange.getLength();
+    long lastBucket = Math.max((long)Math.floor(xMin * bucketsPerX), (long)Math.ceil(xMax * bucketsPerX) - 1);
+    TIntArrayList result = new TIntArrayList(pixelWidth * SAMPLES_PER_BUCKET + 2);
+    int[] picked = new int[SAMPLES_PER_BUCKET];
+
+    int i = 0;
+    int size = data.size();
+    while (i < size) {
+      long firstX = data.getX(i);
+      if (firstX < xMin || firstX > xMax) {
+        result.add(i);
+        i++;
+        continue;
+      }
+
+      long bucket = getBucket(firstX, bucketsPerX, lastBucket);
+      int minIndex = i;
+      int maxIndex = i;
+      int lastIndex = i;
+      for (int j = i + 1; j < size; j++) {
+        long x = data.getX(j);
+        if (x > xMax || getBucket(x, bucketsPerX, lastBucket) != bucket) {
+          break;
+        }
+        long y = data.getY(j);
+        if (y < data.getY(minIndex)) {
+          minIndex = j;
+        }
+        if (y > data.getY(maxIndex)) {
+          maxIndex = j;
+        }
+        lastIndex = j;
+      }
+
+      picked[0] = i;
+      picked[1] = minIndex;
+      picked[2] = maxIndex;
+      picked[3] = lastIndex;
+      Arrays.sort(picked);
+      for (int k = 0; k < SAMPLES_PER_BUCKET; k++) {
+        if (k == 0 || picked[k] != picked[k - 1]) {
+          result.add(picked[k]);
+        }
+      }
+      i = lastIndex + 1;
+    }
+    return result;
+  }
+
+  /**
+   * The last bucket also gets the samples at the end of the range, if the range ends on a bucket boundary.
+   */
+  private static long getBucket(long x, double bucketsPerX, long lastBucket) {
+    return Math.min(lastBucket, (long)Math.floor(x * bucketsPerX));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * A read-only, indexed view over the points of a {@link DataSeries}, which renderers can iterate without a {@link SeriesData} being
+ * allocated for every point. A view may be backed by the series' own storage, so it is only valid until the series is modified or
+ * queried again.
+ */
+public interface SeriesView<E> {
+
+  int size();
+
+  long getX(int index);
+
+  E getValue(int index);
+
+  /**
+   * @return a view over a list of {@link SeriesData}, for series that don't provide their own views.
+   */
+  @NotNull
+  static <E> SeriesView<E> of(@NotNull List<SeriesData<E>> data) {
+    return new SeriesView<E>() {
+      @Override
+      public int size() {
+        return data.size();
+      }
+
+      @Override
+      public long getX(int index) {
+        return data.get(index).x;
+      }
+
+      @Override
+      public E getValue(int index) {
+        return data.get(index).value;
+      }
+    };
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class CachedDataSeriesTest {
+
+  private CountingDataSeries mySource;
+  private CachedDataSeries myCache;
+
+  @Before
+  public void setUp() {
+    mySource = new CountingDataSeries();
+    for (long x = 0; x <= 100; x++) {
+      mySource.add(x, x * 10);
+    }
+    myCache = new CachedDataSeries(mySource);
+  }
+
+  @Test
+  public void testSameRangeIsServedFromCache() {
+    List<SeriesData<Long>> expected = mySource.getDataForXRange(new Range(10, 20));
+    mySource.myRequests.clear();
+
+    assertSameData(myCache.getDataForXRange(new Range(10, 20)), expected);
+    assertSameData(myCache.getDataForXRange(new Range(10, 20)), expected);
+    assertThat(mySource.myRequests).hasSize(1);
+  }
+
+  @Test
+  public void testOnlyTheNewTailIsFetched() {
+    myCache.getDataForXRange(new Range(0, 20));
+    List<SeriesData<Long>> data = myCache.getDataForXRange(new Range(5, 25));
+
+    assertThat(mySource.myRequests).hasSize(2);
+    Range delta = mySource.myRequests.get(1);
+    assertThat(delta.getMin()).isWithin(0).of(20);
+    assertThat(delta.getMax()).isWithin(0).of(25);
+    assertSameData(data, mySource.getDataForXRange(new Range(5, 25)));
+  }
+
+  @Test
+  public void testOnlyTheNewHeadIsFetched() {
+    myCache.getDataForXRange(new Range(40, 60));
+    List<SeriesData<Long>> data = myCache.getDataForXRange(new Range(25, 45));
+
+    assertThat(mySource.myRequests).hasSize(2);
+    Range delta = mySource.myRequests.get(1);
+    assertThat(delta.getMin()).isWithin(0).of(25);
+    assertThat(delta.getMax()).isWithin(0).of(40);
+    assertSameData(data, mySource.getDataForXRange(new Range(25, 45)));
+  }
+
+  @Test
+  public void testSamplesAddedAfterTheLastOneAreFetched() {
+    myCache.getDataForXRange(new Range(90, 110));
+    mySource.add(105, 1L);
+    List<SeriesData<Long>> data = myCache.getDataForXRange(new Range(90, 110));
+
+    assertThat(data.get(data.size() - 1).x).isEqualTo(105);
+    assertThat(data.get(data.size() - 1).value).isEqualTo(1L);
+  }
+
+  @Test
+  public void testJumpAndZoomResetTheCache() {
+    myCache.getDataForXRange(new Range(0, 20));
+    myCache.getDataForXRange(new Range(60, 80));
+    myCache.getDataForXRange(new Range(60, 65));
+
+    assertThat(mySource.myRequests).hasSize(3);
+    assertThat(mySource.myRequests.get(2).getMin()).isWithin(0).of(60);
+    assertThat(mySource.myRequests.get(2).getMax()).isWithin(0).of(65);
+  }
+
+  @Test
+  public void testPointRangeDoesNotMoveTheWindow() {
+    myCache.getDataForXRange(new Range(10, 20));
+    List<SeriesData<Long>> cached = myCache.getDataForXRange(new Range(15, 15));
+    assertThat(mySource.myRequests).hasSize(1);
+    assertThat(cached).hasSize(1);
+    assertThat(cached.get(0).value).isEqualTo(150L);
+
+    // Outside of the window, the source is queried directly.
+    myCache.getDataForXRange(new Range(80, 80));
+    myCache.getDataForXRange(new Range(10, 20));
+    assertThat(mySource.myRequests).hasSize(2);
+  }
+
+  @Test
+  public void testSmallZoomResetsTheCache() {
+    myCache.getDataForXRange(new Range(0, 20));
+    myCache.getDataForXRange(new Range(0, 30));
+
+    // A source may serve a range of another length at a different level of detail, so the whole range is fetched again.
+    assertThat(mySource.myRequests).hasSize(2);
+    assertThat(mySource.myRequests.get(1).getMin()).isWithin(0).of(0);
+    assertThat(mySource.myRequests.get(1).getMax()).isWithin(0).of(30);
+  }
+
+  @Test
+  public void testDataAtAnotherResolutionIsNotCached() {
+    // Ranges of more than 50 are served with one sample out of 10, like the downsampled tiers of the datastore.
+    CountingDataSeries source = new CountingDataSeries() {
+      @Override
+      public List<SeriesData<Long>> getDataForXRange(Range xRange) {
+        List<SeriesData<Long>> data = super.getDataForXRange(xRange);
+        if (xRange.getLength() > 50) {
+          data.removeIf(sample -> sample.x % 10 != 0);
+        }
+        return data;
+      }
+    };
+    for (long x = 0; x <= 200; x++) {
+      source.add(x, x * 10);
+    }
+    CachedDataSeries cache = new CachedDataSeries(source);
+
+    cache.getDataForXRange(new Range(0, 100));
+    List<SeriesData<Long>> data = cache.getDataForXRange(new Range(10, 110));
+    assertSameData(data, source.getDataForXRange(new Range(10, 110)));
+
+    // Until the range moves away from the window, it is served by the source.
+    source.myRequests.clear();
+    data = cache.getDataForXRange(new Range(20, 120));
+    assertSameData(data, source.getDataForXRange(new Range(20, 120)));
+    assertThat(source.myRequests.get(0).getMin()).isWithin(0).of(20);
+    assertThat(source.myRequests.get(0).getMax()).isWithin(0).of(120);
+  }
+
+  private static void assertSameData(List<SeriesData<Long>> actual, List<SeriesData<Long>> expected) {
+    assertThat(actual).hasSize(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.get(i).x).isEqualTo(expected.get(i).x);
+      assertThat(actual.get(i).value).isEqualTo(expected.get(i).value);
+    }
+  }
+
+  private static class CountingDataSeries extends LongDataSeries {
+    private final List<Range> myRequests = new ArrayList<>();
+
+    @Override
+    public List<SeriesData<Long>> getDataForXRange(Range xRange) {
+      myRequests.add(new Range(xRange));
+      return super.getDataForXRange(xRange);
+    }
+  }
+}
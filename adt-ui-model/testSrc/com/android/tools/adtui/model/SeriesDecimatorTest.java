@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SeriesDecimatorTest {
+
+  @Test
+  public void testSmallSeriesIsNotDecimated() {
+    List<SeriesData<Long>> data = createData(0, 40);
+    assertThat(SeriesDecimator.decimate(data, new Range(0, 40), 10)).isSameAs(data);
+    assertThat(SeriesDecimator.decimate(data, new Range(0, 40), 0)).isSameAs(data);
+  }
+
+  @Test
+  public void testKeepsFirstMinMaxAndLastPerPixel() {
+    // 1000 samples with a spike and a dip, displayed in 10 pixels of 100 samples each.
+    List<SeriesData<Long>> data = createData(0, 1000);
+    data.get(150).value = 1000L;
+    data.get(160).value = -1000L;
+
+    List<SeriesData<Long>> decimated = SeriesDecimator.decimate(data, new Range(0, 1000), 10);
+    assertThat(decimated.size()).isAtMost(40);
+
+    // Second pixel: first, max, min and last samples, in x order.
+    int start = indexOfX(decimated, 100);
+    assertThat(decimated.get(start + 1).value).isEqualTo(1000L);
+    assertThat(decimated.get(start + 2).value).isEqualTo(-1000L);
+    assertThat(decimated.get(start + 3).x).isEqualTo(199);
+
+    for (int i = 1; i < decimated.size(); i++) {
+      assertThat(decimated.get(i).x).isGreaterThan(decimated.get(i - 1).x);
+    }
+  }
+
+  @Test
+  public void testKeepsSamplesOutsideOfTheRange() {
+    List<SeriesData<Long>> data = createData(-5, 1005);
+    List<SeriesData<Long>> decimated = SeriesDecimator.decimate(data, new Range(0, 1000), 10);
+    assertThat(decimated.get(0).x).isEqualTo(-5);
+    assertThat(decimated.get(4).x).isEqualTo(-1);
+    assertThat(decimated.get(decimated.size() - 1).x).isEqualTo(1004);
+    assertThat(decimated.get(decimated.size() - 4).x).isEqualTo(1001);
+  }
+
+  @Test
+  public void testScrollingKeepsTheSamplesInView() {
+    List<SeriesData<Long>> data = createData(0, 1100);
+    List<SeriesData<Long>> before = inRange(SeriesDecimator.decimate(data, new Range(0, 1000), 10), 100, 1000);
+    List<SeriesData<Long>> after = inRange(SeriesDecimator.decimate(data, new Range(50, 1050), 10), 100, 1000);
+    assertThat(after).containsExactlyElementsIn(before).inOrder();
+  }
+
+  @Test
+  public void testDataSeriesDecimationHint() {
+    DefaultDataSeries<Long> series = new DefaultDataSeries<>();
+    for (SeriesData<Long> data : createData(0, 1000)) {
+      series.add(data.x, data.value);
+    }
+    RangedSeries<Long> ranged = new RangedSeries<>(new Range(0, 999), series);
+    // DefaultDataSeries doesn't support decimation, and returns every sample.
+    assertThat(ranged.getSeries(10)).hasSize(1000);
+  }
+
+  private static List<SeriesData<Long>> inRange(List<SeriesData<Long>> data, long fromX, long toX) {
+    List<SeriesData<Long>> result = new ArrayList<>();
+    for (SeriesData<Long> sample : data) {
+      if (sample.x >= fromX && sample.x < toX) {
+        result.add(sample);
+      }
+    }
+    return result;
+  }
+
+  private static int indexOfX(List<SeriesData<Long>> data, long x) {
+    for (int i = 0; i < data.size(); i++) {
+      if (data.get(i).x == x) {
+        return i;
+      }
+    }
+    throw new AssertionError("No sample at " + x);
+  }
+
+  private static List<SeriesData<Long>> createData(long fromX, long toX) {
+    List<SeriesData<Long>> data = new ArrayList<>();
+    for (long x = fromX; x < toX; x++) {
+      data.add(new SeriesData<>(x, x % 7));
+    }
+    return data;
+  }
+}
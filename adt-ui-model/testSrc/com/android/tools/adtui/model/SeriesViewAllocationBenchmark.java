@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated per frame when a line chart reads a {@link LongDataSeries} through
+ * {@link DataSeries#getDataForXRange(Range)} compared to {@link DataSeries#getViewForXRange(Range)}.
+ *
+ * Not run as part of the tests. Run its main method, with a HotSpot JVM, to get the numbers:
+ * allocation is measured with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ */
+public class SeriesViewAllocationBenchmark {
+  private static final int POINTS_PER_FRAME = 10_000;
+  private static final int WARMUP_FRAMES = 2_000;
+  private static final int MEASURED_FRAMES = 2_000;
+
+  // Prevents the reads from being optimized away.
+  private static long ourSink;
+
+  public static void main(String[] args) {
+    LongDataSeries series = new LongDataSeries();
+    for (long x = 0; x < POINTS_PER_FRAME; x++) {
+      series.add(x, x % 100);
+    }
+    Range range = new Range(0, POINTS_PER_FRAME);
+
+    run("getDataForXRange", () -> {
+      List<SeriesData<Long>> data = series.getDataForXRange(range);
+      for (SeriesData<Long> point : data) {
+        ourSink += point.x + point.value;
+      }
+    });
+    run("getViewForXRange", () -> {
+      LongSeriesView view = series.getViewForXRange(range);
+      for (int i = 0; i < view.size(); i++) {
+        ourSink += view.getX(i) + view.getY(i);
+      }
+    });
+  }
+
+  private static void run(String name, Runnable frame) {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      frame.run();
+    }
+    long startBytes = threads.getThreadAllocatedBytes(threadId);
+    long startNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_FRAMES; i++) {
+      frame.run();
+    }
+    long elapsedNs = System.nanoTime() - startNs;
+    long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    System.out.printf("%s: %d bytes/frame, %.1f us/frame (%d points)%n", name, bytes / MEASURED_FRAMES,
+                      elapsedNs / 1000.0 / MEASURED_FRAMES, POINTS_PER_FRAME);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SeriesViewTest {
+
+  @Test
+  public void testLongDataSeriesViewMatchesData() {
+    LongDataSeries series = new LongDataSeries();
+    for (long x = 0; x < 100; x += 10) {
+      series.add(x, x * 2);
+    }
+    Range range = new Range(15, 55);
+
+    LongSeriesView view = series.getViewForXRange(range);
+    assertViewEquals(series.getDataForXRange(range), view);
+    assertThat(view.getX(0)).isEqualTo(10);
+    assertThat(view.getY(0)).isEqualTo(20);
+  }
+
+  @Test
+  public void testDefaultDataSeriesView() {
+    DefaultDataSeries<String> series = new DefaultDataSeries<>();
+    series.add(0, "A");
+    series.add(10, "B");
+    series.add(20, "C");
+
+    SeriesView<String> view = series.getViewForXRange(new Range(5, 20));
+    assertThat(view.size()).isEqualTo(3);
+    assertThat(view.getValue(0)).isEqualTo("A");
+    assertThat(view.getX(2)).isEqualTo(20);
+    assertThat(series.getViewForXRange(new Range(5, 20)).size()).isEqualTo(series.getDataForXRange(new Range(5, 20)).size());
+  }
+
+  @Test
+  public void testEmptySeriesView() {
+    assertThat(new LongDataSeries().getViewForXRange(new Range(0, 10)).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRangedContinuousSeriesUnboxesOtherSeries() {
+    DefaultDataSeries<Long> series = new DefaultDataSeries<>();
+    series.add(0, 1L);
+    series.add(10, 2L);
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(0, 10), new Range(0, 2), series);
+
+    LongSeriesView view = ranged.getSeriesView();
+    assertViewEquals(ranged.getSeries(), view);
+  }
+
+  private static void assertViewEquals(List<SeriesData<Long>> expected, LongSeriesView actual) {
+    assertThat(actual.size()).isEqualTo(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.getX(i)).isEqualTo(expected.get(i).x);
+      assertThat(actual.getY(i)).isEqualTo(expected.get(i).value.longValue());
+    }
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import com.android.tools.adtui.model.HNode;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The ranges of the nodes of an {@link HNode} tree grouped by depth, and sorted by start within a depth, so that {@link HTreeChart}
+ * only visits the nodes of the visible range instead of walking the whole tree on every zoom and scroll.
+ *
+ * Only primitive arrays are kept, not the nodes: each node is numbered in depth-first order, and the index records its parent and its
+ * position among the children of its parent, so the visible nodes are looked up again from the root when they are visited.
+ *
+ * The index is a snapshot: it has to be rebuilt if the tree changes.
+ */
+class HNodeIndex<T> {
+  private static final int NO_PARENT = -1;
+
+  @Nullable
+  private final HNode<T> myRoot;
+
+  /**
+   * The id of the parent of each node, or {@link #NO_PARENT} for the root.
+   */
+  @NotNull
+  private final int[] myParents;
+
+  /**
+   * The index of each node in the children of its parent.
+   */
+  @NotNull
+  private final int[] myChildIndices;
+
+  @NotNull
+  private final List<Level> myLevels = new ArrayList<>();
+
+  HNodeIndex(@Nullable HNode<T> root) {
+    myRoot = root;
+    TIntArrayList parents = new TIntArrayList();
+    TIntArrayList childIndices = new TIntArrayList();
+    List<LevelBuilder> builders = new ArrayList<>();
+    if (root != null) {
+      // Only the path to the current node is held while walking the tree, so views created on demand (e.g. by a CaptureTree) can be
+      // collected right away.
+      List<HNode<T>> path = new ArrayList<>();
+      TIntArrayList pathIds = new TIntArrayList();
+      TIntArrayList nextChildren = new TIntArrayList();
+      path.add(root);
+      pathIds.add(addNode(root, NO_PARENT, 0, parents, childIndices, builders));
+      nextChildren.add(0);
+      while (!path.isEmpty()) {
+        int top = path.size() - 1;
+        HNode<T> node = path.get(top);
+        int next = nextChildren.get(top);
+        if (next == node.getChildCount()) {
+          path.remove(top);
+          pathIds.remove(top);
+          nextChildren.remove(top);
+          continue;
+        }
+        nextChildren.set(top, next + 1);
+        HNode<T> child = node.getChildAt(next);
+        path.add(child);
+        pathIds.add(addNode(child, pathIds.get(top), next, parents, childIndices, builders));
+        nextChildren.add(0);
+      }
+    }
+    myParents = parents.toNativeArray();
+    myChildIndices = childIndices.toNativeArray();
+    for (LevelBuilder builder : builders) {
+      myLevels.add(builder.build());
+    }
+  }
+
+  private static int addNode(@NotNull HNode<?> node,
+                             int parent,
+                             int childIndex,
+                             @NotNull TIntArrayList parents,
+                             @NotNull TIntArrayList childIndices,
+                             @NotNull List<LevelBuilder> builders) {
+    int id = parents.size();
+    parents.add(parent);
+    childIndices.add(childIndex);
+    int depth = node.getDepth();
+    while (builders.size() <= depth) {
+      builders.add(new LevelBuilder());
+    }
+    LevelBuilder builder = builders.get(depth);
+    builder.myIds.add(id);
+    builder.myStarts.add(node.getStart());
+    builder.myEnds.add(node.getEnd());
+    return id;
+  }
+
+  int getNodeCount() {
+    return myParents.length;
+  }
+
+  /**
+   * @return the number of depths of the tree, i.e. its maximum depth + 1.
+   */
+  int getDepthCount() {
+    return myLevels.size();
+  }
+
+  /**
+   * Visits, in the order of their start, the nodes of {@code depth} which intersect [{@code min}, {@code max}].
+   *
+   * The range is split into pixels of {@code pixelLength}, starting at {@code min}. Nodes crossing a pixel boundary are visited one by
+   * one; a node inside a single pixel is coalesced with the following nodes which end in that pixel too, and the span they cover is
+   * visited without a node, as it doesn't stand for any one of them. So the cost depends on the number of pixels and of visible nodes,
+   * not on the size of the tree.
+   */
+  void visit(int depth, double min, double max, double pixelLength, @NotNull Visitor<T> visitor) {
+    if (depth < 0 || depth >= myLevels.size() || pixelLength <= 0) {
+      return;
+    }
+    Level level = myLevels.get(depth);
+    int n = level.myIds.length;
+    // Nodes before the first one whose max end reaches min all end before the range.
+    int index = level.lowerBound(min);
+    while (index < n) {
+      long start = level.myStarts[index];
+      long end = level.myEnds[index];
+      if (start > max) {
+        break;
+      }
+      double pixel = Math.floor((end - min) / pixelLength);
+      if (Math.floor((start - min) / pixelLength) < pixel) {
+        visitor.visit(getNode(level.myIds[index]), start, end);
+        ++index;
+        continue;
+      }
+      // Starts after the node, as the level is sorted by start, and ends before the next pixel: inside the pixel of the node.
+      int last = Math.max(index, level.lowerBound(min + (pixel + 1) * pixelLength) - 1);
+      if (last == index) {
+        visitor.visit(getNode(level.myIds[index]), start, end);
+      }
+      else {
+        visitor.visit(null, start, level.myMaxEnds[last]);
+      }
+      index = last + 1;
+    }
+  }
+
+  /**
+   * Looks up the node {@code id} from the root, through the positions of its ancestors in the children of their parents.
+   */
+  @NotNull
+  private HNode<T> getNode(int id) {
+    assert myRoot != null;
+    int length = 0;
+    for (int i = id; myParents[i] != NO_PARENT; i = myParents[i]) {
+      ++length;
+    }
+    int[] path = new int[length];
+    for (int i = id; myParents[i] != NO_PARENT; i = myParents[i]) {
+      path[--length] = myChildIndices[i];
+    }
+    HNode<T> node = myRoot;
+    for (int childIndex : path) {
+      node = node.getChildAt(childIndex);
+    }
+    return node;
+  }
+
+  interface Visitor<T> {
+    /**
+     * @param node the node to draw, or null for a span of nodes coalesced into [{@code start}, {@code end}]
+     */
+    void visit(@Nullable HNode<T> node, long start, long end);
+  }
+
+  private static final class LevelBuilder {
+    @NotNull private final TIntArrayList myIds = new TIntArrayList();
+    @NotNull private final TLongArrayList myStarts = new TLongArrayList();
+    @NotNull private final TLongArrayList myEnds = new TLongArrayList();
+
+    @NotNull
+    private Level build() {
+      int[] ids = myIds.toNativeArray();
+      long[] starts = myStarts.toNativeArray();
+      long[] ends = myEnds.toNativeArray();
+      // Children are usually sorted and don't overlap, so the depth-first order is already sorted by start.
+      boolean sorted = true;
+      for (int i = 1; i < starts.length && sorted; ++i) {
+        sorted = starts[i - 1] <= starts[i];
+      }
+      if (!sorted) {
+        Integer[] order = new Integer[ids.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparingLong(i -> starts[i]));
+        int[] sortedIds = new int[ids.length];
+        long[] sortedStarts = new long[ids.length];
+        long[] sortedEnds = new long[ids.length];
+        for (int i = 0; i < order.length; ++i) {
+          sortedIds[i] = ids[order[i]];
+          sortedStarts[i] = starts[order[i]];
+          sortedEnds[i] = ends[order[i]];
+        }
+        return new Level(sortedIds, sortedStarts, sortedEnds);
+      }
+      return new Level(ids, starts, ends);
+    }
+  }
+
+  private static final class Level {
+    @NotNull private final int[] myIds;
+    @NotNull private final long[] myStarts;
+    @NotNull private final long[] myEnds;
+
+    /**
+     * The maximum end of the nodes up to each index. Unlike the ends, it is sorted even if nodes of the level overlap.
+     */
+    @NotNull
+    private final long[] myMaxEnds;
+
+    private Level(@NotNull int[] ids, @NotNull long[] starts, @NotNull long[] ends) {
+      myIds = ids;
+      myStarts = starts;
+      myEnds = ends;
+      myMaxEnds = new long[ends.length];
+      long maxEnd = Long.MIN_VALUE;
+      for (int i = 0; i < ends.length; ++i) {
+        maxEnd = Math.max(maxEnd, ends[i]);
+        myMaxEnds[i] = maxEnd;
+      }
+    }
+
+    /**
+     * @return the index of the first node whose max end is greater or equal to {@code time}, or the number of nodes if there is none.
+     */
+    private int lowerBound(double time) {
+      int low = 0;
+      int high = myMaxEnds.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myMaxEnds[mid] < time) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -34,6 +34,9 @@ public abstract class HRenderer<T> {
   protected static final JBColor fillAppColor = new JBColor(new Color(245, 192, 118), new Color(245, 192, 118));
   protected static final JBColor bordAppColor = new JBColor(new Color(235, 163, 63), new Color(235, 163, 63));
 
+  protected static final JBColor fillCoalescedColor = new JBColor(new Color(208, 208, 208), new Color(208, 208, 208));
+  protected static final JBColor bordCoalescedColor = new JBColor(new Color(176, 176, 176), new Color(176, 176, 176));
+
   // To limit the number of object allocation we reuse the same Rectangle.
   @NonNull private Rectangle2D.Float mRect;
 
@@ -75,6 +78,21 @@ public abstract class HRenderer<T> {
     g.setFont(prevFont);
   }
 
+  /**
+   * Renders a span of nodes too small to be told apart, without text and in a neutral color, as it doesn't stand for any one of them.
+   */
+  public void renderCoalesced(Graphics2D g, Rectangle2D drawingArea) {
+    mRect.x = (float)drawingArea.getX();
+    mRect.y = (float)drawingArea.getY();
+    mRect.width = (float)drawingArea.getWidth();
+    mRect.height = (float)drawingArea.getHeight();
+
+    g.setPaint(fillCoalescedColor);
+    g.fill(mRect);
+    g.setPaint(bordCoalescedColor);
+    g.draw(mRect);
+  }
+
   protected abstract String generateFittingText(T node, Rectangle2D rect, FontMetrics fontMetrics);
   protected abstract Color getFillColor(T t);
   protected abstract Color getBordColor(T t);
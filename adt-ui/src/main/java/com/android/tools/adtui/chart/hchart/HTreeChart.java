@@ -59,10 +59,7 @@ public class HTreeChart<T> extends AnimatedComponent {
   private final Range mYRange;
 
   @NotNull
-  private final List<Rectangle2D.Float> mRectangles;
-
-  @NotNull
-  private final List<HNode<T>> mNodes;
+  private HNodeIndex<T> mIndex;
 
   @NotNull
   private final List<Rectangle2D.Float> mDrawnRectangles;
@@ -80,12 +77,11 @@ public class HTreeChart<T> extends AnimatedComponent {
 
   @VisibleForTesting
   public HTreeChart(@NotNull Range xRange, Orientation orientation, @NotNull HTreeChartReducer<T> reducer) {
-    mRectangles = new ArrayList<>();
-    mNodes = new ArrayList<>();
     mDrawnNodes = new ArrayList<>();
     mDrawnRectangles = new ArrayList<>();
     mXRange = xRange;
     mRoot = new DefaultHNode<>();
+    mIndex = new HNodeIndex<>(mRoot);
     mReducer = reducer;
     mYRange = new Range(0, 0);
     mOrientation = orientation;
@@ -137,7 +133,7 @@ public class HTreeChart<T> extends AnimatedComponent {
     g.drawImage(myCanvas, 0, 0, null);
 
     addDebugInfo("Draw time %.2fms", (System.nanoTime() - startTime) / 1e6);
-    addDebugInfo("# of nodes %d", mNodes.size());
+    addDebugInfo("# of nodes %d", mIndex.getNodeCount());
     addDebugInfo("# of reduced nodes %d", mDrawnNodes.size());
   }
 
@@ -151,22 +147,21 @@ public class HTreeChart<T> extends AnimatedComponent {
       g = (Graphics2D)myCanvas.getGraphics();
     }
     mDrawnNodes.clear();
-    mDrawnNodes.addAll(mNodes);
-
     mDrawnRectangles.clear();
-    // Transform
-    for (Rectangle2D.Float rect : mRectangles) {
-      Rectangle2D.Float newRect = new Rectangle2D.Float();
-      newRect.x = rect.x * (float)dim.getWidth();
-      newRect.y = rect.y;
-      newRect.width = Math.max(0, rect.width * (float)dim.getWidth() - BORDER_PLUS_PADDING);
-      newRect.height = rect.height;
-
-      if (mOrientation == HTreeChart.Orientation.BOTTOM_UP) {
-        newRect.y = (float)(dim.getHeight() - newRect.y - newRect.getHeight());
-      }
 
-      mDrawnRectangles.add(newRect);
+    if (dim.width > 0) {
+      // Only the rows and the time range on screen are visited, with the nodes inside a pixel already coalesced.
+      int rowHeight = mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING;
+      int firstDepth = Math.max(0, (int)Math.floor(getYRange().getMin() / rowHeight));
+      int lastDepth = Math.min(mIndex.getDepthCount() - 1, (int)Math.floor((getYRange().getMin() + dim.height) / rowHeight));
+      double pixelLength = mXRange.getLength() / dim.width;
+      for (int depth = firstDepth; depth <= lastDepth; ++depth) {
+        int rowDepth = depth;
+        mIndex.visit(depth, mXRange.getMin(), mXRange.getMax(), pixelLength, (node, start, end) -> {
+          mDrawnNodes.add(node != null ? node : new CoalescedNode<>(start, end, rowDepth));
+          mDrawnRectangles.add(createRectangle(start, end, rowDepth, dim));
+        });
+      }
     }
 
     mReducer.reduce(mDrawnRectangles, mDrawnNodes);
@@ -174,53 +169,37 @@ public class HTreeChart<T> extends AnimatedComponent {
     assert mDrawnRectangles.size() == mDrawnNodes.size();
     assert mHRenderer != null;
     for (int i = 0; i < mDrawnNodes.size(); ++i) {
-      mHRenderer.render(g, mDrawnNodes.get(i).getData(), mDrawnRectangles.get(i));
+      HNode<T> node = mDrawnNodes.get(i);
+      if (node instanceof CoalescedNode) {
+        mHRenderer.renderCoalesced(g, mDrawnRectangles.get(i));
+      }
+      else {
+        mHRenderer.render(g, node.getData(), mDrawnRectangles.get(i));
+      }
     }
 
     g.dispose();
   }
 
   protected void render() {
-    mNodes.clear();
-    mRectangles.clear();
+    // The visible nodes are collected from the index when the canvas is redrawn, as they depend on its size.
     myCanvas = null;
-    if (mRoot == null) {
-      return;
-    }
-
-    if (inRange(mRoot)) {
-      mNodes.add(mRoot);
-      mRectangles.add(createRectangle(mRoot));
-    }
-
-    int head = 0;
-    while (head < mNodes.size()) {
-      HNode<T> curNode = mNodes.get(head++);
-
-      for (int i = 0; i < curNode.getChildCount(); ++i) {
-        HNode<T> child = curNode.getChildAt(i);
-        if (inRange(child)) {
-          mNodes.add(child);
-          mRectangles.add(createRectangle(child));
-        }
-      }
-    }
-  }
-
-  private boolean inRange(@NotNull HNode<T> node) {
-    return node.getStart() <= mXRange.getMax() && node.getEnd() >= mXRange.getMin();
   }
 
   @NotNull
-  private Rectangle2D.Float createRectangle(@NotNull HNode<T> node) {
-    float left = (float)Math.max(0, (node.getStart() - mXRange.getMin()) / mXRange.getLength());
-    float right = (float)Math.min(1, (node.getEnd() - mXRange.getMin()) / mXRange.getLength());
+  private Rectangle2D.Float createRectangle(long start, long end, int depth, @NotNull Dimension dim) {
+    float left = (float)Math.max(0, (start - mXRange.getMin()) / mXRange.getLength());
+    float right = (float)Math.min(1, (end - mXRange.getMin()) / mXRange.getLength());
     Rectangle2D.Float rect = new Rectangle2D.Float();
-    rect.x = left;
-    rect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * node.getDepth()
+    rect.x = left * (float)dim.getWidth();
+    rect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * depth
                      - getYRange().getMin());
-    rect.width = right - left;
+    rect.width = Math.max(0, (right - left) * (float)dim.getWidth() - BORDER_PLUS_PADDING);
     rect.height = mDefaultFontMetrics.getHeight();
+
+    if (mOrientation == HTreeChart.Orientation.BOTTOM_UP) {
+      rect.y = (float)(dim.getHeight() - rect.y - rect.getHeight());
+    }
     return rect;
   }
 
@@ -237,8 +216,15 @@ public class HTreeChart<T> extends AnimatedComponent {
     }
   }
 
+  /**
+   * The tree is indexed when it is set, so it must not change afterwards: set a new tree instead. Setting the same tree again is a no-op.
+   */
   public void setHTree(@Nullable HNode<T> root) {
+    if (root == mRoot) {
+      return;
+    }
     this.mRoot = root;
+    mIndex = new HNodeIndex<>(root);
     changed();
   }
 
@@ -246,12 +232,16 @@ public class HTreeChart<T> extends AnimatedComponent {
     return mXRange;
   }
 
+  /**
+   * @return the node drawn at {@code point}, or null if there is none, or if the nodes there are too small to be told apart.
+   */
   @Nullable
   public HNode<T> getNodeAt(Point point) {
     if (point != null) {
       for (int i = 0; i < mDrawnNodes.size(); ++i) {
         if (contains(mDrawnRectangles.get(i), point)) {
-          return mDrawnNodes.get(i);
+          HNode<T> node = mDrawnNodes.get(i);
+          return node instanceof CoalescedNode ? null : node;
         }
       }
     }
@@ -355,27 +345,61 @@ public class HTreeChart<T> extends AnimatedComponent {
   }
 
   public int getMaximumHeight() {
-    if (mRoot == null) {
+    return (mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * mIndex.getDepthCount();
+  }
+
+  public enum Orientation {TOP_DOWN, BOTTOM_UP}
+
+  /**
+   * Stands for the nodes which {@link HNodeIndex} coalesced into a span, so that none of them is painted or picked in place of the others.
+   */
+  private static final class CoalescedNode<T> implements HNode<T> {
+    private final long myStart;
+    private final long myEnd;
+    private final int myDepth;
+
+    private CoalescedNode(long start, long end, int depth) {
+      myStart = start;
+      myEnd = end;
+      myDepth = depth;
+    }
+
+    @Override
+    public int getChildCount() {
       return 0;
     }
 
-    int maxDepth = -1;
-    Queue<HNode<T>> queue = new LinkedList<>();
-    queue.add(mRoot);
+    @NotNull
+    @Override
+    public HNode<T> getChildAt(int index) {
+      throw new IndexOutOfBoundsException("A coalesced span has no children");
+    }
 
-    while (!queue.isEmpty()) {
-      HNode<T> n = queue.poll();
-      if (n.getDepth() > maxDepth) {
-        maxDepth = n.getDepth();
-      }
+    @Nullable
+    @Override
+    public HNode<T> getParent() {
+      return null;
+    }
 
-      for (int i = 0; i < n.getChildCount(); ++i) {
-        queue.add(n.getChildAt(i));
-      }
+    @Override
+    public long getStart() {
+      return myStart;
     }
-    maxDepth += 1;
-    return (mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * maxDepth;
-  }
 
-  public enum Orientation {TOP_DOWN, BOTTOM_UP}
+    @Override
+    public long getEnd() {
+      return myEnd;
+    }
+
+    @Nullable
+    @Override
+    public T getData() {
+      return null;
+    }
+
+    @Override
+    public int getDepth() {
+      return myDepth;
+    }
+  }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesView;
 import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
@@ -31,6 +32,10 @@ class DefaultLineChartReducer implements LineChartReducer {
    */
   private static int PATH_ITERATOR_COORDS_COUNT = 6;
 
+  // Output of reduceData(LongSeriesView, LineConfig), reused across calls.
+  @NotNull private long[] myReducedX = new long[0];
+  @NotNull private long[] myReducedY = new long[0];
+
   /**
    * A simple reducer which reduces when,
    * 1. When the data is for a stepped line and if two consecutive values are equal (except for the last two points),
@@ -59,6 +64,28 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  /**
+   * Same as {@link #reduceData(List, LineConfig)}. The returned view is backed by arrays reused by the next call.
+   */
+  @Override
+  public LongSeriesView reduceData(@NotNull LongSeriesView data, @NotNull LineConfig config) {
+    if (myReducedX.length < data.size()) {
+      myReducedX = new long[data.size()];
+      myReducedY = new long[data.size()];
+    }
+    int size = 0;
+    for (int i = 0; i < data.size(); i++) {
+      long y = data.getY(i);
+      while (size >= 2 && myReducedY[size - 2] == myReducedY[size - 1] && (config.isStepped() || myReducedY[size - 1] == y)) {
+        size--;
+      }
+      myReducedX[size] = data.getX(i);
+      myReducedY[size] = y;
+      size++;
+    }
+    return LongSeriesView.of(myReducedX, myReducedY, size);
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
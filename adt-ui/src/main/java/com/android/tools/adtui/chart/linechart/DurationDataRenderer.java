@@ -125,43 +125,45 @@ public final class DurationDataRenderer<E extends DurationData> extends AspectOb
     RangedContinuousSeries attached = myModel.getAttachedSeries();
     double xMin = series.getXRange().getMin();
     double xLength = series.getXRange().getLength();
-    List<SeriesData<E>> seriesList = series.getSeries();
-    List<SeriesData<Long>> attachedSeriesList = attached != null ? attached.getSeries() : null;
+    SeriesView<E> seriesView = series.getSeriesView();
+    LongSeriesView attachedSeriesView = attached != null ? attached.getSeriesView() : null;
     int j = 0;
-    SeriesData<Long> lastFoundData = null;
-    for (int i = 0; i < seriesList.size(); i++) {
+    int lastFoundIndex = -1;
+    for (int i = 0; i < seriesView.size(); i++) {
       Rectangle2D.Float rect = new Rectangle2D.Float();
-      SeriesData<E> data = seriesList.get(i);
+      long dataX = seriesView.getX(i);
+      E dataValue = seriesView.getValue(i);
       double yStart = 1;
-      double xStart = (data.x - xMin) / xLength;
-      double xDuration = data.value.getDuration() / xLength;
+      double xStart = (dataX - xMin) / xLength;
+      double xDuration = dataValue.getDuration() / xLength;
       rect.setRect(xStart, 0, xDuration, 1);
       myPathCache.add(rect);
-      myDataCache.add(data.value);
+      myDataCache.add(dataValue);
 
       Rectangle2D.Float clickRegion = new Rectangle2D.Float();
       myClickRegionCache.add(clickRegion);
       // If the DurationData series is attached to a line series, finds the Y value on the line series matching the current DurationData.
       // This will be used as the y position to draw the icon +/ label.
-      if (attachedSeriesList != null) {
+      if (attachedSeriesView != null) {
         double yMin = attached.getYRange().getMin();
         double yMax = attached.getYRange().getMax();
-        for (; j < attachedSeriesList.size(); j++) {
-          SeriesData<Long> seriesData = attachedSeriesList.get(j);
-          if (seriesData.x - data.x > EPSILON) {
+        for (; j < attachedSeriesView.size(); j++) {
+          if (attachedSeriesView.getX(j) - dataX > EPSILON) {
             // Stop as soon as we found a point on the attached series greater than the duration data's start point.
-            if (lastFoundData == null) {
+            if (lastFoundIndex < 0) {
               // If the duraiton data is before the first data point on the attached series, simply places the DurationData
               // at the bottom (yStart == 1), as we have nothing to attach to.
               break;
             }
             // Interpolate the y value in case the attached series and the duration data series do not match.
             assert myModel.getInterpolatable() != null;
-            double adjustedY = myModel.getInterpolatable().interpolate(lastFoundData, seriesData, data.x);
+            SeriesData<Long> start = new SeriesData<>(attachedSeriesView.getX(lastFoundIndex), attachedSeriesView.getY(lastFoundIndex));
+            SeriesData<Long> end = new SeriesData<>(attachedSeriesView.getX(j), attachedSeriesView.getY(j));
+            double adjustedY = myModel.getInterpolatable().interpolate(start, end, dataX);
             yStart = 1 - (adjustedY - yMin) / (yMax - yMin);
             break;
           }
-          lastFoundData = seriesData;
+          lastFoundIndex = j;
         }
       }
 
@@ -173,7 +175,7 @@ public final class DurationDataRenderer<E extends DurationData> extends AspectOb
       }
 
       if (myLabelProvider != null) {
-        JLabel label = new JLabel(myLabelProvider.apply(data.value));
+        JLabel label = new JLabel(myLabelProvider.apply(dataValue));
         label.setFont(AdtUiUtils.DEFAULT_FONT.deriveFont(9f));
         label.setForeground(myLabelTextColor);
         Dimension size = label.getPreferredSize();
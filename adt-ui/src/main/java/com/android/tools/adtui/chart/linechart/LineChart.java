@@ -19,8 +19,8 @@ package com.android.tools.adtui.chart.linechart;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongSeriesView;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
@@ -56,8 +56,14 @@ public class LineChart extends AnimatedComponent {
   @NotNull
   private final Map<RangedContinuousSeries, LineConfig> myLinesConfig = new LinkedHashMap<>();
 
+  /**
+   * The lines of the series, kept across redraws to only add the new points of the series.
+   */
+  @NotNull
+  private final Map<RangedContinuousSeries, LinePath> myLinePathCache = new HashMap<>();
+
   @NotNull
-  private final ArrayList<Path2D> myLinePaths;
+  private final ArrayList<LinePath> myLinePaths;
 
   @NotNull
   private final ArrayList<RangedContinuousSeries> myLinePathSeries;
@@ -109,6 +115,10 @@ public class LineChart extends AnimatedComponent {
 
   private Map<LineConfig, DashInfo> myDashInfoCache = new HashMap<>();
 
+  // Running sum of the stacked series, reused across redraws.
+  @NotNull private long[] myStackedX = new long[0];
+  @NotNull private long[] myStackedY = new long[0];
+
   @VisibleForTesting
   public LineChart(@NotNull LineChartModel model, @NotNull LineChartReducer reducer) {
     myLinePaths = new ArrayList<>();
@@ -164,11 +174,11 @@ public class LineChart extends AnimatedComponent {
   private void redraw(@NotNull Dimension dim) {
     long duration = System.nanoTime();
 
-    // Store the last stacked series to use them to increment the Y values
+    // Size of the last stacked series, stored in myStackedX and myStackedY to increment the Y values
     // of the current stacked series.
-    List<SeriesData<Long>> lastStackedSeries = null;
+    int lastStackedSize = -1;
 
-    Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
+    Deque<LinePath> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
     Deque<RangedContinuousSeries> orderedSeries = new ArrayDeque<>(myLinesConfig.size());
 
     for (RangedContinuousSeries ranged : myModel.getSeries()) {
@@ -178,10 +188,19 @@ public class LineChart extends AnimatedComponent {
       }
       final LineConfig config = getLineConfig(ranged);
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      // Stacked series are summed point by point, so they can only be decimated if they all keep the same points.
+      LongSeriesView seriesView = config.isStacked() ? ranged.getSeriesView() : ranged.getSeriesView(dim.width);
       if (config.isStacked()) {
-        if (lastStackedSeries == null) {
-          lastStackedSeries = new ArrayList<>(seriesList);
+        if (lastStackedSize < 0) {
+          lastStackedSize = seriesView.size();
+          if (myStackedX.length < lastStackedSize) {
+            myStackedX = new long[lastStackedSize];
+            myStackedY = new long[lastStackedSize];
+          }
+          for (int i = 0; i < lastStackedSize; ++i) {
+            myStackedX[i] = seriesView.getX(i);
+            myStackedY[i] = seriesView.getY(i);
+          }
         }
         else {
           // If the current series is stacked, increment its value by the value of the last stacked
@@ -189,72 +208,40 @@ public class LineChart extends AnimatedComponent {
           // points than the last stacked series (meaning that the last one was populated in a
           // prior iteration). In this case, ignore the new points (i.e. we take only the intersection
           // across all series).
-          for (int i = 0; i < seriesList.size() && i < lastStackedSeries.size(); ++i) {
+          for (int i = 0; i < seriesView.size() && i < lastStackedSize; ++i) {
             // An assumption is made here that the x values across series are aligned.
-            lastStackedSeries.get(i).value += seriesList.get(i).value;
+            myStackedY[i] += seriesView.getY(i);
           }
-          seriesList = lastStackedSeries;
         }
+        seriesView = LongSeriesView.of(myStackedX, myStackedY, lastStackedSize);
       }
 
-      Path2D path = new Path2D.Float();
       double xMin = ranged.getXRange().getMin();
       double xLength = ranged.getXRange().getLength();
       double yMin = ranged.getYRange().getMin();
       double yLength = ranged.getYRange().getLength();
 
-      // X coordinate of the first point
-      double firstXd = 0f;
-      // Actual value of first point
-      double firstX = 0;
-      seriesList = myReducer.reduceData(seriesList, config);
-      for (SeriesData<Long> data : seriesList) {
-        // TODO: refactor to allow different types (e.g. double)
-        double xd = (data.x - xMin) / xLength;
-        // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        double yd = 1 - (data.value - yMin) / yLength;
-
-        if (path.getCurrentPoint() == null) {
-          path.moveTo(xd, yd);
-          firstXd = xd;
-          firstX = data.x;
-        }
-        else {
-          // If the chart is stepped, a horizontal line should be drawn from the current
-          // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
-          // drawing a line to the destination point itself (e.g. (x1, y1)).
-          if (config.isStepped()) {
-            float y = (float)path.getCurrentPoint().getY();
-            path.lineTo(xd, y);
-          }
-          path.lineTo(xd, yd);
-        }
-      }
-
-      if (myFillEndGap && path.getCurrentPoint() != null) {
-        // Extends the last point on the path to the end
-        path.lineTo(Math.max(path.getCurrentPoint().getX(), 1f), path.getCurrentPoint().getY());
-      }
-
-      if (config.isFilled() && path.getCurrentPoint() != null) {
-        // If the chart is filled, draw a line from the last point to X
-        // axis and another one from this new point to the first destination point.
-        path.lineTo(path.getCurrentPoint().getX(), 1f);
-        path.lineTo(firstXd, 1f);
-      }
+      seriesView = myReducer.reduceData(seriesView, config);
+      LinePath linePath = myLinePathCache.computeIfAbsent(ranged, key -> new LinePath());
+      // Adjusting the dash phase walks the line from the first point of the data, so it is rebuilt to start there.
+      boolean adjustDash = config.isDash() && config.isAdjustDash();
+      linePath.update(seriesView, config.isStepped(), xMin, xLength, yMin, yLength, adjustDash);
 
       if (config.isFilled()) {
         // Draw the filled lines first, otherwise other lines won't be visible.
         // Also, to draw stacked and filled lines correctly, they need to be drawn in reverse order to their adding order.
-        orderedPaths.addFirst(path);
+        orderedPaths.addFirst(linePath);
         orderedSeries.addFirst(ranged);
       }
       else {
-        orderedPaths.addLast(path);
+        orderedPaths.addLast(linePath);
         orderedSeries.addLast(ranged);
       }
 
-      if (config.isDash() && config.isAdjustDash()) {
+      if (adjustDash) {
+        // The line in [0, 1] coordinates.
+        Path2D path = linePath.createPath(new AffineTransform(), myFillEndGap, config.isFilled());
+        double firstX = linePath.getFirstX();
         DashInfo dashInfo;
         if (!myDashInfoCache.containsKey(config)) {
           dashInfo = new DashInfo();
@@ -275,6 +262,7 @@ public class LineChart extends AnimatedComponent {
         myDashInfoCache.remove(config);
       }
     }
+    myLinePathCache.keySet().retainAll(myModel.getSeries());
 
     myLinePaths.clear();
     myLinePaths.addAll(orderedPaths);
@@ -323,8 +311,8 @@ public class LineChart extends AnimatedComponent {
     List<LineConfig> configs = new ArrayList<>(myLinePaths.size());
 
     for (int i = 0; i < myLinePaths.size(); ++i) {
-      Path2D scaledPath = new Path2D.Float(myLinePaths.get(i), scale);
       LineConfig config = getLineConfig(myLinePathSeries.get(i));
+      Path2D scaledPath = myLinePaths.get(i).createPath(scale, myFillEndGap, config.isFilled());
       configs.add(config);
       scaledPath = myReducer.reducePath(scaledPath, config);
       transformedPaths.add(scaledPath);
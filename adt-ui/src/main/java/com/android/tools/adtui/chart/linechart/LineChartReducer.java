@@ -15,9 +15,12 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesView;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesView;
 
 import java.awt.geom.Path2D;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +34,18 @@ public interface LineChartReducer {
    */
   List<SeriesData<Long>> reduceData(List<SeriesData<Long>> data, LineConfig config);
 
+  /**
+   * Same as {@link #reduceData(List, LineConfig)}, used by {@link LineChart}. Reducers should override it to avoid boxing the data.
+   * The returned view only needs to be valid until the next call.
+   */
+  default LongSeriesView reduceData(LongSeriesView data, LineConfig config) {
+    List<SeriesData<Long>> list = new ArrayList<>(data.size());
+    for (int i = 0; i < data.size(); i++) {
+      list.add(new SeriesData<>(data.getX(i), data.getY(i)));
+    }
+    return LongSeriesView.of(SeriesView.of(reduceData(list, config)));
+  }
+
   /**
    * Reduces the given path in a pixel level, i.e when dimensions are available.
    * The result shouldn't affect the looking of the line when it's drawn.
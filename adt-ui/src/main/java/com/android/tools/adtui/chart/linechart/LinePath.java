@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.LongSeriesView;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+
+/**
+ * The line of a series in a {@link LineChart}, kept across redraws so that a redraw only adds the points appended to the series since
+ * the previous one, instead of building the whole line again.
+ *
+ * The points are stored relative to the x range the line was last rebuilt for, and translated to the current x range when the line is
+ * drawn, so a scrolling range doesn't move them. The line is rebuilt when the length of the x range or the y range change, when the
+ * data doesn't continue the points already there, or when the points scrolled out of view outnumber the ones still in view.
+ */
+final class LinePath {
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * The line through the points, but the last one, in coordinates relative to the x range it was rebuilt for:
+   * x = (x - myXOrigin) / myXLength and, as Swing's y axis goes down, y = 1 - (y - myYMin) / myYLength.
+   */
+  @NotNull private final Path2D.Float myPath = new Path2D.Float(Path2D.WIND_NON_ZERO, INITIAL_CAPACITY);
+
+  // Data points of myPath. The last data point is kept apart, as reducers may still replace it once more data comes.
+  @NotNull private long[] myX = new long[INITIAL_CAPACITY];
+  @NotNull private long[] myY = new long[INITIAL_CAPACITY];
+  private int mySize;
+
+  private boolean myHasLastPoint;
+  private long myLastX;
+  private long myLastY;
+
+  // The first point of the current data, which is not the first point of myPath once the range scrolled.
+  // The points before it are out of view.
+  private long myFirstX;
+
+  private boolean myIsStepped;
+  private double myXOrigin;
+  private double myXLength;
+  private double myYMin;
+  private double myYLength;
+
+  private double myXMin;
+
+  private int myRebuildCount;
+
+  /**
+   * Updates the line to go through {@code data}, its points being sorted by x.
+   *
+   * @param forceRebuild whether to build the line from scratch, e.g. when it needs to start at the first point of {@code data}
+   */
+  void update(@NotNull LongSeriesView data,
+              boolean stepped,
+              double xMin,
+              double xLength,
+              double yMin,
+              double yLength,
+              boolean forceRebuild) {
+    myXMin = xMin;
+    if (data.size() == 0) {
+      myPath.reset();
+      mySize = 0;
+      myHasLastPoint = false;
+      return;
+    }
+
+    int start = forceRebuild || stepped != myIsStepped || xLength != myXLength || yMin != myYMin || yLength != myYLength
+                ? -1
+                : findContinuedPoints(data);
+    if (start < 0) {
+      myPath.reset();
+      mySize = 0;
+      myIsStepped = stepped;
+      myXOrigin = xMin;
+      myXLength = xLength;
+      myYMin = yMin;
+      myYLength = yLength;
+      start = 0;
+      ++myRebuildCount;
+    }
+
+    for (int i = mySize - start; i < data.size() - 1; i++) {
+      addPoint(data.getX(i), data.getY(i));
+    }
+    myHasLastPoint = true;
+    myLastX = data.getX(data.size() - 1);
+    myLastY = data.getY(data.size() - 1);
+    myFirstX = data.getX(0);
+  }
+
+  /**
+   * @return the index of the point of the line matching the first point of {@code data}, if {@code data} continues the line from there,
+   * or -1 if the line needs to be rebuilt.
+   */
+  private int findContinuedPoints(@NotNull LongSeriesView data) {
+    if (mySize == 0) {
+      return -1;
+    }
+    int start = lowerBound(data.getX(0));
+    int overlap = mySize - start;
+    // Nothing to continue, or more points out of view than in view.
+    if (overlap <= 0 || start > overlap || data.size() <= overlap) {
+      return -1;
+    }
+    for (int i = 0; i < overlap; i++) {
+      if (myX[start + i] != data.getX(i) || myY[start + i] != data.getY(i)) {
+        return -1;
+      }
+    }
+    return start;
+  }
+
+  /**
+   * @return the index of the first point whose x is greater or equal to {@code x}, or the number of points if there is none.
+   */
+  private int lowerBound(long x) {
+    int low = 0;
+    int high = mySize;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myX[mid] < x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void addPoint(long x, long y) {
+    if (mySize == myX.length) {
+      long[] newX = new long[mySize * 2];
+      long[] newY = new long[mySize * 2];
+      System.arraycopy(myX, 0, newX, 0, mySize);
+      System.arraycopy(myY, 0, newY, 0, mySize);
+      myX = newX;
+      myY = newY;
+    }
+    double xd = (x - myXOrigin) / myXLength;
+    double yd = 1 - (y - myYMin) / myYLength;
+    if (mySize == 0) {
+      myPath.moveTo(xd, yd);
+    }
+    else {
+      // If the chart is stepped, a horizontal line should be drawn from the current
+      // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
+      // drawing a line to the destination point itself (e.g. (x1, y1)).
+      if (myIsStepped) {
+        myPath.lineTo(xd, myPath.getCurrentPoint().getY());
+      }
+      myPath.lineTo(xd, yd);
+    }
+    myX[mySize] = x;
+    myY[mySize] = y;
+    ++mySize;
+  }
+
+  /**
+   * @param transform  maps the current x and y ranges to [0, 1] onto the destination coordinates
+   * @param fillEndGap whether to extend the last point all the way to the right of the x range
+   * @param filled     whether to close the line along the bottom of the y range, to fill it
+   * @return a new path through the points, in destination coordinates.
+   */
+  @NotNull
+  Path2D createPath(@NotNull AffineTransform transform, boolean fillEndGap, boolean filled) {
+    AffineTransform pathTransform = new AffineTransform(transform);
+    pathTransform.translate((myXOrigin - myXMin) / myXLength, 0);
+    Path2D path = new Path2D.Float(myPath, pathTransform);
+    if (!myHasLastPoint) {
+      return path;
+    }
+
+    Point2D last = transform.transform(new Point2D.Double((myLastX - myXMin) / myXLength, 1 - (myLastY - myYMin) / myYLength), null);
+    if (path.getCurrentPoint() == null) {
+      path.moveTo(last.getX(), last.getY());
+    }
+    else {
+      if (myIsStepped) {
+        path.lineTo(last.getX(), path.getCurrentPoint().getY());
+      }
+      path.lineTo(last.getX(), last.getY());
+    }
+
+    if (fillEndGap) {
+      // Extends the last point on the path to the end
+      double endX = transform.transform(new Point2D.Double(1, 0), null).getX();
+      path.lineTo(Math.max(last.getX(), endX), last.getY());
+    }
+
+    if (filled) {
+      // If the chart is filled, draw a line from the last point to X
+      // axis and another one from this new point to the first destination point.
+      long firstX = mySize > 0 ? myX[0] : myLastX;
+      Point2D bottomLeft = transform.transform(new Point2D.Double((firstX - myXMin) / myXLength, 1), null);
+      path.lineTo(path.getCurrentPoint().getX(), bottomLeft.getY());
+      path.lineTo(bottomLeft.getX(), bottomLeft.getY());
+    }
+    return path;
+  }
+
+  /**
+   * @return the x of the first point of the current data.
+   */
+  double getFirstX() {
+    return myFirstX;
+  }
+
+  int getRebuildCount() {
+    return myRebuildCount;
+  }
+}
@@ -21,7 +21,7 @@ import com.android.tools.adtui.MouseAdapterComponent;
 import com.android.tools.adtui.common.AdtUiUtils;
 import com.android.tools.adtui.common.EnumColors;
 import com.android.tools.adtui.model.RangedSeries;
-import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesView;
 import com.android.tools.adtui.model.StateChartModel;
 import org.jetbrains.annotations.NotNull;
 
@@ -149,9 +149,10 @@ public class StateChart<E extends Enum<E>> extends MouseAdapterComponent<Long> {
       // Construct rectangles.
       long previousX = -1;
       E previousValue = null;
-      for (SeriesData<E> seriesData: data.getSeries()) {
-        long x = seriesData.x;
-        E value = seriesData.value;
+      SeriesView<E> seriesView = data.getSeriesView();
+      for (int i = 0; i < seriesView.size(); i++) {
+        long x = seriesView.getX(i);
+        E value = seriesView.getValue(i);
 
         if (value.equals(previousValue)) {
           // Ignore repeated values
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import com.android.tools.adtui.model.DefaultHNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HNodeIndexTest {
+  /**
+   * The structure of the tree:
+   *   0 500 700 900 1000 2000 2100 2200 2400 3000 4000 5000 6000 7000 7900 8000 9000 10000
+   *   A++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++
+   *   B++++++++++++++++++++++++++++++++++++++++++++++++++++++  C+++++++++++++++++++++++++++
+   *   D++++ E++++++               F+++++G+++++                            H++++
+   */
+  @NotNull
+  private static HNodeIndex<String> createIndex() {
+    DefaultHNode<String> a = createNode("A", 0, 10000, 0);
+    DefaultHNode<String> b = createNode("B", 0, 5000, 1);
+    DefaultHNode<String> c = createNode("C", 6000, 10000, 1);
+    a.addChild(b);
+    a.addChild(c);
+    b.addChild(createNode("D", 0, 500, 2));
+    b.addChild(createNode("E", 700, 900, 2));
+    b.addChild(createNode("F", 2100, 2200, 2));
+    b.addChild(createNode("G", 2200, 2400, 2));
+    c.addChild(createNode("H", 7900, 8000, 2));
+    return new HNodeIndex<>(a);
+  }
+
+  @Test
+  public void testNodesInsideAPixelAreCoalesced() {
+    HNodeIndex<String> index = createIndex();
+    assertEquals(8, index.getNodeCount());
+    assertEquals(3, index.getDepthCount());
+
+    assertEquals(Arrays.asList("A 0 10000"), visit(index, 0, 0, 10000, 1000));
+    assertEquals(Arrays.asList("B 0 5000", "C 6000 10000"), visit(index, 1, 0, 10000, 1000));
+    // D and E are in the first pixel, F and G in the third one, so neither span stands for a node.
+    assertEquals(Arrays.asList("null 0 900", "null 2100 2400", "H 7900 8000"), visit(index, 2, 0, 10000, 1000));
+  }
+
+  @Test
+  public void testOnlyVisibleNodesAreVisited() {
+    HNodeIndex<String> index = createIndex();
+    assertEquals(Arrays.asList("B 0 5000"), visit(index, 1, 2000, 3000, 10));
+    assertEquals(Arrays.asList("F 2100 2200", "G 2200 2400"), visit(index, 2, 2000, 3000, 10));
+    assertEquals(Arrays.asList(), visit(index, 2, 8500, 9500, 10));
+    assertEquals(Arrays.asList(), visit(index, 3, 0, 10000, 10));
+  }
+
+  @Test
+  public void testUnsortedChildrenAreVisitedByStart() {
+    DefaultHNode<String> a = createNode("A", 0, 3000, 0);
+    DefaultHNode<String> b = createNode("B", 2000, 3000, 1);
+    DefaultHNode<String> c = createNode("C", 0, 1000, 1);
+    a.addChild(b);
+    a.addChild(c);
+    b.addChild(createNode("D", 2000, 2500, 2));
+    c.addChild(createNode("E", 0, 500, 2));
+    HNodeIndex<String> index = new HNodeIndex<>(a);
+    assertEquals(Arrays.asList("C 0 1000", "B 2000 3000"), visit(index, 1, 0, 3000, 10));
+    assertEquals(Arrays.asList("E 0 500", "D 2000 2500"), visit(index, 2, 0, 3000, 10));
+  }
+
+  @Test
+  public void testEmptyTree() {
+    HNodeIndex<String> index = new HNodeIndex<>(null);
+    assertEquals(0, index.getNodeCount());
+    assertEquals(0, index.getDepthCount());
+    assertEquals(Arrays.asList(), visit(index, 0, 0, 10000, 10));
+  }
+
+  @NotNull
+  private static List<String> visit(@NotNull HNodeIndex<String> index, int depth, double min, double max, double pixelLength) {
+    List<String> visited = new ArrayList<>();
+    index.visit(depth, min, max, pixelLength, (node, start, end) -> {
+      visited.add((node == null ? null : node.getData()) + " " + start + " " + end);
+    });
+    return visited;
+  }
+
+  @NotNull
+  private static DefaultHNode<String> createNode(@NotNull String id, long start, long end, int depth) {
+    DefaultHNode<String> node = new DefaultHNode<>(id, start, end);
+    node.setDepth(depth);
+    return node;
+  }
+}
@@ -15,7 +15,9 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesView;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesView;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
 import org.junit.Test;
@@ -89,6 +91,24 @@ public class DefaultLineChartReducerTest {
     assertSeriesEquals(expected, result);
   }
 
+  @Test
+  public void reduceDataViewMatchesReduceDataList() {
+    List<SeriesData<Long>> data = new ImmutableList.Builder<SeriesData<Long>>()
+      .add(new SeriesData<>(0, 10L))
+      .add(new SeriesData<>(1, 10L))
+      .add(new SeriesData<>(2, 13L))
+      .add(new SeriesData<>(3, 13L))
+      .add(new SeriesData<>(4, 13L))
+      .add(new SeriesData<>(5, 13L))
+      .add(new SeriesData<>(6, 5L))
+      .add(new SeriesData<>(7, 5L)).build();
+    LongSeriesView view = LongSeriesView.of(SeriesView.of(data));
+
+    assertViewEquals(myReducer.reduceData(data, myConfig), myReducer.reduceData(view, myConfig));
+    myConfig.setStepped(true);
+    assertViewEquals(myReducer.reduceData(data, myConfig), myReducer.reduceData(view, myConfig));
+  }
+
   @Test
   public void simpleReducePath() {
     float[][] given = {{0, 0}, {0.1f, 1}, {0.2f, 6}, {0.3f, 4}, {1, 2}, {1.1f, 5}};
@@ -235,6 +255,14 @@ public class DefaultLineChartReducerTest {
     return result;
   }
 
+  private static void assertViewEquals(List<SeriesData<Long>> expected, LongSeriesView actual) {
+    assertThat(actual.size()).isEqualTo(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.getX(i)).isEqualTo(expected.get(i).x);
+      assertThat(actual.getY(i)).isEqualTo(expected.get(i).value.longValue());
+    }
+  }
+
   private static void assertSeriesEquals(List<SeriesData<Long>> expected, List<SeriesData<Long>> actual) {
     assertThat(actual.size()).isEqualTo(expected.size());
     for (int i = 0; i < expected.size(); ++i) {
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Measures the time a {@link LineChart} of 8 series of 100k points takes to redraw and draw a frame, when the x range scrolls as new
+ * points are appended, which reuses the lines already built, compared to when the y range is rescaled, which rebuilds them.
+ *
+ * Not run as part of the tests. Run its main method, headless, to get the numbers.
+ */
+public class LineChartBenchmark {
+  private static final int SERIES_COUNT = 8;
+  private static final int POINTS_PER_SERIES = 100_000;
+  private static final int WIDTH = 1000;
+  private static final int HEIGHT = 200;
+  private static final int WARMUP_FRAMES = 100;
+  private static final int MEASURED_FRAMES = 200;
+
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    run("Scrolling", setup -> setup.myXRange.shift(1));
+    run("Rescaling", setup -> setup.myYRange.setMax(setup.myYRange.getMax() + 1));
+  }
+
+  private static void run(String name, Consumer<Setup> update) {
+    Setup setup = new Setup();
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    Runnable frame = () -> {
+      setup.append();
+      update.accept(setup);
+      setup.myModel.changed(LineChartModel.Aspect.LINE_CHART);
+      setup.myChart.paint(g);
+    };
+
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      frame.run();
+    }
+    long startNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_FRAMES; i++) {
+      frame.run();
+    }
+    long elapsedNs = System.nanoTime() - startNs;
+    g.dispose();
+    System.out.printf("%s: %.2f ms/frame (%d series of %d points)%n", name, elapsedNs / 1e6 / MEASURED_FRAMES, SERIES_COUNT,
+                      POINTS_PER_SERIES);
+  }
+
+  private static final class Setup {
+    private final Random myRandom = new Random(0);
+    private final Range myXRange = new Range(0, POINTS_PER_SERIES);
+    private final Range myYRange = new Range(0, 100 * SERIES_COUNT);
+    private final List<LongDataSeries> mySeries = new ArrayList<>();
+    private final LineChartModel myModel = new LineChartModel();
+    private final LineChart myChart = new LineChart(myModel);
+    private long myNextX;
+
+    private Setup() {
+      for (int i = 0; i < SERIES_COUNT; i++) {
+        LongDataSeries series = new LongDataSeries();
+        mySeries.add(series);
+        RangedContinuousSeries ranged = new RangedContinuousSeries("Series " + i, myXRange, myYRange, series);
+        myModel.add(ranged);
+        // Half of the series are stacked and filled, as in the CPU and memory monitors.
+        myChart.configure(ranged, new LineConfig(LineConfig.getColor(i)).setStacked(i % 2 == 0).setFilled(i % 2 == 0));
+      }
+      myChart.setSize(WIDTH, HEIGHT);
+      for (int i = 0; i < POINTS_PER_SERIES; i++) {
+        append();
+      }
+    }
+
+    private void append() {
+      for (LongDataSeries series : mySeries) {
+        series.add(myNextX, (long)myRandom.nextInt(100));
+      }
+      myNextX++;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.LongSeriesView;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LinePathTest {
+  private static final float EPSILON = 1e-4f;
+
+  @Test
+  public void testScrollingOnlyAddsNewPoints() {
+    LinePath path = new LinePath();
+    path.update(createData(0, 10), false, 0, 10, 0, 10, false);
+    assertEquals(1, path.getRebuildCount());
+
+    // The range moves by one as a point is appended.
+    path.update(createData(1, 11), false, 1, 10, 0, 10, false);
+    assertEquals(1, path.getRebuildCount());
+
+    // The points scrolled out of view stay in the path, the others are translated.
+    List<float[]> points = getPoints(path.createPath(new AffineTransform(), false, false));
+    assertEquals(11, points.size());
+    assertPoint(points.get(0), -0.1f, 1f);
+    assertPoint(points.get(1), 0f, 0.9f);
+    assertPoint(points.get(10), 0.9f, 0f);
+  }
+
+  @Test
+  public void testRescalingRebuilds() {
+    LinePath path = new LinePath();
+    path.update(createData(0, 10), false, 0, 10, 0, 10, false);
+    path.update(createData(0, 11), false, 0, 10, 0, 20, false);
+    assertEquals(2, path.getRebuildCount());
+
+    List<float[]> points = getPoints(path.createPath(new AffineTransform(), false, false));
+    assertEquals(11, points.size());
+    assertPoint(points.get(10), 1f, 0.5f);
+  }
+
+  @Test
+  public void testChangedDataRebuilds() {
+    LinePath path = new LinePath();
+    path.update(createData(0, 10), false, 0, 10, 0, 10, false);
+    LongSeriesView changed = LongSeriesView.of(new long[]{0, 1, 2}, new long[]{5, 5, 5}, 3);
+    path.update(changed, false, 0, 10, 0, 10, false);
+    assertEquals(2, path.getRebuildCount());
+    assertEquals(3, getPoints(path.createPath(new AffineTransform(), false, false)).size());
+  }
+
+  @Test
+  public void testFilledSteppedPath() {
+    LinePath path = new LinePath();
+    path.update(createData(0, 3), true, 0, 10, 0, 10, false);
+    // Scaled to a 10x10 area.
+    List<float[]> points = getPoints(path.createPath(new AffineTransform(10, 0, 0, 10, 0, 0), true, true));
+    // (0, 0), step to (1, 0), (1, 1), step to (2, 1), (2, 2), end gap, bottom right, bottom left.
+    assertEquals(8, points.size());
+    assertPoint(points.get(1), 1f, 10f);
+    assertPoint(points.get(4), 2f, 8f);
+    assertPoint(points.get(5), 10f, 8f);
+    assertPoint(points.get(6), 10f, 10f);
+    assertPoint(points.get(7), 0f, 10f);
+  }
+
+  /**
+   * @return points (x, x) for x in [from, to).
+   */
+  @NotNull
+  private static LongSeriesView createData(int from, int to) {
+    long[] x = new long[to - from];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = from + i;
+    }
+    return LongSeriesView.of(x, x, x.length);
+  }
+
+  @NotNull
+  private static List<float[]> getPoints(@NotNull Path2D path) {
+    List<float[]> points = new ArrayList<>();
+    float[] coords = new float[6];
+    for (PathIterator iterator = path.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+      iterator.currentSegment(coords);
+      points.add(new float[]{coords[0], coords[1]});
+    }
+    return points;
+  }
+
+  private static void assertPoint(@NotNull float[] point, float x, float y) {
+    assertEquals(x, point[0], EPSILON);
+    assertEquals(y, point[1], EPSILON);
+  }
+}
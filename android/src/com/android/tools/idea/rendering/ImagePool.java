@@ -11,13 +11,16 @@ import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.ImageObserver;
 import java.awt.image.WritableRaster;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -25,7 +28,8 @@ import java.util.function.Function;
 /**
  * Class that offers a pool of {@link BufferedImage}s. The returned {@link Image} do not offer a direct access
  * to the underlying {@link BufferedImage} to avoid clients holding references to it.
- * Once the {@link Image} is not being referenced anymore, it will be automatically returned to the pool.
+ * Once all the references to the {@link Image} are released with {@link Image#dispose()}, or once it is not being referenced anymore,
+ * it will be automatically returned to the pool.
  */
 @SuppressWarnings("ALL")
 public class ImagePool {
@@ -53,18 +57,32 @@ public class ImagePool {
       return null;
     }
 
+    @Override
+    public boolean retain() {
+      return true;
+    }
+
     @Override
     public void dispose() {}
   };
   private static final boolean DEBUG = false;
   private static final Bucket NULL_BUCKET = new Bucket(0, 0, 0);
+  /** The number of {@link BufferedImage} types, see {@link BufferedImage#TYPE_BYTE_INDEXED} */
+  private static final int IMAGE_TYPE_COUNT = BufferedImage.TYPE_BYTE_INDEXED + 1;
   private final int[] myBucketSizes;
-  private final HashMap<String, Bucket> myPool = new HashMap<>();
+  /** The buckets, by width bucket, height bucket and image type. See {@link #getBucketIndex(int, int, int)} */
+  private final AtomicReferenceArray<Bucket> myPool;
   private final BiFunction<Integer, Integer, Function<Integer, Integer>> myBucketSizingPolicy;
   @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
   private final FinalizableReferenceQueue myFinalizableReferenceQueue = new FinalizableReferenceQueue();
   private final Set<Reference<?>> myReferences = Sets.newConcurrentHashSet();
 
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+  private final AtomicLong myAllocatedBytes = new AtomicLong();
+  private final AtomicLong myCopiedPixels = new AtomicLong();
+  private final AtomicLong mySkippedPixels = new AtomicLong();
+
   /**
    * Constructs a new {@link ImagePool} with a custom queue sizing policy. The passed bucketSizingPolicy will be called
    * every time that a new cache is needed for a given (width, height) -> (imageType).
@@ -83,15 +101,15 @@ public class ImagePool {
     myBucketSizes = bucketSizes;
     Arrays.sort(myBucketSizes);
     myBucketSizingPolicy = bucketSizingPolicy;
+    myPool = new AtomicReferenceArray<>(myBucketSizes.length * myBucketSizes.length * IMAGE_TYPE_COUNT);
   }
   private boolean isDisposed = false;
 
   /**
-   * Returns the key to be used for indexing the {@link EvictingQueue}.
+   * Returns the index of the bucket of the given width bucket, height bucket and image type in {@link #myPool}.
    */
-  @NotNull
-  private static String getPoolKey(int w, int h, int type) {
-    return String.format("%dx%d-%d", w, h, type);
+  private int getBucketIndex(int widthBucketIndex, int heightBucketIndex, int type) {
+    return (widthBucketIndex * myBucketSizes.length + heightBucketIndex) * IMAGE_TYPE_COUNT + type;
   }
 
   public ImagePool() {
@@ -118,44 +136,44 @@ public class ImagePool {
     }
 
     // Find the bucket sizes for both dimensions
-    int widthBucket = -1;
-    int heightBucket = -1;
+    int widthBucketIndex = -1;
+    int heightBucketIndex = -1;
 
-    for (int bucketMinSize : myBucketSizes) {
-      if (widthBucket == -1 && w < bucketMinSize) {
-        widthBucket = bucketMinSize;
+    for (int i = 0; i < myBucketSizes.length; i++) {
+      int bucketMinSize = myBucketSizes[i];
+      if (widthBucketIndex == -1 && w < bucketMinSize) {
+        widthBucketIndex = i;
 
-        if (heightBucket != -1) {
+        if (heightBucketIndex != -1) {
           break;
         }
       }
-      if (heightBucket == -1 && h < bucketMinSize) {
-        heightBucket = bucketMinSize;
+      if (heightBucketIndex == -1 && h < bucketMinSize) {
+        heightBucketIndex = i;
 
-        if (widthBucket != -1) {
+        if (widthBucketIndex != -1) {
           break;
         }
       }
     }
 
-    if (widthBucket == -1 || heightBucket == -1) {
+    if (widthBucketIndex == -1 || heightBucketIndex == -1 || type < 0 || type >= IMAGE_TYPE_COUNT) {
       return NULL_BUCKET;
     }
 
-    String poolKey = getPoolKey(widthBucket, heightBucket, type);
-
-    int finalWidthBucket = widthBucket;
-    int finalHeightBucket = heightBucket;
-    return myPool.computeIfAbsent(poolKey, (k) -> {
-      int size = myBucketSizingPolicy.apply(finalWidthBucket, finalHeightBucket).apply(type);
-
-      if (size == 0) {
-        // For size 0, do not allocate extra memory for a new EvictingQueue.
-        return NULL_BUCKET;
+    int index = getBucketIndex(widthBucketIndex, heightBucketIndex, type);
+    Bucket bucket = myPool.get(index);
+    if (bucket == null) {
+      int widthBucket = myBucketSizes[widthBucketIndex];
+      int heightBucket = myBucketSizes[heightBucketIndex];
+      int size = myBucketSizingPolicy.apply(widthBucket, heightBucket).apply(type);
+      // For size 0, do not allocate extra memory for a new EvictingQueue.
+      bucket = size == 0 ? NULL_BUCKET : new Bucket(widthBucket, heightBucket, size);
+      if (!myPool.compareAndSet(index, null, bucket)) {
+        bucket = myPool.get(index);
       }
-
-      return new Bucket(finalWidthBucket, finalHeightBucket, size);
-    });
+    }
+    return bucket;
   }
 
   @VisibleForTesting
@@ -184,6 +202,7 @@ public class ImagePool {
                           image.getWidth(), image.getHeight(),
                           (int)((wasted / totalSize) * 100));
       }
+      myHitCount.incrementAndGet();
       // Clear the image
       Graphics2D g = image.createGraphics();
       g.setComposite(AlphaComposite.Clear);
@@ -196,6 +215,8 @@ public class ImagePool {
       }
       //noinspection UndesirableClassUsage
       image = new BufferedImage(Math.max(bucket.myMinWidth, w), Math.max(bucket.myMinHeight, h), type);
+      myMissCount.incrementAndGet();
+      myAllocatedBytes.addAndGet(getSizeInBytes(image));
     }
 
     ImageImpl pooledImage = new ImageImpl(w, h, image);
@@ -223,6 +244,11 @@ public class ImagePool {
     return pooledImage;
   }
 
+  private static long getSizeInBytes(@NotNull BufferedImage image) {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+
   private static class Bucket extends ForwardingQueue<SoftReference<BufferedImage>> {
     private final Queue<SoftReference<BufferedImage>> myDelegate;
     private final AtomicLong myLastAccess = new AtomicLong(System.currentTimeMillis());
@@ -271,6 +297,14 @@ public class ImagePool {
     return image;
   }
 
+  /**
+   * Returns a new {@link DoubleBuffer} to copy successive frames into pooled images.
+   */
+  @NotNull
+  public DoubleBuffer createDoubleBuffer() {
+    return new DoubleBuffer();
+  }
+
   /**
    * Disposes the image pool
    */
@@ -278,7 +312,183 @@ public class ImagePool {
     isDisposed = true;
     myFinalizableReferenceQueue.close();
     myReferences.clear();
-    myPool.clear();
+    for (int i = 0; i < myPool.length(); i++) {
+      myPool.set(i, null);
+    }
+  }
+
+  /**
+   * Returns the number of images which were created by reusing a pooled image.
+   */
+  public long getHitCount() {
+    return myHitCount.get();
+  }
+
+  /**
+   * Returns the number of images which were created by allocating a new image.
+   */
+  public long getMissCount() {
+    return myMissCount.get();
+  }
+
+  /**
+   * Returns the number of bytes allocated for new images.
+   */
+  public long getAllocatedBytes() {
+    return myAllocatedBytes.get();
+  }
+
+  /**
+   * Returns the number of pixels copied from frames by the {@link DoubleBuffer}s of this pool.
+   */
+  public long getCopiedPixels() {
+    return myCopiedPixels.get();
+  }
+
+  /**
+   * Returns the number of pixels of frames which the {@link DoubleBuffer}s of this pool did not have to copy as they didn't change.
+   */
+  public long getSkippedPixels() {
+    return mySkippedPixels.get();
+  }
+
+  @Override
+  public String toString() {
+    long hits = getHitCount();
+    long requests = hits + getMissCount();
+    return String.format("ImagePool: %d%% hits (%d/%d), %d KB allocated, %d pixels copied, %d pixels skipped",
+                         requests > 0 ? hits * 100 / requests : 0, hits, requests, getAllocatedBytes() / 1024, getCopiedPixels(),
+                         getSkippedPixels());
+  }
+
+  /**
+   * Copies successive frames, e.g. the images of a render session, into pooled images. The image of the frame before the previous one
+   * is reused for the next frame once all the other references to it have been released, and only the regions which changed in between
+   * are then copied into it.
+   * <p/>
+   * The images returned by {@link #copyOf(BufferedImage)} have to be released with {@link Image#dispose()} by the caller; the double
+   * buffer keeps its own references to the last two images until it is disposed.
+   */
+  public class DoubleBuffer {
+    /** The image of the last frame */
+    @Nullable private ImageImpl myFront;
+    /** The image of the frame before the last one */
+    @Nullable private ImageImpl myBack;
+    /** The region where the image of the last frame differs from the image of the frame before, or null if they differ everywhere */
+    @Nullable private Rectangle myFrontDamage;
+    private boolean myIsDisposed;
+
+    private DoubleBuffer() {
+    }
+
+    /**
+     * Returns a pooled image with a copy of the passed frame.
+     */
+    @NotNull
+    public synchronized Image copyOf(@Nullable BufferedImage frame) {
+      if (frame == null || myIsDisposed) {
+        return ImagePool.this.copyOf(frame);
+      }
+
+      int w = frame.getWidth();
+      int h = frame.getHeight();
+      int type = frame.getType();
+      // The region where the frame differs from the last frame
+      Rectangle damage = myFront != null && isCompatible(myFront, w, h, type) ? getDamage(frame, myFront) : null;
+
+      ImageImpl image;
+      if (myBack != null && myFront != null && myFrontDamage != null && damage != null &&
+          isCompatible(myBack, w, h, type) && myBack.getReferenceCount() == 1) {
+        // The back image is only referenced by this buffer and holds the frame before the last one: only copy what changed since then
+        image = myBack;
+        Rectangle copied = damage.union(myFrontDamage).intersection(new Rectangle(0, 0, w, h));
+        if (!copied.isEmpty()) {
+          image.drawFrom(frame, copied);
+        }
+        long copiedPixels = copied.isEmpty() ? 0 : (long)copied.width * copied.height;
+        myCopiedPixels.addAndGet(copiedPixels);
+        mySkippedPixels.addAndGet((long)w * h - copiedPixels);
+      }
+      else {
+        if (myBack != null) {
+          myBack.dispose();
+        }
+        image = create(w, h, type, null);
+        image.drawFrom(frame);
+        myCopiedPixels.addAndGet((long)w * h);
+      }
+
+      myBack = myFront;
+      myFront = image;
+      myFrontDamage = damage;
+      image.retain();
+      return image;
+    }
+
+    /**
+     * Releases the references of this buffer to its images.
+     */
+    public synchronized void dispose() {
+      myIsDisposed = true;
+      if (myFront != null) {
+        myFront.dispose();
+        myFront = null;
+      }
+      if (myBack != null) {
+        myBack.dispose();
+        myBack = null;
+      }
+      myFrontDamage = null;
+    }
+  }
+
+  private static boolean isCompatible(@NotNull ImageImpl image, int w, int h, int type) {
+    return image.myBuffer != null && image.myWidth == w && image.myHeight == h && image.myBuffer.getType() == type;
+  }
+
+  /**
+   * Returns the bounds of the region where {@code frame} differs from {@code image}, which must have the same size and type, or null if
+   * the images can not be compared.
+   */
+  @VisibleForTesting
+  @Nullable
+  static Rectangle getDamage(@NotNull BufferedImage frame, @NotNull ImageImpl image) {
+    BufferedImage buffer = image.myBuffer;
+    if (buffer == null || frame.getRaster().getTransferType() != DataBuffer.TYPE_INT ||
+        buffer.getRaster().getTransferType() != DataBuffer.TYPE_INT || frame.getRaster().getNumDataElements() != 1) {
+      return null;
+    }
+    int w = image.myWidth;
+    int h = image.myHeight;
+    // Rows are read one at a time through the rasters, so that the images stay accelerated
+    int[] frameRow = new int[w];
+    int[] imageRow = new int[w];
+    int minX = w;
+    int maxX = -1;
+    int minY = -1;
+    int maxY = -1;
+    for (int y = 0; y < h; y++) {
+      frame.getRaster().getDataElements(0, y, w, 1, frameRow);
+      buffer.getRaster().getDataElements(0, y, w, 1, imageRow);
+      if (Arrays.equals(frameRow, imageRow)) {
+        continue;
+      }
+      if (minY == -1) {
+        minY = y;
+      }
+      maxY = y;
+      int x = 0;
+      while (x < minX && frameRow[x] == imageRow[x]) {
+        x++;
+      }
+      minX = Math.min(minX, x);
+      x = w - 1;
+      while (x > maxX && frameRow[x] == imageRow[x]) {
+        x--;
+      }
+      maxX = Math.max(maxX, x);
+    }
+    return minY == -1 ? new Rectangle() : new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
   }
 
   /**
@@ -345,7 +555,18 @@ public class ImagePool {
     }
 
     /**
-     * Manually disposes the current image. After calling this method, the image can not be used anymore.
+     * Adds a reference to the image, which has to be released with {@link #dispose()}. Used to share the image between several owners,
+     * the image is only returned to the pool once all of them released it.
+     *
+     * @return false if the image was already disposed, in which case it can not be used anymore
+     */
+    default boolean retain() {
+      return true;
+    }
+
+    /**
+     * Releases a reference to the current image. Once all the references are released, the image is disposed and can not be used
+     * anymore.
      * <p>
      * This method does not need to be called directly as the images will be eventually collected anyway. However, using this method, you can
      * speed up the collection process to avoid generating extra images.
@@ -355,6 +576,7 @@ public class ImagePool {
 
   public static class ImageImpl implements Image {
     private FinalizablePhantomReference<Image> myOwnReference = null;
+    private final AtomicInteger myReferenceCount = new AtomicInteger(1);
 
     @VisibleForTesting
     @Nullable
@@ -427,15 +649,36 @@ public class ImagePool {
       return new BufferedImage(myBuffer.getColorModel(), raster, myBuffer.isAlphaPremultiplied(), null);
     }
 
+    @Override
+    public boolean retain() {
+      int count;
+      do {
+        count = myReferenceCount.get();
+        if (count == 0) {
+          return false;
+        }
+      }
+      while (!myReferenceCount.compareAndSet(count, count + 1));
+      return true;
+    }
+
     @Override
     public void dispose() {
       assert myBuffer != null : "Image was already disposed";
+      if (myReferenceCount.decrementAndGet() > 0) {
+        return;
+      }
       myBuffer = null;
       if (myOwnReference != null) {
         myOwnReference.finalizeReferent();
       }
     }
 
+    @VisibleForTesting
+    int getReferenceCount() {
+      return myReferenceCount.get();
+    }
+
     /**
      * Copies the content from the origin {@link BufferedImage} into the pooled image.
      */
@@ -448,5 +691,20 @@ public class ImagePool {
         g.dispose();
       }
     }
+
+    /**
+     * Replaces the given region of the pooled image with the same region of the origin {@link BufferedImage}.
+     */
+    void drawFrom(@NotNull BufferedImage origin, @NotNull Rectangle region) {
+      assert myBuffer != null : "Image was already disposed";
+      Graphics2D g = myBuffer.createGraphics();
+      try {
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(origin, region.x, region.y, region.x + region.width, region.y + region.height,
+                    region.x, region.y, region.x + region.width, region.y + region.height, null);
+      } finally {
+        g.dispose();
+      }
+    }
   }
 }
\ No newline at end of file
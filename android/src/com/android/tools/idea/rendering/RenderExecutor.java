@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the layoutlib actions of the {@link RenderService} on a pool of render threads.
+ * <p/>
+ * Layoutlib keeps per thread state for a session, so all the actions of an owner (e.g. a {@link RenderTask}) run on the same thread: the
+ * owner is pinned to the least busy thread the first time it submits an action. Actions without an owner all run on the first thread.
+ * <p/>
+ * Each thread runs its {@link Priority#FOREGROUND} actions, like the ones of the focused editor, before its
+ * {@link Priority#BACKGROUND} ones. An action submitted with a supersede key replaces the action of the same owner and key still waiting
+ * to run, if any: only the newer one runs, and the future of the older one completes with its result.
+ */
+public class RenderExecutor {
+  public enum Priority {
+    FOREGROUND,
+    BACKGROUND
+  }
+
+  /** Trigger of the actions submitted without one */
+  public static final String DEFAULT_TRIGGER = "DEFAULT";
+
+  @NotNull private final Worker[] myWorkers;
+  /** The worker each owner is pinned to */
+  @NotNull private final Map<Object, Worker> myOwnerWorkers = new WeakHashMap<>();
+  /** The actions waiting to run, by owner and supersede key */
+  @NotNull private final Map<PendingKey, Request<?>> myPendingRequests = new HashMap<>();
+  @NotNull private final ConcurrentMap<String, Statistics> myStatistics = new ConcurrentHashMap<>();
+  @NotNull private final AtomicLong mySequence = new AtomicLong();
+
+  /**
+   * @param threadCount   the number of render threads
+   * @param idleTimeoutMs the time after which an idle render thread stops, until it is needed again
+   */
+  RenderExecutor(int threadCount, long idleTimeoutMs) {
+    myWorkers = new Worker[Math.max(1, threadCount)];
+    for (int i = 0; i < myWorkers.length; i++) {
+      myWorkers[i] = new Worker(i == 0 ? "Layoutlib Render Thread" : "Layoutlib Render Thread #" + i, idleTimeoutMs);
+    }
+  }
+
+  /**
+   * Submits an action to run on the render thread of {@code owner}.
+   *
+   * @param owner        the object whose actions have to run on the same thread, or null to use the first thread
+   * @param priority     the priority of the action over the other actions of its thread
+   * @param trigger      the name under which the queue and run times of the action are recorded
+   * @param supersedeKey if not null, the action replaces the one of {@code owner} with the same key waiting to run. Actions sharing a key
+   *                     must return the same type of result.
+   */
+  @NotNull
+  public <T> ListenableFuture<T> submit(@Nullable Object owner,
+                                        @NotNull Priority priority,
+                                        @NotNull String trigger,
+                                        @Nullable Object supersedeKey,
+                                        @NotNull Callable<T> callable) {
+    Worker worker = getWorker(owner);
+    PendingKey pendingKey = supersedeKey != null ? new PendingKey(owner, supersedeKey) : null;
+    Request<T> request = new Request<>(priority, getStatistics(trigger), pendingKey, callable, mySequence.getAndIncrement());
+    if (pendingKey != null) {
+      Request<?> superseded;
+      synchronized (myPendingRequests) {
+        superseded = myPendingRequests.put(pendingKey, request);
+      }
+      if (superseded != null && superseded.supersede()) {
+        worker.myExecutor.remove(superseded);
+        //noinspection unchecked
+        completeWith(((Request<T>)superseded).myFuture, request.myFuture);
+      }
+    }
+    worker.myExecutor.execute(request);
+    return request.myFuture;
+  }
+
+  /**
+   * Completes {@code future} as {@code newer} completes. Unlike {@link SettableFuture#setFuture}, cancelling {@code future} does not
+   * cancel {@code newer}, which other callers may be waiting for.
+   */
+  private static <T> void completeWith(@NotNull SettableFuture<T> future, @NotNull ListenableFuture<T> newer) {
+    newer.addListener(() -> {
+      if (newer.isCancelled()) {
+        future.cancel(false);
+        return;
+      }
+      try {
+        future.set(Uninterruptibles.getUninterruptibly(newer));
+      }
+      catch (ExecutionException e) {
+        future.setException(e.getCause());
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @return the render thread running the actions of {@code owner}, or null if it is not started.
+   */
+  @Nullable
+  public Thread getThread(@Nullable Object owner) {
+    return getWorker(owner).myThread.get();
+  }
+
+  /**
+   * @return the queue and run times of the actions submitted so far, by trigger.
+   */
+  @NotNull
+  public Map<String, Statistics> getStatistics() {
+    return ImmutableMap.copyOf(myStatistics);
+  }
+
+  @NotNull
+  private Statistics getStatistics(@NotNull String trigger) {
+    return myStatistics.computeIfAbsent(trigger, key -> new Statistics());
+  }
+
+  @NotNull
+  private Worker getWorker(@Nullable Object owner) {
+    if (owner == null || myWorkers.length == 1) {
+      return myWorkers[0];
+    }
+    synchronized (myOwnerWorkers) {
+      Worker worker = myOwnerWorkers.get(owner);
+      if (worker == null) {
+        worker = Arrays.stream(myWorkers).min(Comparator.comparingInt(this::getOwnerCount)).orElse(myWorkers[0]);
+        myOwnerWorkers.put(owner, worker);
+      }
+      return worker;
+    }
+  }
+
+  private int getOwnerCount(@NotNull Worker worker) {
+    int count = 0;
+    for (Worker ownerWorker : myOwnerWorkers.values()) {
+      if (ownerWorker == worker) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Stops the render threads, interrupting the running actions and cancelling the waiting ones.
+   */
+  void shutdownNow() {
+    for (Worker worker : myWorkers) {
+      for (Runnable runnable : worker.myExecutor.shutdownNow()) {
+        ((Request<?>)runnable).myFuture.cancel(false);
+      }
+      Thread thread = worker.myThread.getAndSet(null);
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  /**
+   * Waits at most {@code timeout} for all the render threads to stop.
+   */
+  void awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    long deadlineNs = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : myWorkers) {
+      worker.myExecutor.awaitTermination(Math.max(0, deadlineNs - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Queue and run times of the actions of a trigger.
+   */
+  public static class Statistics {
+    private final AtomicInteger myRunCount = new AtomicInteger();
+    private final AtomicInteger mySupersededCount = new AtomicInteger();
+    private final AtomicLong myTotalQueueTimeNs = new AtomicLong();
+    private final AtomicLong myMaxQueueTimeNs = new AtomicLong();
+    private final AtomicLong myTotalRunTimeNs = new AtomicLong();
+    private final AtomicLong myMaxRunTimeNs = new AtomicLong();
+
+    private void recordRun(long queueTimeNs, long runTimeNs) {
+      myRunCount.incrementAndGet();
+      myTotalQueueTimeNs.addAndGet(queueTimeNs);
+      myMaxQueueTimeNs.accumulateAndGet(queueTimeNs, Math::max);
+      myTotalRunTimeNs.addAndGet(runTimeNs);
+      myMaxRunTimeNs.accumulateAndGet(runTimeNs, Math::max);
+    }
+
+    public int getRunCount() {
+      return myRunCount.get();
+    }
+
+    /**
+     * @return the number of actions which were replaced by a newer one before running.
+     */
+    public int getSupersededCount() {
+      return mySupersededCount.get();
+    }
+
+    public long getTotalQueueTimeNs() {
+      return myTotalQueueTimeNs.get();
+    }
+
+    public long getMaxQueueTimeNs() {
+      return myMaxQueueTimeNs.get();
+    }
+
+    public long getTotalRunTimeNs() {
+      return myTotalRunTimeNs.get();
+    }
+
+    public long getMaxRunTimeNs() {
+      return myMaxRunTimeNs.get();
+    }
+
+    @Override
+    public String toString() {
+      int runCount = Math.max(1, getRunCount());
+      return String.format("%d runs (%d superseded), queue %.1f ms avg / %.1f ms max, run %.1f ms avg / %.1f ms max",
+                           getRunCount(), getSupersededCount(),
+                           getTotalQueueTimeNs() / 1e6 / runCount, getMaxQueueTimeNs() / 1e6,
+                           getTotalRunTimeNs() / 1e6 / runCount, getMaxRunTimeNs() / 1e6);
+    }
+  }
+
+  private static final class Worker {
+    @NotNull private final AtomicReference<Thread> myThread = new AtomicReference<>();
+    @NotNull private final ThreadPoolExecutor myExecutor;
+
+    private Worker(@NotNull String threadName, long idleTimeoutMs) {
+      // Requests are comparable by priority, so they are executed, not submitted, to keep them in the queue as they are.
+      myExecutor = new ThreadPoolExecutor(0, 1, idleTimeoutMs, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), (Runnable r) -> {
+        Thread thread = new Thread(null, r, threadName);
+        thread.setDaemon(true);
+        myThread.set(thread);
+        return thread;
+      });
+    }
+  }
+
+  private static final class PendingKey {
+    @Nullable private final Object myOwner;
+    @NotNull private final Object myKey;
+
+    private PendingKey(@Nullable Object owner, @NotNull Object key) {
+      myOwner = owner;
+      myKey = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PendingKey)) {
+        return false;
+      }
+      PendingKey other = (PendingKey)o;
+      return myOwner == other.myOwner && myKey.equals(other.myKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(myOwner) + myKey.hashCode();
+    }
+  }
+
+  private final class Request<T> implements Runnable, Comparable<Request<?>> {
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int SUPERSEDED = 2;
+
+    @NotNull private final SettableFuture<T> myFuture = SettableFuture.create();
+    @NotNull private final AtomicInteger myState = new AtomicInteger(PENDING);
+    @NotNull private final Priority myPriority;
+    @NotNull private final Statistics myStatistics;
+    @Nullable private final PendingKey myPendingKey;
+    @NotNull private final Callable<T> myCallable;
+    private final long mySequence;
+    private final long mySubmitTimeNs = System.nanoTime();
+
+    private Request(@NotNull Priority priority,
+                    @NotNull Statistics statistics,
+                    @Nullable PendingKey pendingKey,
+                    @NotNull Callable<T> callable,
+                    long sequence) {
+      myPriority = priority;
+      myStatistics = statistics;
+      myPendingKey = pendingKey;
+      myCallable = callable;
+      mySequence = sequence;
+    }
+
+    /**
+     * @return whether the request was replaced, or false if it is already running.
+     */
+    private boolean supersede() {
+      if (!myState.compareAndSet(PENDING, SUPERSEDED)) {
+        return false;
+      }
+      myStatistics.mySupersededCount.incrementAndGet();
+      return true;
+    }
+
+    @Override
+    public void run() {
+      if (!myState.compareAndSet(PENDING, RUNNING)) {
+        return;
+      }
+      if (myPendingKey != null) {
+        synchronized (myPendingRequests) {
+          myPendingRequests.remove(myPendingKey, this);
+        }
+      }
+      if (myFuture.isCancelled()) {
+        return;
+      }
+      long startTimeNs = System.nanoTime();
+      T result = null;
+      Throwable failure = null;
+      try {
+        result = myCallable.call();
+      }
+      catch (Throwable t) {
+        failure = t;
+      }
+      // Recorded before completing the future, so the caller sees the run in the statistics.
+      myStatistics.recordRun(startTimeNs - mySubmitTimeNs, System.nanoTime() - startTimeNs);
+      if (failure != null) {
+        myFuture.setException(failure);
+      }
+      else {
+        myFuture.set(result);
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull Request<?> other) {
+      int result = myPriority.compareTo(other.myPriority);
+      return result != 0 ? result : Long.compare(mySequence, other.mySequence);
+    }
+  }
+}
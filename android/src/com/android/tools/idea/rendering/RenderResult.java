@@ -18,6 +18,7 @@ package com.android.tools.idea.rendering;
 import com.android.ide.common.rendering.api.RenderSession;
 import com.android.ide.common.rendering.api.Result;
 import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.ide.common.rendering.api.ViewType;
 import com.android.util.PropertiesMap;
 import com.google.common.base.MoreObjects;
 import com.intellij.openapi.module.Module;
@@ -26,9 +27,13 @@ import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class RenderResult {
   @NotNull private final PsiFile myFile;
@@ -40,6 +45,8 @@ public class RenderResult {
   @NotNull private final Result myRenderResult;
   @NotNull private final Map<Object, PropertiesMap> myDefaultProperties;
   @NotNull private final Module myModule;
+  /** References to this result, its image is released once all of them are disposed */
+  private final AtomicInteger myReferenceCount = new AtomicInteger(1);
 
   protected RenderResult(@NotNull PsiFile file,
                          @NotNull Module module,
@@ -85,6 +92,66 @@ public class RenderResult {
       defaultProperties != null ? defaultProperties : Collections.emptyMap());
   }
 
+  /**
+   * Creates a copy of the given {@link RenderResult} for another {@link RenderTask}, sharing its image and view hierarchy. The copy holds
+   * its own reference to the image.
+   */
+  @NotNull
+  static RenderResult createCopy(@NotNull RenderResult result,
+                                 @Nullable RenderTask renderTask,
+                                 @NotNull PsiFile file,
+                                 @NotNull RenderLogger logger) {
+    return new RenderResult(
+      file,
+      result.myModule,
+      logger,
+      renderTask,
+      result.myRenderResult,
+      result.myRootViews,
+      result.mySystemRootViews,
+      result.myImage.retain() ? result.myImage : ImagePool.NULL_POOLED_IMAGE,
+      result.myDefaultProperties);
+  }
+
+  /**
+   * Creates a copy of the given {@link RenderResult} for another {@link RenderTask}, sharing its image, with a copy of its view hierarchy
+   * whose cookies are mapped by {@code cookieMapper}, e.g. to the tags of the other task. The copy holds its own reference to the image.
+   */
+  @NotNull
+  static RenderResult createCopy(@NotNull RenderResult result,
+                                 @Nullable RenderTask renderTask,
+                                 @NotNull PsiFile file,
+                                 @NotNull RenderLogger logger,
+                                 @NotNull Function<Object, Object> cookieMapper) {
+    Map<Object, PropertiesMap> defaultProperties = new HashMap<>();
+    result.myDefaultProperties.forEach((cookie, properties) -> defaultProperties.put(cookieMapper.apply(cookie), properties));
+    return new RenderResult(
+      file,
+      result.myModule,
+      logger,
+      renderTask,
+      result.myRenderResult,
+      copyViews(result.myRootViews, cookieMapper),
+      copyViews(result.mySystemRootViews, cookieMapper),
+      result.myImage.retain() ? result.myImage : ImagePool.NULL_POOLED_IMAGE,
+      defaultProperties);
+  }
+
+  @NotNull
+  private static List<ViewInfo> copyViews(@Nullable List<ViewInfo> views, @NotNull Function<Object, Object> cookieMapper) {
+    if (views == null) {
+      return Collections.emptyList();
+    }
+    List<ViewInfo> copies = new ArrayList<>(views.size());
+    for (ViewInfo view : views) {
+      ViewInfo copy = new CopiedViewInfo(view, cookieMapper.apply(view.getCookie()));
+      copy.setExtendedInfo(view.getBaseLine(), view.getLeftMargin(), view.getTopMargin(), view.getRightMargin(), view.getBottomMargin());
+      copy.setChildren(copyViews(view.getChildren(), cookieMapper));
+      copies.add(copy);
+    }
+    return copies;
+  }
+
   /**
    * Creates a new session initialization error {@link RenderResult} from a given RenderTask
    */
@@ -129,6 +196,43 @@ public class RenderResult {
       Collections.emptyMap());
   }
 
+  /**
+   * Adds a reference to this result, which has to be released with {@link #dispose()}. Used to share the result, and its image, between
+   * several owners.
+   *
+   * @return false if the result was already disposed, in which case its image can not be used anymore
+   */
+  public boolean retain() {
+    int count;
+    do {
+      count = myReferenceCount.get();
+      if (count == 0) {
+        return false;
+      }
+    }
+    while (!myReferenceCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  /**
+   * Releases a reference to this result. Once all the references are released, the reference of this result to its image is released, so
+   * that the image can be reused for another render once nothing else refers to it. The image can not be used through this result after
+   * that; callers which need it for longer have to {@link #retain()} the result or {@link ImagePool.Image#retain()} the image.
+   */
+  public void dispose() {
+    int count;
+    do {
+      count = myReferenceCount.get();
+      if (count == 0) {
+        return;
+      }
+    }
+    while (!myReferenceCount.compareAndSet(count, count - 1));
+    if (count == 1) {
+      myImage.dispose();
+    }
+  }
+
   @NotNull
   public Result getRenderResult() {
     return myRenderResult;
@@ -182,6 +286,24 @@ public class RenderResult {
     return myDefaultProperties;
   }
 
+  /**
+   * A copy of a view with another cookie. The view objects are shared with the original view.
+   */
+  private static final class CopiedViewInfo extends ViewInfo {
+    @NotNull private final ViewType myViewType;
+
+    private CopiedViewInfo(@NotNull ViewInfo view, @Nullable Object cookie) {
+      super(view.getClassName(), cookie, view.getLeft(), view.getTop(), view.getRight(), view.getBottom(), view.getViewObject(),
+            view.getLayoutParamsObject());
+      myViewType = view.getViewType();
+    }
+
+    @Override
+    public ViewType getViewType() {
+      return myViewType;
+    }
+  }
+
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.res.ResourceNotificationManager;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static com.android.SdkConstants.VIEW_INCLUDE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bounded cache of the results of the renders of a {@link RenderService}, so that rendering a layout with the same content,
+ * configuration and resources as a previous render, e.g. when going back to a tab or to a previously selected device, reuses the
+ * previous image and view hierarchy instead of going through layoutlib again.
+ * <p/>
+ * Entries are evicted in least recently used order once there are too many of them or their images take too much memory. As the
+ * results depend on more than the layout itself, the cache is also cleared when the project is built, synced or its resources change.
+ * <p/>
+ * The cookies of the cached views are the tags of the render they come from. Results are handed out with their views bound to the tags
+ * of the layout being rendered instead, which have the same content, but may be other PSI elements.
+ */
+public class RenderResultCache implements ResourceNotificationManager.ResourceChangeListener {
+  private static final long DEFAULT_MAX_IMAGE_BYTES = 64L * 1024 * 1024;
+  private static final int DEFAULT_MAX_ENTRIES = 32;
+
+  private final long myMaxImageBytes;
+  private final int myMaxEntries;
+  /** The results, in access order */
+  private final LinkedHashMap<Key, Entry> myResults = new LinkedHashMap<>(16, 0.75f, true);
+  private long myImageBytes;
+
+  private int myHitCount;
+  private int myMissCount;
+  private int myEvictionCount;
+
+  RenderResultCache() {
+    this(DEFAULT_MAX_IMAGE_BYTES, DEFAULT_MAX_ENTRIES);
+  }
+
+  RenderResultCache(long maxImageBytes, int maxEntries) {
+    myMaxImageBytes = maxImageBytes;
+    myMaxEntries = maxEntries;
+  }
+
+  /**
+   * Returns a copy of the result cached for {@code key} for {@code renderTask}, or null if there is none. The views of the copy are bound
+   * to the tags of the content of {@code key}, and the copy holds its own reference to the image.
+   */
+  @Nullable
+  synchronized RenderResult get(@NotNull Key key, @NotNull RenderTask renderTask, @NotNull PsiFile file, @NotNull RenderLogger logger) {
+    Entry entry = myResults.get(key);
+    if (entry == null) {
+      myMissCount++;
+      return null;
+    }
+    myHitCount++;
+    return RenderResult.createCopy(entry.myResult, renderTask, file, logger, createCookieMapper(entry.myContent, key.myContent));
+  }
+
+  /**
+   * Caches {@code result}, which is disposed once evicted. The cookies of its views have to be the tags of the content of {@code key}.
+   */
+  synchronized void put(@NotNull Key key, @NotNull RenderResult result) {
+    long imageBytes = getImageBytes(result);
+    if (imageBytes > myMaxImageBytes) {
+      result.dispose();
+      return;
+    }
+    Entry previous = myResults.put(key, new Entry(result, key.myContent));
+    if (previous != null) {
+      myImageBytes -= getImageBytes(previous.myResult);
+      previous.myResult.dispose();
+    }
+    myImageBytes += imageBytes;
+
+    Iterator<Entry> iterator = myResults.values().iterator();
+    while (myImageBytes > myMaxImageBytes || myResults.size() > myMaxEntries) {
+      RenderResult evicted = iterator.next().myResult;
+      myImageBytes -= getImageBytes(evicted);
+      iterator.remove();
+      evicted.dispose();
+      myEvictionCount++;
+    }
+  }
+
+  synchronized void clear() {
+    myResults.values().forEach(entry -> entry.myResult.dispose());
+    myResults.clear();
+    myImageBytes = 0;
+  }
+
+  /**
+   * Returns a function mapping the cookies of the views rendered from {@code from} to the matching tags of {@code to}. Both have the same
+   * content, so their tags are matched by position. Other cookies, e.g. of synthetic tags, are kept.
+   */
+  @NotNull
+  static Function<Object, Object> createCookieMapper(@NotNull TagSnapshot from, @NotNull TagSnapshot to) {
+    Map<XmlTag, TagSnapshot> snapshots = new IdentityHashMap<>();
+    mapTags(from, to, snapshots);
+    return cookie -> {
+      XmlTag tag = cookie instanceof TagSnapshot ? ((TagSnapshot)cookie).tag : null;
+      TagSnapshot snapshot = tag != null ? snapshots.get(tag) : null;
+      return snapshot != null ? snapshot : cookie;
+    };
+  }
+
+  private static void mapTags(@NotNull TagSnapshot from, @NotNull TagSnapshot to, @NotNull Map<XmlTag, TagSnapshot> snapshots) {
+    if (from.tag != null) {
+      snapshots.put(from.tag, to);
+    }
+    int childCount = Math.min(from.children.size(), to.children.size());
+    for (int i = 0; i < childCount; i++) {
+      mapTags(from.children.get(i), to.children.get(i), snapshots);
+    }
+  }
+
+  private static long getImageBytes(@NotNull RenderResult result) {
+    ImagePool.Image image = result.getRenderedImage();
+    return 4L * image.getWidth() * image.getHeight();
+  }
+
+  @Override
+  public void resourcesChanged(@NotNull Set<ResourceNotificationManager.Reason> reason) {
+    // Configuration changes and edits of the rendered files are part of the keys
+    if (reason.stream().anyMatch(r -> r != ResourceNotificationManager.Reason.CONFIGURATION_CHANGED &&
+                                      r != ResourceNotificationManager.Reason.EDIT)) {
+      clear();
+    }
+  }
+
+  public synchronized int getHitCount() {
+    return myHitCount;
+  }
+
+  public synchronized int getMissCount() {
+    return myMissCount;
+  }
+
+  public synchronized int getEvictionCount() {
+    return myEvictionCount;
+  }
+
+  public synchronized int getSize() {
+    return myResults.size();
+  }
+
+  public synchronized long getImageBytes() {
+    return myImageBytes;
+  }
+
+  private static final class Entry {
+    @NotNull private final RenderResult myResult;
+    /** The content the result was rendered from, whose tags are the cookies of its views */
+    @NotNull private final TagSnapshot myContent;
+
+    private Entry(@NotNull RenderResult result, @NotNull TagSnapshot content) {
+      myResult = result;
+      myContent = content;
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%d results (%d KB), %d hits, %d misses, %d evictions", myResults.size(), myImageBytes / 1024, myHitCount,
+                         myMissCount, myEvictionCount);
+  }
+
+  /**
+   * What the result of a render depends on: the content of the layout, the configuration and parameters of the render, and the
+   * generation of the resources.
+   */
+  public static final class Key {
+    @NotNull private final String myPath;
+    private final long myContentHash;
+    @NotNull private final String myRenderParameters;
+    private final long myResourceGeneration;
+    private final long myElapsedFrameTimeNanos;
+    /** The content of the layout, only used to bind the cached views to its tags: keys with the same content hash are equal */
+    @NotNull private final TagSnapshot myContent;
+
+    private Key(@NotNull String path, long contentHash, @NotNull String renderParameters, long resourceGeneration,
+                long elapsedFrameTimeNanos, @NotNull TagSnapshot content) {
+      myPath = path;
+      myContentHash = contentHash;
+      myContent = content;
+      myRenderParameters = renderParameters;
+      myResourceGeneration = resourceGeneration;
+      myElapsedFrameTimeNanos = elapsedFrameTimeNanos;
+    }
+
+    /**
+     * Creates the key of the layout at {@code path} whose content is {@code root}.
+     *
+     * @param renderParameters the configuration and parameters of the render, see {@link RenderTask}
+     * @return the key, or null if the layout can't be cached as it shows other layouts (e.g. includes or list items), whose content
+     * is not part of the key.
+     */
+    @Nullable
+    static Key create(@NotNull String path,
+                      @NotNull TagSnapshot root,
+                      @NotNull String renderParameters,
+                      long resourceGeneration,
+                      long elapsedFrameTimeNanos) {
+      Hasher hasher = Hashing.goodFastHash(64).newHasher();
+      if (!hashContent(root, hasher)) {
+        return null;
+      }
+      return new Key(path, hasher.hash().asLong(), renderParameters, resourceGeneration, elapsedFrameTimeNanos, root);
+    }
+
+    /**
+     * Hashes the tag names and attributes of the tree of {@code tag}.
+     *
+     * @return false if the tree refers to another layout.
+     */
+    private static boolean hashContent(@NotNull TagSnapshot tag, @NotNull Hasher hasher) {
+      if (VIEW_INCLUDE.equals(tag.tagName)) {
+        return false;
+      }
+      hasher.putString(tag.tagName, UTF_8);
+      for (AttributeSnapshot attribute : tag.attributes) {
+        if (attribute.value != null && attribute.value.contains("@layout/")) {
+          return false;
+        }
+        hasher.putString(attribute.prefix != null ? attribute.prefix : "", UTF_8);
+        hasher.putString(attribute.name, UTF_8);
+        hasher.putString(attribute.value != null ? attribute.value : "", UTF_8);
+      }
+      // The number of children delimits the children of the tag from its next siblings.
+      hasher.putInt(tag.children.size());
+      for (TagSnapshot child : tag.children) {
+        if (!hashContent(child, hasher)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @NotNull
+    Key withElapsedFrameTimeNanos(long elapsedFrameTimeNanos) {
+      return elapsedFrameTimeNanos == myElapsedFrameTimeNanos
+             ? this
+             : new Key(myPath, myContentHash, myRenderParameters, myResourceGeneration, elapsedFrameTimeNanos, myContent);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key)o;
+      return myContentHash == key.myContentHash &&
+             myResourceGeneration == key.myResourceGeneration &&
+             myElapsedFrameTimeNanos == key.myElapsedFrameTimeNanos &&
+             myPath.equals(key.myPath) &&
+             myRenderParameters.equals(key.myRenderParameters);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myPath, myContentHash, myRenderParameters, myResourceGeneration, myElapsedFrameTimeNanos);
+    }
+  }
+}
@@ -29,15 +29,16 @@ import com.android.tools.idea.layoutlib.LayoutLibrary;
 import com.android.tools.idea.layoutlib.RenderingException;
 import com.android.tools.idea.layoutlib.UnsupportedJavaRuntimeException;
 import com.android.tools.idea.project.AndroidProjectInfo;
+import com.android.tools.idea.res.ResourceNotificationManager;
 import com.android.tools.idea.ui.designer.EditorDesignSurface;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ui.configuration.ProjectSettingsService;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.LowMemoryWatcher;
 import com.intellij.openapi.util.ShutDownTracker;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.xml.XmlTag;
@@ -54,9 +55,10 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.SdkConstants.TAG_PREFERENCE_SCREEN;
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
@@ -74,10 +76,15 @@ public class RenderService extends AndroidFacetScopedService {
   /** Number of ms that we will keep the render thread alive when idle */
   private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
 
+  /**
+   * Number of render threads. Layoutlib renders one session at a time, so more threads only let the work done outside of its lock, and
+   * the sessions of other threads, proceed while a session renders.
+   */
+  private static final int RENDER_THREAD_COUNT = Math.max(1, Integer.getInteger("layoutlib.render.threads", 1));
+
   @VisibleForTesting
   public static long ourRenderThreadTimeoutMs = DEFAULT_RENDER_THREAD_TIMEOUT_MS;
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static ExecutorService ourRenderingExecutor;
+  private static RenderExecutor ourRenderExecutor;
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   private static final Key<RenderService> KEY = Key.create(RenderService.class.getName());
@@ -89,17 +96,7 @@ public class RenderService extends AndroidFacetScopedService {
   }
 
   private static void innerInitializeRenderExecutor() {
-    ourRenderingExecutor = new ThreadPoolExecutor(0, 1,
-                             RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
-                             new LinkedBlockingQueue<>(),
-                             (Runnable r) -> {
-                               Thread renderingThread =
-                                 new Thread(null, r, "Layoutlib Render Thread");
-                               renderingThread.setDaemon(true);
-                               ourRenderingThread.set(renderingThread);
-
-                               return renderingThread;
-                             });
+    ourRenderExecutor = new RenderExecutor(RENDER_THREAD_COUNT, RENDER_THREAD_IDLE_TIMEOUT_MS);
   }
 
   @TestOnly
@@ -110,15 +107,11 @@ public class RenderService extends AndroidFacetScopedService {
   }
 
   private static void shutdownRenderExecutor() {
-    ourRenderingExecutor.shutdownNow();
-    Thread currentThread = ourRenderingThread.getAndSet(null);
-    if (currentThread != null) {
-      currentThread.interrupt();
-    }
+    ourRenderExecutor.shutdownNow();
   }
 
   /**
-   * Shutdowns the render thread and cancels any pending tasks.
+   * Shutdowns the render threads and cancels any pending tasks.
    * @param timeoutSeconds if >0, wait at most this number of seconds before killing any running tasks.
    */
   @TestOnly
@@ -127,7 +120,7 @@ public class RenderService extends AndroidFacetScopedService {
 
     if (timeoutSeconds > 0) {
       try {
-        ourRenderingExecutor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+        ourRenderExecutor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
       }
       catch (InterruptedException ignored) {
       }
@@ -142,6 +135,10 @@ public class RenderService extends AndroidFacetScopedService {
 
   private final ImagePool myImagePool = new ImagePool();
 
+  private final RenderResultCache myRenderResultCache = new RenderResultCache();
+  /** Whether {@link #myRenderResultCache} listens to the resource changes of the module, which it does once it caches a result */
+  private final AtomicBoolean myRenderResultCacheRegistered = new AtomicBoolean();
+
   /**
    * @return the {@linkplain RenderService} for the given facet.
    */
@@ -163,6 +160,7 @@ public class RenderService extends AndroidFacetScopedService {
   @VisibleForTesting
   protected RenderService(@NotNull AndroidFacet facet) {
     super(facet);
+    LowMemoryWatcher.register(myRenderResultCache::clear, this);
   }
 
   @Nullable
@@ -317,6 +315,32 @@ public class RenderService extends AndroidFacetScopedService {
   protected void onServiceDisposal(@NotNull AndroidFacet facet) {
     facet.putUserData(KEY, null);
     myImagePool.dispose();
+    if (myRenderResultCacheRegistered.get()) {
+      ResourceNotificationManager.getInstance(facet.getModule().getProject()).removeListener(myRenderResultCache, facet, null, null);
+    }
+    myRenderResultCache.clear();
+  }
+
+  /**
+   * Returns the cache of the results of the render tasks of this service. See {@link RenderTask#render()}.
+   */
+  @NotNull
+  public RenderResultCache getRenderResultCache() {
+    return myRenderResultCache;
+  }
+
+  /**
+   * Adds a render result to the cache of this service.
+   */
+  void cacheRenderResult(@NotNull RenderResultCache.Key key, @NotNull RenderResult result) {
+    if (isDisposed()) {
+      result.dispose();
+      return;
+    }
+    if (!myRenderResultCacheRegistered.getAndSet(true)) {
+      ResourceNotificationManager.getInstance(getProject()).addListener(myRenderResultCache, getFacet(), null, null);
+    }
+    myRenderResultCache.put(key, result);
   }
 
   @NotNull
@@ -368,13 +392,27 @@ public class RenderService extends AndroidFacetScopedService {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(null, RenderExecutor.Priority.FOREGROUND, RenderExecutor.DEFAULT_TRIGGER, callable);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread of {@code owner}, and waits for its result.
+   * See {@link RenderExecutor#submit}.
+   */
+  public static <T> T runRenderAction(@Nullable Object owner,
+                                      @NotNull RenderExecutor.Priority priority,
+                                      @NotNull String trigger,
+                                      @NotNull Callable<T> callable) throws Exception {
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderExecutor.submit(owner, priority, trigger, null, () -> {
+          ourTimeoutExceptionCounter.set(0);
+          return null;
+        }).get(50, TimeUnit.MILLISECONDS);
       }
-      T result = ourRenderingExecutor.submit(callable).get(ourRenderThreadTimeoutMs, TimeUnit.MILLISECONDS);
+      T result = ourRenderExecutor.submit(owner, priority, trigger, null, callable).get(ourRenderThreadTimeoutMs, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -383,7 +421,7 @@ public class RenderService extends AndroidFacetScopedService {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderExecutor.getThread(owner);
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -402,10 +440,7 @@ public class RenderService extends AndroidFacetScopedService {
    */
   @NotNull
   public static <T> ListenableFuture<T> runAsyncRenderAction(@NotNull Callable<T> callable) {
-    ListenableFutureTask<T> future = ListenableFutureTask.create(callable);
-    ourRenderingExecutor.submit(future);
-
-    return future;
+    return runAsyncRenderAction(null, RenderExecutor.Priority.FOREGROUND, RenderExecutor.DEFAULT_TRIGGER, null, callable);
   }
 
   /**
@@ -415,9 +450,29 @@ public class RenderService extends AndroidFacetScopedService {
    * This method will run the passed action asynchronously
    */
   public static void runAsyncRenderAction(@NotNull Runnable runnable) {
-    ourRenderingExecutor.submit(runnable);
+    runAsyncRenderAction(Executors.callable(runnable));
   }
 
+  /**
+   * Runs an action that requires the rendering lock asynchronously on the render thread of {@code owner}.
+   * See {@link RenderExecutor#submit}.
+   */
+  @NotNull
+  public static <T> ListenableFuture<T> runAsyncRenderAction(@Nullable Object owner,
+                                                             @NotNull RenderExecutor.Priority priority,
+                                                             @NotNull String trigger,
+                                                             @Nullable Object supersedeKey,
+                                                             @NotNull Callable<T> callable) {
+    return ourRenderExecutor.submit(owner, priority, trigger, supersedeKey, callable);
+  }
+
+  /**
+   * Returns the queue and run times of the render actions run so far, by trigger.
+   */
+  @NotNull
+  public static Map<String, RenderExecutor.Statistics> getRenderStatistics() {
+    return ourRenderExecutor.getStatistics();
+  }
 
   /**
    * Given a {@link ViewInfo} from a layoutlib rendering, checks that the view info provides
@@ -28,6 +28,7 @@ import com.android.resources.ScreenOrientation;
 import com.android.sdklib.AndroidVersion;
 import com.android.sdklib.IAndroidTarget;
 import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.State;
 import com.android.tools.idea.AndroidPsiUtils;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.diagnostics.crash.CrashReport;
@@ -45,6 +46,7 @@ import com.android.tools.idea.res.AssetRepositoryImpl;
 import com.android.tools.idea.res.ResourceHelper;
 import com.android.tools.idea.ui.designer.EditorDesignSurface;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.FutureCallback;
@@ -75,6 +77,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 import static com.android.SdkConstants.APPCOMPAT_LIB_ARTIFACT;
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
@@ -86,11 +89,16 @@ import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
 public class RenderTask implements IImageFactory {
   private static final Logger LOG = Logger.getInstance(RenderTask.class);
 
+  /** Supersede keys of the render actions: a render or layout which didn't start yet is replaced by the next one */
+  private static final String RENDER_ACTION = "render";
+  private static final String LAYOUT_ACTION = "layout";
+
   @NotNull
   private final RenderService myRenderService;
 
   @NotNull
-  private final ImagePool myImagePool;
+  /** Copies the images of the render session into pooled images, reusing the images of the previous renders once they're released */
+  private final ImagePool.DoubleBuffer myImageBuffer;
 
   @Nullable
   private XmlFile myPsiFile;
@@ -149,6 +157,14 @@ public class RenderTask implements IImageFactory {
   private CrashReporter myCrashReporter;
 
   private final List<ListenableFuture<?>> myRunningFutures = new LinkedList<>();
+  /** Advanced to display the material progress bars, by default */
+  private long myElapsedFrameTimeNanos = TimeUnit.MILLISECONDS.toNanos(500);
+  /** The key of the content and configuration the render session was inflated from, or null if its results are not cached */
+  @Nullable private RenderResultCache.Key myCacheKey;
+  /** Whether {@link #inflate()} returned a cached result, and left the inflation of the render session to the next render or layout */
+  private boolean myInflateDeferred;
+  @NotNull private RenderExecutor.Priority myPriority = RenderExecutor.Priority.FOREGROUND;
+  @NotNull private String myRenderTrigger = RenderExecutor.DEFAULT_TRIGGER;
   private AtomicBoolean isDisposed = new AtomicBoolean(false);
 
   /**
@@ -168,7 +184,7 @@ public class RenderTask implements IImageFactory {
     myCredential = credential;
     myConfiguration = configuration;
     myCrashReporter = crashReporter;
-    myImagePool = imagePool;
+    myImageBuffer = imagePool.createDoubleBuffer();
 
     AndroidFacet facet = renderService.getFacet();
     Module module = facet.getModule();
@@ -232,6 +248,32 @@ public class RenderTask implements IImageFactory {
     myFolderType = folderType;
   }
 
+  /**
+   * Sets the priority of the next render actions of this task over the ones of the other tasks sharing its render thread. Previews which
+   * the user isn't looking at should use {@link RenderExecutor.Priority#BACKGROUND}.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderExecutor.Priority priority) {
+    myPriority = priority;
+    return this;
+  }
+
+  /**
+   * Sets the name under which the queue and run times of the next render actions of this task are recorded.
+   * See {@link RenderService#getRenderStatistics()}.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setRenderTrigger(@NotNull String trigger) {
+    myRenderTrigger = trigger;
+    return this;
+  }
+
   @NotNull
   public Module getModule() {
     return myRenderService.getFacet().getModule();
@@ -283,13 +325,14 @@ public class RenderTask implements IImageFactory {
       myLayoutlibCallback.setResourceResolver(null);
       if (myRenderSession != null) {
         try {
-          RenderService.runAsyncRenderAction(myRenderSession::dispose);
+          RenderService.runAsyncRenderAction(this, myPriority, myRenderTrigger, null, Executors.callable(myRenderSession::dispose));
           myRenderSession = null;
         }
         catch (Exception ignored) {
         }
       }
       myImageFactoryDelegate = null;
+      myImageBuffer.dispose();
 
       return null;
     });
@@ -550,11 +593,10 @@ public class RenderTask implements IImageFactory {
           long now = System.nanoTime();
           session.setSystemBootTimeNanos(now);
           session.setSystemTimeNanos(now);
-          // Advance the frame time to display the material progress bars
-          session.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(500));
+          session.setElapsedFrameTimeNanos(myElapsedFrameTimeNanos);
         }
         RenderResult result =
-          RenderResult.create(this, session, myPsiFile, myLogger, myImagePool.copyOf(session.getImage()));
+          RenderResult.create(this, session, myPsiFile, myLogger, myImageBuffer.copyOf(session.getImage()));
         myRenderSession = session;
         addDiagnostics(result.getRenderResult());
         return result;
@@ -629,6 +671,14 @@ public class RenderTask implements IImageFactory {
     return null;
   }
 
+  /**
+   * Executes the passed {@link Callable} as a render action on the render thread of this task, and waits for its result.
+   * See {@link RenderService#runRenderAction(Object, RenderExecutor.Priority, String, Callable)}.
+   */
+  private <V> V runRenderAction(@NotNull Callable<V> callable) throws Exception {
+    return RenderService.runRenderAction(this, myPriority, myRenderTrigger, callable);
+  }
+
   /**
    * Executes the passed {@link Callable} as an async render action and keeps track of it. If {@link #dispose()} is called, the call will
    * wait until all the async actions have finished running.
@@ -637,12 +687,23 @@ public class RenderTask implements IImageFactory {
   @VisibleForTesting
   @NotNull
   <V> ListenableFuture<V> runAsyncRenderAction(@NotNull Callable<V> callable) {
+    return runAsyncRenderAction(null, callable);
+  }
+
+  /**
+   * Executes the passed {@link Callable} as an async render action on the render thread of this task and keeps track of it.
+   *
+   * @param supersedeKey if not null, the action replaces the action of this task with the same key which didn't start running yet
+   * @see #runAsyncRenderAction(Callable)
+   */
+  @NotNull
+  private <V> ListenableFuture<V> runAsyncRenderAction(@Nullable Object supersedeKey, @NotNull Callable<V> callable) {
     if (isDisposed.get()) {
       return Futures.immediateFailedFuture(new IllegalStateException("RenderTask was already disposed"));
     }
 
     synchronized (myRunningFutures) {
-      ListenableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      ListenableFuture<V> newFuture = RenderService.runAsyncRenderAction(this, myPriority, myRenderTrigger, supersedeKey, callable);
       Futures.addCallback(newFuture, new FutureCallback<V>() {
         @Override
         public void onSuccess(@Nullable V result) {
@@ -666,10 +727,32 @@ public class RenderTask implements IImageFactory {
 
   /**
    * Inflates the layout but does not render it.
+   * <p/>
+   * If the layout was already rendered with the same content and configuration, the cached result of that render is returned instead
+   * and layoutlib is not called: the layout will be inflated by the next call to {@link #render()} or {@link #layout()} which can't use
+   * a cached result.
+   *
    * @return A {@link RenderResult} with the result of inflating the inflate call. The result might not contain a result bitmap.
    */
   @Nullable
   public RenderResult inflate() {
+    if (myPsiFile == null) {
+      throw new IllegalStateException("inflate shouldn't be called on RenderTask without PsiFile");
+    }
+
+    RenderResult cachedResult = getCachedResult();
+    if (cachedResult != null) {
+      myInflateDeferred = true;
+      return cachedResult;
+    }
+    return inflateSession();
+  }
+
+  /**
+   * Inflates the layout in a new render session.
+   */
+  @Nullable
+  private RenderResult inflateSession() {
     // During development only:
     //assert !ApplicationManager.getApplication().isReadAccessAllowed() : "Do not hold read lock during inflate!";
 
@@ -677,8 +760,10 @@ public class RenderTask implements IImageFactory {
       throw new IllegalStateException("inflate shouldn't be called on RenderTask without PsiFile");
     }
 
+    myInflateDeferred = false;
+    myCacheKey = createCacheKey();
     try {
-      return RenderService.runRenderAction(() -> createRenderSession((width, height) -> {
+      return runRenderAction(() -> createRenderSession((width, height) -> {
         if (myImageFactoryDelegate != null) {
           return myImageFactoryDelegate.getImage(width, height);
         }
@@ -697,11 +782,36 @@ public class RenderTask implements IImageFactory {
     }
   }
 
+  /**
+   * Applies edits of the layout to the views of the current render session, so that the next {@link #render()} or {@link #layout()}
+   * reflects them without inflating the layout again. {@code update} runs on the render thread.
+   *
+   * @return false if there is no render session or if {@code update} returned false, in which case the session may have been partially
+   * updated and the layout has to be inflated again.
+   */
+  public boolean updateSession(@NotNull Predicate<RenderSession> update) {
+    if (myRenderSession == null) {
+      return false;
+    }
+    // The session no longer shows the content it was inflated from, so its results can't be cached
+    myCacheKey = null;
+    try {
+      return runRenderAction(() -> myRenderSession != null && update.test(myRenderSession));
+    }
+    catch (Exception e) {
+      LOG.warn("Unable to update the render session", e);
+      return false;
+    }
+  }
+
   /**
    * Only do a measure pass using the current render session
    */
   @NotNull
   public ListenableFuture<RenderResult> layout() {
+    if (myRenderSession == null && myInflateDeferred) {
+      inflateSession();
+    }
     if (myRenderSession == null) {
       return Futures.immediateFuture(null);
     }
@@ -711,7 +821,7 @@ public class RenderTask implements IImageFactory {
       // runAsyncRenderAction might not run immediately so we need to capture the current myRenderSession and myPsiFile values
       final RenderSession renderSession = myRenderSession;
       final PsiFile psiFile = myPsiFile;
-      return runAsyncRenderAction(() -> {
+      return runAsyncRenderAction(LAYOUT_ACTION, () -> {
         myRenderSession.measure();
         return RenderResult.create(this, renderSession, psiFile, myLogger, ImagePool.NULL_POOLED_IMAGE);
       });
@@ -722,6 +832,96 @@ public class RenderTask implements IImageFactory {
     return Futures.immediateFuture(null);
   }
 
+  /**
+   * Returns the key of the current render: the one of the content and configuration the session was inflated from, or, if it isn't
+   * inflated yet, the one of the current content and configuration. Returns null if the result of the render can't be cached.
+   */
+  @Nullable
+  private RenderResultCache.Key getCacheKey() {
+    if (myImageFactoryDelegate != null && myImageFactoryDelegate != this) {
+      // The caller expects the image to be rendered to its factory
+      return null;
+    }
+    RenderResultCache.Key key = myRenderSession != null ? myCacheKey : createCacheKey();
+    return key != null ? key.withElapsedFrameTimeNanos(myElapsedFrameTimeNanos) : null;
+  }
+
+  /**
+   * Creates the key of the result of rendering the current content of the file with the current configuration, or returns null if it
+   * can't be cached.
+   */
+  @Nullable
+  private RenderResultCache.Key createCacheKey() {
+    XmlFile psiFile = myPsiFile;
+    if (psiFile == null || myFolderType != ResourceFolderType.LAYOUT) {
+      return null;
+    }
+    long resourceGeneration = AppResourceRepository.getOrCreateInstance(myRenderService.getFacet()).getModificationCount();
+    String renderParameters = getRenderParameters();
+    return ApplicationManager.getApplication().runReadAction((Computable<RenderResultCache.Key>)() -> {
+      XmlTag rootTag = psiFile.getRootTag();
+      VirtualFile file = psiFile.getVirtualFile();
+      if (rootTag == null || file == null) {
+        return null;
+      }
+      return RenderResultCache.Key.create(file.getPath(), TagSnapshot.createTagSnapshot(rootTag, null), renderParameters,
+                                          resourceGeneration, myElapsedFrameTimeNanos);
+    });
+  }
+
+  /**
+   * Returns the configuration and the parameters the render depends on, besides the content of the layout and the resources.
+   */
+  @NotNull
+  private String getRenderParameters() {
+    HardwareConfig hardwareConfig = myHardwareConfigHelper.getConfig();
+    Device device = myConfiguration.getDevice();
+    State deviceState = myConfiguration.getDeviceState();
+    IAndroidTarget target = myConfiguration.getTarget();
+    return Joiner.on('|').useForNull("").join(
+      myConfiguration.getFullConfig().getUniqueKey(),
+      device != null ? device.getId() : null,
+      deviceState != null ? deviceState.getName() : null,
+      myConfiguration.getTheme(),
+      target != null ? target.hashString() : null,
+      myConfiguration.getActivity(),
+      myLocale.toLocaleId(),
+      hardwareConfig.getScreenWidth(),
+      hardwareConfig.getScreenHeight(),
+      hardwareConfig.getDensity(),
+      hardwareConfig.getOrientation(),
+      hardwareConfig.getScreenRoundness(),
+      hardwareConfig.hasSoftwareButtons(),
+      myRenderingMode,
+      myShowDecorations,
+      myOverrideBgColor,
+      myMinSdkVersion.getApiLevel(),
+      myTargetSdkVersion.getApiLevel(),
+      myProvideCookiesForIncludedViews,
+      myLayoutlibCallback.getFlag(RenderParamsFlags.FLAG_KEY_ADAPTIVE_ICON_MASK_PATH));
+  }
+
+  /**
+   * Returns the cached result of the current render, if any. Once this task has its own render session, its results are not read from
+   * the cache: the views of a cached result may belong to the session of another task, which the callers would then update.
+   */
+  @Nullable
+  private RenderResult getCachedResult() {
+    if (myRenderSession != null) {
+      return null;
+    }
+    RenderResultCache.Key key = getCacheKey();
+    return key != null && myPsiFile != null ? myRenderService.getRenderResultCache().get(key, this, myPsiFile, myLogger) : null;
+  }
+
+  private void cacheResult(@NotNull RenderResult result) {
+    RenderResultCache.Key key = getCacheKey();
+    // Results with problems are not cached, as the problems are reported to the logger of the task which rendered them
+    if (key != null && !myLogger.hasProblems()) {
+      myRenderService.cacheRenderResult(key, RenderResult.createCopy(result, null, result.getFile(), result.getLogger()));
+    }
+  }
+
   /**
    * Method used to report unhandled layoutlib exceptions to the crash reporter
    */
@@ -740,8 +940,13 @@ public class RenderTask implements IImageFactory {
     // During development only:
     //assert !ApplicationManager.getApplication().isReadAccessAllowed() : "Do not hold read lock during render!";
 
+    RenderResult cachedResult = getCachedResult();
+    if (cachedResult != null) {
+      return Futures.immediateFuture(cachedResult);
+    }
+
     if (myRenderSession == null) {
-      RenderResult renderResult = inflate();
+      RenderResult renderResult = inflateSession();
       Result result = renderResult != null ? renderResult.getRenderResult() : null;
       if (result == null || !result.isSuccess()) {
         if (result != null) {
@@ -756,15 +961,19 @@ public class RenderTask implements IImageFactory {
     assert myPsiFile != null;
 
     try {
-      return runAsyncRenderAction(() -> {
+      // A render to another factory can't be superseded, as the newer render may target a different factory
+      return runAsyncRenderAction(myImageFactoryDelegate == this ? RENDER_ACTION : null, () -> {
         myRenderSession.render();
         RenderResult result =
-          RenderResult.create(this, myRenderSession, myPsiFile, myLogger, myImagePool.copyOf(myRenderSession.getImage()));
+          RenderResult.create(this, myRenderSession, myPsiFile, myLogger, myImageBuffer.copyOf(myRenderSession.getImage()));
         Result renderResult = result.getRenderResult();
         if (renderResult.getException() != null) {
           reportException(renderResult.getException());
           myLogger.error(null, renderResult.getErrorMessage(), renderResult.getException(), null, null);
         }
+        else if (renderResult.isSuccess()) {
+          cacheResult(result);
+        }
         return result;
       });
     }
@@ -808,6 +1017,7 @@ public class RenderTask implements IImageFactory {
    * the current system nanos time.
    */
   public void setElapsedFrameTimeNanos(long nanos) {
+    myElapsedFrameTimeNanos = nanos;
     if (myRenderSession != null) {
       myRenderSession.setElapsedFrameTimeNanos(nanos);
     }
@@ -896,7 +1106,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = runRenderAction(() -> myLayoutLib.renderDrawable(params));
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -1007,7 +1217,7 @@ public class RenderTask implements IImageFactory {
     Map<XmlTag, ViewInfo> map = Maps.newHashMap();
     RenderSession session = null;
     try {
-      session = RenderService.runRenderAction(() -> measure(modelParser));
+      session = runRenderAction(() -> measure(modelParser));
     }
     catch (Exception ignored) {
     }
@@ -1029,7 +1239,7 @@ public class RenderTask implements IImageFactory {
 
         return map;
       } finally {
-        RenderService.runAsyncRenderAction(session::dispose);
+        RenderService.runAsyncRenderAction(this, myPriority, myRenderTrigger, null, Executors.callable(session::dispose));
       }
     }
 
@@ -848,6 +848,17 @@ public class ResourceNotificationManager {
       return true;
     }
 
+    /**
+     * Returns whether {@code version} only differs from this version by the version of the file, i.e. whether only the file was edited
+     * in between.
+     */
+    public boolean differsOnlyInFile(@NotNull ResourceVersion version) {
+      return myResourceGeneration == version.myResourceGeneration &&
+             myConfigurationGeneration == version.myConfigurationGeneration &&
+             myProjectConfigurationGeneration == version.myProjectConfigurationGeneration &&
+             myOtherGeneration == version.myOtherGeneration;
+    }
+
     @Override
     public int hashCode() {
       int result = (int)(myResourceGeneration ^ (myResourceGeneration >>> 32));
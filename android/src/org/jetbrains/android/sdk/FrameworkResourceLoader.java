@@ -22,17 +22,30 @@ import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.io.IAbstractFile;
 import com.android.io.IAbstractFolder;
 import com.android.io.IAbstractResource;
+import com.android.io.StreamException;
+import com.android.resources.ResourceFolderType;
 import com.android.sdklib.IAndroidTarget;
+import com.android.tools.io.BufferingFileWrapper;
 import com.android.tools.log.LogWrapper;
 import com.android.tools.io.BufferingFolderWrapper;
 import com.android.utils.ILogger;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.android.SdkConstants.DOT_XML;
 
 /** Loader which loads in a {@link com.android.ide.common.resources.FrameworkResources} */
 public class FrameworkResourceLoader {
@@ -50,18 +63,31 @@ public class FrameworkResourceLoader {
       return null;
     }
 
-    return loadPlatformResources(resFolder, logger, withLocale);
+    File snapshotFolder = FrameworkResourceSnapshot.getSnapshotFolder(myTarget, resFolder, withLocale);
+    return loadPlatformResources(resFolder, snapshotFolder, logger, withLocale);
   }
 
-  private static FrameworkResources loadPlatformResources(File resFolder, ILogger log, boolean withLocale) throws IOException {
-    final IAbstractFolder resFolderWrapper = new BufferingFolderWrapper(resFolder);
+  private static FrameworkResources loadPlatformResources(File resFolder, File snapshotFolder, ILogger log, boolean withLocale)
+    throws IOException {
+    // The files are read from the snapshot of the previous loads if there is one, from disk otherwise
+    FrameworkResourceSnapshot snapshot = FrameworkResourceSnapshot.load(snapshotFolder, resFolder);
+    final IAbstractFolder resFolderWrapper = snapshot != null ? snapshot.getResFolder() : new BufferingFolderWrapper(resFolder);
     final FrameworkResources resources = new IdeFrameworkResources(resFolderWrapper, withLocale);
     resources.ensureInitialized();
     resources.loadPublicResources(log);
+
+    if (snapshot == null || snapshot.isStale()) {
+      // There was no snapshot, or files were added or modified since it was written, e.g. by an update of the platform. The new snapshot
+      // is written to another file, as this one is mapped
+      FrameworkResourceSnapshot.writeInBackground(resFolder, withLocale, snapshotFolder);
+    }
     return resources;
   }
 
   public static class IdeFrameworkResources extends FrameworkResources {
+    /** The number of folders whose files are read ahead of the one being parsed */
+    private static final int READ_AHEAD_FOLDER_COUNT = 2 * ForkJoinPool.getCommonPoolParallelism();
+
     private boolean myWithLocales;
 
     public IdeFrameworkResources(@NonNull IAbstractFolder resFolder, boolean withLocale) {
@@ -82,6 +108,27 @@ public class FrameworkResourceLoader {
       return !myWithLocales;
     }
 
+    /**
+     * Returns whether the resources of the folder {@code resFolderName} of the res folder are loaded.
+     */
+    static boolean isLoadedFolder(@NotNull String resFolderName, boolean withLocales) {
+      if (resFolderName.startsWith("values-mcc") || resFolderName.startsWith("raw-")) {
+        return false;
+      }
+
+      // Skip locale-specific folders
+      if (!withLocales && resFolderName.startsWith("values-")) {
+        // Can I find out which resources we use in layoutlib?
+        // Can I find out which ones we *expose* through public? I should filter JUST those!
+        // I guess I could cache this stuff...?
+        FolderConfiguration config = FolderConfiguration.getConfigForFolder(resFolderName);
+        if (config == null || config.getLocaleQualifier() != null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     @Override
     public synchronized boolean ensureInitialized() {
       if (myCleared && !myInitializing) {
@@ -90,38 +137,32 @@ public class FrameworkResourceLoader {
         ScanningContext context = new ScanningContext(this);
         myInitializing = true;
 
-        IAbstractResource[] resources = getResFolder().listMembers();
-
-        for (IAbstractResource res : resources) {
-          if (res instanceof IAbstractFolder) {
-            IAbstractFolder folder = (IAbstractFolder)res;
-            String resFolderName = folder.getName();
-            if (resFolderName.startsWith("values-mcc") || resFolderName.startsWith("raw-")) {
-              continue;
-            }
+        List<IAbstractFolder> folders = new ArrayList<>();
+        for (IAbstractResource res : getResFolder().listMembers()) {
+          if (res instanceof IAbstractFolder && isLoadedFolder(res.getName(), myWithLocales)) {
+            folders.add((IAbstractFolder)res);
+          }
+        }
 
-            // Skip locale-specific folders
-            if (!myWithLocales && resFolderName.startsWith("values-")) {
-              // Can I find out which resources we use in layoutlib?
-              // Can I find out which ones we *expose* through public? I should filter JUST those!
-              // I guess I could cache this stuff...?
-              FolderConfiguration config = FolderConfiguration.getConfigForFolder(resFolderName);
-              if (config == null || config.getLocaleQualifier() != null) {
-                continue;
-              }
-            }
+        // Parsing a file adds its resources to the items shared with the other files, so the files are parsed one at a time. The XML
+        // files of the next folders are read in parallel meanwhile, so that parsing doesn't wait for the disk.
+        List<Future<IAbstractResource[]>> members = new ArrayList<>();
+        for (int i = 0; i < folders.size(); i++) {
+          while (members.size() < folders.size() && members.size() <= i + READ_AHEAD_FOLDER_COUNT) {
+            IAbstractFolder folder = folders.get(members.size());
+            members.add(ForkJoinPool.commonPool().submit(() -> readMembers(folder)));
+          }
 
-            ResourceFolder resFolder = processFolder(folder);
-            if (resFolder != null) {
-              IAbstractResource[] files = folder.listMembers();
-              for (IAbstractResource fileRes : files) {
-                if (fileRes instanceof IAbstractFile) {
-                  IAbstractFile file = (IAbstractFile)fileRes;
-                  resFolder.processFile(file, ResourceDeltaKind.ADDED, context);
-                }
+          ResourceFolder resFolder = processFolder(folders.get(i));
+          if (resFolder != null) {
+            for (IAbstractResource fileRes : getMembers(folders.get(i), members.get(i))) {
+              if (fileRes instanceof IAbstractFile) {
+                IAbstractFile file = (IAbstractFile)fileRes;
+                resFolder.processFile(file, ResourceDeltaKind.ADDED, context);
               }
             }
           }
+          members.set(i, null);
         }
 
         myInitializing = false;
@@ -131,5 +172,59 @@ public class FrameworkResourceLoader {
 
       return false;
     }
+
+    /**
+     * Returns the members of {@code folder}, whose XML files are read if their content is parsed.
+     */
+    @NotNull
+    private static IAbstractResource[] readMembers(@NotNull IAbstractFolder folder) throws StreamException, IOException {
+      IAbstractResource[] members = folder.listMembers();
+      if (!FrameworkResourceSnapshot.isParsedFolderType(ResourceFolderType.getFolderType(folder.getName()))) {
+        return members;
+      }
+      for (int i = 0; i < members.length; i++) {
+        if (members[i] instanceof IAbstractFile && members[i].getName().endsWith(DOT_XML)) {
+          IAbstractFile file = (IAbstractFile)members[i];
+          try (InputStream contents = file.getContents()) {
+            members[i] = new ReadFile(new File(file.getOsLocation()), FileUtil.loadBytes(contents));
+          }
+        }
+      }
+      return members;
+    }
+
+    /**
+     * Returns the members of {@code folder} read by {@code future}, or lists them again if they could not be read.
+     */
+    @NotNull
+    private static IAbstractResource[] getMembers(@NotNull IAbstractFolder folder, @NotNull Future<IAbstractResource[]> future) {
+      try {
+        return future.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        LOG.debug("Can't read framework resources of " + folder.getOsLocation(), e.getCause());
+      }
+      return folder.listMembers();
+    }
+  }
+
+  /**
+   * A resource file whose content was already read.
+   */
+  private static final class ReadFile extends BufferingFileWrapper {
+    @NotNull private final byte[] myContent;
+
+    private ReadFile(@NotNull File file, @NotNull byte[] content) {
+      super(file);
+      myContent = content;
+    }
+
+    @Override
+    public InputStream getContents() {
+      return new ByteArrayInputStream(myContent);
+    }
   }
 }
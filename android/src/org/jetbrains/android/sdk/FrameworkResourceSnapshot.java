@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.sdk;
+
+import com.android.io.IAbstractFile;
+import com.android.io.IAbstractFolder;
+import com.android.io.IAbstractResource;
+import com.android.io.StreamException;
+import com.android.resources.FolderTypeRelationship;
+import com.android.resources.ResourceFolderType;
+import com.android.sdklib.IAndroidTarget;
+import com.android.tools.io.BufferingFileWrapper;
+import com.android.tools.io.BufferingFolderWrapper;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.android.SdkConstants.DOT_XML;
+
+/**
+ * Snapshot of the content of the XML files of a platform {@code res} folder which are parsed when loading the framework resources,
+ * stored in a single file of the system directory which is memory mapped when loaded. Reading the thousands of small files of a
+ * platform, most of them localized values, from one mapped file avoids opening each of them on the first render after the IDE starts,
+ * when they are usually not in the disk cache.
+ * <p/>
+ * The length and modification time of each file are stored with it, and checked when the file is read. Files which changed or were
+ * added since the snapshot was written are read from disk and the snapshot is marked as stale, see {@link #isStale()}. A snapshot is
+ * only ignored when the res folder itself was modified, e.g. when folders were added or removed.
+ * <p/>
+ * A mapped file can't be replaced on Windows until it is unmapped, which only happens when its buffer is collected, so each snapshot is
+ * written to a new file of the snapshot folder, named after its generation. The latest generation is loaded, the previous ones are deleted
+ * once they aren't mapped anymore. The snapshot folders of the targets whose res folder doesn't exist anymore, e.g. uninstalled
+ * platforms, are deleted after the first snapshot written in a session.
+ */
+class FrameworkResourceSnapshot {
+  private static final Logger LOG = Logger.getInstance(FrameworkResourceSnapshot.class);
+
+  private static final int MAGIC = 0x46524553; // FRES
+  private static final int VERSION = 3;
+  private static final String SNAPSHOT_PREFIX = "snapshot_";
+  private static final String SNAPSHOT_EXTENSION = ".bin";
+
+  /** The snapshot folders being written in the background */
+  private static final Set<File> ourWrittenFolders = ConcurrentHashMap.newKeySet();
+  private static final AtomicBoolean ourUnusedFoldersDeleted = new AtomicBoolean();
+
+  @NotNull private final File myResFolder;
+  /** The files of the snapshot, by their path relative to the res folder */
+  @NotNull private final Map<String, Entry> myEntries;
+  @NotNull private final ByteBuffer myData;
+  private volatile boolean myStale;
+
+  private FrameworkResourceSnapshot(@NotNull File resFolder, @NotNull Map<String, Entry> entries, @NotNull ByteBuffer data) {
+    myResFolder = resFolder;
+    myEntries = entries;
+    myData = data;
+  }
+
+  /**
+   * Returns the folder of the snapshots of the resources of {@code target}. Targets are identified by their hash string, revision and
+   * resource folder, so that the snapshots of the platforms of the SDK and of the layoutlib embedded in the IDE don't overwrite each other.
+   */
+  @NotNull
+  static File getSnapshotFolder(@NotNull IAndroidTarget target, @NotNull File resFolder, boolean withLocale) {
+    String name = FileUtil.sanitizeFileName(target.hashString() + "_" + target.getRevision() + "_" +
+                                            Integer.toHexString(FileUtil.fileHashCode(resFolder)) + (withLocale ? "_locales" : ""));
+    return new File(getSnapshotFoldersRoot(), name);
+  }
+
+  /**
+   * Returns the folder containing the snapshot folders of all the targets.
+   */
+  @NotNull
+  private static File getSnapshotFoldersRoot() {
+    return new File(PathManager.getSystemPath(), "android" + File.separator + "framework_resources");
+  }
+
+  /**
+   * Returns the file of the latest snapshot written to {@code snapshotFolder}, or null if there is none.
+   */
+  @Nullable
+  static File findSnapshotFile(@NotNull File snapshotFolder) {
+    File latest = null;
+    int latestGeneration = -1;
+    File[] files = snapshotFolder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        int generation = getGeneration(file);
+        if (generation > latestGeneration) {
+          latest = file;
+          latestGeneration = generation;
+        }
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Returns the generation of the snapshot stored in {@code file}, or -1 if it isn't a snapshot file.
+   */
+  private static int getGeneration(@NotNull File file) {
+    String name = file.getName();
+    if (!name.startsWith(SNAPSHOT_PREFIX) || !name.endsWith(SNAPSHOT_EXTENSION)) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_EXTENSION.length()));
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns whether the resources of a folder of type {@code folderType} are parsed from the content of their files, as opposed to only
+   * being named after their files.
+   */
+  static boolean isParsedFolderType(@Nullable ResourceFolderType folderType) {
+    return folderType == ResourceFolderType.VALUES || folderType != null && FolderTypeRelationship.isIdGeneratingFolderType(folderType);
+  }
+
+  /**
+   * Memory maps the latest snapshot written to {@code snapshotFolder}.
+   *
+   * @return the snapshot, or null if there is none, if it was written by another version of the IDE or for another resource folder, or if
+   * the resource folder was modified, e.g. folders were added to or removed from it, since it was written
+   */
+  @Nullable
+  static FrameworkResourceSnapshot load(@NotNull File snapshotFolder, @NotNull File resFolder) {
+    File snapshotFile = findSnapshotFile(snapshotFolder);
+    if (snapshotFile == null) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer;
+      try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      DataInputStream header = new DataInputStream(new ByteBufferInputStream(buffer));
+      if (header.readInt() != MAGIC ||
+          header.readInt() != VERSION ||
+          !header.readUTF().equals(resFolder.getPath()) ||
+          header.readLong() != resFolder.lastModified()) {
+        return null;
+      }
+      int count = header.readInt();
+      Map<String, Entry> entries = new HashMap<>(count * 2);
+      int offset = 0;
+      for (int i = 0; i < count; i++) {
+        String path = header.readUTF();
+        long lastModified = header.readLong();
+        int length = header.readInt();
+        entries.put(path, new Entry(lastModified, offset, length));
+        offset += length;
+      }
+      // The header was read from the buffer, which is now positioned at the start of the contents
+      ByteBuffer data = buffer.slice();
+      if (data.remaining() != offset) {
+        LOG.warn("Truncated framework resource snapshot " + snapshotFile);
+        return null;
+      }
+      return new FrameworkResourceSnapshot(resFolder, entries, data);
+    }
+    catch (IOException e) {
+      LOG.warn("Can't read framework resource snapshot " + snapshotFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the snapshot of the files of {@code resFolder} loaded by {@link FrameworkResourceLoader.IdeFrameworkResources} to a new file
+   * of {@code snapshotFolder}, and deletes the previous snapshots which aren't mapped anymore. The files are read in parallel.
+   *
+   * @return false if the snapshot could not be written
+   */
+  static boolean write(@NotNull File resFolder, boolean withLocale, @NotNull File snapshotFolder) {
+    // Read the stamp first, so that a folder added while the files are read invalidates the snapshot
+    long resFolderStamp = resFolder.lastModified();
+    List<FileContent> contents;
+    try {
+      List<String> paths = getSnapshotPaths(resFolder, withLocale);
+      contents = ForkJoinPool.commonPool().submit(
+        () -> paths.parallelStream().map(path -> FileContent.read(resFolder, path)).collect(Collectors.toList())).get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    catch (ExecutionException e) {
+      LOG.warn("Can't read framework resources of " + resFolder, e.getCause());
+      return false;
+    }
+
+    File tempFile = null;
+    try {
+      FileUtil.createDirectory(snapshotFolder);
+      File previous = findSnapshotFile(snapshotFolder);
+      int generation = previous != null ? getGeneration(previous) + 1 : 0;
+      tempFile = File.createTempFile(SNAPSHOT_PREFIX, ".tmp", snapshotFolder);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(resFolder.getPath());
+        out.writeLong(resFolderStamp);
+        out.writeInt(contents.size());
+        for (FileContent content : contents) {
+          out.writeUTF(content.myPath);
+          out.writeLong(content.myLastModified);
+          out.writeInt(content.myBytes.length);
+        }
+        for (FileContent content : contents) {
+          out.write(content.myBytes);
+        }
+      }
+      // A new file, as the previous snapshots may still be mapped
+      Files.move(tempFile.toPath(), new File(snapshotFolder, SNAPSHOT_PREFIX + generation + SNAPSHOT_EXTENSION).toPath(),
+                 StandardCopyOption.ATOMIC_MOVE);
+      deletePreviousSnapshots(snapshotFolder, generation);
+      return true;
+    }
+    catch (IOException e) {
+      // e.g. another snapshot of the same generation was written concurrently
+      LOG.warn("Can't write framework resource snapshot to " + snapshotFolder, e);
+      if (tempFile != null) {
+        FileUtil.delete(tempFile);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Writes the snapshot of {@code resFolder} to {@code snapshotFolder} on a pooled thread, unless it is already being written, then deletes
+   * the snapshot folders of the targets which don't exist anymore if it wasn't done yet in this session.
+   */
+  static void writeInBackground(@NotNull File resFolder, boolean withLocale, @NotNull File snapshotFolder) {
+    if (!ourWrittenFolders.add(snapshotFolder)) {
+      return;
+    }
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      try {
+        write(resFolder, withLocale, snapshotFolder);
+      }
+      finally {
+        ourWrittenFolders.remove(snapshotFolder);
+      }
+      if (!ourUnusedFoldersDeleted.getAndSet(true)) {
+        deleteUnusedSnapshotFolders(getSnapshotFoldersRoot());
+      }
+    });
+  }
+
+  /**
+   * Deletes the snapshot folders of {@code root} whose latest snapshot was written for a res folder which doesn't exist anymore, e.g. of a
+   * platform which was uninstalled or of a previous version of the IDE. Folders without a snapshot may be being written, they are kept.
+   */
+  static void deleteUnusedSnapshotFolders(@NotNull File root) {
+    File[] folders = root.listFiles();
+    if (folders == null) {
+      return;
+    }
+    for (File folder : folders) {
+      File snapshotFile = folder.isDirectory() ? findSnapshotFile(folder) : null;
+      if (snapshotFile == null) {
+        continue;
+      }
+      String resFolderPath;
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+        // The path of the res folder follows the version in all the versions of the snapshots
+        resFolderPath = in.readInt() == MAGIC && in.readInt() > 0 ? in.readUTF() : null;
+      }
+      catch (IOException e) {
+        resFolderPath = null;
+      }
+      if ((resFolderPath == null || !new File(resFolderPath).isDirectory()) && !FileUtil.delete(folder)) {
+        LOG.debug("Can't delete unused framework resource snapshots " + folder);
+      }
+    }
+  }
+
+  /**
+   * Deletes the snapshots of {@code snapshotFolder} older than {@code generation}. The ones still mapped can't be deleted on Windows, they
+   * are deleted by a later write.
+   */
+  private static void deletePreviousSnapshots(@NotNull File snapshotFolder, int generation) {
+    File[] files = snapshotFolder.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      int fileGeneration = getGeneration(file);
+      if (fileGeneration >= 0 && fileGeneration < generation && !file.delete()) {
+        LOG.debug("Can't delete previous framework resource snapshot " + file);
+      }
+    }
+  }
+
+  /**
+   * Returns the paths, relative to {@code resFolder}, of the files whose content is parsed when loading the framework resources.
+   */
+  @NotNull
+  private static List<String> getSnapshotPaths(@NotNull File resFolder, boolean withLocale) {
+    List<String> paths = new ArrayList<>();
+    File[] folders = resFolder.listFiles();
+    if (folders == null) {
+      return paths;
+    }
+    for (File folder : folders) {
+      String folderName = folder.getName();
+      if (!folder.isDirectory() ||
+          !FrameworkResourceLoader.IdeFrameworkResources.isLoadedFolder(folderName, withLocale) ||
+          !isParsedFolderType(ResourceFolderType.getFolderType(folderName))) {
+        continue;
+      }
+      File[] files = folder.listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        if (file.getName().endsWith(DOT_XML) && file.isFile()) {
+          paths.add(folderName + '/' + file.getName());
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Returns the resource folder, whose files are read from the snapshot.
+   */
+  @NotNull
+  IAbstractFolder getResFolder() {
+    return new SnapshotFolder(myResFolder, true);
+  }
+
+  /**
+   * Returns true if a file which should be in the snapshot was read from disk, as it was added or modified after the snapshot was
+   * written, in which case the snapshot should be written again.
+   */
+  boolean isStale() {
+    return myStale;
+  }
+
+  private static final class Entry {
+    private final long myLastModified;
+    private final int myOffset;
+    private final int myLength;
+
+    private Entry(long lastModified, int offset, int length) {
+      myLastModified = lastModified;
+      myOffset = offset;
+      myLength = length;
+    }
+  }
+
+  private static final class FileContent {
+    @NotNull private final String myPath;
+    private final long myLastModified;
+    @NotNull private final byte[] myBytes;
+
+    private FileContent(@NotNull String path, long lastModified, @NotNull byte[] bytes) {
+      myPath = path;
+      myLastModified = lastModified;
+      myBytes = bytes;
+    }
+
+    @NotNull
+    private static FileContent read(@NotNull File resFolder, @NotNull String path) {
+      File file = new File(resFolder, path);
+      // Read the stamp first, so that a file modified while being read is read from disk
+      long lastModified = file.lastModified();
+      try {
+        return new FileContent(path, lastModified, Files.readAllBytes(file.toPath()));
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * The res folder, or one of its folders whose resources are parsed from the content of their files
+   */
+  private class SnapshotFolder extends BufferingFolderWrapper {
+    @NotNull private final File myFolder;
+    private final boolean myRoot;
+
+    private SnapshotFolder(@NotNull File folder, boolean root) {
+      super(folder);
+      myFolder = folder;
+      myRoot = root;
+    }
+
+    @Override
+    public IAbstractFile getFile(String name) {
+      return myRoot ? super.getFile(name) : new SnapshotFile(new File(myFolder, name), myFolder.getName() + '/' + name);
+    }
+
+    @Override
+    public IAbstractFolder getFolder(String name) {
+      return myRoot && isParsedFolderType(ResourceFolderType.getFolderType(name))
+             ? new SnapshotFolder(new File(myFolder, name), false)
+             : super.getFolder(name);
+    }
+
+    @Override
+    public IAbstractResource[] listMembers() {
+      IAbstractResource[] members = super.listMembers();
+      for (int i = 0; i < members.length; i++) {
+        if (myRoot && members[i] instanceof IAbstractFolder) {
+          members[i] = getFolder(members[i].getName());
+        }
+        else if (!myRoot && members[i] instanceof IAbstractFile) {
+          members[i] = getFile(members[i].getName());
+        }
+      }
+      return members;
+    }
+  }
+
+  private class SnapshotFile extends BufferingFileWrapper {
+    @NotNull private final String myPath;
+
+    private SnapshotFile(@NotNull File file, @NotNull String path) {
+      super(file);
+      myPath = path;
+    }
+
+    @Override
+    public InputStream getContents() throws StreamException {
+      Entry entry = myEntries.get(myPath);
+      File file = getFile();
+      if (entry != null && entry.myLength == file.length() && entry.myLastModified == file.lastModified()) {
+        ByteBuffer content = myData.duplicate();
+        content.position(entry.myOffset).limit(entry.myOffset + entry.myLength);
+        return new ByteBufferInputStream(content);
+      }
+      if (getName().endsWith(DOT_XML)) {
+        myStale = true;
+      }
+      return super.getContents();
+    }
+  }
+
+  /**
+   * Input stream reading the remaining bytes of a buffer, and advancing its position.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    @NotNull private final ByteBuffer myBuffer;
+
+    private ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      myBuffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!myBuffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, myBuffer.remaining());
+      myBuffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return myBuffer.remaining();
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.idea.rendering;
 
 import com.android.tools.adtui.imagediff.ImageDiffUtil;
+import org.jetbrains.annotations.NotNull;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -255,4 +256,95 @@ public class ImagePoolTest {
     image.drawImageTo(g, sample.getWidth(), sample.getHeight(), image.getWidth(), image.getHeight());
     ImageDiffUtil.assertImageSimilar("offsetSample", sampleImagePlusOffset, testImagePlusOffset, 0.0);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testReferenceCounting() {
+    ImagePool.ImageImpl image = myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+    BufferedImage internalPtr = image.myBuffer;
+
+    assertTrue(image.retain());
+    image.dispose();
+    // Still referenced
+    assertNotNull(image.getCopy());
+    assertNotEquals(internalPtr, myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+
+    image.dispose();
+    assertFalse(image.retain());
+    assertEquals(internalPtr, myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+  }
+
+  @Test
+  public void testStatistics() {
+    ImagePool.ImageImpl image = myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+    assertEquals(0, myPool.getHitCount());
+    assertEquals(1, myPool.getMissCount());
+    // The image is allocated with the size of its bucket
+    assertEquals(4L * image.myBuffer.getWidth() * image.myBuffer.getHeight(), myPool.getAllocatedBytes());
+
+    image.dispose();
+    myPool.create(50, 50, BufferedImage.TYPE_INT_ARGB, null);
+    assertEquals(1, myPool.getHitCount());
+    assertEquals(1, myPool.getMissCount());
+  }
+
+  @Test
+  public void testDoubleBuffer() {
+    ImagePool.DoubleBuffer buffer = myPool.createDoubleBuffer();
+    BufferedImage frame = getSampleImage();
+
+    ImagePool.Image first = buffer.copyOf(frame);
+    assertPixelsEqual(frame, first.getCopy());
+    ImagePool.Image second = buffer.copyOf(frame);
+    assertNotEquals(((ImagePool.ImageImpl)first).myBuffer, ((ImagePool.ImageImpl)second).myBuffer);
+
+    // The first image is still referenced, so it can't be reused
+    Graphics2D g = frame.createGraphics();
+    g.setColor(Color.GREEN);
+    g.fillRect(10, 10, 5, 5);
+    g.dispose();
+    ImagePool.Image third = buffer.copyOf(frame);
+    assertNotEquals(((ImagePool.ImageImpl)first).myBuffer, ((ImagePool.ImageImpl)third).myBuffer);
+    assertPixelsEqual(frame, third.getCopy());
+    assertEquals(3 * 50 * 50, myPool.getCopiedPixels());
+
+    // Once released, the image of the frame before the previous one is reused, and only the changed region is copied into it
+    second.dispose();
+    BufferedImage secondBuffer = ((ImagePool.ImageImpl)second).myBuffer;
+    g = frame.createGraphics();
+    g.setColor(Color.YELLOW);
+    g.fillRect(30, 30, 5, 5);
+    g.dispose();
+    ImagePool.Image fourth = buffer.copyOf(frame);
+    assertEquals(secondBuffer, ((ImagePool.ImageImpl)fourth).myBuffer);
+    assertPixelsEqual(frame, fourth.getCopy());
+    // The bounds of both changes
+    assertEquals(3 * 50 * 50 + 25 * 25, myPool.getCopiedPixels());
+    assertEquals(50 * 50 - 25 * 25, myPool.getSkippedPixels());
+
+    buffer.dispose();
+    first.dispose();
+    third.dispose();
+    fourth.dispose();
+  }
+
+  @Test
+  public void testGetDamage() {
+    BufferedImage frame = getSampleImage();
+    ImagePool.ImageImpl image = (ImagePool.ImageImpl)myPool.copyOf(frame);
+    assertTrue(ImagePool.getDamage(frame, image).isEmpty());
+
+    frame.setRGB(3, 4, Color.GREEN.getRGB());
+    frame.setRGB(7, 2, Color.GREEN.getRGB());
+    assertEquals(new Rectangle(3, 2, 5, 3), ImagePool.getDamage(frame, image));
+  }
+
+  private static void assertPixelsEqual(@NotNull BufferedImage expected, @NotNull BufferedImage actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+}
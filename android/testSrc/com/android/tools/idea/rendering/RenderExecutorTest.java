@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.android.tools.idea.rendering.RenderExecutor.Priority.BACKGROUND;
+import static com.android.tools.idea.rendering.RenderExecutor.Priority.FOREGROUND;
+
+public class RenderExecutorTest extends TestCase {
+  private RenderExecutor myExecutor;
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myExecutor != null) {
+        myExecutor.shutdownNow();
+      }
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testForegroundActionsRunFirst() throws Exception {
+    myExecutor = new RenderExecutor(1, 1000);
+    CountDownLatch latch = new CountDownLatch(1);
+    myExecutor.submit(null, FOREGROUND, "block", null, () -> {
+      latch.await();
+      return null;
+    });
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    myExecutor.submit(null, BACKGROUND, "background", null, () -> order.add("background 1"));
+    myExecutor.submit(null, FOREGROUND, "foreground", null, () -> order.add("foreground 1"));
+    myExecutor.submit(null, BACKGROUND, "background", null, () -> order.add("background 2"));
+    ListenableFuture<Boolean> last = myExecutor.submit(null, FOREGROUND, "foreground", null, () -> order.add("foreground 2"));
+    latch.countDown();
+
+    last.get(5, TimeUnit.SECONDS);
+    myExecutor.submit(null, BACKGROUND, "background", null, () -> null).get(5, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("foreground 1", "foreground 2", "background 1", "background 2"), order);
+    assertEquals(3, myExecutor.getStatistics().get("background").getRunCount());
+    assertEquals(2, myExecutor.getStatistics().get("foreground").getRunCount());
+  }
+
+  public void testPendingActionIsSuperseded() throws Exception {
+    myExecutor = new RenderExecutor(1, 1000);
+    Object owner = new Object();
+    CountDownLatch latch = new CountDownLatch(1);
+    myExecutor.submit(owner, FOREGROUND, "block", null, () -> {
+      latch.await();
+      return null;
+    });
+
+    ListenableFuture<String> first = myExecutor.submit(owner, FOREGROUND, "render", "render", () -> "first");
+    ListenableFuture<String> second = myExecutor.submit(owner, FOREGROUND, "render", "render", () -> "second");
+    // Same key, but another owner
+    ListenableFuture<String> other = myExecutor.submit(new Object(), FOREGROUND, "render", "render", () -> "other");
+    latch.countDown();
+
+    assertEquals("second", first.get(5, TimeUnit.SECONDS));
+    assertEquals("second", second.get(5, TimeUnit.SECONDS));
+    assertEquals("other", other.get(5, TimeUnit.SECONDS));
+    RenderExecutor.Statistics statistics = myExecutor.getStatistics().get("render");
+    assertEquals(2, statistics.getRunCount());
+    assertEquals(1, statistics.getSupersededCount());
+  }
+
+  public void testOwnerActionsRunOnTheSameThread() throws Exception {
+    myExecutor = new RenderExecutor(3, 1000);
+    Object[] owners = {new Object(), new Object(), new Object()};
+    List<Thread> threads = new ArrayList<>();
+    for (Object owner : owners) {
+      threads.add(myExecutor.submit(owner, FOREGROUND, "render", null, Thread::currentThread).get(5, TimeUnit.SECONDS));
+    }
+    // Each owner got its own thread
+    assertEquals(3, threads.stream().distinct().count());
+
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < owners.length; j++) {
+        assertSame(threads.get(j), myExecutor.submit(owners[j], BACKGROUND, "render", null, Thread::currentThread).get(5, TimeUnit.SECONDS));
+        assertSame(threads.get(j), myExecutor.getThread(owners[j]));
+      }
+    }
+  }
+}
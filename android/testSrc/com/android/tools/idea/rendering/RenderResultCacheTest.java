@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.intellij.psi.xml.XmlTag;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.android.SdkConstants.ANDROID_NS_NAME;
+import static com.android.SdkConstants.ANDROID_URI;
+import static java.util.Arrays.asList;
+import static org.mockito.Mockito.mock;
+
+public class RenderResultCacheTest extends TestCase {
+  private static final String PATH = "/res/layout/main.xml";
+
+  public void testKeyDependsOnContent() {
+    RenderResultCache.Key key = createKey(tag("LinearLayout", attribute("orientation", "vertical"), tag("TextView")));
+    assertNotNull(key);
+    assertEquals(key, createKey(tag("LinearLayout", attribute("orientation", "vertical"), tag("TextView"))));
+    assertFalse(key.equals(createKey(tag("LinearLayout", attribute("orientation", "horizontal"), tag("TextView")))));
+    assertFalse(key.equals(createKey(tag("LinearLayout", attribute("orientation", "vertical"), tag("Button")))));
+    // Same tags, in another tree
+    assertFalse(createKey(tag("FrameLayout", tag("FrameLayout"), tag("TextView")))
+                  .equals(createKey(tag("FrameLayout", tag("FrameLayout", tag("TextView"))))));
+  }
+
+  public void testKeyDependsOnRenderParameters() {
+    TagSnapshot root = tag("TextView");
+    RenderResultCache.Key key = RenderResultCache.Key.create(PATH, root, "Nexus 5|AppTheme", 1, 0);
+    assertNotNull(key);
+    assertEquals(key, RenderResultCache.Key.create(PATH, root, "Nexus 5|AppTheme", 1, 0));
+    assertFalse(key.equals(RenderResultCache.Key.create("/res/layout-land/main.xml", root, "Nexus 5|AppTheme", 1, 0)));
+    assertFalse(key.equals(RenderResultCache.Key.create(PATH, root, "Pixel|AppTheme", 1, 0)));
+    assertFalse(key.equals(RenderResultCache.Key.create(PATH, root, "Nexus 5|AppTheme", 2, 0)));
+    assertFalse(key.equals(key.withElapsedFrameTimeNanos(1)));
+    assertSame(key, key.withElapsedFrameTimeNanos(0));
+  }
+
+  public void testLayoutsShowingOtherLayoutsAreNotCached() {
+    assertNull(createKey(tag("LinearLayout", tag("include", attribute("layout", "@layout/toolbar")))));
+    assertNull(createKey(tag("ListView", attribute("listitem", "@layout/item"))));
+  }
+
+  public void testCookiesAreMappedToTheTagsOfTheSameContent() {
+    XmlTag oldRoot = mock(XmlTag.class);
+    XmlTag oldChild = mock(XmlTag.class);
+    TagSnapshot oldChildSnapshot = tag(oldChild, "TextView");
+    TagSnapshot oldRootSnapshot = tag(oldRoot, "LinearLayout", oldChildSnapshot);
+    TagSnapshot newChildSnapshot = tag(mock(XmlTag.class), "TextView");
+    TagSnapshot newRootSnapshot = tag(mock(XmlTag.class), "LinearLayout", newChildSnapshot);
+
+    Function<Object, Object> mapper = RenderResultCache.createCookieMapper(oldRootSnapshot, newRootSnapshot);
+    assertSame(newRootSnapshot, mapper.apply(oldRootSnapshot));
+    // Cookies are matched by tag, e.g. the snapshots created by the parser of the render
+    assertSame(newChildSnapshot, mapper.apply(tag(oldChild, "TextView")));
+    TagSnapshot synthetic = tag("FrameLayout");
+    assertSame(synthetic, mapper.apply(synthetic));
+    assertNull(mapper.apply(null));
+  }
+
+  @NotNull
+  private static AttributeSnapshot attribute(@NotNull String name, @NotNull String value) {
+    return new AttributeSnapshot(ANDROID_URI, ANDROID_NS_NAME, name, value);
+  }
+
+  @NotNull
+  private static TagSnapshot tag(@NotNull String name, @NotNull TagSnapshot... children) {
+    return TagSnapshot.createSyntheticTag(null, name, null, null, Collections.emptyList(), asList(children));
+  }
+
+  @NotNull
+  private static TagSnapshot tag(@NotNull XmlTag xmlTag, @NotNull String name, @NotNull TagSnapshot... children) {
+    return TagSnapshot.createSyntheticTag(xmlTag, name, null, null, Collections.emptyList(), asList(children));
+  }
+
+  @NotNull
+  private static TagSnapshot tag(@NotNull String name, @NotNull AttributeSnapshot attribute, @NotNull TagSnapshot... children) {
+    List<AttributeSnapshot> attributes = Collections.singletonList(attribute);
+    return TagSnapshot.createSyntheticTag(null, name, null, null, attributes, asList(children));
+  }
+
+  private static RenderResultCache.Key createKey(@NotNull TagSnapshot root) {
+    return RenderResultCache.Key.create(PATH, root, "", 0, 0);
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.sdk;
+
+import com.android.io.IAbstractFile;
+import com.android.io.IAbstractFolder;
+import com.android.io.IAbstractResource;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class FrameworkResourceSnapshotTest extends TestCase {
+  private static final String FRENCH_STRINGS = "<resources><string name=\"ok\">D'accord</string></resources>";
+
+  private File myResFolder;
+  private File mySnapshotFolder;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    File tempDir = FileUtil.createTempDirectory("framework-resources", null);
+    myResFolder = new File(tempDir, "res");
+    mySnapshotFolder = new File(tempDir, "snapshots");
+    createFile("values/strings.xml", "<resources><string name=\"ok\">OK</string></resources>");
+    createFile("values-fr/strings.xml", FRENCH_STRINGS);
+    createFile("layout/simple_list_item_1.xml", "<TextView android:id=\"@+id/text1\"/>");
+    createFile("drawable/btn_default.xml", "<selector/>");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myResFolder.getParentFile());
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testContentsAreReadFromSnapshot() throws Exception {
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    FrameworkResourceSnapshot snapshot = FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder);
+    assertNotNull(snapshot);
+
+    IAbstractFolder resFolder = snapshot.getResFolder();
+    assertEquals("<resources><string name=\"ok\">OK</string></resources>", read(resFolder.getFolder("values").getFile("strings.xml")));
+    IAbstractResource[] layouts = resFolder.getFolder("layout").listMembers();
+    assertEquals(1, layouts.length);
+    assertEquals("<TextView android:id=\"@+id/text1\"/>", read((IAbstractFile)layouts[0]));
+    assertFalse(snapshot.isStale());
+
+    // Locale folders are only part of the snapshots with locales
+    assertEquals(FRENCH_STRINGS, read(resFolder.getFolder("values-fr").getFile("strings.xml")));
+    assertTrue(snapshot.isStale());
+  }
+
+  public void testModifiedFilesAreReadFromDisk() throws Exception {
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, true, mySnapshotFolder));
+    // Rewritten in place with the same length, which doesn't modify its folder
+    File values = new File(myResFolder, "values");
+    long valuesStamp = values.lastModified();
+    File strings = createFile("values/strings.xml", "<resources><string name=\"ok\">Ok</string></resources>");
+    assertTrue(strings.setLastModified(strings.lastModified() + 10000));
+    assertTrue(values.setLastModified(valuesStamp));
+
+    FrameworkResourceSnapshot snapshot = FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder);
+    assertNotNull(snapshot);
+    IAbstractFolder resFolder = snapshot.getResFolder();
+    assertEquals(FRENCH_STRINGS, read(resFolder.getFolder("values-fr").getFile("strings.xml")));
+    assertFalse(snapshot.isStale());
+    assertEquals("<resources><string name=\"ok\">Ok</string></resources>", read(resFolder.getFolder("values").getFile("strings.xml")));
+    assertTrue(snapshot.isStale());
+  }
+
+  public void testSnapshotOfModifiedResFolderIsIgnored() throws Exception {
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    assertTrue(myResFolder.setLastModified(myResFolder.lastModified() + 10000));
+    assertNull(FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder));
+  }
+
+  public void testSnapshotIsWrittenToNewFile() throws Exception {
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    File previousFile = FrameworkResourceSnapshot.findSnapshotFile(mySnapshotFolder);
+    assertNotNull(previousFile);
+    FrameworkResourceSnapshot previous = FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder);
+    assertNotNull(previous);
+
+    // The previous snapshot is still mapped
+    createFile("values/strings.xml", "<resources/>");
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    File snapshotFile = FrameworkResourceSnapshot.findSnapshotFile(mySnapshotFolder);
+    assertNotNull(snapshotFile);
+    assertFalse(FileUtil.filesEqual(previousFile, snapshotFile));
+
+    FrameworkResourceSnapshot snapshot = FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder);
+    assertNotNull(snapshot);
+    assertEquals("<resources/>", read(snapshot.getResFolder().getFolder("values").getFile("strings.xml")));
+    assertFalse(snapshot.isStale());
+    IAbstractFile layout = previous.getResFolder().getFolder("layout").getFile("simple_list_item_1.xml");
+    assertEquals("<TextView android:id=\"@+id/text1\"/>", read(layout));
+  }
+
+  public void testSnapshotOfOtherFolderIsIgnored() throws Exception {
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    assertNull(FrameworkResourceSnapshot.load(mySnapshotFolder, new File(myResFolder.getParentFile(), "other")));
+    assertNull(FrameworkResourceSnapshot.load(new File(myResFolder.getParentFile(), "missing"), myResFolder));
+  }
+
+  public void testTruncatedSnapshotIsIgnored() throws Exception {
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    File snapshotFile = FrameworkResourceSnapshot.findSnapshotFile(mySnapshotFolder);
+    assertNotNull(snapshotFile);
+    byte[] bytes = FileUtil.loadFileBytes(snapshotFile);
+    FileUtil.writeToFile(snapshotFile, Arrays.copyOf(bytes, bytes.length - 1));
+    assertNull(FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder));
+  }
+
+  public void testSnapshotFoldersOfMissingResFoldersAreDeleted() throws Exception {
+    File root = mySnapshotFolder.getParentFile();
+    assertTrue(FrameworkResourceSnapshot.write(myResFolder, false, mySnapshotFolder));
+    File removedResFolder = new File(root, "removed");
+    FileUtil.copyDir(myResFolder, removedResFolder);
+    File removedSnapshotFolder = new File(root, "removed-snapshots");
+    assertTrue(FrameworkResourceSnapshot.write(removedResFolder, false, removedSnapshotFolder));
+    FileUtil.delete(removedResFolder);
+    // Being written
+    File emptySnapshotFolder = new File(root, "empty-snapshots");
+    assertTrue(emptySnapshotFolder.mkdirs());
+
+    FrameworkResourceSnapshot.deleteUnusedSnapshotFolders(root);
+    assertNotNull(FrameworkResourceSnapshot.load(mySnapshotFolder, myResFolder));
+    assertFalse(removedSnapshotFolder.exists());
+    assertTrue(emptySnapshotFolder.exists());
+    assertTrue(myResFolder.isDirectory());
+  }
+
+  @NotNull
+  private File createFile(@NotNull String path, @NotNull String content) throws Exception {
+    File file = new File(myResFolder, path);
+    FileUtil.writeToFile(file, content);
+    return file;
+  }
+
+  @NotNull
+  private static String read(@NotNull IAbstractFile file) throws Exception {
+    try (InputStream stream = file.getContents()) {
+      return new String(FileUtil.loadBytes(stream), UTF_8);
+    }
+  }
+}
@@ -58,7 +58,14 @@ public class SaveScreenshotAction extends AnAction {
     ScreenView currentScreenView = mySurface.getCurrentSceneView();
     if (currentScreenView != null) {
       RenderResult result = currentScreenView.getResult();
-      return result != null ? result.getRenderedImage().getCopy() : null;
+      if (result != null) {
+        try {
+          return result.getRenderedImage().getCopy();
+        }
+        finally {
+          result.dispose();
+        }
+      }
     }
     return null;
   }
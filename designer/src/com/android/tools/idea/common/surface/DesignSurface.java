@@ -106,7 +106,8 @@ public abstract class DesignSurface extends EditorDesignSurface implements Dispo
   private final JBSplitter myErrorPanelSplitter;
   private final Object myErrorQueueLock = new Object();
   private MergingUpdateQueue myErrorQueue;
-  private boolean myIsActive = false;
+  /** Read from the render threads, see {@link #isActive()} */
+  private volatile boolean myIsActive = false;
 
   public DesignSurface(@NotNull Project project, @NotNull Disposable parentDisposable) {
     super(new BorderLayout());
@@ -752,6 +753,13 @@ public abstract class DesignSurface extends EditorDesignSurface implements Dispo
 
   }
 
+  /**
+   * Returns whether the editor of this surface is active: the selected editor tab, or a visible preview.
+   */
+  public boolean isActive() {
+    return myIsActive;
+  }
+
   public void deactivate() {
     if (myIsActive && getCurrentSceneView() != null) {
       getCurrentSceneView().getModel().deactivate(this);
@@ -85,6 +85,9 @@ public class ThumbnailManager extends AndroidFacetScopedService {
       ListenableFuture<RenderResult> renderResult = task.render();
       renderResult.addListener(() -> {
         try {
+          // The cached image is handed to the callers, which keep painting it, so the cache takes over the reference of the result to it
+          // and never releases it: the image is only collected once nothing refers to it anymore. The reference of the task is released
+          // when the task is disposed below, so the image can't be reused for another render.
           ImagePool.Image image = renderResult.get().getRenderedImage();
           myImages.put(file, configuration, image);
           myRenderVersions.put(file, configuration, version);
@@ -94,6 +97,9 @@ public class ThumbnailManager extends AndroidFacetScopedService {
         catch (InterruptedException | ExecutionException e) {
           result.completeExceptionally(e);
         }
+        finally {
+          task.dispose();
+        }
       }, PooledThreadExecutor.INSTANCE);
     }
     else {
@@ -110,6 +116,7 @@ public class ThumbnailManager extends AndroidFacetScopedService {
     RenderTask task = renderService.createTask(file, configuration, logger, surface);
     if (task != null) {
       task.setDecorations(false);
+      task.setPriority(RenderExecutor.Priority.BACKGROUND).setRenderTrigger("NAV_THUMBNAIL");
     }
     return task;
   }
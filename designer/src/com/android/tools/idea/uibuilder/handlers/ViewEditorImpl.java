@@ -136,7 +136,12 @@ public class ViewEditorImpl extends ViewEditor {
       return Collections.emptyList();
     }
 
-    return result.getRootViews();
+    try {
+      return result.getRootViews();
+    }
+    finally {
+      result.dispose();
+    }
   }
 
   @Override
@@ -661,16 +661,26 @@ public class AppBarConfigurationDialog extends JDialog {
       task.dispose();
     }
 
-    if (result == null || !result.hasImage()) {
+    if (result == null) {
       return null;
     }
 
-    ImagePool.Image image = result.getRenderedImage();
-    if (image.getWidth() < MIN_WIDTH || image.getHeight() < MIN_HEIGHT) {
-      return null;
-    }
+    try {
+      if (!result.hasImage()) {
+        return null;
+      }
 
-    return result.getRenderedImage().getCopy();
+      ImagePool.Image image = result.getRenderedImage();
+      if (image.getWidth() < MIN_WIDTH || image.getHeight() < MIN_HEIGHT) {
+        return null;
+      }
+
+      return image.getCopy();
+    }
+    finally {
+      // The image is copied, so the pooled one can be reused
+      result.dispose();
+    }
   }
 
   private void updatePreviewImage(@Nullable BufferedImage image, @NotNull JBLabel view) {
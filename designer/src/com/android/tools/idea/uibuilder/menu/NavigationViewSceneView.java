@@ -55,21 +55,23 @@ public final class NavigationViewSceneView extends ScreenView {
       return size;
     }
 
-    List<ViewInfo> views = result.getRootViews();
-
-    if (views.isEmpty()) {
-      return size;
-    }
+    try {
+      List<ViewInfo> views = result.getRootViews();
 
-    Object view = views.get(0).getViewObject();
+      if (views.isEmpty()) {
+        return size;
+      }
 
-    try {
+      Object view = views.get(0).getViewObject();
       size.setSize(getWidth(view), getHeight(view));
       return size;
     }
     catch (ReflectiveOperationException exception) {
       throw new RuntimeException(exception);
     }
+    finally {
+      result.dispose();
+    }
   }
 
   private static int getWidth(@NotNull Object view) throws ReflectiveOperationException {
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import android.view.View;
+import com.android.ide.common.rendering.api.RenderSession;
+import com.android.ide.common.rendering.api.Result;
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.tools.idea.common.model.NlComponent;
+import com.android.tools.idea.common.model.NlModel;
+import com.android.tools.idea.rendering.AttributeSnapshot;
+import com.android.tools.idea.rendering.TagSnapshot;
+import com.android.tools.idea.uibuilder.model.LayoutParamsManager;
+import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static com.android.SdkConstants.*;
+
+/**
+ * The attribute edits of a layout since it was inflated, classified by what they require to be rendered: layout params and text edits
+ * require a new measure and layout of the views, drawing edits only require the views to be drawn again, and structural edits (added,
+ * removed or moved tags, ids, styles, includes, tools attributes...) require the layout to be inflated again.
+ * <p/>
+ * Non structural edits are applied to the views of the current render session with {@link #apply(RenderSession, NlModel)}.
+ */
+class LayoutEdits {
+  /**
+   * The kinds of edits, by increasing cost of rendering them
+   */
+  enum Kind {
+    DRAWING,
+    TEXT,
+    LAYOUT_PARAMS,
+    STRUCTURE
+  }
+
+  /**
+   * Attributes which are not part of the layout params and don't change the size of the views
+   */
+  private static final Set<String> DRAWING_ATTRIBUTES = ImmutableSet.of(
+    "alpha", "rotation", "rotationX", "rotationY", "scaleX", "scaleY", "translationX", "translationY", "translationZ", ATTR_ELEVATION,
+    ATTR_TEXT_COLOR, "textColorHint", ATTR_TINT, ATTR_BACKGROUND_TINT);
+
+  /**
+   * Attributes which change the text of the views, and so their size when they wrap their content
+   */
+  private static final Set<String> TEXT_ATTRIBUTES = ImmutableSet.of(
+    ATTR_TEXT, ATTR_HINT, ATTR_TEXT_SIZE, ATTR_TEXT_STYLE, ATTR_FONT_FAMILY, ATTR_TYPEFACE);
+
+  /**
+   * Default values of the drawing attributes which can be set directly on the {@link View} when layoutlib doesn't implement
+   * {@link RenderSession#setProperty(Object, String, String)}
+   */
+  private static final Map<String, Float> VIEW_FLOAT_PROPERTY_DEFAULTS = ImmutableMap.<String, Float>builder()
+    .put("alpha", 1f)
+    .put("rotation", 0f)
+    .put("rotationX", 0f)
+    .put("rotationY", 0f)
+    .put("scaleX", 1f)
+    .put("scaleY", 1f)
+    .build();
+
+  private static final LayoutEdits STRUCTURE_EDITS = new LayoutEdits(Kind.STRUCTURE, Collections.emptyList(), Collections.emptyMap());
+
+  @NotNull private final Kind myKind;
+  @NotNull private final List<Edit> myEdits;
+  @NotNull private final Map<TagSnapshot, TagSnapshot> myUpdatedSnapshots;
+
+  private LayoutEdits(@NotNull Kind kind, @NotNull List<Edit> edits, @NotNull Map<TagSnapshot, TagSnapshot> updatedSnapshots) {
+    myKind = kind;
+    myEdits = edits;
+    myUpdatedSnapshots = updatedSnapshots;
+  }
+
+  /**
+   * Computes the edits between the components of {@code model}, as they were last rendered, and the current content of the layout.
+   * Must be called with read access.
+   *
+   * @param root the snapshot of the current root tag of the layout
+   */
+  @NotNull
+  static LayoutEdits compute(@NotNull NlModel model, @NotNull TagSnapshot root) {
+    List<NlComponent> components = model.getComponents();
+    if (components.size() != 1) {
+      return STRUCTURE_EDITS;
+    }
+    List<Edit> edits = new ArrayList<>();
+    Map<TagSnapshot, TagSnapshot> updatedSnapshots = new IdentityHashMap<>();
+    if (!computeEdits(components.get(0), root, edits, updatedSnapshots)) {
+      return STRUCTURE_EDITS;
+    }
+    Kind kind = edits.stream().map(edit -> edit.myKind).max(Comparator.naturalOrder()).orElse(Kind.DRAWING);
+    return new LayoutEdits(kind, edits, updatedSnapshots);
+  }
+
+  /**
+   * Adds the edits of the tree of {@code component} to {@code edits}, and the snapshots of the edited views to {@code updatedSnapshots}.
+   *
+   * @return false if the tree was structurally changed
+   */
+  private static boolean computeEdits(@NotNull NlComponent component,
+                                      @NotNull TagSnapshot snapshot,
+                                      @NotNull List<Edit> edits,
+                                      @NotNull Map<TagSnapshot, TagSnapshot> updatedSnapshots) {
+    TagSnapshot previous = component.getSnapshot();
+    List<NlComponent> children = component.getChildren();
+    if (previous == null ||
+        component.getTag() != snapshot.tag ||
+        !previous.tagName.equals(snapshot.tagName) ||
+        children.size() != snapshot.children.size()) {
+      return false;
+    }
+
+    Map<String, AttributeSnapshot> previousAttributes = new HashMap<>();
+    for (AttributeSnapshot attribute : previous.attributes) {
+      previousAttributes.put(getKey(attribute), attribute);
+    }
+    List<Edit> componentEdits = new ArrayList<>();
+    for (AttributeSnapshot attribute : snapshot.attributes) {
+      AttributeSnapshot previousAttribute = previousAttributes.remove(getKey(attribute));
+      if (previousAttribute == null || !StringUtil.equals(previousAttribute.value, attribute.value)) {
+        componentEdits.add(new Edit(component, attribute.namespace, attribute.name, attribute.value));
+      }
+    }
+    // Removed attributes
+    for (AttributeSnapshot attribute : previousAttributes.values()) {
+      componentEdits.add(new Edit(component, attribute.namespace, attribute.name, null));
+    }
+
+    if (!componentEdits.isEmpty()) {
+      ViewInfo viewInfo = NlComponentHelperKt.getViewInfo(component);
+      if (viewInfo == null || viewInfo.getViewObject() == null || !(viewInfo.getCookie() instanceof TagSnapshot)) {
+        return false;
+      }
+      if (componentEdits.stream().anyMatch(edit -> edit.myKind == Kind.STRUCTURE)) {
+        return false;
+      }
+      edits.addAll(componentEdits);
+      updatedSnapshots.put((TagSnapshot)viewInfo.getCookie(), snapshot);
+    }
+
+    for (int i = 0; i < children.size(); i++) {
+      if (!computeEdits(children.get(i), snapshot.children.get(i), edits, updatedSnapshots)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static String getKey(@NotNull AttributeSnapshot attribute) {
+    return attribute.namespace + ':' + attribute.name;
+  }
+
+  /**
+   * Returns the kind of edit of setting the attribute {@code name} to {@code value}.
+   */
+  @NotNull
+  static Kind classify(@Nullable String namespace, @NotNull String name, @Nullable String value) {
+    if (value != null && value.startsWith(LAYOUT_RESOURCE_PREFIX)) {
+      // The content of other layouts is only read when inflating
+      return Kind.STRUCTURE;
+    }
+    if (!ANDROID_URI.equals(namespace) && !AUTO_URI.equals(namespace)) {
+      // Tools attributes, namespace declarations, style, class, include layout...
+      return Kind.STRUCTURE;
+    }
+    if (name.startsWith(ATTR_LAYOUT_RESOURCE_PREFIX)) {
+      return Kind.LAYOUT_PARAMS;
+    }
+    if (ANDROID_URI.equals(namespace)) {
+      if (DRAWING_ATTRIBUTES.contains(name)) {
+        return Kind.DRAWING;
+      }
+      if (TEXT_ATTRIBUTES.contains(name)) {
+        return Kind.TEXT;
+      }
+    }
+    return Kind.STRUCTURE;
+  }
+
+  @NotNull
+  Kind getKind() {
+    return myKind;
+  }
+
+  boolean isEmpty() {
+    return myEdits.isEmpty();
+  }
+
+  /**
+   * Returns the current snapshots of the tags of the edited views, by the snapshot the views were inflated from.
+   */
+  @NotNull
+  Map<TagSnapshot, TagSnapshot> getUpdatedSnapshots() {
+    return myUpdatedSnapshots;
+  }
+
+  /**
+   * Applies the edits to the views of {@code session}. Must be called on the render thread.
+   *
+   * @return false if an edit could not be applied, e.g. because the view of a component isn't one of the views of {@code session}, in
+   * which case the layout has to be inflated again.
+   */
+  boolean apply(@NotNull RenderSession session, @NotNull NlModel model) {
+    assert myKind != Kind.STRUCTURE;
+    // The components may have been given the views of another session, e.g. through a cached render result
+    Set<Object> sessionViews = Collections.newSetFromMap(new IdentityHashMap<>());
+    addViewObjects(session.getRootViews(), sessionViews);
+    for (Edit edit : myEdits) {
+      if (!edit.apply(session, model, sessionViews)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addViewObjects(@Nullable List<ViewInfo> viewInfos, @NotNull Set<Object> viewObjects) {
+    if (viewInfos == null) {
+      return;
+    }
+    for (ViewInfo viewInfo : viewInfos) {
+      if (viewInfo.getViewObject() != null) {
+        viewObjects.add(viewInfo.getViewObject());
+      }
+      addViewObjects(viewInfo.getChildren(), viewObjects);
+    }
+  }
+
+  private static final class Edit {
+    @NotNull private final NlComponent myComponent;
+    @NotNull private final String myName;
+    @Nullable private final String myValue;
+    @NotNull private final Kind myKind;
+
+    private Edit(@NotNull NlComponent component, @Nullable String namespace, @NotNull String name, @Nullable String value) {
+      myComponent = component;
+      myName = name;
+      myValue = value;
+      myKind = classify(namespace, name, value);
+    }
+
+    private boolean apply(@NotNull RenderSession session, @NotNull NlModel model, @NotNull Set<Object> sessionViews) {
+      ViewInfo viewInfo = NlComponentHelperKt.getViewInfo(myComponent);
+      Object viewObject = viewInfo != null ? viewInfo.getViewObject() : null;
+      if (viewObject == null || !sessionViews.contains(viewObject)) {
+        return false;
+      }
+
+      if (myKind == Kind.LAYOUT_PARAMS) {
+        // Same as the live updates of AttributesTransaction
+        Object layoutParams = viewInfo.getLayoutParamsObject();
+        if (layoutParams == null ||
+            !LayoutParamsManager.setAttribute(layoutParams, StringUtil.trimStart(myName, ATTR_LAYOUT_RESOURCE_PREFIX), myValue, model)) {
+          return false;
+        }
+        View view = (View)viewObject;
+        view.setLayoutParams(view.getLayoutParams());
+        return true;
+      }
+
+      Result result = session.setProperty(viewObject, myName, myValue);
+      if (result != null && result.isSuccess()) {
+        return true;
+      }
+      return setViewFloatProperty((View)viewObject);
+    }
+
+    /**
+     * Sets the unitless float properties directly on the view.
+     */
+    private boolean setViewFloatProperty(@NotNull View view) {
+      Float defaultValue = VIEW_FLOAT_PROPERTY_DEFAULTS.get(myName);
+      if (defaultValue == null) {
+        return false;
+      }
+      float value;
+      try {
+        value = myValue != null ? Float.parseFloat(myValue) : defaultValue;
+      }
+      catch (NumberFormatException e) {
+        // Resource references, data binding expressions...
+        return false;
+      }
+      switch (myName) {
+        case "alpha":
+          view.setAlpha(value);
+          break;
+        case "rotation":
+          view.setRotation(value);
+          break;
+        case "rotationX":
+          view.setRotationX(value);
+          break;
+        case "rotationY":
+          view.setRotationY(value);
+          break;
+        case "scaleX":
+          view.setScaleX(value);
+          break;
+        case "scaleY":
+          view.setScaleY(value);
+          break;
+        default:
+          return false;
+      }
+      return true;
+    }
+  }
+}
@@ -45,6 +45,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.xml.XmlTag;
@@ -56,6 +57,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.annotation.concurrent.GuardedBy;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import java.awt.*;
 import java.util.*;
@@ -89,6 +91,12 @@ public class LayoutlibSceneManager extends SceneManager {
   private RenderTask myRenderTask;
   private static final Object RENDERING_LOCK = new Object();
   private ResourceNotificationManager.ResourceVersion myRenderedVersion;
+  /**
+   * The current snapshots of the tags edited since the layout was inflated, by the snapshots the views were inflated from. See
+   * {@link #updateSession()}.
+   */
+  @GuardedBy("RENDERING_LOCK")
+  private final Map<TagSnapshot, TagSnapshot> myUpdatedSnapshots = new IdentityHashMap<>();
   private final ReentrantReadWriteLock myRenderResultLock = new ReentrantReadWriteLock();
   @GuardedBy("myRenderResultLock")
   private RenderResult myRenderResult;
@@ -100,6 +108,11 @@ public class LayoutlibSceneManager extends SceneManager {
   @AndroidCoordinate private static final int VISUAL_EMPTY_COMPONENT_SIZE = 1;
   private long myElapsedFrameTimeMs = -1;
   private final LinkedList<Runnable> myRenderCallbacks = new LinkedList<>();
+  /**
+   * The priority of the render actions of this scene. It depends on the state of the surface, so it is computed on the dispatch thread
+   * when a render or a model update is requested, and read by the render threads.
+   */
+  @NotNull private volatile RenderExecutor.Priority myRenderPriority = RenderExecutor.Priority.FOREGROUND;
 
   /**
    * Logs a render action.
@@ -201,7 +214,7 @@ public class LayoutlibSceneManager extends SceneManager {
       }
       myRenderResultLock.writeLock().lock();
       try {
-        myRenderResult = null;
+        replaceRenderResult(null);
       }
       finally {
         myRenderResultLock.writeLock().unlock();
@@ -361,6 +374,7 @@ public class LayoutlibSceneManager extends SceneManager {
   }
 
   private void requestRender(@Nullable Runnable callback, @Nullable LayoutEditorRenderResult.Trigger trigger) {
+    updateRenderPriority();
     if (callback != null) {
       synchronized (myRenderCallbacks) {
         myRenderCallbacks.add(callback);
@@ -418,6 +432,7 @@ public class LayoutlibSceneManager extends SceneManager {
    */
   protected void requestModelUpdate() {
     ApplicationManager.getApplication().assertIsDispatchThread();
+    updateRenderPriority();
 
     synchronized (PROGRESS_LOCK) {
       if (myCurrentIndicator == null) {
@@ -509,11 +524,27 @@ public class LayoutlibSceneManager extends SceneManager {
     }
   }
 
+  /**
+   * Replaces the current render result, and releases the image of the previous one so that the render task can reuse it once nothing
+   * else refers to it. Must be called with the write lock of {@link #myRenderResultLock}.
+   */
+  private void replaceRenderResult(@Nullable RenderResult result) {
+    RenderResult previous = myRenderResult;
+    myRenderResult = result;
+    if (previous != null && previous != result) {
+      previous.dispose();
+    }
+  }
+
+  /**
+   * Returns the last render result, retained for the caller as the next render releases it. The caller has to {@link RenderResult#dispose()}
+   * it once it doesn't use it, or its image, anymore.
+   */
   @Nullable
   public RenderResult getRenderResult() {
     myRenderResultLock.readLock().lock();
     try {
-      return myRenderResult;
+      return myRenderResult != null && myRenderResult.retain() ? myRenderResult : null;
     }
     finally {
       myRenderResultLock.readLock().unlock();
@@ -540,7 +571,8 @@ public class LayoutlibSceneManager extends SceneManager {
       updateHierarchy(Collections.emptyList(), getModel());
     }
     else {
-      updateHierarchy(getRootViews(result), getModel());
+      XmlTag rootTag = AndroidPsiUtils.getRootTagSafely(getModel().getFile());
+      updateHierarchy(rootTag, getRootViews(result), getModel(), new IdentityHashMap<>(myUpdatedSnapshots));
     }
     getModel().checkStructure();
   }
@@ -552,7 +584,16 @@ public class LayoutlibSceneManager extends SceneManager {
 
   @VisibleForTesting
   public static void updateHierarchy(@NotNull XmlTag rootTag, @NotNull List<ViewInfo> rootViews, @NotNull NlModel model) {
-    model.syncWithPsi(rootTag, rootViews.stream().map(ViewInfoTagSnapshotNode::new).collect(Collectors.toList()));
+    updateHierarchy(rootTag, rootViews, model, Collections.emptyMap());
+  }
+
+  private static void updateHierarchy(@NotNull XmlTag rootTag,
+                                      @NotNull List<ViewInfo> rootViews,
+                                      @NotNull NlModel model,
+                                      @NotNull Map<TagSnapshot, TagSnapshot> updatedSnapshots) {
+    model.syncWithPsi(rootTag, rootViews.stream()
+      .map(view -> new ViewInfoTagSnapshotNode(view, updatedSnapshots))
+      .collect(Collectors.toList()));
     updateBounds(rootViews, model);
   }
 
@@ -598,9 +639,11 @@ public class LayoutlibSceneManager extends SceneManager {
       if (myRenderTask != null && !myRenderTask.isDisposed()) {
         myRenderTask.dispose();
       }
+      myUpdatedSnapshots.clear();
       myRenderTask = renderService.createTask(getModel().getFile(), configuration, logger, getDesignSurface());
       setupRenderTask(myRenderTask);
       if (myRenderTask != null) {
+        myRenderTask.setPriority(myRenderPriority);
         myRenderTask.getLayoutlibCallback().setAdaptiveIconMaskPath(((NlDesignSurface)getDesignSurface()).getAdaptiveIconShape().getPathDescription());
         if (!isRenderViewPort()) {
           myRenderTask.useDesignMode(getModel().getFile());
@@ -619,7 +662,7 @@ public class LayoutlibSceneManager extends SceneManager {
       updateHierarchy(result);
       myRenderResultLock.writeLock().lock();
       try {
-        myRenderResult = result;
+        replaceRenderResult(result);
       }
       finally {
         myRenderResultLock.writeLock().unlock();
@@ -638,10 +681,74 @@ public class LayoutlibSceneManager extends SceneManager {
    * {@link ModelListener#modelDerivedDataChanged(NlModel)}.
    */
   protected void updateModel() {
-    inflate(true);
+    if (!updateSession()) {
+      inflate(true);
+    }
     getModel().notifyListenersModelUpdateComplete();
   }
 
+  /**
+   * Applies the attribute edits of the layout since it was inflated to the views of the current render session, when they don't
+   * change the structure of the layout, and updates the view hierarchy. Layout params and text edits measure the views again, edits
+   * which only change how the views are drawn don't.
+   *
+   * @return false if the layout has to be inflated again instead: when it wasn't inflated yet, when resources or the configuration
+   * changed, or when the edits are structural or could not be applied
+   */
+  private boolean updateSession() {
+    NlModel model = getModel();
+    if (model.getLastChangeType() != NlModel.ChangeType.EDIT || model.getProject().isDisposed()) {
+      return false;
+    }
+    ResourceNotificationManager.ResourceVersion version = ResourceNotificationManager.getInstance(model.getProject())
+      .getCurrentVersion(model.getFacet(), model.getFile(), model.getConfiguration());
+    LayoutEdits edits = ApplicationManager.getApplication().runReadAction((Computable<LayoutEdits>)() -> {
+      XmlTag rootTag = AndroidPsiUtils.getRootTagSafely(model.getFile());
+      return rootTag != null ? LayoutEdits.compute(model, TagSnapshot.createTagSnapshot(rootTag, null)) : null;
+    });
+    if (edits == null || edits.getKind() == LayoutEdits.Kind.STRUCTURE) {
+      return false;
+    }
+
+    synchronized (RENDERING_LOCK) {
+      if (myRenderTask == null || myRenderedVersion == null || !myRenderedVersion.differsOnlyInFile(version)) {
+        return false;
+      }
+      myRenderedVersion = version;
+      if (edits.isEmpty()) {
+        return true;
+      }
+      if (!myRenderTask.updateSession(session -> edits.apply(session, model))) {
+        return false;
+      }
+      myUpdatedSnapshots.putAll(edits.getUpdatedSnapshots());
+
+      RenderResult result;
+      if (edits.getKind() == LayoutEdits.Kind.DRAWING) {
+        result = getRenderResult();
+      }
+      else {
+        try {
+          result = myRenderTask.layout().get();
+        }
+        catch (InterruptedException | ExecutionException e) {
+          Logger.getInstance(NlModel.class).warn("Unable to run layout()", e);
+          return false;
+        }
+      }
+      if (result == null) {
+        return false;
+      }
+      try {
+        updateHierarchy(result);
+      }
+      finally {
+        result.dispose();
+      }
+      return true;
+    }
+  }
+
   /**
    * Renders the current model synchronously. Once the render is complete, the listeners {@link ModelListener#modelRendered(NlModel)}
    * method will be called.
@@ -702,6 +809,8 @@ public class LayoutlibSceneManager extends SceneManager {
         if (myElapsedFrameTimeMs != -1) {
           myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(myElapsedFrameTimeMs));
         }
+        myRenderTask.setPriority(myRenderPriority)
+          .setRenderTrigger(trigger != null ? trigger.name() : RenderExecutor.DEFAULT_TRIGGER);
         RenderResult result = Futures.getUnchecked(myRenderTask.render());
         // When the layout was inflated in this same call, we do not have to update the hierarchy again
         if (result != null && !inflated) {
@@ -709,7 +818,7 @@ public class LayoutlibSceneManager extends SceneManager {
         }
         myRenderResultLock.writeLock().lock();
         try {
-          myRenderResult = result;
+          replaceRenderResult(result);
           // Downgrade the write lock to read lock
           myRenderResultLock.readLock().lock();
         }
@@ -730,6 +839,28 @@ public class LayoutlibSceneManager extends SceneManager {
     getModel().notifyListenersRenderComplete();
   }
 
+  /**
+   * Updates the priority of the render actions of this scene from the dispatch thread, as it reads the state of the surface. The queued
+   * renders run after {@link #RENDER_DELAY_MS}, so a request made from another thread is usually updated before its render starts.
+   */
+  private void updateRenderPriority() {
+    UIUtil.invokeLaterIfNeeded(() -> myRenderPriority = computeRenderPriority());
+  }
+
+  /**
+   * Returns the priority of the render actions of this scene. The surfaces the user is looking at, the active ones of the focused window,
+   * render before the surfaces of the background editor tabs, of the hidden previews and of the other windows.
+   */
+  @NotNull
+  private RenderExecutor.Priority computeRenderPriority() {
+    DesignSurface surface = getDesignSurface();
+    if (!surface.isActive() || !surface.isShowing()) {
+      return RenderExecutor.Priority.BACKGROUND;
+    }
+    Window window = SwingUtilities.getWindowAncestor(surface);
+    return window != null && window.isFocused() ? RenderExecutor.Priority.FOREGROUND : RenderExecutor.Priority.BACKGROUND;
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
@@ -779,22 +910,27 @@ public class LayoutlibSceneManager extends SceneManager {
   private static class ViewInfoTagSnapshotNode implements NlModel.TagSnapshotTreeNode {
 
     private final ViewInfo myViewInfo;
+    /** The snapshots of the tags edited since the views were inflated, see {@link #updateSession()} */
+    private final Map<TagSnapshot, TagSnapshot> myUpdatedSnapshots;
 
-    public ViewInfoTagSnapshotNode(ViewInfo info) {
+    public ViewInfoTagSnapshotNode(ViewInfo info, Map<TagSnapshot, TagSnapshot> updatedSnapshots) {
       myViewInfo = info;
+      myUpdatedSnapshots = updatedSnapshots;
     }
 
     @Nullable
     @Override
     public TagSnapshot getTagSnapshot() {
       Object result = myViewInfo.getCookie();
-      return result instanceof TagSnapshot ? (TagSnapshot)result : null;
+      return result instanceof TagSnapshot ? myUpdatedSnapshots.getOrDefault(result, (TagSnapshot)result) : null;
     }
 
     @NotNull
     @Override
     public List<NlModel.TagSnapshotTreeNode> getChildren() {
-      return myViewInfo.getChildren().stream().map(ViewInfoTagSnapshotNode::new).collect(Collectors.toList());
+      return myViewInfo.getChildren().stream()
+        .map(child -> new ViewInfoTagSnapshotNode(child, myUpdatedSnapshots))
+        .collect(Collectors.toList());
     }
   }
 
@@ -96,7 +96,14 @@ final class ToggleStateAction extends ToggleAction {
       return null;
     }
 
-    List<ViewInfo> views = result.getRootViews();
+    List<ViewInfo> views;
+    try {
+      views = result.getRootViews();
+    }
+    finally {
+      // Only the views are used, not the image
+      result.dispose();
+    }
 
     if (views.isEmpty()) {
       return null;
@@ -623,16 +623,23 @@ public class NlDesignSurface extends DesignSurface {
       RenderResult result = myScreenView.getResult();
 
       myPaintedFrame = false;
-      if (myDeviceFrames && result != null && result.hasImage()) {
-        Configuration configuration = myScreenView.getConfiguration();
-        Device device = configuration.getDevice();
-        State deviceState = configuration.getDeviceState();
-        DeviceArtPainter painter = DeviceArtPainter.getInstance();
-        if (device != null && painter.hasDeviceFrame(device) && deviceState != null) {
-          myPaintedFrame = true;
-          g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f));
-          painter.paintFrame(g2d, device, deviceState.getOrientation(), true, myScreenX, myScreenY,
-                             (int)(myScale * result.getRenderedImage().getHeight()));
+      if (result != null) {
+        try {
+          if (myDeviceFrames && result.hasImage()) {
+            Configuration configuration = myScreenView.getConfiguration();
+            Device device = configuration.getDevice();
+            State deviceState = configuration.getDeviceState();
+            DeviceArtPainter painter = DeviceArtPainter.getInstance();
+            if (device != null && painter.hasDeviceFrame(device) && deviceState != null) {
+              myPaintedFrame = true;
+              g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f));
+              painter.paintFrame(g2d, device, deviceState.getOrientation(), true, myScreenX, myScreenY,
+                                 (int)(myScale * result.getRenderedImage().getHeight()));
+            }
+          }
+        }
+        finally {
+          result.dispose();
         }
       }
 
@@ -754,12 +761,17 @@ public class NlDesignSurface extends DesignSurface {
           return;
         }
 
-        BuildMode gradleBuildMode = BuildSettings.getInstance(getProject()).getBuildMode();
-        RenderErrorModel model = gradleBuildMode != null && result.getLogger().hasErrors()
-                                 ? RenderErrorModel.STILL_BUILDING_ERROR_MODEL
-                                 : RenderErrorModelFactory
-                                   .createErrorModel(result, DataManager.getInstance().getDataContext(getIssuePanel()));
-        getIssueModel().setRenderErrorModel(model);
+        try {
+          BuildMode gradleBuildMode = BuildSettings.getInstance(getProject()).getBuildMode();
+          RenderErrorModel model = gradleBuildMode != null && result.getLogger().hasErrors()
+                                   ? RenderErrorModel.STILL_BUILDING_ERROR_MODEL
+                                   : RenderErrorModelFactory
+                                     .createErrorModel(result, DataManager.getInstance().getDataContext(getIssuePanel()));
+          getIssueModel().setRenderErrorModel(model);
+        }
+        finally {
+          result.dispose();
+        }
       }
 
       @Override
@@ -779,7 +791,13 @@ public class NlDesignSurface extends DesignSurface {
 
   @Override
   protected boolean useSmallProgressIcon() {
-    return getCurrentSceneView() != null && getCurrentSceneView().getResult() != null;
+    ScreenView screenView = getCurrentSceneView();
+    RenderResult result = screenView != null ? screenView.getResult() : null;
+    if (result == null) {
+      return false;
+    }
+    result.dispose();
+    return true;
   }
 
   @Override
@@ -686,7 +686,12 @@ public class PanZoomPanel extends JPanel
       if (builder instanceof LayoutlibSceneManager) {
         RenderResult renderResult = ((LayoutlibSceneManager)builder).getRenderResult();
         if (renderResult != null) {
-          renderResult.getRenderedImage().drawImageTo(gc, x, y, scaledDeviceWidth, scaledDeviceHeight);
+          try {
+            renderResult.getRenderedImage().drawImageTo(gc, x, y, scaledDeviceWidth, scaledDeviceHeight);
+          }
+          finally {
+            renderResult.dispose();
+          }
         }
       }
     }
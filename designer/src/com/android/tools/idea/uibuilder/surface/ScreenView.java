@@ -118,6 +118,10 @@ public class ScreenView extends SceneView {
     return getScreenViewType() == ScreenViewType.BLUEPRINT ? BLUEPRINT_BG_COLOR : Color.WHITE;
   }
 
+  /**
+   * Returns the last render result of the scene manager, which the caller has to {@link RenderResult#dispose()} once it doesn't use it
+   * anymore. See {@link LayoutlibSceneManager#getRenderResult()}.
+   */
   @Nullable
   public RenderResult getResult() {
     return getSceneManager().getRenderResult();
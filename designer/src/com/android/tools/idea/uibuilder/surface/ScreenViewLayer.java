@@ -21,13 +21,13 @@ import com.android.tools.idea.common.surface.Layer;
 import com.android.tools.idea.rendering.ImagePool;
 import com.android.tools.adtui.ImageUtils;
 import com.android.tools.idea.rendering.RenderResult;
-import com.android.tools.idea.common.model.NlModel;
 import com.google.common.collect.ImmutableMap;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import javax.annotation.concurrent.GuardedBy;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -57,9 +57,11 @@ public class ScreenViewLayer extends Layer {
   private final ScreenView myScreenView;
 
   /**
-   * The source image we scaled from
+   * The source image we scaled from. The layer holds a reference to it, so that it is not reused for another render while painted.
    */
+  @GuardedBy("myImageLock")
   @Nullable private ImagePool.Image myImage;
+  private final Object myImageLock = new Object();
   /**
    * Cached scaled image
    */
@@ -118,10 +120,21 @@ public class ScreenViewLayer extends Layer {
     }
 
     RenderResult renderResult = myScreenView.getResult();
-    if (renderResultHasChanged(renderResult)) {
-      myLastRenderResult = renderResult;
-      myImage = renderResult.getRenderedImage();
-      myCachedScale = -1; // reset the scale to be sure that a new scaled image is requested when the result has changed
+    if (renderResult != null) {
+      try {
+        if (renderResultHasChanged(renderResult)) {
+          // The layer holds its own reference to the image, as the result is released by the next render
+          ImagePool.Image image = renderResult.getRenderedImage();
+          if (image.retain()) {
+            myLastRenderResult = renderResult;
+            setImage(image);
+            myCachedScale = -1; // reset the scale to be sure that a new scaled image is requested when the result has changed
+          }
+        }
+      }
+      finally {
+        renderResult.dispose();
+      }
     }
 
     if (myImage == null) {
@@ -176,7 +189,7 @@ public class ScreenViewLayer extends Layer {
   /**
    * Check whether the provided render result is the same than the previous one
    *
-   * @param renderResult The renderResult from {@link NlModel#getRenderResult()}
+   * @param renderResult The renderResult from {@link ScreenView#getResult()}
    * @return false if renderResult is null or the same as the previous one or if no image is available, true otherwise
    */
   private boolean renderResultHasChanged(@Nullable RenderResult renderResult) {
@@ -205,10 +218,23 @@ public class ScreenViewLayer extends Layer {
     myScheduledFuture = myScheduledExecutorService.schedule(myRescaleRunnable, REQUEST_SCALE_DEBOUNCE_TIME_IN_MS, TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * Replaces the current image with {@code image}, which must have been retained, and releases the previous one.
+   */
+  private void setImage(@Nullable ImagePool.Image image) {
+    synchronized (myImageLock) {
+      if (myImage != null) {
+        myImage.dispose();
+      }
+      myImage = image;
+    }
+  }
+
   @Override
   public void dispose() {
     super.dispose();
     myScheduledExecutorService.shutdown();
+    setImage(null);
   }
 
   /**
@@ -226,15 +252,20 @@ public class ScreenViewLayer extends Layer {
 
     private void scaleOriginalImage() {
       myScaledDownImage = null;
-      ImagePool.Image image = myImage;
-      if (image == null) {
+      BufferedImage imageCopy;
+      synchronized (myImageLock) {
+        if (myImage == null) {
+          return;
+        }
+        imageCopy = myImage.getCopy();
+      }
+      if (imageCopy == null) {
         return;
       }
       if (UIUtil.isRetina() && ImageUtils.supportsRetina()) {
-        myScaledDownImage = getRetinaScaledImage(image, myCachedScale, false);
+        myScaledDownImage = getRetinaScaledImage(imageCopy, myCachedScale, false);
       }
       if (myScaledDownImage == null) {
-        BufferedImage imageCopy = image.getCopy();
         myScaledDownImage = ImageUtils.scale(imageCopy, myCachedScale);
       }
       myIsRescaling = false;
@@ -244,18 +275,13 @@ public class ScreenViewLayer extends Layer {
   }
 
   @Nullable
-  private static BufferedImage getRetinaScaledImage(@NotNull ImagePool.Image pooledImage, double scale, boolean fastScaling) {
+  private static BufferedImage getRetinaScaledImage(@NotNull BufferedImage original, double scale, boolean fastScaling) {
     if (scale > 1.01) {
       // When scaling up significantly, use normal painting logic; no need to pixel double into a
       // double res image buffer!
       return null;
     }
 
-    BufferedImage original = pooledImage.getCopy();
-    if (original == null) {
-      return null;
-    }
-
     // No scaling if very close to 1.0 (we check for 0.5 since we're doubling the output)
     if (Math.abs(scale - 0.5) > 0.001) {
       double retinaScale = 2 * scale;
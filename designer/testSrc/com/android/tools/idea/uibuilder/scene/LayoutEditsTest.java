@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.common.model.NlComponent;
+import com.android.tools.idea.common.model.NlModel;
+import com.android.tools.idea.rendering.TagSnapshot;
+import com.android.tools.idea.uibuilder.LayoutTestCase;
+import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+import static com.android.SdkConstants.*;
+import static com.android.tools.idea.uibuilder.scene.LayoutEdits.Kind.*;
+import static com.android.tools.idea.uibuilder.scene.LayoutEdits.classify;
+
+public class LayoutEditsTest extends LayoutTestCase {
+  public void testClassify() {
+    assertEquals(LAYOUT_PARAMS, classify(ANDROID_URI, ATTR_LAYOUT_WIDTH, "20dp"));
+    assertEquals(LAYOUT_PARAMS, classify(ANDROID_URI, ATTR_LAYOUT_MARGIN_START, null));
+    assertEquals(LAYOUT_PARAMS, classify(AUTO_URI, "layout_constraintLeft_toLeftOf", "@+id/button"));
+    assertEquals(TEXT, classify(ANDROID_URI, ATTR_TEXT, "Hello"));
+    assertEquals(TEXT, classify(ANDROID_URI, ATTR_TEXT_SIZE, "@dimen/large"));
+    assertEquals(DRAWING, classify(ANDROID_URI, "alpha", "0.5"));
+    assertEquals(DRAWING, classify(ANDROID_URI, ATTR_TEXT_COLOR, "#ff0000"));
+  }
+
+  public void testClassifyStructure() {
+    assertEquals(STRUCTURE, classify(ANDROID_URI, ATTR_ID, "@+id/button"));
+    assertEquals(STRUCTURE, classify(ANDROID_URI, ATTR_PADDING, "8dp"));
+    assertEquals(STRUCTURE, classify(null, ATTR_STYLE, "@style/Button"));
+    assertEquals(STRUCTURE, classify(null, ATTR_LAYOUT, "@layout/toolbar"));
+    assertEquals(STRUCTURE, classify(TOOLS_URI, ATTR_TEXT, "Preview"));
+    assertEquals(STRUCTURE, classify(TOOLS_URI, "listitem", "@layout/item"));
+    // Layouts are only read when inflating
+    assertEquals(STRUCTURE, classify(AUTO_URI, "layout_behavior", "@layout/item"));
+  }
+
+  public void testComputeWithoutEdits() {
+    NlModel model = createModel().build();
+    LayoutEdits edits = compute(model);
+    assertTrue(edits.isEmpty());
+    assertEquals(DRAWING, edits.getKind());
+    assertTrue(edits.getUpdatedSnapshots().isEmpty());
+  }
+
+  public void testComputeAttributeEdits() {
+    NlModel model = createModel().build();
+    NlComponent text = model.find("text");
+    NlComponent button = model.find("button");
+    assertNotNull(text);
+    assertNotNull(button);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      text.getTag().setAttribute(ATTR_TEXT, ANDROID_URI, "Goodbye");
+      button.getTag().setAttribute("alpha", ANDROID_URI, "0.5");
+    });
+
+    LayoutEdits edits = compute(model);
+    assertFalse(edits.isEmpty());
+    // The most expensive edit
+    assertEquals(TEXT, edits.getKind());
+
+    // The current snapshots of the edited tags, by the snapshots their views were inflated from
+    Map<TagSnapshot, TagSnapshot> updatedSnapshots = edits.getUpdatedSnapshots();
+    assertEquals(2, updatedSnapshots.size());
+    TagSnapshot textSnapshot = updatedSnapshots.get(getInflatedSnapshot(text));
+    assertNotNull(textSnapshot);
+    assertSame(text.getTag(), textSnapshot.tag);
+    assertEquals("Goodbye", textSnapshot.getAttribute(ATTR_TEXT, ANDROID_URI));
+    TagSnapshot buttonSnapshot = updatedSnapshots.get(getInflatedSnapshot(button));
+    assertNotNull(buttonSnapshot);
+    assertEquals("0.5", buttonSnapshot.getAttribute("alpha", ANDROID_URI));
+  }
+
+  public void testComputeLayoutParamsEdit() {
+    NlModel model = createModel().build();
+    NlComponent button = model.find("button");
+    assertNotNull(button);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> button.getTag().setAttribute(ATTR_LAYOUT_WIDTH, ANDROID_URI, "20dp"));
+
+    LayoutEdits edits = compute(model);
+    assertEquals(LAYOUT_PARAMS, edits.getKind());
+    assertEquals(1, edits.getUpdatedSnapshots().size());
+  }
+
+  public void testComputeStructuralEdits() {
+    NlModel model = createModel().build();
+    NlComponent button = model.find("button");
+    assertNotNull(button);
+    XmlTag buttonTag = button.getTag();
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> buttonTag.setAttribute(ATTR_ID, ANDROID_URI, "@+id/other"));
+    assertStructural(compute(model));
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> buttonTag.setAttribute(ATTR_ID, ANDROID_URI, "@+id/button"));
+    assertTrue(compute(model).isEmpty());
+
+    // Removed attribute
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> buttonTag.setAttribute(ATTR_ID, ANDROID_URI, null));
+    assertStructural(compute(model));
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> buttonTag.setAttribute(ATTR_ID, ANDROID_URI, "@+id/button"));
+    assertTrue(compute(model).isEmpty());
+
+    // Added tag
+    XmlTag layoutTag = model.getComponents().get(0).getTag();
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      layoutTag.addSubTag(layoutTag.createChildTag(VIEW, layoutTag.getNamespace(), null, false), false);
+    });
+    assertStructural(compute(model));
+  }
+
+  public void testComputeEditOfViewWithoutViewObject() {
+    // The views of the model aren't the ones of a render session
+    NlModel model = model("linear.xml",
+                          component(LINEAR_LAYOUT)
+                            .withBounds(0, 0, 1000, 1000)
+                            .matchParentWidth()
+                            .matchParentHeight()
+                            .children(
+                              component(TEXT_VIEW)
+                                .withBounds(0, 0, 200, 100)
+                                .id("@+id/text")
+                                .wrapContentWidth()
+                                .wrapContentHeight()
+                                .text("Hello")))
+      .build();
+    NlComponent text = model.find("text");
+    assertNotNull(text);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> text.getTag().setAttribute(ATTR_TEXT, ANDROID_URI, "Goodbye"));
+    assertStructural(compute(model));
+  }
+
+  @NotNull
+  private ModelBuilder createModel() {
+    return model("linear.xml",
+                 component(LINEAR_LAYOUT)
+                   .withBounds(0, 0, 1000, 1000)
+                   .matchParentWidth()
+                   .matchParentHeight()
+                   .withMockView()
+                   .children(
+                     component(TEXT_VIEW)
+                       .withBounds(0, 0, 200, 100)
+                       .id("@+id/text")
+                       .wrapContentWidth()
+                       .wrapContentHeight()
+                       .text("Hello")
+                       .withMockView(),
+                     component(BUTTON)
+                       .withBounds(0, 100, 200, 100)
+                       .id("@+id/button")
+                       .wrapContentWidth()
+                       .wrapContentHeight()
+                       .withMockView()));
+  }
+
+  @NotNull
+  private static LayoutEdits compute(@NotNull NlModel model) {
+    XmlTag rootTag = model.getFile().getRootTag();
+    assertNotNull(rootTag);
+    return LayoutEdits.compute(model, TagSnapshot.createTagSnapshot(rootTag, null));
+  }
+
+  @NotNull
+  private static TagSnapshot getInflatedSnapshot(@NotNull NlComponent component) {
+    ViewInfo viewInfo = NlComponentHelperKt.getViewInfo(component);
+    assertNotNull(viewInfo);
+    return (TagSnapshot)viewInfo.getCookie();
+  }
+
+  private static void assertStructural(@NotNull LayoutEdits edits) {
+    assertEquals(STRUCTURE, edits.getKind());
+    assertTrue(edits.isEmpty());
+    assertTrue(edits.getUpdatedSnapshots().isEmpty());
+  }
+}
@@ -17,6 +17,7 @@ package com.android.tools.datastore;
 
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
@@ -30,11 +31,30 @@ public class DataStoreDatabase {
     PERFORMANT
   }
 
+  /**
+   * How the tables of a namespace store their numeric time series samples (e.g. cpu usage, memory and network speed samples).
+   */
+  public enum SampleStorage {
+    /**
+     * Each sample is serialized as a protobuf BLOB in its own database row.
+     */
+    ROWS,
+    /**
+     * Samples are kept in memory as delta-encoded primitive columns (see {@link com.android.tools.datastore.database.TimeSeriesColumn}).
+     * Range queries are served without touching the database or deserializing protobufs. In a {@link Characteristic#DURABLE} database,
+     * the samples are also written to rows so that they are persisted with the rest of the session, and the columns of a session which
+     * were not filled by this process are loaded from the rows when the session is first read.
+     */
+    COLUMNAR
+  }
+
   private static Logger getLogger() {
     return Logger.getInstance(DataStoreDatabase.class);
   }
 
   private final Connection myConnection;
+  @NotNull private final Characteristic myCharacteristic;
+  @Nullable private final DataStoreWriter myWriter;
 
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
@@ -64,17 +84,21 @@ public class DataStoreDatabase {
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization. Writes are committed in batches by the DataStoreWriter.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException | SQLException e) {
       getLogger().error(e);
     }
     myConnection = connection;
+    myCharacteristic = characteristic;
+    myWriter = connection == null ? null : new DataStoreWriter(connection, dbPath);
   }
 
   public void disconnect() {
+    if (myWriter != null) {
+      myWriter.shutdown();
+    }
     try {
       myConnection.commit();
     }
@@ -96,4 +120,18 @@ public class DataStoreDatabase {
   public Connection getConnection() {
     return myConnection;
   }
+
+  @NotNull
+  public Characteristic getCharacteristic() {
+    return myCharacteristic;
+  }
+
+  /**
+   * @return the single writer that tables initialized with this database use to apply their writes, or null if the connection could
+   * not be established.
+   */
+  @Nullable
+  public DataStoreWriter getWriter() {
+    return myWriter;
+  }
 }
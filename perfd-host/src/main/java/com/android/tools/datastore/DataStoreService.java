@@ -17,6 +17,7 @@ package com.android.tools.datastore;
 
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.analytics.UsageTracker;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.service.*;
 import com.android.tools.profiler.proto.*;
 import com.google.wireless.android.sdk.stats.AndroidProfilerDbStats;
@@ -52,20 +53,47 @@ public class DataStoreService {
   private static final long REPORT_INITIAL_DELAY = TimeUnit.MINUTES.toMillis(15);
   private static final long REPORT_PERIOD = TimeUnit.HOURS.toMillis(1);
 
+  /**
+   * Describes where a service stores its data. Namespaces with the same name and characteristic share the same
+   * {@link DataStoreDatabase} (see {@link #getDatabaseNamespace()}), the {@link DataStoreDatabase.SampleStorage} only selects how the
+   * tables of a namespace store their numeric samples.
+   */
   public static class BackingNamespace {
     public static final BackingNamespace DEFAULT_SHARED_NAMESPACE = new BackingNamespace("default.sql", DURABLE);
+    /**
+     * Same database as {@link #DEFAULT_SHARED_NAMESPACE}, for the services whose tables keep their numeric samples in columns.
+     */
+    public static final BackingNamespace DEFAULT_SAMPLES_NAMESPACE =
+      new BackingNamespace(DEFAULT_SHARED_NAMESPACE.myNamespace, DURABLE, DataStoreDatabase.SampleStorage.COLUMNAR);
 
     @NotNull public final String myNamespace;
     @NotNull public final DataStoreDatabase.Characteristic myCharacteristic;
+    @NotNull public final DataStoreDatabase.SampleStorage mySampleStorage;
 
     public BackingNamespace(@NotNull String namespace, @NotNull DataStoreDatabase.Characteristic characteristic) {
+      this(namespace, characteristic, DataStoreDatabase.SampleStorage.ROWS);
+    }
+
+    public BackingNamespace(@NotNull String namespace,
+                            @NotNull DataStoreDatabase.Characteristic characteristic,
+                            @NotNull DataStoreDatabase.SampleStorage sampleStorage) {
       myNamespace = namespace;
       myCharacteristic = characteristic;
+      mySampleStorage = sampleStorage;
+    }
+
+    /**
+     * @return the namespace identifying the database of this namespace, which is shared by the namespaces that only differ by their
+     * sample storage.
+     */
+    @NotNull
+    public BackingNamespace getDatabaseNamespace() {
+      return mySampleStorage == DataStoreDatabase.SampleStorage.ROWS ? this : new BackingNamespace(myNamespace, myCharacteristic);
     }
 
     @Override
     public int hashCode() {
-      return Arrays.hashCode(new Object[]{myNamespace, myCharacteristic});
+      return Arrays.hashCode(new Object[]{myNamespace, myCharacteristic, mySampleStorage});
     }
 
     @Override
@@ -75,7 +103,9 @@ public class DataStoreService {
       }
 
       BackingNamespace other = (BackingNamespace)obj;
-      return myNamespace.equals(other.myNamespace) && myCharacteristic == other.myCharacteristic;
+      return myNamespace.equals(other.myNamespace) &&
+             myCharacteristic == other.myCharacteristic &&
+             mySampleStorage == other.mySampleStorage;
     }
   }
 
@@ -90,6 +120,7 @@ public class DataStoreService {
   private ProfilerService myProfilerService;
   private final ServerInterceptor myInterceptor;
   private final Map<Common.Session, DataStoreClient> myConnectedClients = new HashMap<>();
+  @NotNull private RetentionPolicy myRetentionPolicy = RetentionPolicy.DEFAULT;
 
   private final Timer myReportTimer;
 
@@ -136,6 +167,13 @@ public class DataStoreService {
     registerService(new NetworkService(this, myFetchExecutor, mySessionIdLookup));
   }
 
+  /**
+   * @return the path prefix of the files the datastore creates, e.g. its database files.
+   */
+  public String getDatastoreDirectory() {
+    return myDatastoreDirectory;
+  }
+
   @VisibleForTesting
   @NotNull
   DataStoreDatabase createDatabase(@NotNull String dbPath, @NotNull DataStoreDatabase.Characteristic characteristic) {
@@ -153,17 +191,18 @@ public class DataStoreService {
     List<BackingNamespace> namespaces = service.getBackingNamespaces();
     namespaces.forEach(namespace -> {
       assert !namespace.myNamespace.isEmpty();
-      DataStoreDatabase db = myDatabases.computeIfAbsent(namespace, backingNamespace -> createDatabase(
+      DataStoreDatabase db = myDatabases.computeIfAbsent(namespace.getDatabaseNamespace(), backingNamespace -> createDatabase(
         myDatastoreDirectory + backingNamespace.myNamespace, backingNamespace.myCharacteristic));
-      service.setBackingStore(namespace, db.getConnection());
+      service.setBackingStore(namespace, db);
     });
 
     // Build server and start listening for RPC calls for the registered service
+    ServerServiceDefinition definition = DataSubscriptions.addMethods(service.bindService(), service.getSubscriptionMethods());
     if (myInterceptor != null) {
-      myServerBuilder.addService(ServerInterceptors.intercept(service.bindService(), myInterceptor));
+      myServerBuilder.addService(ServerInterceptors.intercept(definition, myInterceptor));
     }
     else {
-      myServerBuilder.addService(service.bindService());
+      myServerBuilder.addService(definition);
     }
   }
 
@@ -187,6 +226,20 @@ public class DataStoreService {
     }
   }
 
+  /**
+   * Sets how much of a session's data the services keep, see {@link RetentionPolicy}.
+   */
+  public void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+    myServices.forEach(service -> service.setRetentionPolicy(session, policy));
+  }
+
+  /**
+   * Sets the {@link RetentionPolicy} of the sessions that connect after this call.
+   */
+  public void setRetentionPolicy(@NotNull RetentionPolicy policy) {
+    myRetentionPolicy = policy;
+  }
+
   public void shutdown() {
     myReportTimer.cancel();
     myServer.shutdownNow();
@@ -205,6 +258,7 @@ public class DataStoreService {
   public void setConnectedClients(Common.Session session, Channel channel) {
     if (!myConnectedClients.containsKey(session)) {
       myConnectedClients.put(session, new DataStoreClient(channel));
+      setRetentionPolicy(session, myRetentionPolicy);
     }
   }
 
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single writer thread for a {@link DataStoreDatabase}. Pollers enqueue their writes into a bounded queue and this writer applies
+ * them in order, committing a transaction every {@link #MAX_BATCH_SIZE} writes or {@link #MAX_BATCH_DELAY_NS}, whichever comes
+ * first. When the queue is full, {@link #enqueue(Runnable)} blocks the caller until the writer catches up.
+ * <p>
+ * Writes can be keyed, e.g. by the table they write to, so that a reader only waits for the writes of the tables it reads, see
+ * {@link #awaitPendingWrites(Object)}.
+ */
+public class DataStoreWriter {
+  @VisibleForTesting static final int QUEUE_CAPACITY = 4096;
+  @VisibleForTesting static final int MAX_BATCH_SIZE = 512;
+  @VisibleForTesting static final long MAX_BATCH_DELAY_NS = TimeUnit.SECONDS.toNanos(1);
+
+  private static Logger getLogger() {
+    return Logger.getInstance(DataStoreWriter.class);
+  }
+
+  @NotNull private final Connection myConnection;
+  @NotNull private final BlockingQueue<Write> myQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  @NotNull private final Thread myThread;
+  // Held while a write is numbered and queued, so that the writes are queued in the order of their sequence numbers.
+  @NotNull private final Object myEnqueueLock = new Object();
+  @NotNull private final Object myWrittenLock = new Object();
+  private volatile boolean myIsRunning = true;
+
+  // Sequence numbers of the last write enqueued, of the last write enqueued for each key, and of the last write applied. As writes
+  // are applied in order, a write has been applied once the last applied sequence number reaches its own.
+  private volatile long myLastEnqueuedSequence;
+  @NotNull private final Map<Object, Long> myLastEnqueuedSequenceByKey = new ConcurrentHashMap<>();
+  private long myLastWrittenSequence;
+
+  // Metrics.
+  private volatile long myCommitCount;
+  private volatile long myLastCommitLatencyNs;
+  private volatile long myMaxCommitLatencyNs;
+  @NotNull private final AtomicLong myBackpressureCount = new AtomicLong();
+
+  public DataStoreWriter(@NotNull Connection connection, @NotNull String name) {
+    myConnection = connection;
+    myThread = new Thread(this::run, "DataStoreWriter: " + name);
+    myThread.setDaemon(true);
+    myThread.start();
+  }
+
+  /**
+   * Queues a write to be applied by the writer thread. Blocks if the queue is full. Writes issued from the writer thread itself
+   * (e.g. a write triggering another write) are applied immediately.
+   */
+  public void enqueue(@NotNull Runnable write) {
+    enqueueWrite(null, write);
+  }
+
+  /**
+   * Same as {@link #enqueue(Runnable)}, for a write that {@link #awaitPendingWrites(Object)} with the same {@code key} waits for.
+   */
+  public void enqueue(@NotNull Object key, @NotNull Runnable write) {
+    enqueueWrite(key, write);
+  }
+
+  /**
+   * @return the sequence number of the write, or 0 if it was applied immediately or dropped.
+   */
+  private long enqueueWrite(@Nullable Object key, @NotNull Runnable write) {
+    if (Thread.currentThread() == myThread) {
+      write.run();
+      return 0;
+    }
+    if (!myIsRunning) {
+      return 0;
+    }
+    synchronized (myEnqueueLock) {
+      Write entry = new Write(myLastEnqueuedSequence + 1, write);
+      try {
+        if (!myQueue.offer(entry)) {
+          myBackpressureCount.incrementAndGet();
+          myQueue.put(entry);
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 0;
+      }
+      myLastEnqueuedSequence = entry.mySequence;
+      if (key != null) {
+        myLastEnqueuedSequenceByKey.put(key, entry.mySequence);
+      }
+      return entry.mySequence;
+    }
+  }
+
+  /**
+   * Queues a write and waits for its result.
+   */
+  public <T> T call(@NotNull Callable<T> write) {
+    return callWrite(null, write);
+  }
+
+  /**
+   * Same as {@link #call(Callable)}, for a write that {@link #awaitPendingWrites(Object)} with the same {@code key} waits for.
+   */
+  public <T> T call(@NotNull Object key, @NotNull Callable<T> write) {
+    return callWrite(key, write);
+  }
+
+  private <T> T callWrite(@Nullable Object key, @NotNull Callable<T> write) {
+    FutureTask<T> task = new FutureTask<>(write);
+    awaitWritten(enqueueWrite(key, task));
+    if (!task.isDone()) {
+      // The writer was shut down before the write was applied.
+      return null;
+    }
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      getLogger().error(e.getCause());
+    }
+    return null;
+  }
+
+  /**
+   * Blocks until every write enqueued before this call has been applied, so the caller can read its own writes.
+   */
+  public void awaitPendingWrites() {
+    awaitWritten(myLastEnqueuedSequence);
+  }
+
+  /**
+   * Blocks until the writes enqueued with {@code key} before this call have been applied. Writes of other keys queued after them
+   * may still be pending.
+   */
+  public void awaitPendingWrites(@NotNull Object key) {
+    Long sequence = myLastEnqueuedSequenceByKey.get(key);
+    if (sequence != null) {
+      awaitWritten(sequence);
+    }
+  }
+
+  private void awaitWritten(long sequence) {
+    if (Thread.currentThread() == myThread) {
+      return;
+    }
+    synchronized (myWrittenLock) {
+      while (myLastWrittenSequence < sequence && myIsRunning) {
+        try {
+          myWrittenLock.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops accepting writes, applies the ones already queued and commits them.
+   */
+  public void shutdown() {
+    myIsRunning = false;
+    myThread.interrupt();
+    try {
+      myThread.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public int getQueueDepth() {
+    return myQueue.size();
+  }
+
+  public long getCommitCount() {
+    return myCommitCount;
+  }
+
+  public long getLastCommitLatencyNs() {
+    return myLastCommitLatencyNs;
+  }
+
+  public long getMaxCommitLatencyNs() {
+    return myMaxCommitLatencyNs;
+  }
+
+  /**
+   * @return the number of writes that had to wait for room in the queue.
+   */
+  public long getBackpressureCount() {
+    return myBackpressureCount.get();
+  }
+
+  private void run() {
+    int batchSize = 0;
+    long batchStartNs = 0;
+    while (myIsRunning) {
+      Write write;
+      try {
+        write = batchSize == 0
+                ? myQueue.take()
+                : myQueue.poll(Math.max(0, batchStartNs + MAX_BATCH_DELAY_NS - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+      catch (InterruptedException e) {
+        // Interrupted by shutdown, the remaining writes are drained below.
+        break;
+      }
+
+      if (write != null) {
+        if (batchSize == 0) {
+          batchStartNs = System.nanoTime();
+        }
+        apply(write);
+        batchSize++;
+      }
+
+      if (batchSize >= MAX_BATCH_SIZE || (batchSize > 0 && System.nanoTime() - batchStartNs >= MAX_BATCH_DELAY_NS)) {
+        commit();
+        batchSize = 0;
+      }
+    }
+
+    Write write;
+    while ((write = myQueue.poll()) != null) {
+      apply(write);
+    }
+    commit();
+    synchronized (myWrittenLock) {
+      myWrittenLock.notifyAll();
+    }
+  }
+
+  private void apply(@NotNull Write write) {
+    try {
+      write.myRunnable.run();
+    }
+    catch (RuntimeException e) {
+      getLogger().error(e);
+    }
+    finally {
+      synchronized (myWrittenLock) {
+        myLastWrittenSequence = write.mySequence;
+        myWrittenLock.notifyAll();
+      }
+    }
+  }
+
+  private void commit() {
+    long startNs = System.nanoTime();
+    try {
+      if (!myConnection.isClosed()) {
+        myConnection.commit();
+      }
+    }
+    catch (SQLException e) {
+      getLogger().error(e);
+    }
+    long latencyNs = System.nanoTime() - startNs;
+    myLastCommitLatencyNs = latencyNs;
+    myMaxCommitLatencyNs = Math.max(myMaxCommitLatencyNs, latencyNs);
+    myCommitCount++;
+  }
+
+  private static final class Write {
+    private final long mySequence;
+    @NotNull private final Runnable myRunnable;
+
+    private Write(long sequence, @NotNull Runnable runnable) {
+      mySequence = sequence;
+      myRunnable = runnable;
+    }
+  }
+}
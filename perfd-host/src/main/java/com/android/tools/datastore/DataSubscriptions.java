@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profilers.common.DataSubscriptionMethods;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Serves a server-streaming counterpart of a unary range query such as CpuService/GetData. A subscriber sends the usual request once,
+ * receives the data already stored for it, then a response with only the new data every time a poller of its session stores more,
+ * instead of asking for the same range again on every frame.
+ *
+ * These methods are not part of the generated services, see {@link DataSubscriptionMethods}.
+ */
+public final class DataSubscriptions<Req, Resp> {
+  @NotNull private final MethodDescriptor<Req, Resp> myMethod;
+  @NotNull private final Function<Req, Common.Session> mySessionGetter;
+  @NotNull private final Function<Req, Resp> myQuery;
+  @NotNull private final BiFunction<Req, Resp, Req> myNextRequest;
+  @NotNull private final List<Subscription> mySubscriptions = new CopyOnWriteArrayList<>();
+
+  /**
+   * @param query       answers a request, as {@code unaryMethod} does
+   * @param nextRequest returns the request for the data stored after a response to a request, or null if the response has no data
+   */
+  public DataSubscriptions(@NotNull MethodDescriptor<Req, Resp> unaryMethod,
+                           @NotNull Function<Req, Common.Session> sessionGetter,
+                           @NotNull Function<Req, Resp> query,
+                           @NotNull BiFunction<Req, Resp, Req> nextRequest) {
+    myMethod = DataSubscriptionMethods.createMethod(unaryMethod);
+    mySessionGetter = sessionGetter;
+    myQuery = query;
+    myNextRequest = nextRequest;
+  }
+
+  /**
+   * @return {@code definition} with the given subscription methods added to it.
+   */
+  @NotNull
+  public static ServerServiceDefinition addMethods(@NotNull ServerServiceDefinition definition,
+                                                   @NotNull List<ServerMethodDefinition<?, ?>> methods) {
+    if (methods.isEmpty()) {
+      return definition;
+    }
+    ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(definition.getServiceDescriptor().getName());
+    definition.getMethods().forEach(builder::addMethod);
+    methods.forEach(builder::addMethod);
+    return builder.build();
+  }
+
+  @NotNull
+  public ServerMethodDefinition<Req, Resp> getMethodDefinition() {
+    return ServerMethodDefinition.create(myMethod, ServerCalls.asyncServerStreamingCall(this::subscribe));
+  }
+
+  /**
+   * Sends the data already stored for {@code request}, and keeps {@code observer} subscribed to the data stored after it.
+   */
+  public void subscribe(@NotNull Req request, @NotNull StreamObserver<Resp> observer) {
+    Subscription subscription = new Subscription(mySessionGetter.apply(request), request, observer);
+    // Subscribe before the first query, so data stored in between isn't missed. Sending is synchronized, so it isn't sent twice either.
+    mySubscriptions.add(subscription);
+    if (!subscription.send(true)) {
+      mySubscriptions.remove(subscription);
+    }
+  }
+
+  /**
+   * Sends the data stored since the last response to the subscribers of {@code session}. Subscribers without new data get nothing.
+   *
+   * @return whether {@code session} has subscribers.
+   */
+  public boolean notifyDataStored(@NotNull Common.Session session) {
+    boolean hasSubscribers = false;
+    for (Subscription subscription : mySubscriptions) {
+      if (subscription.mySession.equals(session)) {
+        hasSubscribers = true;
+        if (!subscription.send(false)) {
+          mySubscriptions.remove(subscription);
+        }
+      }
+    }
+    return hasSubscribers;
+  }
+
+  /**
+   * Ends the subscriptions of {@code session}, e.g. when it stops being monitored.
+   */
+  public void completeSubscriptions(@NotNull Common.Session session) {
+    for (Subscription subscription : mySubscriptions) {
+      if (subscription.mySession.equals(session)) {
+        mySubscriptions.remove(subscription);
+        subscription.complete();
+      }
+    }
+  }
+
+  int getSubscriptionCount() {
+    return mySubscriptions.size();
+  }
+
+  private final class Subscription {
+    @NotNull private final Common.Session mySession;
+    @NotNull private final StreamObserver<Resp> myObserver;
+    @NotNull private Req myRequest;
+
+    private Subscription(@NotNull Common.Session session, @NotNull Req request, @NotNull StreamObserver<Resp> observer) {
+      mySession = session;
+      myRequest = request;
+      myObserver = observer;
+    }
+
+    /**
+     * @return false if the subscriber went away.
+     */
+    private synchronized boolean send(boolean evenIfEmpty) {
+      Resp response = myQuery.apply(myRequest);
+      Req next = myNextRequest.apply(myRequest, response);
+      if (next == null && !evenIfEmpty) {
+        return true;
+      }
+      try {
+        myObserver.onNext(response);
+      }
+      catch (StatusRuntimeException e) {
+        // The call was cancelled by the client.
+        return false;
+      }
+      if (next != null) {
+        myRequest = next;
+      }
+      return true;
+    }
+
+    private synchronized void complete() {
+      try {
+        myObserver.onCompleted();
+      }
+      catch (StatusRuntimeException ignored) {
+      }
+    }
+  }
+}
@@ -15,10 +15,13 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.RetentionPolicy;
+import com.android.tools.profiler.proto.Common;
+import io.grpc.ServerMethodDefinition;
 import io.grpc.ServerServiceDefinition;
 import org.jetbrains.annotations.NotNull;
 
-import java.sql.Connection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,6 +35,14 @@ public interface ServicePassThrough {
   @NotNull
   ServerServiceDefinition bindService();
 
+  /**
+   * @return the {@link DataSubscriptions} methods to serve along with the methods of {@link #bindService()}.
+   */
+  @NotNull
+  default List<ServerMethodDefinition<?, ?>> getSubscriptionMethods() {
+    return Collections.emptyList();
+  }
+
   /**
    * @return a list of namespaces to store the data
    */
@@ -40,7 +51,13 @@ public interface ServicePassThrough {
 
   /**
    * @param namespace a namespace corresponding to an entry in the list returned from {@link #getBackingNamespaces()}
-   * @param connection {@link Connection} to the backing store
+   * @param database the {@link DataStoreDatabase} backing the namespace
+   */
+  void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database);
+
+  /**
+   * Sets how much of a session's sampled data the service keeps. Services without sampled data can ignore it.
    */
-  void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection);
+  default void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+  }
 }
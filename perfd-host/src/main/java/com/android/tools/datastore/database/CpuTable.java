@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -38,6 +39,19 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
    */
   private static final int PROFILER_TYPE_COLUMN_TRACE_DATA = 2;
 
+  /**
+   * Sample type and value layout of the cpu usage series when stored in a {@link TieredTimeSeries}.
+   */
+  private static final int CPU_USAGE_SERIES = 0;
+  private static final int APP_CPU_TIME_VALUE = 0;
+  private static final int SYSTEM_CPU_TIME_VALUE = 1;
+  private static final int ELAPSED_TIME_VALUE = 2;
+  /**
+   * Cpu times are cumulative, so the downsampled tiers report the latest value of each bucket.
+   */
+  private static final TieredTimeSeries.Aggregation[] CPU_USAGE_AGGREGATIONS =
+    {TieredTimeSeries.Aggregation.MAX, TieredTimeSeries.Aggregation.MAX, TieredTimeSeries.Aggregation.MAX};
+
   public enum CpuStatements {
     INSERT_THREAD_ACTIVITY,
     QUERY_THREAD_ACTIVITIES,
@@ -130,16 +144,57 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   }
 
   public void insert(Common.Session session, CpuProfiler.CpuProfilerData data) {
-    execute(CpuStatements.INSERT_CPU_DATA, data.getBasicInfo().getProcessId(), data.getBasicInfo().getEndTimestamp(), session,
-            data.toByteArray());
+    if (isColumnar()) {
+      getTimeSeriesStore()
+        .getOrCreate(getSessionId(session), data.getBasicInfo().getProcessId(), CPU_USAGE_SERIES, CPU_USAGE_AGGREGATIONS)
+        .append(data.getBasicInfo().getEndTimestamp(), getCpuUsageValues(data));
+    }
+    if (hasSampleRows()) {
+      execute(CpuStatements.INSERT_CPU_DATA, data.getBasicInfo().getProcessId(), data.getBasicInfo().getEndTimestamp(), session,
+              data.toByteArray());
+    }
+  }
+
+  @NotNull
+  private static long[] getCpuUsageValues(@NotNull CpuProfiler.CpuProfilerData data) {
+    CpuProfiler.CpuUsageData usage = data.getCpuUsage();
+    return new long[]{usage.getAppCpuTimeInMillisec(), usage.getSystemCpuTimeInMillisec(), usage.getElapsedTimeInMillisec()};
   }
 
   public List<CpuProfiler.CpuProfilerData> getCpuDataByRequest(CpuProfiler.CpuDataRequest request) {
+    if (isColumnar()) {
+      List<CpuProfiler.CpuProfilerData> cpuData = new ArrayList<>();
+      TieredTimeSeries series =
+        getColumnarSeries(getSessionId(request.getSession()), request.getProcessId(), CPU_USAGE_SERIES, CPU_USAGE_AGGREGATIONS,
+                          samples -> loadCpuUsageRows(request.getProcessId(), request.getSession(), samples));
+      if (series != null) {
+        series.forEachInRange(request.getStartTimestamp(), request.getEndTimestamp(), (timestamp, values) -> cpuData.add(
+          CpuProfiler.CpuProfilerData.newBuilder()
+            .setBasicInfo(Common.CommonData.newBuilder().setProcessId(request.getProcessId()).setEndTimestamp(timestamp))
+            .setCpuUsage(CpuProfiler.CpuUsageData.newBuilder()
+                           .setAppCpuTimeInMillisec(values[APP_CPU_TIME_VALUE])
+                           .setSystemCpuTimeInMillisec(values[SYSTEM_CPU_TIME_VALUE])
+                           .setElapsedTimeInMillisec(values[ELAPSED_TIME_VALUE]))
+            .build()));
+      }
+      return cpuData;
+    }
+    return getCpuDataRows(request.getProcessId(), request.getSession(), request.getStartTimestamp(), request.getEndTimestamp());
+  }
+
+  private void loadCpuUsageRows(int processId, @NotNull Common.Session session, @NotNull TimeSeriesColumn samples) {
+    List<CpuProfiler.CpuProfilerData> rows = getCpuDataRows(processId, session, Long.MIN_VALUE, Long.MAX_VALUE);
+    rows.sort(Comparator.comparingLong(data -> data.getBasicInfo().getEndTimestamp()));
+    for (CpuProfiler.CpuProfilerData data : rows) {
+      samples.append(data.getBasicInfo().getEndTimestamp(), getCpuUsageValues(data));
+    }
+  }
+
+  @NotNull
+  private List<CpuProfiler.CpuProfilerData> getCpuDataRows(int processId, @NotNull Common.Session session, long startTime, long endTime) {
     List<CpuProfiler.CpuProfilerData> cpuData = new ArrayList<>();
     try {
-      ResultSet results =
-        executeQuery(CpuStatements.QUERY_CPU_DATA, request.getProcessId(), request.getSession(), request.getStartTimestamp(),
-                     request.getEndTimestamp());
+      ResultSet results = executeQuery(CpuStatements.QUERY_CPU_DATA, processId, session, startTime, endTime);
       while (results.next()) {
         CpuProfiler.CpuProfilerData.Builder data = CpuProfiler.CpuProfilerData.newBuilder();
         data.mergeFrom(results.getBytes(DATA_COLUMN));
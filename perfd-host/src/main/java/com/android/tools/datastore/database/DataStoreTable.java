@@ -15,9 +15,12 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
+import com.android.tools.datastore.DataStoreWriter;
 import com.android.tools.profiler.proto.Common;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -27,6 +30,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Interface a {@link com.android.tools.datastore.ServicePassThrough} object returns to indicate this object is
@@ -38,8 +42,12 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = new HashSet();
 
   private Connection myConnection;
+  @Nullable private DataStoreWriter myWriter;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
   protected final Map<Common.Session, Long> mySessionIdLookup;
+  @NotNull private DataStoreDatabase.SampleStorage mySampleStorage = DataStoreDatabase.SampleStorage.ROWS;
+  private boolean myDurable;
+  @NotNull private final TimeSeriesStore myTimeSeriesStore = new TimeSeriesStore();
 
   public interface DataStoreTableErrorCallback {
     void onDataStoreError(Throwable t);
@@ -50,7 +58,17 @@ public abstract class DataStoreTable<T extends Enum> {
   }
 
   /**
-   * Initialization function to create tables for the Database.
+   * Initializes the table against the database's connection, and routes all of the table's writes through the database's
+   * {@link DataStoreWriter}.
+   */
+  public void initialize(@NotNull DataStoreDatabase database) {
+    myWriter = database.getWriter();
+    myDurable = database.getCharacteristic() == DataStoreDatabase.Characteristic.DURABLE;
+    initialize(database.getConnection());
+  }
+
+  /**
+   * Initialization function to create tables for the Database. Writes are applied synchronously on the calling thread.
    *
    * @param connection an open connection to the database.
    */
@@ -58,6 +76,74 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Selects how the table stores its numeric samples. Tables that do not have numeric samples ignore this setting.
+   * This should be set before any data is inserted.
+   */
+  public void setSampleStorage(@NotNull DataStoreDatabase.SampleStorage sampleStorage) {
+    mySampleStorage = sampleStorage;
+  }
+
+  protected boolean isColumnar() {
+    return mySampleStorage == DataStoreDatabase.SampleStorage.COLUMNAR;
+  }
+
+  /**
+   * Returns whether the numeric samples are written to rows: always when they aren't stored in columns, and also when the columns are
+   * backed by a {@link DataStoreDatabase.Characteristic#DURABLE} database, so that the samples are persisted with the session.
+   */
+  protected boolean hasSampleRows() {
+    return !isColumnar() || myDurable;
+  }
+
+  /**
+   * Returns the columnar series of a session's samples. If the samples are also stored in rows, and the series wasn't filled by this
+   * table yet, e.g. as the session was recorded by another process, it is first loaded from the rows with {@code rowLoader}.
+   *
+   * @return the series, or null if the session has no samples of that type
+   */
+  @Nullable
+  protected TieredTimeSeries getColumnarSeries(long sessionId,
+                                               int processId,
+                                               int type,
+                                               @NotNull TieredTimeSeries.Aggregation[] aggregations,
+                                               @NotNull Consumer<TimeSeriesColumn> rowLoader) {
+    TieredTimeSeries series = myTimeSeriesStore.get(sessionId, processId, type);
+    if (series != null || !hasSampleRows()) {
+      return series;
+    }
+    // The rows are read outside of the store's lock, as reads wait for the pending writes, which may apply the retention policy
+    TimeSeriesColumn samples = new TimeSeriesColumn(aggregations.length);
+    rowLoader.accept(samples);
+    return myTimeSeriesStore.getOrLoad(sessionId, processId, type, aggregations, samples);
+  }
+
+  /**
+   * Sets how much of a session's data is kept. Columnar samples are trimmed by the {@link TimeSeriesStore}, tables that keep events in
+   * rows bound them with {@link #getRetentionPolicy(Common.Session)}.
+   */
+  public void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+    myTimeSeriesStore.setRetentionPolicy(getSessionId(session), policy);
+  }
+
+  @NotNull
+  protected RetentionPolicy getRetentionPolicy(@NotNull Common.Session session) {
+    return myTimeSeriesStore.getRetentionPolicy(getSessionId(session));
+  }
+
+  @NotNull
+  protected TimeSeriesStore getTimeSeriesStore() {
+    return myTimeSeriesStore;
+  }
+
+  /**
+   * @return the id used to key the session in the database, or -1 if the session is unknown.
+   */
+  protected long getSessionId(@NotNull Common.Session session) {
+    Long id = mySessionIdLookup.get(session);
+    return id == null ? KEYS_ERROR : id;
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -131,21 +217,44 @@ public abstract class DataStoreTable<T extends Enum> {
     getStatementMap().put(statement, myConnection.prepareStatement(stmt, statementFlags));
   }
 
-  protected void execute(@NotNull T statement, Object... params) {
-    try {
-      if (isClosed()) {
-        return;
-      }
-      PreparedStatement stmt = getStatementMap().get(statement);
-      applyParams(stmt, params);
-      stmt.execute();
+  /**
+   * Applies a write, either on the {@link DataStoreWriter} thread if the table was initialized with a {@link DataStoreDatabase}, or
+   * on the calling thread otherwise. Writes are applied in the order they are enqueued.
+   */
+  protected void write(@NotNull Runnable write) {
+    if (myWriter != null) {
+      myWriter.enqueue(this, write);
     }
-    catch (SQLException ex) {
-      onError(ex);
+    else {
+      write.run();
     }
   }
 
+  protected void execute(@NotNull T statement, Object... params) {
+    write(() -> {
+      try {
+        if (isClosed()) {
+          return;
+        }
+        PreparedStatement stmt = getStatementMap().get(statement);
+        applyParams(stmt, params);
+        stmt.execute();
+      }
+      catch (SQLException ex) {
+        onError(ex);
+      }
+    });
+  }
+
   protected long executeWithGeneratedKeys(@NotNull T statement, Object... params) {
+    if (myWriter != null) {
+      Long key = myWriter.call(this, () -> executeWithGeneratedKeysNow(statement, params));
+      return key == null ? KEYS_ERROR : key;
+    }
+    return executeWithGeneratedKeysNow(statement, params);
+  }
+
+  private long executeWithGeneratedKeysNow(@NotNull T statement, Object... params) {
     try {
       if (isClosed()) {
         return -1;
@@ -161,8 +270,23 @@ public abstract class DataStoreTable<T extends Enum> {
     return KEYS_ERROR;
   }
 
+  /**
+   * Executes an update on the calling thread. Only to be used from within {@link #write(Runnable)}, after the pending writes.
+   *
+   * @return the number of rows the statement changed.
+   */
+  protected int executeUpdateNow(@NotNull T statement, Object... params) throws SQLException {
+    PreparedStatement stmt = getStatementMap().get(statement);
+    applyParams(stmt, params);
+    return stmt.executeUpdate();
+  }
+
   protected ResultSet executeQuery(@NotNull T statement, Object... params) throws SQLException {
-    // TODO: Handle when the database conneciton is closed and a query is made.
+    // TODO: Handle when the database connection is closed and a query is made.
+    if (myWriter != null) {
+      // Make sure the writes this table issued before this query are visible to it.
+      myWriter.awaitPendingWrites(this);
+    }
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
     return stmt.executeQuery();
@@ -15,20 +15,19 @@
  */
 package com.android.tools.datastore.database;
 
-import com.android.annotations.VisibleForTesting;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
-import com.google.protobuf3jarjar.InvalidProtocolBufferException;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.BiConsumer;
 
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.*;
 
@@ -41,7 +40,8 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       "(Pid, Session, Tag, ClassTag, AllocTime, FreeTime, Size, Length, ThreadId, StackId, HeapId) " +
       "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"),
     INSERT_METHOD("INSERT OR IGNORE INTO Memory_MethodInfos (Pid, Session, MethodId, MethodName, ClassName) VALUES (?, ?, ?, ?, ?)"),
-    INSERT_ENCODED_STACK("INSERT OR IGNORE INTO Memory_StackInfos (Pid, Session, StackId, AllocTime, StackData) VALUES (?, ?, ?, ?, ?)"),
+    INSERT_STACK("INSERT OR IGNORE INTO Memory_StackInfos (Pid, Session, StackId, AllocTime, LeafFrameId) VALUES (?, ?, ?, ?, ?)"),
+    INSERT_FRAME("INSERT INTO Memory_StackFrames (FrameId, ParentFrameId, MethodId, LineNumber) VALUES (?, ?, ?, ?)"),
     INSERT_THREAD_INFO("INSERT OR IGNORE INTO Memory_ThreadInfos (Pid, Session, ThreadId, AllocTime, ThreadName) VALUES (?, ?, ?, ?, ?)"),
     UPDATE_ALLOC(
       "UPDATE Memory_AllocationEvents SET FreeTime = ? WHERE Pid = ? AND Session = ? AND Tag = ?"),
@@ -54,12 +54,16 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       "SELECT Tag, ClassTag, AllocTime, FreeTime, Size, Length, ThreadId, StackId, HeapId FROM Memory_AllocationEvents " +
       "WHERE Pid = ? AND Session = ? AND FreeTime >= ? AND FreeTime < ?"),
     QUERY_METHOD_INFO("Select MethodName, ClassName FROM Memory_MethodInfos WHERE Pid = ? AND Session = ? AND MethodId = ?"),
-    QUERY_ENCODED_STACK_INFO_BY_TIME(
-      "Select StackData FROM Memory_StackInfos WHERE Pid = ? AND Session = ? AND AllocTime >= ? AND AllocTime < ?"),
+    QUERY_STACK_INFO_BY_TIME(
+      "Select StackId, LeafFrameId FROM Memory_StackInfos WHERE Pid = ? AND Session = ? AND AllocTime >= ? AND AllocTime < ?"),
+    QUERY_FRAMES("Select FrameId, ParentFrameId, MethodId, LineNumber FROM Memory_StackFrames WHERE FrameId IN (" +
+                 getParameterList(FRAME_QUERY_BATCH_SIZE) + ")"),
+    QUERY_FRAMES_BY_PARENT("Select FrameId, ParentFrameId, MethodId, LineNumber FROM Memory_StackFrames WHERE ParentFrameId IN (" +
+                           getParameterList(FRAME_QUERY_BATCH_SIZE) + ")"),
     QUERY_THREAD_INFO_BY_TIME(
       "Select ThreadId, ThreadName FROM Memory_ThreadInfos WHERE Pid = ? AND Session = ? AND AllocTime >= ? AND AllocTime < ?"),
 
-    COUNT_ALLOC("SELECT count(*) FROM Memory_AllocationEvents"),
+    COUNT_ALLOC("SELECT count(*) FROM Memory_AllocationEvents WHERE Pid = ? AND Session = ?"),
     PRUNE_ALLOC("DELETE FROM Memory_AllocationEvents WHERE Pid = ? AND Session = ? AND FreeTime <= (" +
                 " SELECT MAX(FreeTime)" +
                 " FROM Memory_AllocationEvents" +
@@ -80,9 +84,17 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
-  // 5M ought to be enough for anybody (~300MB of data)
-  // Note - Google Search app can easily allocate 100k+ temporary objects in an relatively short amount of time (e.g. one search query)
-  private int myAllocationCountLimit = 5000000;
+  // Callstacks are stored as a trie of frames shared by all stacks (and sessions, as a frame only refers to its method by id), so a
+  // stack is a single row pointing to its innermost frame. Frame id 0 is the root of the trie, i.e. the empty stack.
+  private static final int ROOT_FRAME_ID = 0;
+  private static final int FRAME_CACHE_SIZE = 1 << 16;
+  // The number of frame or parent frame ids looked up by each query of the frame table.
+  private static final int FRAME_QUERY_BATCH_SIZE = 64;
+  private int myNextFrameId = ROOT_FRAME_ID + 1;
+  // Only used from the thread applying the writes.
+  @NotNull private final LruCache<Frame, Integer> myFrameIds = new LruCache<>(FRAME_CACHE_SIZE);
+  // Shared by the readers, guarded by itself.
+  @NotNull private final LruCache<Integer, Frame> myFrames = new LruCache<>(FRAME_CACHE_SIZE);
 
   private static Logger getLogger() {
     return Logger.getInstance(MemoryLiveAllocationTable.class);
@@ -105,7 +117,9 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       createTable("Memory_MethodInfos", "Pid INTEGER NOT NULL", "Session INTEGER NOT NULL", "MethodId INTEGER",
                   "MethodName TEXT", "ClassName TEXT", "PRIMARY KEY(Pid, Session, MethodId)");
       createTable("Memory_StackInfos", "Pid INTEGER NOT NULL", "Session INTEGER NOT NULL", "StackId INTEGER", "AllocTime INTEGER",
-                  "StackData BLOB", "PRIMARY KEY(Pid, Session, StackId)");
+                  "LeafFrameId INTEGER", "PRIMARY KEY(Pid, Session, StackId)");
+      createTable("Memory_StackFrames", "FrameId INTEGER NOT NULL", "ParentFrameId INTEGER NOT NULL", "MethodId INTEGER",
+                  "LineNumber INTEGER", "PRIMARY KEY(FrameId)");
       createTable("Memory_ThreadInfos", "Pid INTEGER NOT NULL", "Session INTEGER NOT NULL", "ThreadId INTEGER", "AllocTime INTEGER",
                   "ThreadName TEXT", "PRIMARY KEY(Pid, Session, ThreadId)");
       createIndex("Memory_AllocationEvents", 0, "Pid", "Session", "AllocTime");
@@ -113,17 +127,18 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       createIndex("Memory_AllocatedClass", 0, "Pid", "Session", "AllocTime");
       createIndex("Memory_StackInfos", 0, "Pid", "Session", "AllocTime");
       createIndex("Memory_ThreadInfos", 0, "Pid", "Session", "AllocTime");
+      createUniqueIndex("Memory_StackFrames", "ParentFrameId", "MethodId", "LineNumber");
+      myNextFrameId = ROOT_FRAME_ID + 1;
+      myFrameIds.clear();
+      synchronized (myFrames) {
+        myFrames.clear();
+      }
     }
     catch (SQLException ex) {
       getLogger().error(ex);
     }
   }
 
-  @VisibleForTesting
-  void setAllocationCountLimit(int allocationCountLimit) {
-    myAllocationCountLimit = allocationCountLimit;
-  }
-
   @Override
   public void prepareStatements() {
     try {
@@ -198,27 +213,36 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
         timestamp = Math.max(timestamp, allocTime);
       }
 
-      ResultSet stackResult = executeQuery(QUERY_ENCODED_STACK_INFO_BY_TIME, pid, session, startTime, endTime);
+      // Note that we are not accounting for the timestamp recorded in the stack, as stack entries from each batched allocation sample
+      // are inserted first into the database. So class data with an earlier timestamp can be inserted later.
+      // The stack rows are read first, as resolving their frames may run other queries.
+      List<int[]> stacks = new ArrayList<>();
+      ResultSet stackResult = executeQuery(QUERY_STACK_INFO_BY_TIME, pid, session, startTime, endTime);
       while (stackResult.next()) {
-        AllocationStack.Builder stackBuilder = AllocationStack.newBuilder();
-
-        // Retrieve the EncodedAllocationStack proto and convert it into the AllocationStack format.
-        // Note that we are not accounting for the timestamp recorded in the stack, as stack entries from each batched allocation sample
-        // are inserted first into the database. So class data with an earlier timestamp can be inserted later.
-        EncodedAllocationStack encodedStack = EncodedAllocationStack.parseFrom(stackResult.getBytes(1));
-        stackBuilder.setStackId(encodedStack.getStackId());
+        stacks.add(new int[]{stackResult.getInt(1), stackResult.getInt(2)});
+      }
+      Set<Integer> leafFrameIds = new HashSet<>();
+      stacks.forEach(stack -> leafFrameIds.add(stack[1]));
+      Map<Integer, Frame> frames = getFrames(leafFrameIds);
+      // Each frame of the trie is converted once, however many of the stacks go through it.
+      Map<Integer, AllocationStack.SmallFrame> smallFrames = new HashMap<>();
+      for (int[] stack : stacks) {
         AllocationStack.SmallFrameWrapper.Builder frameBuilder = AllocationStack.SmallFrameWrapper.newBuilder();
-        assert encodedStack.getMethodIdsCount() == encodedStack.getLineNumbersCount();
-        for (int i = 0; i < encodedStack.getMethodIdsCount(); i++) {
+        // Walk up the trie from the innermost frame, which gives the frames in the order they were inserted.
+        int frameId = stack[1];
+        while (frameId != ROOT_FRAME_ID) {
+          Frame frame = frames.get(frameId);
+          if (frame == null) {
+            getLogger().warn("Missing stack frame " + frameId + " in stack " + stack[0]);
+            break;
+          }
           // Note that we don't return the class + method names here, as they are expensive to query and can incur huge memory footprint.
           // Instead, they will be fetched on demand as needed by the UI.
-          AllocationStack.SmallFrame frame =
-            AllocationStack.SmallFrame.newBuilder().setMethodId(encodedStack.getMethodIds(i)).setLineNumber(encodedStack.getLineNumbers(i))
-              .build();
-          frameBuilder.addFrames(frame);
+          frameBuilder.addFrames(smallFrames.computeIfAbsent(frameId, id -> AllocationStack.SmallFrame.newBuilder()
+            .setMethodId(frame.myMethodId).setLineNumber(frame.myLineNumber).build()));
+          frameId = frame.myParentFrameId;
         }
-        stackBuilder.setSmallStack(frameBuilder);
-        resultBuilder.addAllocationStacks(stackBuilder);
+        resultBuilder.addAllocationStacks(AllocationStack.newBuilder().setStackId(stack[0]).setSmallStack(frameBuilder));
       }
 
       ResultSet threadResult = executeQuery(QUERY_THREAD_INFO_BY_TIME, pid, session, startTime, endTime);
@@ -230,7 +254,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
 
       resultBuilder.setTimestamp(timestamp);
     }
-    catch (SQLException | InvalidProtocolBufferException ex) {
+    catch (SQLException ex) {
       getLogger().error(ex);
     }
 
@@ -238,6 +262,10 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void insertAllocationData(int pid, Common.Session session, MemoryProfiler.BatchAllocationSample sample) {
+    write(() -> doInsertAllocationData(pid, session, sample));
+  }
+
+  private void doInsertAllocationData(int pid, Common.Session session, MemoryProfiler.BatchAllocationSample sample) {
     MemoryProfiler.AllocationEvent.EventCase currentCase = null;
     PreparedStatement currentStatement = null;
     int allocAndFreeCount = 0;
@@ -303,6 +331,10 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void insertMethodInfo(int pid, Common.Session session, List<AllocationStack.StackFrame> methods) {
+    write(() -> doInsertMethodInfo(pid, session, methods));
+  }
+
+  private void doInsertMethodInfo(int pid, Common.Session session, List<AllocationStack.StackFrame> methods) {
     try {
       PreparedStatement statement = getStatementMap().get(INSERT_METHOD);
       assert statement != null;
@@ -334,21 +366,158 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void insertStackInfo(int pid, Common.Session session, List<EncodedAllocationStack> stacks) {
+    write(() -> doInsertStackInfo(pid, session, stacks));
+  }
+
+  private void doInsertStackInfo(int pid, Common.Session session, List<EncodedAllocationStack> stacks) {
     try {
-      PreparedStatement statement = getStatementMap().get(INSERT_ENCODED_STACK);
-      assert statement != null;
+      PreparedStatement stackStatement = getStatementMap().get(INSERT_STACK);
+      PreparedStatement frameStatement = getStatementMap().get(INSERT_FRAME);
+      assert stackStatement != null && frameStatement != null;
+      // The frames found or created by this call. The created ones can't be found in the database until the batch is executed.
+      Map<Frame, Integer> batchFrameIds = new HashMap<>();
+      // The frames are interned from the outermost one, so stacks sharing callers share the same path from the root. All the stacks
+      // are walked together, one depth at a time, so the frames missing from the cache at a depth are looked up with a few queries.
+      int[] frameIds = new int[stacks.size()];
+      int maxDepth = 0;
       for (EncodedAllocationStack stack : stacks) {
-        applyParams(statement, pid, session, stack.getStackId(), stack.getTimestamp(), stack.toByteArray());
-        statement.addBatch();
+        assert stack.getMethodIdsCount() == stack.getLineNumbersCount();
+        maxDepth = Math.max(maxDepth, stack.getMethodIdsCount());
       }
-      statement.executeBatch();
+      for (int depth = 0; depth < maxDepth; depth++) {
+        Set<Integer> uncachedParentIds = new HashSet<>();
+        for (int i = 0; i < stacks.size(); i++) {
+          Frame frame = getFrameAtDepth(stacks.get(i), depth, frameIds[i]);
+          if (frame != null && myFrameIds.get(frame) == null && !batchFrameIds.containsKey(frame)) {
+            uncachedParentIds.add(frame.myParentFrameId);
+          }
+        }
+        findChildFrames(uncachedParentIds, batchFrameIds);
+        for (int i = 0; i < stacks.size(); i++) {
+          Frame frame = getFrameAtDepth(stacks.get(i), depth, frameIds[i]);
+          if (frame != null) {
+            frameIds[i] = internFrame(frame, batchFrameIds, frameStatement);
+          }
+        }
+      }
+      for (int i = 0; i < stacks.size(); i++) {
+        EncodedAllocationStack stack = stacks.get(i);
+        applyParams(stackStatement, pid, session, stack.getStackId(), stack.getTimestamp(), frameIds[i]);
+        stackStatement.addBatch();
+      }
+      frameStatement.executeBatch();
+      stackStatement.executeBatch();
     }
     catch (SQLException ex) {
       getLogger().error(ex);
     }
   }
 
+  /**
+   * @return the frame {@code depth} calls below the outermost frame of {@code stack}, called from {@code parentFrameId}, or null if the
+   * stack isn't that deep.
+   */
+  @Nullable
+  private static Frame getFrameAtDepth(@NotNull EncodedAllocationStack stack, int depth, int parentFrameId) {
+    int index = stack.getMethodIdsCount() - 1 - depth;
+    return index < 0 ? null : new Frame(parentFrameId, stack.getMethodIds(index), stack.getLineNumbers(index));
+  }
+
+  /**
+   * Adds the frames of the trie called from {@code parentFrameIds} to {@code frameIds}.
+   */
+  private void findChildFrames(@NotNull Collection<Integer> parentFrameIds, @NotNull Map<Frame, Integer> frameIds) throws SQLException {
+    queryFrames(QUERY_FRAMES_BY_PARENT, parentFrameIds, (frameId, frame) -> frameIds.put(frame, frameId));
+  }
+
+  /**
+   * @return the id of {@code frame}, adding it to the trie (as a batch of {@code frameStatement}) if it's neither cached nor in
+   * {@code batchFrameIds}, which must already hold the frames of the database that may be needed.
+   */
+  private int internFrame(@NotNull Frame frame, @NotNull Map<Frame, Integer> batchFrameIds, @NotNull PreparedStatement frameStatement)
+    throws SQLException {
+    Integer frameId = myFrameIds.get(frame);
+    if (frameId == null) {
+      frameId = batchFrameIds.get(frame);
+    }
+    if (frameId == null) {
+      frameId = myNextFrameId++;
+      applyParams(frameStatement, frameId, frame.myParentFrameId, frame.myMethodId, frame.myLineNumber);
+      frameStatement.addBatch();
+      batchFrameIds.put(frame, frameId);
+    }
+    myFrameIds.put(frame, frameId);
+    synchronized (myFrames) {
+      myFrames.put(frameId, frame);
+    }
+    return frameId;
+  }
+
+  /**
+   * @return the frames of {@code frameIds} and of all their callers. The frames missing from the cache are queried together, one level
+   * of the trie at a time.
+   */
+  @NotNull
+  private Map<Integer, Frame> getFrames(@NotNull Collection<Integer> frameIds) throws SQLException {
+    Map<Integer, Frame> frames = new HashMap<>();
+    Set<Integer> pendingFrameIds = new HashSet<>(frameIds);
+    while (!pendingFrameIds.isEmpty()) {
+      Set<Integer> uncachedFrameIds = new HashSet<>();
+      synchronized (myFrames) {
+        for (int frameId : pendingFrameIds) {
+          Frame frame = myFrames.get(frameId);
+          if (frame != null) {
+            frames.put(frameId, frame);
+          }
+          else if (frameId != ROOT_FRAME_ID) {
+            uncachedFrameIds.add(frameId);
+          }
+        }
+      }
+      queryFrames(QUERY_FRAMES, uncachedFrameIds, (frameId, frame) -> {
+        frames.put(frameId, frame);
+        synchronized (myFrames) {
+          myFrames.put(frameId, frame);
+        }
+      });
+
+      Set<Integer> parentFrameIds = new HashSet<>();
+      for (int frameId : pendingFrameIds) {
+        Frame frame = frames.get(frameId);
+        if (frame != null && frame.myParentFrameId != ROOT_FRAME_ID && !frames.containsKey(frame.myParentFrameId)) {
+          parentFrameIds.add(frame.myParentFrameId);
+        }
+      }
+      pendingFrameIds = parentFrameIds;
+    }
+    return frames;
+  }
+
+  /**
+   * Runs {@code statement}, which takes {@link #FRAME_QUERY_BATCH_SIZE} ids, for chunks of {@code ids}, and passes the id and frame of
+   * each row it returns to {@code consumer}. The last chunk is padded with an id no frame has.
+   */
+  private void queryFrames(@NotNull MemoryStatements statement,
+                           @NotNull Collection<Integer> ids,
+                           @NotNull BiConsumer<Integer, Frame> consumer) throws SQLException {
+    List<Integer> idList = new ArrayList<>(ids);
+    for (int start = 0; start < idList.size(); start += FRAME_QUERY_BATCH_SIZE) {
+      Object[] params = new Object[FRAME_QUERY_BATCH_SIZE];
+      for (int i = 0; i < params.length; i++) {
+        params[i] = start + i < idList.size() ? idList.get(start + i) : -1;
+      }
+      ResultSet result = executeQuery(statement, params);
+      while (result.next()) {
+        consumer.accept(result.getInt(1), new Frame(result.getInt(2), result.getLong(3), result.getInt(4)));
+      }
+    }
+  }
+
   public void insertThreadInfo(int pid, Common.Session session, List<ThreadInfo> threads) {
+    write(() -> doInsertThreadInfo(pid, session, threads));
+  }
+
+  private void doInsertThreadInfo(int pid, Common.Session session, List<ThreadInfo> threads) {
     try {
       PreparedStatement statement = getStatementMap().get(INSERT_THREAD_INFO);
       assert statement != null;
@@ -364,18 +533,20 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   /**
-   * Removes entries from the allocations table so the process (in-memory DB) doesn't run out of memory.
+   * Removes the oldest freed allocations of a session once it has more than its {@link RetentionPolicy#getMaxEventCount()}, so the
+   * process (in-memory DB) doesn't run out of memory.
    */
   private void pruneAllocations(int pid, @NotNull Common.Session session) {
     try {
       // TODO save data to disk
-      ResultSet result = executeQuery(COUNT_ALLOC);
+      ResultSet result = executeQuery(COUNT_ALLOC, pid, session);
       result.next();
       int rowCount = result.getInt(1);
-      if (rowCount > myAllocationCountLimit) {
-        int pruneCount = rowCount - myAllocationCountLimit;
+      int allocationCountLimit = getRetentionPolicy(session).getMaxEventCount();
+      if (rowCount > allocationCountLimit) {
+        int pruneCount = rowCount - allocationCountLimit;
         execute(PRUNE_ALLOC, pid, session, pid, session, pruneCount);
-        getLogger().info(String.format("Allocations have exceed %d entries. Attempting to prune %d.", myAllocationCountLimit, pruneCount));
+        getLogger().info(String.format("Allocations have exceed %d entries. Attempting to prune %d.", allocationCountLimit, pruneCount));
       }
     }
     catch (SQLException e) {
@@ -383,6 +554,57 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
+  @NotNull
+  private static String getParameterList(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  /**
+   * A node of the callstack trie: a method and line number called from the parent frame.
+   */
+  private static final class Frame {
+    private final int myParentFrameId;
+    private final long myMethodId;
+    private final int myLineNumber;
+
+    private Frame(int parentFrameId, long methodId, int lineNumber) {
+      myParentFrameId = parentFrameId;
+      myMethodId = methodId;
+      myLineNumber = lineNumber;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myParentFrameId, myMethodId, myLineNumber);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Frame)) {
+        return false;
+      }
+      Frame other = (Frame)obj;
+      return myParentFrameId == other.myParentFrameId && myMethodId == other.myMethodId && myLineNumber == other.myLineNumber;
+    }
+  }
+
+  /**
+   * A map that only keeps its {@code capacity} most recently used entries.
+   */
+  private static final class LruCache<K, V> extends LinkedHashMap<K, V> {
+    private final int myCapacity;
+
+    private LruCache(int capacity) {
+      super(16, 0.75f, true);
+      myCapacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > myCapacity;
+    }
+  }
+
   /**
    * Converts jni class names into java names
    * e.g. Ljava/lang/String; -> java.lang.String
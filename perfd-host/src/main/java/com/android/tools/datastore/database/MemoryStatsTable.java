@@ -26,11 +26,16 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
 
 import static com.android.tools.datastore.database.MemoryStatsTable.MemoryStatements.*;
 
@@ -52,6 +57,11 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     QUERY_GC_STATS(
       String.format("SELECT Data FROM Memory_Samples WHERE Pid = ? AND Session = ? AND Type = %d AND TimeStamp > ? AND TimeStamp <= ?",
                     MemorySamplesType.GC_STATS.ordinal())),
+    COUNT_SAMPLES("SELECT count(*) FROM Memory_Samples WHERE Pid = ? AND Session = ? AND Type = ?"),
+    // Deletes the samples up to the one at the given offset from the oldest.
+    PRUNE_SAMPLES("DELETE FROM Memory_Samples WHERE Pid = ? AND Session = ? AND Type = ? AND Timestamp <= (" +
+                  " SELECT Timestamp FROM Memory_Samples WHERE Pid = ? AND Session = ? AND Type = ? ORDER BY Timestamp LIMIT 1 OFFSET ?" +
+                  ")"),
 
     INSERT_OR_REPLACE_HEAP_INFO(
       "INSERT OR REPLACE INTO Memory_HeapDump (Pid, Session, StartTime, EndTime, Status, InfoData) VALUES (?, ?, ?, ?, ?, ?)"),
@@ -99,6 +109,33 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     GC_STATS
   }
 
+  /**
+   * Value layout of the {@link MemorySamplesType#MEMORY} series when stored in a {@link TieredTimeSeries}.
+   */
+  private static final int JAVA_MEM_VALUE = 0;
+  private static final int NATIVE_MEM_VALUE = 1;
+  private static final int STACK_MEM_VALUE = 2;
+  private static final int GRAPHICS_MEM_VALUE = 3;
+  private static final int CODE_MEM_VALUE = 4;
+  private static final int OTHERS_MEM_VALUE = 5;
+  private static final int TOTAL_MEM_VALUE = 6;
+  private static final TieredTimeSeries.Aggregation[] MEMORY_AGGREGATIONS = new TieredTimeSeries.Aggregation[7];
+
+  static {
+    Arrays.fill(MEMORY_AGGREGATIONS, TieredTimeSeries.Aggregation.AVG);
+  }
+
+  /**
+   * Value layout of the {@link MemorySamplesType#ALLOC_STATS} series. The counts are cumulative, so they are downsampled to their max.
+   */
+  private static final int JAVA_ALLOCATION_COUNT_VALUE = 0;
+  private static final int JAVA_FREE_COUNT_VALUE = 1;
+  private static final TieredTimeSeries.Aggregation[] ALLOC_STATS_AGGREGATIONS =
+    {TieredTimeSeries.Aggregation.MAX, TieredTimeSeries.Aggregation.MAX};
+
+  // Number of rows of each sample type, by process and session, maintained by the writes that insert and prune the samples.
+  private final Map<TimeSeriesStore.SeriesKey, Integer> mySampleRowCounts = new ConcurrentHashMap<>();
+
   private static Logger getLogger() {
     return Logger.getInstance(MemoryStatsTable.class);
   }
@@ -110,6 +147,7 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    mySampleRowCounts.clear();
     try {
       createTable("Memory_Samples", "Pid INTEGER NOT NULL", "Session INTEGER NOT NULL", "Timestamp INTEGER", "Type INTEGER",
                   "Data BLOB", "PRIMARY KEY(Pid, Session, Timestamp, Type)");
@@ -146,11 +184,14 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
     List<MemoryData.MemorySample> memorySamples =
-      getResultsInfo(QUERY_MEMORY, pid, request.getSession(), startTime, endTime,
-                     MemoryData.MemorySample.getDefaultInstance());
+      isColumnar()
+      ? getColumnarMemorySamples(pid, request.getSession(), startTime, endTime)
+      : getResultsInfo(QUERY_MEMORY, pid, request.getSession(), startTime, endTime, MemoryData.MemorySample.getDefaultInstance());
     List<MemoryData.AllocStatsSample> allocStatsSamples =
-      getResultsInfo(QUERY_ALLOC_STATS, pid, request.getSession(), startTime, endTime,
-                     MemoryData.AllocStatsSample.getDefaultInstance());
+      isColumnar()
+      ? getColumnarAllocStatsSamples(pid, request.getSession(), startTime, endTime)
+      : getResultsInfo(QUERY_ALLOC_STATS, pid, request.getSession(), startTime, endTime,
+                       MemoryData.AllocStatsSample.getDefaultInstance());
     List<MemoryData.GcStatsSample> gcStatsSamples =
       getResultsInfo(QUERY_GC_STATS, pid, request.getSession(), startTime, endTime,
                      MemoryData.GcStatsSample.getDefaultInstance());
@@ -170,24 +211,143 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
   }
 
   public void insertMemory(int pid, Common.Session session, List<MemoryData.MemorySample> samples) {
-    for (MemoryData.MemorySample sample : samples) {
-      execute(INSERT_SAMPLE, pid, session, sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(),
-              sample.toByteArray());
+    if (isColumnar()) {
+      TieredTimeSeries series =
+        getTimeSeriesStore().getOrCreate(getSessionId(session), pid, MemorySamplesType.MEMORY.ordinal(), MEMORY_AGGREGATIONS);
+      for (MemoryData.MemorySample sample : samples) {
+        series.append(sample.getTimestamp(), getMemoryValues(sample));
+      }
+    }
+    if (hasSampleRows()) {
+      insertSamples(pid, session, MemorySamplesType.MEMORY, samples, MemoryData.MemorySample::getTimestamp);
     }
   }
 
+  @NotNull
+  private static long[] getMemoryValues(@NotNull MemoryData.MemorySample sample) {
+    return new long[]{sample.getJavaMem(), sample.getNativeMem(), sample.getStackMem(), sample.getGraphicsMem(), sample.getCodeMem(),
+      sample.getOthersMem(), sample.getTotalMem()};
+  }
+
+  @NotNull
+  private List<MemoryData.MemorySample> getColumnarMemorySamples(int pid, @NotNull Common.Session session, long startTime, long endTime) {
+    List<MemoryData.MemorySample> samples = new ArrayList<>();
+    TieredTimeSeries series =
+      getColumnarSeries(getSessionId(session), pid, MemorySamplesType.MEMORY.ordinal(), MEMORY_AGGREGATIONS, column -> {
+        List<MemoryData.MemorySample> rows =
+          getResultsInfo(QUERY_MEMORY, pid, session, Long.MIN_VALUE, Long.MAX_VALUE, MemoryData.MemorySample.getDefaultInstance());
+        rows.sort(Comparator.comparingLong(MemoryData.MemorySample::getTimestamp));
+        rows.forEach(sample -> column.append(sample.getTimestamp(), getMemoryValues(sample)));
+      });
+    if (series != null) {
+      series.forEachInRange(startTime, endTime, (timestamp, values) -> samples.add(
+        MemoryData.MemorySample.newBuilder()
+          .setTimestamp(timestamp)
+          .setJavaMem((int)values[JAVA_MEM_VALUE])
+          .setNativeMem((int)values[NATIVE_MEM_VALUE])
+          .setStackMem((int)values[STACK_MEM_VALUE])
+          .setGraphicsMem((int)values[GRAPHICS_MEM_VALUE])
+          .setCodeMem((int)values[CODE_MEM_VALUE])
+          .setOthersMem((int)values[OTHERS_MEM_VALUE])
+          .setTotalMem((int)values[TOTAL_MEM_VALUE])
+          .build()));
+    }
+    return samples;
+  }
+
   public void insertAllocStats(int pid, Common.Session session, List<MemoryData.AllocStatsSample> samples) {
-    for (MemoryData.AllocStatsSample sample : samples) {
-      execute(INSERT_SAMPLE, pid, session, sample.getTimestamp(), MemorySamplesType.ALLOC_STATS.ordinal(),
-              sample.toByteArray());
+    if (isColumnar()) {
+      TieredTimeSeries series =
+        getTimeSeriesStore().getOrCreate(getSessionId(session), pid, MemorySamplesType.ALLOC_STATS.ordinal(), ALLOC_STATS_AGGREGATIONS);
+      for (MemoryData.AllocStatsSample sample : samples) {
+        series.append(sample.getTimestamp(), sample.getJavaAllocationCount(), sample.getJavaFreeCount());
+      }
     }
+    if (hasSampleRows()) {
+      insertSamples(pid, session, MemorySamplesType.ALLOC_STATS, samples, MemoryData.AllocStatsSample::getTimestamp);
+    }
+  }
+
+  @NotNull
+  private List<MemoryData.AllocStatsSample> getColumnarAllocStatsSamples(int pid,
+                                                                        @NotNull Common.Session session,
+                                                                        long startTime,
+                                                                        long endTime) {
+    List<MemoryData.AllocStatsSample> samples = new ArrayList<>();
+    TieredTimeSeries series =
+      getColumnarSeries(getSessionId(session), pid, MemorySamplesType.ALLOC_STATS.ordinal(), ALLOC_STATS_AGGREGATIONS, column -> {
+        List<MemoryData.AllocStatsSample> rows = getResultsInfo(QUERY_ALLOC_STATS, pid, session, Long.MIN_VALUE, Long.MAX_VALUE,
+                                                                MemoryData.AllocStatsSample.getDefaultInstance());
+        rows.sort(Comparator.comparingLong(MemoryData.AllocStatsSample::getTimestamp));
+        rows.forEach(sample -> column.append(sample.getTimestamp(), sample.getJavaAllocationCount(), sample.getJavaFreeCount()));
+      });
+    if (series != null) {
+      series.forEachInRange(startTime, endTime, (timestamp, values) -> samples.add(
+        MemoryData.AllocStatsSample.newBuilder()
+          .setTimestamp(timestamp)
+          .setJavaAllocationCount((int)values[JAVA_ALLOCATION_COUNT_VALUE])
+          .setJavaFreeCount((int)values[JAVA_FREE_COUNT_VALUE])
+          .build()));
+    }
+    return samples;
   }
 
   public void insertGcStats(int pid, Common.Session session, List<MemoryData.GcStatsSample> samples) {
-    for (MemoryData.GcStatsSample sample : samples) {
-      execute(INSERT_SAMPLE, pid, session, sample.getStartTime(), MemorySamplesType.GC_STATS.ordinal(),
-              sample.toByteArray());
+    insertSamples(pid, session, MemorySamplesType.GC_STATS, samples, MemoryData.GcStatsSample::getStartTime);
+  }
+
+  private <S extends GeneratedMessageV3> void insertSamples(int pid,
+                                                            @NotNull Common.Session session,
+                                                            @NotNull MemorySamplesType type,
+                                                            @NotNull List<S> samples,
+                                                            @NotNull ToLongFunction<S> getTimestamp) {
+    if (samples.isEmpty()) {
+      return;
+    }
+    write(() -> {
+      try {
+        if (isClosed()) {
+          return;
+        }
+        int insertedCount = 0;
+        for (S sample : samples) {
+          insertedCount +=
+            executeUpdateNow(INSERT_SAMPLE, pid, session, getTimestamp.applyAsLong(sample), type.ordinal(), sample.toByteArray());
+        }
+        pruneSamples(pid, session, type, insertedCount);
+      }
+      catch (SQLException ex) {
+        onError(ex);
+      }
+    });
+  }
+
+  /**
+   * Deletes the oldest samples of a type once the session has more than its {@link RetentionPolicy#getMaxEventCount()}. The samples
+   * stored in rows are not downsampled, so this is what keeps them from growing for as long as the session is profiled. The row counts
+   * are tracked as samples are inserted and deleted, so the rows of a session are only counted once.
+   */
+  private void pruneSamples(int pid, @NotNull Common.Session session, @NotNull MemorySamplesType type, int insertedCount)
+    throws SQLException {
+    TimeSeriesStore.SeriesKey key = new TimeSeriesStore.SeriesKey(getSessionId(session), pid, type.ordinal());
+    Integer rowCount = mySampleRowCounts.get(key);
+    if (rowCount == null) {
+      // Rows may already exist, e.g. for a session imported from another database, so they are counted once.
+      PreparedStatement count = getStatementMap().get(COUNT_SAMPLES);
+      applyParams(count, pid, session, type.ordinal());
+      ResultSet result = count.executeQuery();
+      result.next();
+      rowCount = result.getInt(1);
+    }
+    else {
+      rowCount += insertedCount;
+    }
+    int sampleCountLimit = getRetentionPolicy(session).getMaxEventCount();
+    if (rowCount > sampleCountLimit) {
+      rowCount -=
+        executeUpdateNow(PRUNE_SAMPLES, pid, session, type.ordinal(), pid, session, type.ordinal(), rowCount - sampleCountLimit - 1);
     }
+    mySampleRowCounts.put(key, rowCount);
   }
 
   /**
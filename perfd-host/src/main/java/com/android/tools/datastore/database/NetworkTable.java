@@ -42,6 +42,17 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
   private static final int RESPONSE_COLUMN = 4;
   private static final int THREADS_COLUMN = 5;
 
+  /**
+   * Value layout of the speed series when stored in a {@link TieredTimeSeries}. Network data is keyed by app id only, so the series
+   * are stored under an unknown session.
+   */
+  private static final long SPEED_SERIES_SESSION = -1;
+  private static final int SPEED_SERIES_TYPE = NetworkProfiler.NetworkDataRequest.Type.SPEED.getNumber();
+  private static final int SENT_VALUE = 0;
+  private static final int RECEIVED_VALUE = 1;
+  private static final TieredTimeSeries.Aggregation[] SPEED_AGGREGATIONS =
+    {TieredTimeSeries.Aggregation.AVG, TieredTimeSeries.Aggregation.AVG};
+
   static {
     DATACASE_REQUEST_TYPE_MAP
       .put(NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA, NetworkProfiler.NetworkDataRequest.Type.SPEED.getNumber());
@@ -119,6 +130,9 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
 
   public List<NetworkProfiler.NetworkProfilerData> getNetworkDataByRequest(NetworkProfiler.NetworkDataRequest request) {
     List<NetworkProfiler.NetworkProfilerData> datas = new ArrayList<>();
+    if (isColumnar() && request.getType() == NetworkProfiler.NetworkDataRequest.Type.SPEED) {
+      return getColumnarSpeedData(request);
+    }
     ResultSet results;
     try {
       if (request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) {
@@ -140,10 +154,74 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
     catch (InvalidProtocolBufferException | SQLException ex) {
       getLogger().error(ex);
     }
+    if (!hasSampleRows() && request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL) {
+      // Speed samples are not in the database, merge them back with the other types in timestamp order. The sort is stable, so the
+      // database rows come before the speed samples with the same timestamp.
+      datas.addAll(getColumnarSpeedData(request));
+      datas.sort(Comparator.comparingLong(data -> data.getBasicInfo().getEndTimestamp()));
+    }
     return datas;
   }
 
+  @NotNull
+  private List<NetworkProfiler.NetworkProfilerData> getColumnarSpeedData(@NotNull NetworkProfiler.NetworkDataRequest request) {
+    List<NetworkProfiler.NetworkProfilerData> datas = new ArrayList<>();
+    // Matches the (Id = ? OR Id = ?) clause of the SQL queries.
+    int[] appIds = request.getProcessId() == Common.AppId.ANY_VALUE
+                   ? new int[]{request.getProcessId()}
+                   : new int[]{request.getProcessId(), Common.AppId.ANY_VALUE};
+    for (int appId : appIds) {
+      TieredTimeSeries series =
+        getColumnarSeries(SPEED_SERIES_SESSION, appId, SPEED_SERIES_TYPE, SPEED_AGGREGATIONS, column -> loadSpeedRows(appId, column));
+      if (series != null) {
+        series.forEachInRange(request.getStartTimestamp(), request.getEndTimestamp(), (timestamp, values) -> datas.add(
+          NetworkProfiler.NetworkProfilerData.newBuilder()
+            .setBasicInfo(Common.CommonData.newBuilder().setProcessId(appId).setEndTimestamp(timestamp))
+            .setSpeedData(NetworkProfiler.SpeedData.newBuilder().setSent(values[SENT_VALUE]).setReceived(values[RECEIVED_VALUE]))
+            .build()));
+      }
+    }
+    if (appIds.length > 1) {
+      datas.sort(Comparator.comparingLong(data -> data.getBasicInfo().getEndTimestamp()));
+    }
+    return datas;
+  }
+
+  private void loadSpeedRows(int appId, @NotNull TimeSeriesColumn samples) {
+    List<NetworkProfiler.NetworkProfilerData> rows = new ArrayList<>();
+    try {
+      ResultSet results = executeQuery(NetworkStatements.QUERY_NETWORK_DATA_BY_TYPE, appId, appId, SPEED_SERIES_TYPE, Long.MIN_VALUE,
+                                       Long.MAX_VALUE);
+      while (results.next()) {
+        rows.add(NetworkProfiler.NetworkProfilerData.parseFrom(results.getBytes(1)));
+      }
+    }
+    catch (InvalidProtocolBufferException | SQLException ex) {
+      getLogger().error(ex);
+    }
+    rows.sort(Comparator.comparingLong(data -> data.getBasicInfo().getEndTimestamp()));
+    for (NetworkProfiler.NetworkProfilerData data : rows) {
+      samples.append(data.getBasicInfo().getEndTimestamp(), data.getSpeedData().getSent(), data.getSpeedData().getReceived());
+    }
+  }
+
+  /**
+   * Network samples are keyed by app only, so the policy applies to the speed samples of every session.
+   */
+  @Override
+  public void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+    getTimeSeriesStore().setRetentionPolicy(SPEED_SERIES_SESSION, policy);
+  }
+
   public void insert(int appId, NetworkProfiler.NetworkProfilerData data) {
+    boolean isSpeedData = data.getDataCase() == NetworkProfiler.NetworkProfilerData.DataCase.SPEED_DATA;
+    if (isColumnar() && isSpeedData) {
+      getTimeSeriesStore().getOrCreate(SPEED_SERIES_SESSION, appId, SPEED_SERIES_TYPE, SPEED_AGGREGATIONS)
+        .append(data.getBasicInfo().getEndTimestamp(), data.getSpeedData().getSent(), data.getSpeedData().getReceived());
+      if (!hasSampleRows()) {
+        return;
+      }
+    }
     execute(NetworkStatements.INSERT_NETWORK_DATA, appId, DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
             data.getBasicInfo().getEndTimestamp(), data.toByteArray());
   }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.google.protobuf3jarjar.ByteString;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A content-addressed store for large payloads (e.g. network request and response bodies), so they are kept compressed on disk
+ * instead of inline in the database. Payloads are keyed by the SHA-256 of their contents, so identical payloads are only stored once.
+ */
+public class PayloadStore {
+  private static final String FILE_EXTENSION = ".gz";
+
+  @NotNull private final File myDirectory;
+
+  private static Logger getLogger() {
+    return Logger.getInstance(PayloadStore.class);
+  }
+
+  public PayloadStore(@NotNull File directory) {
+    myDirectory = directory;
+  }
+
+  /**
+   * Stores {@code contents}, if no identical payload is stored yet.
+   *
+   * @return the key to read the payload back with.
+   */
+  @NotNull
+  public String put(@NotNull ByteString contents) throws IOException {
+    String key = computeKey(contents);
+    File file = getFile(key);
+    if (file.exists()) {
+      return key;
+    }
+
+    if (!myDirectory.mkdirs() && !myDirectory.isDirectory()) {
+      throw new IOException("Unable to create payload directory " + myDirectory);
+    }
+    // Write to a temporary file first, so a concurrent reader never sees a partially written payload.
+    File tempFile = File.createTempFile(key, FILE_EXTENSION, myDirectory);
+    try {
+      try (OutputStream output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        contents.writeTo(output);
+      }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+    }
+    return key;
+  }
+
+  /**
+   * @return a stream of the decompressed payload, or null if there is no payload for {@code key}. The caller must close it.
+   */
+  @Nullable
+  public InputStream openStream(@NotNull String key) throws IOException {
+    File file = getFile(key);
+    if (!file.exists()) {
+      return null;
+    }
+    return new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+  }
+
+  /**
+   * @return the payload stored for {@code key}, or null if there is none or it can't be read.
+   */
+  @Nullable
+  public ByteString get(@NotNull String key) {
+    try (InputStream input = openStream(key)) {
+      return input == null ? null : ByteString.readFrom(input);
+    }
+    catch (IOException ex) {
+      getLogger().warn("Unable to read payload " + key, ex);
+      return null;
+    }
+  }
+
+  /**
+   * Deletes all the payloads.
+   */
+  public void clear() {
+    File[] files = myDirectory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().endsWith(FILE_EXTENSION) && !file.delete()) {
+        getLogger().warn("Unable to delete payload " + file);
+      }
+    }
+  }
+
+  @NotNull
+  private File getFile(@NotNull String key) {
+    return new File(myDirectory, key + FILE_EXTENSION);
+  }
+
+  @NotNull
+  private static String computeKey(@NotNull ByteString contents) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      // Every Java platform is required to support SHA-256.
+      throw new AssertionError(ex);
+    }
+    for (ByteBuffer buffer : contents.asReadOnlyByteBufferList()) {
+      digest.update(buffer);
+    }
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.toString();
+  }
+}
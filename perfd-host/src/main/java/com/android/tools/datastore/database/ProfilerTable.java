@@ -17,11 +17,13 @@ package com.android.tools.datastore.database;
 
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Profiler;
+import com.google.protobuf3jarjar.ByteString;
 import com.google.protobuf3jarjar.InvalidProtocolBufferException;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -51,6 +53,11 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
   // If a process is being queried, while one is being updated it will not get
   // returned in the query results, this results in the UI flickering.
   private final Object myLock = new Object();
+  // Serializes the device inserts, which are done outside of myLock, so that a device is only inserted once.
+  private final Object myDeviceInsertLock = new Object();
+
+  // Where the contents of the cached bytes are kept, if set. Otherwise they are stored inline in the database.
+  @Nullable private PayloadStore myPayloadStore;
 
   private static Logger getLogger() {
     return Logger.getInstance(ProfilerTable.class);
@@ -64,12 +71,16 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
     try {
-      createTable("Profiler_Bytes", "Id STRING NOT NULL", "Session INTEGER NOT NULL", "Data BLOB");
+      createTable("Profiler_Bytes", "Id STRING NOT NULL", "Session INTEGER NOT NULL", "Data BLOB", "PayloadKey TEXT");
       createTable("Profiler_Devices", "Session STRING", "Data BLOB");
       createTable("Profiler_Processes", "Session INTEGER", "ProcessId INTEGER", "StartTime INTEGER", "EndTime INTEGER",
                   "HasAgent INTEGER", "LastKnownAttachedTime INTEGER", "Data BLOB");
       createUniqueIndex("Profiler_Processes", "Session", "ProcessId", "StartTime");
       createUniqueIndex("Profiler_Bytes", "Id", "Session");
+      if (myPayloadStore != null) {
+        // Profiler_Bytes was just recreated, so the payloads of the previous runs are no longer referenced.
+        myPayloadStore.clear();
+      }
       createUniqueIndex("Profiler_Devices", "Session");
     }
     catch (SQLException ex) {
@@ -98,8 +109,8 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
                       "SELECT HasAgent, LastKnownAttachedTime from Profiler_Processes WHERE Session = ? AND ProcessId = ? AND StartTime = ?");
       createStatement(ProfilerStatements.UPDATE_AGENT_STATUS,
                       "UPDATE Profiler_Processes SET HasAgent = ?, LastKnownAttachedTime = ? WHERE Session = ? AND ProcessId = ? AND StartTime = ?");
-      createStatement(ProfilerStatements.INSERT_BYTES, "INSERT OR REPLACE INTO Profiler_Bytes (Id, Session, Data) VALUES (?, ?, ?)");
-      createStatement(ProfilerStatements.GET_BYTES, "SELECT Data FROM Profiler_Bytes WHERE ID = ? AND Session = ?");
+      createStatement(ProfilerStatements.INSERT_BYTES, "INSERT OR REPLACE INTO Profiler_Bytes (Id, Session, Data, PayloadKey) VALUES (?, ?, ?, ?)");
+      createStatement(ProfilerStatements.GET_BYTES, "SELECT Data, PayloadKey FROM Profiler_Bytes WHERE ID = ? AND Session = ?");
     }
     catch (SQLException ex) {
       getLogger().error(ex);
@@ -149,18 +160,22 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
   }
 
   public void insertOrUpdateDevice(Profiler.Device device) {
-    synchronized (myLock) {
-      //TODO: Update start/end times with times polled from device.
-      //End time always equals now, start time comes from device. This way if we get disconnected we still have an accurate end time.
-      Common.Session session = Common.Session.newBuilder()
-        .setBootId(device.getBootId())
-        .setDeviceSerial(device.getSerial())
-        .build();
-      if (mySessionIdLookup.containsKey(session)) {
-        execute(ProfilerStatements.UPDATE_DEVICE, device.toByteArray(), session.toString());
+    //TODO: Update start/end times with times polled from device.
+    //End time always equals now, start time comes from device. This way if we get disconnected we still have an accurate end time.
+    Common.Session session = Common.Session.newBuilder()
+      .setBootId(device.getBootId())
+      .setDeviceSerial(device.getSerial())
+      .build();
+    synchronized (myDeviceInsertLock) {
+      synchronized (myLock) {
+        if (mySessionIdLookup.containsKey(session)) {
+          execute(ProfilerStatements.UPDATE_DEVICE, device.toByteArray(), session.toString());
+          return;
+        }
       }
-      else {
-        long id = executeWithGeneratedKeys(ProfilerStatements.INSERT_DEVICE, session.toString(), device.toByteArray());
+      // The insert waits for the writer to return the generated key, so it is not done under myLock, which the queries need.
+      long id = executeWithGeneratedKeys(ProfilerStatements.INSERT_DEVICE, session.toString(), device.toByteArray());
+      synchronized (myLock) {
         mySessionIdLookup.put(session, id);
       }
     }
@@ -237,8 +252,27 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
     }
   }
 
+  /**
+   * Stores the contents of the cached bytes in {@code payloadStore} from now on, instead of inline in the database. The payloads are
+   * deleted when the table is initialized.
+   */
+  public void setPayloadStore(@NotNull PayloadStore payloadStore) {
+    myPayloadStore = payloadStore;
+  }
+
   public void insertOrUpdateBytes(String id, Common.Session session, Profiler.BytesResponse response) {
-    execute(ProfilerStatements.INSERT_BYTES, id, session, response.toByteArray());
+    // An empty key means the contents are inline.
+    String payloadKey = "";
+    if (myPayloadStore != null && !response.getContents().isEmpty()) {
+      try {
+        payloadKey = myPayloadStore.put(response.getContents());
+        response = response.toBuilder().clearContents().build();
+      }
+      catch (IOException ex) {
+        getLogger().warn("Unable to store payload " + id + ", keeping it in the database", ex);
+      }
+    }
+    execute(ProfilerStatements.INSERT_BYTES, id, session, response.toByteArray(), payloadKey);
   }
 
   @Nullable
@@ -247,7 +281,14 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
       ResultSet results =
         executeQuery(ProfilerStatements.GET_BYTES, request.getId(), request.getSession());
       if (results.next()) {
-        return Profiler.BytesResponse.parseFrom(results.getBytes(1));
+        Profiler.BytesResponse response = Profiler.BytesResponse.parseFrom(results.getBytes(1));
+        String payloadKey = results.getString(2);
+        if (payloadKey == null || payloadKey.isEmpty()) {
+          return response;
+        }
+        ByteString contents = myPayloadStore == null ? null : myPayloadStore.get(payloadKey);
+        // If the payload is gone, treat the bytes as not cached, so they are fetched again.
+        return contents == null ? null : response.toBuilder().setContents(contents).build();
       }
     }
     catch (InvalidProtocolBufferException | SQLException ex) {
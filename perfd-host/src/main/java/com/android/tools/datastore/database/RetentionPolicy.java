@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how much of a session's data the datastore keeps.
+ *
+ * Numeric samples are kept in memory by the {@link TimeSeriesStore}. Raw samples are kept for {@link #getRawRetentionNs()} after the
+ * latest sample. Older data is only available through the downsampled tiers of {@link TieredTimeSeries}. If the session's samples
+ * still take more than {@link #getMaxBytes()}, the oldest data is dropped, finest resolution first.
+ *
+ * Events that can't be downsampled, such as allocations or garbage collections, stay in the database. Once a session has more than
+ * {@link #getMaxEventCount()} events of a kind, the oldest ones are deleted.
+ */
+public final class RetentionPolicy {
+  // 5M ought to be enough for anybody (~300MB of allocation data)
+  // Note - Google Search app can easily allocate 100k+ temporary objects in an relatively short amount of time (e.g. one search query)
+  public static final RetentionPolicy DEFAULT = new RetentionPolicy(TimeUnit.MINUTES.toNanos(10), 64 * 1024 * 1024, 5000000);
+
+  private final long myRawRetentionNs;
+  private final long myMaxBytes;
+  private final int myMaxEventCount;
+
+  public RetentionPolicy(long rawRetentionNs, long maxBytes) {
+    this(rawRetentionNs, maxBytes, DEFAULT.getMaxEventCount());
+  }
+
+  /**
+   * @param rawRetentionNs how long raw samples are kept. Clamped to the coarsest tier's bucket so the tiers always cover the samples
+   *                       that are dropped.
+   * @param maxBytes       memory ceiling for all the samples of a session.
+   * @param maxEventCount  number of events of each kind a session keeps in the database.
+   */
+  public RetentionPolicy(long rawRetentionNs, long maxBytes, int maxEventCount) {
+    myRawRetentionNs = Math.max(rawRetentionNs, 2 * TieredTimeSeries.TIER_BUCKET_NS[TieredTimeSeries.TIER_BUCKET_NS.length - 1]);
+    myMaxBytes = maxBytes;
+    myMaxEventCount = maxEventCount;
+  }
+
+  public long getRawRetentionNs() {
+    return myRawRetentionNs;
+  }
+
+  public long getMaxBytes() {
+    return myMaxBytes;
+  }
+
+  public int getMaxEventCount() {
+    return myMaxEventCount;
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A numeric time series made of a raw {@link TimeSeriesColumn} plus coarser tiers in which the samples are rolled up into fixed
+ * buckets of {@link #TIER_BUCKET_NS}. Each tier bucket stores the min, max and average of every value, and is timestamped with the
+ * last sample it contains.
+ *
+ * Range queries are served from the finest level that both still has data at the start of the range and returns at most
+ * {@link #MAX_SAMPLES_PER_QUERY} samples, falling back to finer levels for the most recent part of the range that the coarser
+ * level has not closed a bucket for yet. When a tier is used, each value is reported using the {@link Aggregation} the series was
+ * created with.
+ */
+public class TieredTimeSeries {
+  static final long[] TIER_BUCKET_NS = {TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10), TimeUnit.MINUTES.toNanos(1)};
+  static final int MAX_SAMPLES_PER_QUERY = 2000;
+
+  private static final int MIN_OFFSET = 0;
+  private static final int MAX_OFFSET = 1;
+  private static final int AVG_OFFSET = 2;
+  private static final int AGGREGATE_COUNT = 3;
+
+  /**
+   * How a value is reported when served from a downsampled tier.
+   */
+  public enum Aggregation {
+    MIN,
+    MAX,
+    /**
+     * For gauges, such as memory usage or network speed.
+     */
+    AVG;
+
+    private int getOffset() {
+      switch (this) {
+        case MIN:
+          return MIN_OFFSET;
+        case MAX:
+          return MAX_OFFSET;
+        case AVG:
+          return AVG_OFFSET;
+      }
+      throw new AssertionError(this);
+    }
+  }
+
+  private final int myValueCount;
+  @NotNull private final Aggregation[] myAggregations;
+  @NotNull private final TimeSeriesColumn myRaw;
+  @NotNull private final TimeSeriesColumn[] myTiers = new TimeSeriesColumn[TIER_BUCKET_NS.length];
+  @NotNull private final Bucket[] myOpenBuckets = new Bucket[TIER_BUCKET_NS.length];
+  @Nullable private final Runnable myGrowthListener;
+
+  /**
+   * @param aggregations   how each value is reported from the downsampled tiers. For cumulative counters, use {@link Aggregation#MAX}.
+   * @param growthListener called, outside of the series' lock, every time the series allocates a new partition.
+   */
+  public TieredTimeSeries(@NotNull Aggregation[] aggregations, @Nullable Runnable growthListener) {
+    myValueCount = aggregations.length;
+    myAggregations = aggregations;
+    myGrowthListener = growthListener;
+    myRaw = new TimeSeriesColumn(myValueCount);
+    for (int i = 0; i < TIER_BUCKET_NS.length; i++) {
+      myTiers[i] = new TimeSeriesColumn(myValueCount * AGGREGATE_COUNT);
+      myOpenBuckets[i] = new Bucket(myValueCount);
+    }
+  }
+
+  public int getValueCount() {
+    return myValueCount;
+  }
+
+  public void append(long timestamp, @NotNull long... values) {
+    if (appendInternal(timestamp, values) && myGrowthListener != null) {
+      myGrowthListener.run();
+    }
+  }
+
+  private synchronized boolean appendInternal(long timestamp, @NotNull long[] values) {
+    if (timestamp <= myRaw.getLastTimestamp()) {
+      return false;
+    }
+    boolean grew = myRaw.append(timestamp, values);
+    for (int i = 0; i < TIER_BUCKET_NS.length; i++) {
+      long bucketIndex = Math.floorDiv(timestamp, TIER_BUCKET_NS[i]);
+      Bucket bucket = myOpenBuckets[i];
+      if (bucket.myCount > 0 && bucket.myIndex != bucketIndex) {
+        grew |= myTiers[i].append(bucket.myLastTimestamp, bucket.close());
+      }
+      bucket.add(bucketIndex, timestamp, values);
+    }
+    return grew;
+  }
+
+  /**
+   * Visits the samples in the range (startExclusive, endInclusive], using the downsampled tiers if the range is too wide for the raw
+   * samples or if the raw samples at the start of the range have been dropped.
+   */
+  public synchronized void forEachInRange(long startExclusive, long endInclusive, @NotNull TimeSeriesColumn.SampleVisitor visitor) {
+    long lastTimestamp = myRaw.getLastTimestamp();
+    if (startExclusive >= endInclusive || lastTimestamp == Long.MIN_VALUE) {
+      return;
+    }
+
+    // Estimate the size of the range from the data that actually exists, as requests are often open ended.
+    long firstTimestamp = getFirstTimestamp();
+    long start = Math.max(startExclusive, firstTimestamp - 1);
+    long end = Math.min(endInclusive, lastTimestamp);
+    if (start >= end) {
+      return;
+    }
+    double span = (double)end - start;
+
+    int level = -1;
+    long rawFirst = myRaw.getFirstTimestamp();
+    long rawCount = myRaw.getSampleCount();
+    double rawSamplesInRange = rawCount <= 1 ? rawCount : span * (rawCount - 1) / Math.max(1, lastTimestamp - rawFirst);
+    if (rawFirst > start + 1 || rawSamplesInRange > MAX_SAMPLES_PER_QUERY) {
+      level = TIER_BUCKET_NS.length - 1;
+      for (int i = 0; i < TIER_BUCKET_NS.length; i++) {
+        boolean coversStart = myTiers[i].getFirstTimestamp() <= start + TIER_BUCKET_NS[i];
+        if (coversStart && span / TIER_BUCKET_NS[i] <= MAX_SAMPLES_PER_QUERY) {
+          level = i;
+          break;
+        }
+      }
+    }
+
+    long cursor = startExclusive;
+    if (level >= 0) {
+      long[] reported = new long[myValueCount];
+      TimeSeriesColumn.SampleVisitor tierVisitor = (timestamp, aggregates) -> {
+        for (int i = 0; i < myValueCount; i++) {
+          reported[i] = aggregates[i * AGGREGATE_COUNT + myAggregations[i].getOffset()];
+        }
+        visitor.visit(timestamp, reported);
+      };
+      // Serve from the chosen tier, then from the finer tiers for the buckets the coarser ones have not closed yet.
+      for (int i = level; i >= 0; i--) {
+        long tierLast = myTiers[i].getLastTimestamp();
+        if (tierLast <= cursor) {
+          continue;
+        }
+        myTiers[i].forEachInRange(cursor, Math.min(endInclusive, tierLast), tierVisitor);
+        cursor = tierLast;
+        if (cursor >= endInclusive) {
+          return;
+        }
+      }
+    }
+    myRaw.forEachInRange(cursor, endInclusive, visitor);
+  }
+
+  /**
+   * @return the timestamp of the oldest data still available in any level.
+   */
+  public synchronized long getFirstTimestamp() {
+    long first = myRaw.getFirstTimestamp();
+    for (TimeSeriesColumn tier : myTiers) {
+      first = Math.min(first, tier.getFirstTimestamp());
+    }
+    return first;
+  }
+
+  public synchronized long getEncodedSize() {
+    long size = myRaw.getEncodedSize();
+    for (TimeSeriesColumn tier : myTiers) {
+      size += tier.getEncodedSize();
+    }
+    return size;
+  }
+
+  /**
+   * Drops the raw partitions that are entirely older than {@code retentionNs} before the latest sample.
+   */
+  public synchronized void removeRawSamplesOlderThan(long retentionNs) {
+    long last = myRaw.getLastTimestamp();
+    if (last != Long.MIN_VALUE) {
+      myRaw.removePartitionsBefore(last - retentionNs);
+    }
+  }
+
+  /**
+   * Drops the oldest partition of the finest level that has more than one partition.
+   *
+   * @return false if nothing could be dropped.
+   */
+  public synchronized boolean removeOldestData() {
+    if (myRaw.removeOldestPartition()) {
+      return true;
+    }
+    for (TimeSeriesColumn tier : myTiers) {
+      if (tier.removeOldestPartition()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Aggregates of the samples falling into the current bucket of a tier.
+   */
+  private static final class Bucket {
+    private long myIndex;
+    private long myLastTimestamp;
+    private int myCount;
+    private final long[] myMin;
+    private final long[] myMax;
+    private final long[] mySum;
+    private final long[] myAggregates;
+
+    Bucket(int valueCount) {
+      myMin = new long[valueCount];
+      myMax = new long[valueCount];
+      mySum = new long[valueCount];
+      myAggregates = new long[valueCount * AGGREGATE_COUNT];
+    }
+
+    void add(long index, long timestamp, long[] values) {
+      if (myCount == 0) {
+        myIndex = index;
+        Arrays.fill(myMin, Long.MAX_VALUE);
+        Arrays.fill(myMax, Long.MIN_VALUE);
+        Arrays.fill(mySum, 0);
+      }
+      for (int i = 0; i < values.length; i++) {
+        myMin[i] = Math.min(myMin[i], values[i]);
+        myMax[i] = Math.max(myMax[i], values[i]);
+        mySum[i] += values[i];
+      }
+      myLastTimestamp = timestamp;
+      myCount++;
+    }
+
+    /**
+     * @return the min, max and average of each value, and resets the bucket. The array is reused by the next call.
+     */
+    long[] close() {
+      for (int i = 0; i < myMin.length; i++) {
+        myAggregates[i * AGGREGATE_COUNT + MIN_OFFSET] = myMin[i];
+        myAggregates[i * AGGREGATE_COUNT + MAX_OFFSET] = myMax[i];
+        myAggregates[i * AGGREGATE_COUNT + AVG_OFFSET] = mySum[i] / myCount;
+      }
+      myCount = 0;
+      return myAggregates;
+    }
+  }
+}
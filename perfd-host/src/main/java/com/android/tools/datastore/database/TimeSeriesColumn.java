@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An append-only series of numeric samples, each made of a timestamp and a fixed number of long values.
+ *
+ * Samples are grouped into partitions of at most {@link #PARTITION_SIZE} consecutive samples. Within a partition, the timestamps and
+ * every value column are delta-encoded against the previous sample and written as zig-zag varints, so a regularly polled counter
+ * typically costs a few bytes per sample instead of a full protobuf row. Each partition remembers its first and last timestamp so a
+ * range lookup can binary search for the first relevant partition and only decode the partitions that overlap the range.
+ *
+ * Old partitions can be removed to bound memory usage, see {@link TieredTimeSeries}.
+ *
+ * Timestamps must be appended in increasing order. A sample whose timestamp is older than the last one is dropped, and a sample with
+ * the same timestamp as the last one is ignored, matching the unique (timestamp) index of the SQL tables this replaces.
+ */
+public class TimeSeriesColumn {
+  static final int PARTITION_SIZE = 256;
+
+  public interface SampleVisitor {
+    /**
+     * @param values the decoded values of the sample. The array is reused between calls and must not be retained.
+     */
+    void visit(long timestamp, @NotNull long[] values);
+  }
+
+  private final int myValueCount;
+  private final List<Partition> myPartitions = new ArrayList<>();
+  private long mySampleCount;
+
+  public TimeSeriesColumn(int valueCount) {
+    myValueCount = valueCount;
+  }
+
+  public int getValueCount() {
+    return myValueCount;
+  }
+
+  public synchronized long getSampleCount() {
+    return mySampleCount;
+  }
+
+  /**
+   * @return the approximate number of bytes used by the encoded samples.
+   */
+  public synchronized long getEncodedSize() {
+    long size = 0;
+    for (Partition partition : myPartitions) {
+      size += partition.myBuffer.length;
+    }
+    return size;
+  }
+
+  /**
+   * @return the timestamp of the oldest sample still in the column, or {@link Long#MAX_VALUE} if it is empty.
+   */
+  public synchronized long getFirstTimestamp() {
+    return myPartitions.isEmpty() ? Long.MAX_VALUE : myPartitions.get(0).myFirstTimestamp;
+  }
+
+  /**
+   * @return the timestamp of the latest sample appended to the column, or {@link Long#MIN_VALUE} if it is empty.
+   */
+  public synchronized long getLastTimestamp() {
+    return myPartitions.isEmpty() ? Long.MIN_VALUE : myPartitions.get(myPartitions.size() - 1).myLastTimestamp;
+  }
+
+  public synchronized int getPartitionCount() {
+    return myPartitions.size();
+  }
+
+  /**
+   * @return true if the sample started a new partition.
+   */
+  public synchronized boolean append(long timestamp, @NotNull long... values) {
+    assert values.length == myValueCount;
+    Partition last = myPartitions.isEmpty() ? null : myPartitions.get(myPartitions.size() - 1);
+    if (last != null && timestamp <= last.myLastTimestamp) {
+      return false;
+    }
+    boolean isNewPartition = last == null || last.myCount == PARTITION_SIZE;
+    if (isNewPartition) {
+      last = new Partition(timestamp, myValueCount);
+      myPartitions.add(last);
+    }
+    last.append(timestamp, values);
+    mySampleCount++;
+    return isNewPartition;
+  }
+
+  /**
+   * Removes the oldest partition. The partition holding the latest samples is never removed.
+   *
+   * @return true if a partition was removed.
+   */
+  public synchronized boolean removeOldestPartition() {
+    if (myPartitions.size() <= 1) {
+      return false;
+    }
+    mySampleCount -= myPartitions.remove(0).myCount;
+    return true;
+  }
+
+  /**
+   * Removes the partitions whose samples are all older than {@code timestamp}. The partition holding the latest samples is never
+   * removed.
+   */
+  public synchronized void removePartitionsBefore(long timestamp) {
+    while (myPartitions.size() > 1 && myPartitions.get(0).myLastTimestamp < timestamp) {
+      removeOldestPartition();
+    }
+  }
+
+  /**
+   * Visits, in timestamp order, every sample whose timestamp is in the range (startExclusive, endInclusive], which is the range
+   * semantic used by the datastore queries.
+   */
+  public synchronized void forEachInRange(long startExclusive, long endInclusive, @NotNull SampleVisitor visitor) {
+    if (startExclusive >= endInclusive) {
+      return;
+    }
+    long[] values = new long[myValueCount];
+    for (int i = findFirstPartition(startExclusive); i < myPartitions.size(); i++) {
+      Partition partition = myPartitions.get(i);
+      if (partition.myFirstTimestamp > endInclusive) {
+        break;
+      }
+      partition.forEachInRange(startExclusive, endInclusive, values, visitor);
+    }
+  }
+
+  /**
+   * @return the index of the first partition that can contain a timestamp greater than {@code startExclusive}.
+   */
+  private int findFirstPartition(long startExclusive) {
+    int low = 0;
+    int high = myPartitions.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (myPartitions.get(mid).myLastTimestamp <= startExclusive) {
+        low = mid + 1;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private static final class Partition {
+    private final long myFirstTimestamp;
+    private long myLastTimestamp;
+    private final long[] myLastValues;
+    private int myCount;
+    private byte[] myBuffer = new byte[64];
+    private int mySize;
+
+    Partition(long firstTimestamp, int valueCount) {
+      myFirstTimestamp = firstTimestamp;
+      myLastTimestamp = firstTimestamp;
+      myLastValues = new long[valueCount];
+    }
+
+    void append(long timestamp, long[] values) {
+      writeVarLong(timestamp - myLastTimestamp);
+      myLastTimestamp = timestamp;
+      for (int i = 0; i < values.length; i++) {
+        writeVarLong(values[i] - myLastValues[i]);
+        myLastValues[i] = values[i];
+      }
+      myCount++;
+      if (myCount == PARTITION_SIZE) {
+        // The partition is sealed, release the slack.
+        myBuffer = Arrays.copyOf(myBuffer, mySize);
+      }
+    }
+
+    void forEachInRange(long startExclusive, long endInclusive, long[] values, SampleVisitor visitor) {
+      Arrays.fill(values, 0);
+      long timestamp = myFirstTimestamp;
+      int[] position = new int[1];
+      for (int sample = 0; sample < myCount; sample++) {
+        timestamp += readVarLong(position);
+        for (int i = 0; i < values.length; i++) {
+          values[i] += readVarLong(position);
+        }
+        if (timestamp > endInclusive) {
+          return;
+        }
+        if (timestamp > startExclusive) {
+          visitor.visit(timestamp, values);
+        }
+      }
+    }
+
+    private void writeVarLong(long value) {
+      if (mySize + 10 > myBuffer.length) {
+        myBuffer = Arrays.copyOf(myBuffer, myBuffer.length * 2);
+      }
+      // Zig-zag encode so that small negative deltas stay small.
+      long encoded = (value << 1) ^ (value >> 63);
+      while ((encoded & ~0x7FL) != 0) {
+        myBuffer[mySize++] = (byte)((encoded & 0x7F) | 0x80);
+        encoded >>>= 7;
+      }
+      myBuffer[mySize++] = (byte)encoded;
+    }
+
+    private long readVarLong(int[] position) {
+      long encoded = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = myBuffer[position[0]++];
+        encoded |= (long)(b & 0x7F) << shift;
+        shift += 7;
+      }
+      while ((b & 0x80) != 0);
+      return (encoded >>> 1) ^ -(encoded & 1);
+    }
+  }
+}
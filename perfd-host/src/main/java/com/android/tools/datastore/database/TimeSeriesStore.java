@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * In-memory collection of {@link TieredTimeSeries}, one per (session, process, sample type) triplet. Used by the tables whose
+ * {@link com.android.tools.datastore.DataStoreDatabase.SampleStorage} is {@link com.android.tools.datastore.DataStoreDatabase.SampleStorage#COLUMNAR}.
+ *
+ * Every time a series grows, the {@link RetentionPolicy} of its session is applied to all the series of that session.
+ */
+public class TimeSeriesStore {
+  private final Map<SeriesKey, TieredTimeSeries> mySeries = new HashMap<>();
+  private final Map<Long, RetentionPolicy> myRetentionPolicies = new HashMap<>();
+
+  @NotNull
+  public synchronized TieredTimeSeries getOrCreate(long sessionId,
+                                                   int processId,
+                                                   int type,
+                                                   @NotNull TieredTimeSeries.Aggregation[] aggregations) {
+    TieredTimeSeries series = mySeries.computeIfAbsent(
+      new SeriesKey(sessionId, processId, type), key -> new TieredTimeSeries(aggregations, () -> applyRetentionPolicy(sessionId)));
+    assert series.getValueCount() == aggregations.length;
+    return series;
+  }
+
+  /**
+   * Returns the series of the given key, creating it from {@code samples} if it doesn't exist yet. The samples are ignored if the series
+   * was created in the meantime, as it then already has all the samples loaded from the same rows, or newer ones.
+   */
+  @NotNull
+  public synchronized TieredTimeSeries getOrLoad(long sessionId,
+                                                 int processId,
+                                                 int type,
+                                                 @NotNull TieredTimeSeries.Aggregation[] aggregations,
+                                                 @NotNull TimeSeriesColumn samples) {
+    TieredTimeSeries series = get(sessionId, processId, type);
+    if (series != null) {
+      return series;
+    }
+    TieredTimeSeries created = getOrCreate(sessionId, processId, type, aggregations);
+    samples.forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, created::append);
+    return created;
+  }
+
+  @Nullable
+  public synchronized TieredTimeSeries get(long sessionId, int processId, int type) {
+    return mySeries.get(new SeriesKey(sessionId, processId, type));
+  }
+
+  public synchronized void setRetentionPolicy(long sessionId, @NotNull RetentionPolicy policy) {
+    myRetentionPolicies.put(sessionId, policy);
+    applyRetentionPolicy(sessionId);
+  }
+
+  @NotNull
+  public synchronized RetentionPolicy getRetentionPolicy(long sessionId) {
+    return myRetentionPolicies.getOrDefault(sessionId, RetentionPolicy.DEFAULT);
+  }
+
+  /**
+   * @return the number of bytes used by the samples of a session.
+   */
+  public synchronized long getEncodedSize(long sessionId) {
+    long size = 0;
+    for (TieredTimeSeries series : getSessionSeries(sessionId)) {
+      size += series.getEncodedSize();
+    }
+    return size;
+  }
+
+  private synchronized void applyRetentionPolicy(long sessionId) {
+    RetentionPolicy policy = getRetentionPolicy(sessionId);
+    List<TieredTimeSeries> sessionSeries = getSessionSeries(sessionId);
+    long size = 0;
+    for (TieredTimeSeries series : sessionSeries) {
+      series.removeRawSamplesOlderThan(policy.getRawRetentionNs());
+      size += series.getEncodedSize();
+    }
+
+    // Over the ceiling: trim the largest series first, as it is most likely the one with the oldest data.
+    sessionSeries.sort(Comparator.comparingLong(TieredTimeSeries::getEncodedSize).reversed());
+    while (size > policy.getMaxBytes()) {
+      boolean removed = false;
+      for (TieredTimeSeries series : sessionSeries) {
+        long before = series.getEncodedSize();
+        if (series.removeOldestData()) {
+          size -= before - series.getEncodedSize();
+          removed = true;
+          break;
+        }
+      }
+      if (!removed) {
+        break;
+      }
+    }
+  }
+
+  @NotNull
+  private List<TieredTimeSeries> getSessionSeries(long sessionId) {
+    List<TieredTimeSeries> sessionSeries = new ArrayList<>();
+    for (Map.Entry<SeriesKey, TieredTimeSeries> entry : mySeries.entrySet()) {
+      if (entry.getKey().mySessionId == sessionId) {
+        sessionSeries.add(entry.getValue());
+      }
+    }
+    return sessionSeries;
+  }
+
+  /**
+   * Identifies the samples of one type of a process in a session.
+   */
+  static final class SeriesKey {    private final long mySessionId;
+    private final int myProcessId;
+    private final int myType;
+
+    SeriesKey(long sessionId, int processId, int type) {
+      mySessionId = sessionId;
+      myProcessId = processId;
+      myType = type;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(mySessionId, myProcessId, myType);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof SeriesKey)) {
+        return false;
+      }
+      SeriesKey other = (SeriesKey)obj;
+      return mySessionId == other.mySessionId && myProcessId == other.myProcessId && myType == other.myType;
+    }
+  }
+}
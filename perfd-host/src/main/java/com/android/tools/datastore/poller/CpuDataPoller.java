@@ -44,7 +44,7 @@ public class CpuDataPoller extends PollRunner {
                        @NotNull Common.Session session,
                        @NotNull CpuTable table,
                        @NotNull CpuServiceGrpc.CpuServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myProcessId = processId;
     myCpuTable = table;
     myPollingService = pollingService;
@@ -89,6 +89,9 @@ public class CpuDataPoller extends PollRunner {
 
       myCpuTable.insertActivities(myProcessId, mySession, thread.getTid(), thread.getName(), activities);
     }
+    if (response.getDataCount() > 0 || threadsResponse.getThreadsCount() > 0) {
+      markNewData();
+    }
     myDataRequestStartTimestampNs = Math.max(Math.max(myDataRequestStartTimestampNs + 1, getDataStartNs), getThreadsStartNs);
   }
 }
@@ -33,7 +33,7 @@ public class EventDataPoller extends PollRunner {
   private final EventServiceGrpc.EventServiceBlockingStub myEventPollingService;
 
   public EventDataPoller(int processId, Common.Session session, EventsTable eventTable, EventServiceGrpc.EventServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myProcessId = processId;
     myEventsTable = eventTable;
     myEventPollingService = pollingService;
@@ -85,5 +85,8 @@ public class EventDataPoller extends PollRunner {
       long id = data.getEventId();
       myEventsTable.insertOrReplace(id, mySession, data);
     }
+    if (activityResponse.getDataCount() > 0 || systemResponse.getDataCount() > 0) {
+      markNewData();
+    }
   }
 }
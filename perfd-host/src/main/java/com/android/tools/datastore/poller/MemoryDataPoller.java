@@ -46,7 +46,7 @@ public class MemoryDataPoller extends PollRunner {
                           MemoryStatsTable statsTable,
                           MemoryServiceGrpc.MemoryServiceBlockingStub pollingService,
                           Consumer<Runnable> fetchExecutor) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myProcessId = processId;
     mySession = session;
     myMemoryStatsTable = statsTable;
@@ -152,6 +152,10 @@ public class MemoryDataPoller extends PollRunner {
     // O+ allocation tracking fetches data continuously and does not go through the following code path - hence we filter out those samples.
     fetchLegacyAllocData(allocDumpsToFetch.stream().filter(AllocationsInfo::getLegacy).collect(Collectors.toList()));
     fetchHeapDumpData(heapDumpsToFetch);
+    if (response.getMemSamplesCount() > 0 || response.getAllocStatsSamplesCount() > 0 || response.getGcStatsSamplesCount() > 0 ||
+        !allocDumpsToFetch.isEmpty() || !heapDumpsToFetch.isEmpty()) {
+      markNewData();
+    }
 
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
@@ -35,7 +35,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
                                Common.Session session,
                                MemoryLiveAllocationTable liveAllocationTable,
                                MemoryServiceGrpc.MemoryServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myProcessId = processId;
     mySession = session;
     myLiveAllocationTable = liveAllocationTable;
@@ -60,6 +60,9 @@ public class MemoryJvmtiDataPoller extends PollRunner {
       myLiveAllocationTable.insertThreadInfo(myProcessId, mySession, sample.getThreadInfosList());
       myLiveAllocationTable.insertAllocationData(myProcessId, mySession, sample);
     }
+    if (response.getAllocationSamplesCount() > 0) {
+      markNewData();
+    }
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
@@ -37,7 +37,7 @@ public class NetworkDataPoller extends PollRunner {
                            Common.Session session,
                            NetworkTable table,
                            NetworkServiceGrpc.NetworkServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
     myProcessId = processId;
     myNetworkTable = table;
     mySession = session;
@@ -60,6 +60,9 @@ public class NetworkDataPoller extends PollRunner {
       myDataRequestStartTimestampNs = Math.max(myDataRequestStartTimestampNs, data.getBasicInfo().getEndTimestamp());
       myNetworkTable.insert(data.getBasicInfo().getProcessId(), data);
     }
+    if (response.getDataCount() > 0) {
+      markNewData();
+    }
     pollHttpRange();
   }
 
@@ -69,6 +72,9 @@ public class NetworkDataPoller extends PollRunner {
       .setStartTimestamp(myHttpRangeRequestStartTimeNs)
       .setEndTimestamp(Long.MAX_VALUE);
     NetworkProfiler.HttpRangeResponse response = myPollingService.getHttpRange(requestBuilder.build());
+    if (response.getDataCount() > 0) {
+      markNewData();
+    }
 
     for (NetworkProfiler.HttpConnectionData data : response.getDataList()) {
       myHttpRangeRequestStartTimeNs = Math.max(myHttpRangeRequestStartTimeNs, data.getStartTimestamp() + 1);
@@ -16,6 +16,7 @@
 package com.android.tools.datastore.poller;
 
 import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RunnableFuture;
@@ -24,22 +25,101 @@ import java.util.concurrent.TimeUnit;
 /**
  * A {@link RunnableFuture} which, while running, triggers a callback at a specified period
  * (which can be used to poll a target service at some frequency).
+ *
+ * Pollers created with a maximum period adapt their period: it is doubled while their data hasn't been requested for
+ * {@link #WATCHED_TIMEOUT_NS}, and doubled again after {@link #IDLE_POLL_COUNT} polls in a row without new data, up to the maximum.
+ * Whatever the period, the next poll waits at least as long as the recent polls took, so a device falling behind isn't flooded.
+ *
+ * A runner either runs its own loop in {@link #run()}, holding a thread, or is driven by a {@link PollScheduler}.
  */
 public abstract class PollRunner implements RunnableFuture<Void> {
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
 
-  private long myPollPeriodNs;
+  /**
+   * Maximum period of the pollers of sampled data, when their data is neither requested nor changing.
+   */
+  public static final long MAX_POLLING_DELAY_NS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * How long the data of a poller is considered watched after it was last requested.
+   */
+  static final long WATCHED_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(2);
+
+  /**
+   * Number of polls in a row without new data after which the data of a poller is considered idle.
+   */
+  static final int IDLE_POLL_COUNT = 4;
+
+  /**
+   * Weight of the latest poll in the average poll time.
+   */
+  private static final double POLL_TIME_SMOOTHING = 0.25;
+
+  private final long myPollPeriodNs;
+
+  private final long myMaxPollPeriodNs;
 
-  private boolean myIsRunning = false;
+  private volatile boolean myIsRunning = false;
 
   private CountDownLatch myRunning = new CountDownLatch(1);
 
   private CountDownLatch myIsDone = new CountDownLatch(1);
 
+  @Nullable
+  private volatile Runnable myPollListener;
+
+  private volatile long myLastRequestedNs = System.nanoTime();
+
+  // Only accessed by the thread polling.
+  private boolean myHasNewData;
+  private int myIdlePollCount;
+  private long myLastPollTimeNs;
+
+  // Metrics, written by the thread polling.
+  private volatile long myPollCount;
+  private volatile long myTotalPollTimeNs;
+  private volatile long myMaxPollTimeNs;
+  private volatile long myAveragePollTimeNs;
+  private volatile long myDelayNs;
+
+  // Whether a PollScheduler drives the runner, and whether it is polling right now. Guarded by this.
+  private boolean myIsScheduled;
+  private boolean myIsPolling;
 
   public PollRunner(long pollPeriodNs) {
+    this(pollPeriodNs, pollPeriodNs);
+  }
+
+  /**
+   * @param maxPollPeriodNs the period the poller can slow down to, see {@link PollRunner}
+   */
+  public PollRunner(long pollPeriodNs, long maxPollPeriodNs) {
+    assert maxPollPeriodNs >= pollPeriodNs;
     myPollPeriodNs = pollPeriodNs;
+    myMaxPollPeriodNs = maxPollPeriodNs;
+    myDelayNs = pollPeriodNs;
+  }
+
+  /**
+   * Sets a callback run on the polling thread after each successful {@link #poll()}, e.g. to push the data it stored to subscribers.
+   */
+  public void setPollListener(@Nullable Runnable listener) {
+    myPollListener = listener;
+  }
+
+  /**
+   * Signals that the data stored by this poller was requested, e.g. because it is on screen.
+   */
+  public void markDataRequested() {
+    myLastRequestedNs = System.nanoTime();
+  }
+
+  /**
+   * Called by {@link #poll()} implementations when the poll got new data.
+   */
+  protected void markNewData() {
+    myHasNewData = true;
   }
 
   public void stop() {
@@ -57,10 +137,8 @@ public abstract class PollRunner implements RunnableFuture<Void> {
     try {
       myIsRunning = true;
       while (myRunning.getCount() > 0) {
-        long startTimeNs = System.nanoTime();
-        poll();
-        long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
-        myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
+        pollOnce();
+        myRunning.await(getNextDelayNs(), TimeUnit.NANOSECONDS);
       }
     }
     catch (InterruptedException | StatusRuntimeException e) {
@@ -71,11 +149,119 @@ public abstract class PollRunner implements RunnableFuture<Void> {
     }
   }
 
+  /**
+   * Runs {@link #poll()} and its listener, and records how long it took.
+   */
+  final void pollOnce() {
+    long startTimeNs = System.nanoTime();
+    myHasNewData = false;
+    poll();
+    myIdlePollCount = myHasNewData ? 0 : myIdlePollCount + 1;
+    Runnable listener = myPollListener;
+    if (listener != null) {
+      listener.run();
+    }
+
+    long pollTimeNs = System.nanoTime() - startTimeNs;
+    myLastPollTimeNs = pollTimeNs;
+    myPollCount++;
+    myTotalPollTimeNs += pollTimeNs;
+    myMaxPollTimeNs = Math.max(myMaxPollTimeNs, pollTimeNs);
+    myAveragePollTimeNs = myPollCount == 1
+                          ? pollTimeNs
+                          : (long)(POLL_TIME_SMOOTHING * pollTimeNs + (1 - POLL_TIME_SMOOTHING) * myAveragePollTimeNs);
+  }
+
+  /**
+   * @return how long to wait after the end of the last poll before the next one.
+   */
+  long getNextDelayNs() {
+    long periodNs = myPollPeriodNs;
+    if (System.nanoTime() - myLastRequestedNs > WATCHED_TIMEOUT_NS) {
+      periodNs *= 2;
+    }
+    if (myIdlePollCount >= IDLE_POLL_COUNT) {
+      periodNs *= 2;
+    }
+    periodNs = Math.min(periodNs, myMaxPollPeriodNs);
+    myDelayNs = Math.max(periodNs - myLastPollTimeNs, myAveragePollTimeNs);
+    return myDelayNs;
+  }
+
+  /**
+   * Called by a {@link PollScheduler} when it takes over the runner.
+   */
+  synchronized void setScheduled() {
+    myIsScheduled = true;
+    myIsRunning = true;
+  }
+
+  /**
+   * Called by a {@link PollScheduler} before it polls.
+   *
+   * @return false if the runner was cancelled, in which case it is done and must not be polled anymore.
+   */
+  synchronized boolean beginScheduledPoll() {
+    if (isCancelled()) {
+      myIsDone.countDown();
+      return false;
+    }
+    myIsPolling = true;
+    return true;
+  }
+
+  /**
+   * Called by a {@link PollScheduler} after it polled.
+   *
+   * @param failed whether the poll failed, which ends the runner as it would end {@link #run()}
+   * @return false if the runner is done and must not be polled anymore.
+   */
+  synchronized boolean endScheduledPoll(boolean failed) {
+    myIsPolling = false;
+    if (failed || isCancelled()) {
+      myIsDone.countDown();
+      return false;
+    }
+    return true;
+  }
+
+  public long getPollCount() {
+    return myPollCount;
+  }
+
+  public long getTotalPollTimeNs() {
+    return myTotalPollTimeNs;
+  }
+
+  public long getMaxPollTimeNs() {
+    return myMaxPollTimeNs;
+  }
+
+  /**
+   * @return the exponential moving average of the recent poll times.
+   */
+  public long getAveragePollTimeNs() {
+    return myAveragePollTimeNs;
+  }
+
+  /**
+   * @return the delay the runner last waited, or is waiting, between two polls.
+   */
+  public long getDelayNs() {
+    return myDelayNs;
+  }
+
   public abstract void poll();
 
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
+    synchronized (this) {
+      // A scheduled runner waiting for its next poll is done right away, otherwise it is when its current poll ends.
+      if (myIsScheduled && !myIsPolling) {
+        myIsDone.countDown();
+      }
+    }
     return true;
   }
 
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.intellij.openapi.diagnostic.Logger;
+import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A fetch executor which runs all the {@link PollRunner}s it is given on a small shared pool, instead of a thread per runner looping in
+ * {@link PollRunner#run()}. Each runner is polled again once its adaptive delay (see {@link PollRunner}) has elapsed after its last
+ * poll, so a runner never polls concurrently with itself. Any other {@link Runnable}, e.g. a one-off fetch of a heap dump, goes to the
+ * fallback executor.
+ */
+public final class PollScheduler implements Consumer<Runnable> {
+  private static final Logger LOG = Logger.getInstance(PollScheduler.class);
+
+  public static final int DEFAULT_THREAD_COUNT = 4;
+
+  @NotNull private final Consumer<Runnable> myFallbackExecutor;
+  @NotNull private final ScheduledThreadPoolExecutor myExecutor;
+  @NotNull private final Set<PollRunner> myRunners = ConcurrentHashMap.newKeySet();
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor) {
+    this(fallbackExecutor, DEFAULT_THREAD_COUNT);
+  }
+
+  public PollScheduler(@NotNull Consumer<Runnable> fallbackExecutor, int threadCount) {
+    myFallbackExecutor = fallbackExecutor;
+    AtomicInteger threadIndex = new AtomicInteger();
+    myExecutor = new ScheduledThreadPoolExecutor(threadCount, runnable -> {
+      Thread thread = new Thread(runnable, "Profiler Poll Scheduler " + threadIndex.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public void accept(@NotNull Runnable runnable) {
+    if (runnable instanceof PollRunner) {
+      schedule((PollRunner)runnable);
+    }
+    else {
+      myFallbackExecutor.accept(runnable);
+    }
+  }
+
+  public void schedule(@NotNull PollRunner runner) {
+    runner.setScheduled();
+    myRunners.add(runner);
+    myExecutor.execute(() -> poll(runner));
+  }
+
+  private void poll(@NotNull PollRunner runner) {
+    if (!runner.beginScheduledPoll()) {
+      myRunners.remove(runner);
+      return;
+    }
+    boolean failed = false;
+    try {
+      runner.pollOnce();
+    }
+    catch (StatusRuntimeException e) {
+      // As in PollRunner#run, the device went away.
+      failed = true;
+    }
+    catch (RuntimeException e) {
+      LOG.error(e);
+      failed = true;
+    }
+    if (!runner.endScheduledPoll(failed)) {
+      myRunners.remove(runner);
+      return;
+    }
+    try {
+      myExecutor.schedule(() -> poll(runner), runner.getNextDelayNs(), TimeUnit.NANOSECONDS);
+    }
+    catch (RejectedExecutionException e) {
+      // The scheduler was shut down.
+      runner.cancel(true);
+      myRunners.remove(runner);
+    }
+  }
+
+  /**
+   * @return the runners currently scheduled, e.g. to read their timing metrics.
+   */
+  @NotNull
+  public List<PollRunner> getRunners() {
+    return new ArrayList<>(myRunners);
+  }
+
+  /**
+   * Stops polling. All the runners are cancelled.
+   */
+  public void shutdown() {
+    myRunners.forEach(runner -> runner.cancel(true));
+    myRunners.clear();
+    myExecutor.shutdownNow();
+  }
+}
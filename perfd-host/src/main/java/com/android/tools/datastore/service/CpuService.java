@@ -15,22 +15,26 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.DataSubscriptions;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.CpuTable;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.poller.CpuDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
+import io.grpc.ServerMethodDefinition;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.sql.Connection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
@@ -38,13 +42,15 @@ import java.util.function.Consumer;
  * The get data command will pull data locally cached from the connected service.
  */
 public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements ServicePassThrough {
-  private final Map<Integer, PollRunner> myRunners = new HashMap<>();
+  private final Map<Integer, PollRunner> myRunners = new ConcurrentHashMap<>();
   private final Consumer<Runnable> myFetchExecutor;
 
   @NotNull
   private final CpuTable myCpuTable;
   @NotNull
   private final DataStoreService myService;
+  @NotNull
+  private final DataSubscriptions<CpuProfiler.CpuDataRequest, CpuProfiler.CpuDataResponse> myDataSubscriptions;
 
   @SuppressWarnings("unchecked")
   private ResponseData<CpuProfiler.CpuDataResponse> myLastCpuResponse = ResponseData.createEmpty();
@@ -59,10 +65,13 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
     myFetchExecutor = fetchExecutor;
     myService = dataStoreService;
     myCpuTable = new CpuTable(sessionIdLookup);
+    myDataSubscriptions = new DataSubscriptions<>(CpuServiceGrpc.METHOD_GET_DATA, CpuProfiler.CpuDataRequest::getSession,
+                                                  this::queryCpuData, CpuService::getNextCpuDataRequest);
   }
 
   @Override
   public void getData(CpuProfiler.CpuDataRequest request, StreamObserver<CpuProfiler.CpuDataResponse> observer) {
+    markDataRequested(request.getProcessId());
     if (!myLastCpuResponse.matches(request.getProcessId(), request.getSession(), request.getStartTimestamp(), request.getEndTimestamp())) {
       CpuProfiler.CpuDataResponse.Builder response = CpuProfiler.CpuDataResponse.newBuilder();
       List<CpuProfiler.CpuProfilerData> cpuData = myCpuTable.getCpuDataByRequest(request);
@@ -79,8 +88,26 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
     observer.onCompleted();
   }
 
+  @NotNull
+  private CpuProfiler.CpuDataResponse queryCpuData(@NotNull CpuProfiler.CpuDataRequest request) {
+    return CpuProfiler.CpuDataResponse.newBuilder().addAllData(myCpuTable.getCpuDataByRequest(request)).build();
+  }
+
+  @Nullable
+  private static CpuProfiler.CpuDataRequest getNextCpuDataRequest(@NotNull CpuProfiler.CpuDataRequest request,
+                                                                  @NotNull CpuProfiler.CpuDataResponse response) {
+    int count = response.getDataCount();
+    if (count == 0) {
+      return null;
+    }
+    // The data is sorted by time, and the start of a request is exclusive.
+    long lastTimestamp = response.getData(count - 1).getBasicInfo().getEndTimestamp();
+    return request.toBuilder().setStartTimestamp(Math.max(request.getStartTimestamp(), lastTimestamp)).build();
+  }
+
   @Override
   public void getThreads(CpuProfiler.GetThreadsRequest request, StreamObserver<CpuProfiler.GetThreadsResponse> observer) {
+    markDataRequested(request.getProcessId());
     if (!myLastThreadsResponse.matches(
       request.getProcessId(), request.getSession(), request.getStartTimestamp(), request.getEndTimestamp())) {
       CpuProfiler.GetThreadsResponse.Builder response = CpuProfiler.GetThreadsResponse.newBuilder();
@@ -131,9 +158,16 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
       observer.onNext(client.startMonitoringApp(request));
       observer.onCompleted();
       int processId = request.getProcessId();
-      myRunners
-        .put(processId, new CpuDataPoller(processId, request.getSession(), myCpuTable, myService.getCpuClient(request.getSession())));
-      myFetchExecutor.accept(myRunners.get(processId));
+      Common.Session session = request.getSession();
+      CpuDataPoller poller = new CpuDataPoller(processId, session, myCpuTable, myService.getCpuClient(session));
+      poller.setPollListener(() -> {
+        // Subscribers are watching the data as it comes.
+        if (myDataSubscriptions.notifyDataStored(session)) {
+          poller.markDataRequested();
+        }
+      });
+      myRunners.put(processId, poller);
+      myFetchExecutor.accept(poller);
     }
     else {
       observer.onNext(CpuProfiler.CpuStartResponse.getDefaultInstance());
@@ -148,6 +182,7 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
     if (runner != null) {
       runner.stop();
     }
+    myDataSubscriptions.completeSubscriptions(request.getSession());
     // Our polling service can get shutdown if we unplug the device.
     // This should be the only function that gets called as StudioProfilers attempts
     // to stop monitoring the last app it was monitoring.
@@ -217,16 +252,38 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
     observer.onCompleted();
   }
 
+  /**
+   * Lets the poller of {@code processId} know its data is being looked at, so it keeps polling at full rate.
+   */
+  private void markDataRequested(int processId) {
+    PollRunner runner = myRunners.get(processId);
+    if (runner != null) {
+      runner.markDataRequested();
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<ServerMethodDefinition<?, ?>> getSubscriptionMethods() {
+    return Collections.singletonList(myDataSubscriptions.getMethodDefinition());
+  }
+
   @NotNull
   @Override
   public List<DataStoreService.BackingNamespace> getBackingNamespaces() {
-    return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
+    return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SAMPLES_NAMESPACE);
+  }
+
+  @Override
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
+    assert namespace.equals(DataStoreService.BackingNamespace.DEFAULT_SAMPLES_NAMESPACE);
+    myCpuTable.setSampleStorage(namespace.mySampleStorage);
+    myCpuTable.initialize(database);
   }
 
   @Override
-  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
-    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myCpuTable.initialize(connection);
+  public void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+    myCpuTable.setRetentionPolicy(session, policy);
   }
 
   /**
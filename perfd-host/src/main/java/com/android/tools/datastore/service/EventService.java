@@ -15,7 +15,9 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.DataSubscriptions;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.EventsTable;
 import com.android.tools.datastore.poller.EventDataPoller;
@@ -23,14 +25,16 @@ import com.android.tools.datastore.poller.PollRunner;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.EventProfiler;
 import com.android.tools.profiler.proto.EventServiceGrpc;
+import io.grpc.ServerMethodDefinition;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
@@ -39,9 +43,11 @@ import java.util.function.Consumer;
  */
 public class EventService extends EventServiceGrpc.EventServiceImplBase implements ServicePassThrough {
   private final EventsTable myEventsTable;
-  private final Map<Integer, PollRunner> myRunners = new HashMap<>();
+  private final Map<Integer, PollRunner> myRunners = new ConcurrentHashMap<>();
   private final Consumer<Runnable> myFetchExecutor;
   private final DataStoreService myService;
+  private final DataSubscriptions<EventProfiler.EventDataRequest, EventProfiler.ActivityDataResponse> myActivityDataSubscriptions;
+  private final DataSubscriptions<EventProfiler.EventDataRequest, EventProfiler.SystemDataResponse> mySystemDataSubscriptions;
 
   public EventService(@NotNull DataStoreService dataStoreService,
                       Consumer<Runnable> fetchExecutor,
@@ -49,10 +55,23 @@ public class EventService extends EventServiceGrpc.EventServiceImplBase implemen
     myFetchExecutor = fetchExecutor;
     myService = dataStoreService;
     myEventsTable = new EventsTable(sessionIdLookup);
+    myActivityDataSubscriptions =
+      new DataSubscriptions<>(EventServiceGrpc.METHOD_GET_ACTIVITY_DATA, EventProfiler.EventDataRequest::getSession,
+                              this::queryActivityData, EventService::getNextActivityDataRequest);
+    mySystemDataSubscriptions =
+      new DataSubscriptions<>(EventServiceGrpc.METHOD_GET_SYSTEM_DATA, EventProfiler.EventDataRequest::getSession,
+                              this::querySystemData, EventService::getNextSystemDataRequest);
   }
 
   @Override
   public void getActivityData(EventProfiler.EventDataRequest request, StreamObserver<EventProfiler.ActivityDataResponse> responseObserver) {
+    markDataRequested(request.getProcessId());
+    responseObserver.onNext(queryActivityData(request));
+    responseObserver.onCompleted();
+  }
+
+  @NotNull
+  private EventProfiler.ActivityDataResponse queryActivityData(@NotNull EventProfiler.EventDataRequest request) {
     EventProfiler.ActivityDataResponse.Builder response = EventProfiler.ActivityDataResponse.newBuilder();
     Common.Session session = request.getSession();
     List<EventProfiler.ActivityData> activites = myEventsTable.getActivityDataByApp(request.getProcessId(), session);
@@ -87,19 +106,54 @@ public class EventService extends EventServiceGrpc.EventServiceImplBase implemen
       }
       response.addData(builder);
     }
-    responseObserver.onNext(response.build());
-    responseObserver.onCompleted();
+    return response.build();
+  }
+
+  /**
+   * Every activity is sent for any request, with at least its latest state change, so only state changes after the start of the request
+   * are new data.
+   */
+  @Nullable
+  private static EventProfiler.EventDataRequest getNextActivityDataRequest(@NotNull EventProfiler.EventDataRequest request,
+                                                                          @NotNull EventProfiler.ActivityDataResponse response) {
+    long lastTimestamp = request.getStartTimestamp();
+    for (EventProfiler.ActivityData data : response.getDataList()) {
+      for (EventProfiler.ActivityStateData state : data.getStateChangesList()) {
+        lastTimestamp = Math.max(lastTimestamp, state.getTimestamp());
+      }
+    }
+    return lastTimestamp == request.getStartTimestamp() ? null : request.toBuilder().setStartTimestamp(lastTimestamp).build();
   }
 
   @Override
   public void getSystemData(EventProfiler.EventDataRequest request, StreamObserver<EventProfiler.SystemDataResponse> responseObserver) {
+    markDataRequested(request.getProcessId());
+    responseObserver.onNext(querySystemData(request));
+    responseObserver.onCompleted();
+  }
+
+  @NotNull
+  private EventProfiler.SystemDataResponse querySystemData(@NotNull EventProfiler.EventDataRequest request) {
     EventProfiler.SystemDataResponse.Builder response = EventProfiler.SystemDataResponse.newBuilder();
     List<EventProfiler.SystemData> systemData = myEventsTable.getSystemDataByRequest(request);
     for(EventProfiler.SystemData data : systemData) {
       response.addData(data);
     }
-    responseObserver.onNext(response.build());
-    responseObserver.onCompleted();
+    return response.build();
+  }
+
+  /**
+   * Events are updated in place when they end, and the ones going on or ending after the start of a request are sent again. So only
+   * events starting or ending after the start of the request are new data.
+   */
+  @Nullable
+  private static EventProfiler.EventDataRequest getNextSystemDataRequest(@NotNull EventProfiler.EventDataRequest request,
+                                                                        @NotNull EventProfiler.SystemDataResponse response) {
+    long lastTimestamp = request.getStartTimestamp();
+    for (EventProfiler.SystemData data : response.getDataList()) {
+      lastTimestamp = Math.max(lastTimestamp, Math.max(data.getStartTimestamp(), data.getEndTimestamp()));
+    }
+    return lastTimestamp == request.getStartTimestamp() ? null : request.toBuilder().setStartTimestamp(lastTimestamp).build();
   }
 
   @Override
@@ -110,8 +164,17 @@ public class EventService extends EventServiceGrpc.EventServiceImplBase implemen
       observer.onCompleted();
       int processId = request.getProcessId();
       Common.Session session = request.getSession();
-      myRunners.put(processId, new EventDataPoller(processId, session, myEventsTable, client));
-      myFetchExecutor.accept(myRunners.get(processId));
+      EventDataPoller poller = new EventDataPoller(processId, session, myEventsTable, client);
+      poller.setPollListener(() -> {
+        // Subscribers are watching the data as it comes.
+        boolean hasSubscribers = myActivityDataSubscriptions.notifyDataStored(session);
+        hasSubscribers |= mySystemDataSubscriptions.notifyDataStored(session);
+        if (hasSubscribers) {
+          poller.markDataRequested();
+        }
+      });
+      myRunners.put(processId, poller);
+      myFetchExecutor.accept(poller);
     } else {
       observer.onNext(EventProfiler.EventStartResponse.getDefaultInstance());
       observer.onCompleted();
@@ -125,6 +188,8 @@ public class EventService extends EventServiceGrpc.EventServiceImplBase implemen
     if (runner != null) {
       runner.stop();
     }
+    myActivityDataSubscriptions.completeSubscriptions(request.getSession());
+    mySystemDataSubscriptions.completeSubscriptions(request.getSession());
 
     // Our polling service can get shutdown if we unplug the device.
     // This should be the only function that gets called as StudioProfilers attempts
@@ -139,6 +204,22 @@ public class EventService extends EventServiceGrpc.EventServiceImplBase implemen
     observer.onCompleted();
   }
 
+  /**
+   * Lets the poller of {@code processId} know its data is being looked at, so it keeps polling at full rate.
+   */
+  private void markDataRequested(int processId) {
+    PollRunner runner = myRunners.get(processId);
+    if (runner != null) {
+      runner.markDataRequested();
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<ServerMethodDefinition<?, ?>> getSubscriptionMethods() {
+    return Arrays.asList(myActivityDataSubscriptions.getMethodDefinition(), mySystemDataSubscriptions.getMethodDefinition());
+  }
+
   @NotNull
   @Override
   public List<DataStoreService.BackingNamespace> getBackingNamespaces() {
@@ -146,8 +227,8 @@ public class EventService extends EventServiceGrpc.EventServiceImplBase implemen
   }
 
   @Override
-  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myEventsTable.initialize(connection);
+    myEventsTable.initialize(database);
   }
 }
@@ -15,11 +15,14 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DataStoreService.BackingNamespace;
+import com.android.tools.datastore.DataSubscriptions;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.MemoryLiveAllocationTable;
 import com.android.tools.datastore.database.MemoryStatsTable;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.poller.MemoryDataPoller;
 import com.android.tools.datastore.poller.MemoryJvmtiDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
@@ -28,14 +31,16 @@ import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.google.protobuf3jarjar.ByteString;
+import io.grpc.ServerMethodDefinition;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.sql.Connection;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFORMANT;
@@ -43,12 +48,13 @@ import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFO
 public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase implements ServicePassThrough {
   private static final BackingNamespace LIVE_ALLOCATION_NAMESPACE = new BackingNamespace("LiveAllocations", PERFORMANT);
 
-  private final Map<Integer, PollRunner> myRunners = new HashMap<>();
-  private final Map<Integer, PollRunner> myJvmtiRunners = new HashMap<>();
+  private final Map<Integer, PollRunner> myRunners = new ConcurrentHashMap<>();
+  private final Map<Integer, PollRunner> myJvmtiRunners = new ConcurrentHashMap<>();
   private final MemoryStatsTable myStatsTable;
   private final MemoryLiveAllocationTable myAllocationsTable;
   private final Consumer<Runnable> myFetchExecutor;
   private final DataStoreService myService;
+  private final DataSubscriptions<MemoryRequest, MemoryData> myDataSubscriptions;
 
   // TODO Revisit fetch mechanism
   public MemoryService(@NotNull DataStoreService dataStoreService,
@@ -58,6 +64,8 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     myService = dataStoreService;
     myStatsTable = new MemoryStatsTable(sessionIdLookup);
     myAllocationsTable = new MemoryLiveAllocationTable(sessionIdLookup);
+    myDataSubscriptions = new DataSubscriptions<>(MemoryServiceGrpc.METHOD_GET_DATA, MemoryRequest::getSession,
+                                                  this::querySampleData, MemoryService::getNextDataRequest);
   }
 
   @Override
@@ -69,9 +77,16 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
       int processId = request.getProcessId();
       Common.Session session = request.getSession();
       myJvmtiRunners.put(processId, new MemoryJvmtiDataPoller(processId, session, myAllocationsTable, client));
-      myRunners.put(processId, new MemoryDataPoller(processId, session, myStatsTable, client, myFetchExecutor));
+      MemoryDataPoller poller = new MemoryDataPoller(processId, session, myStatsTable, client, myFetchExecutor);
+      poller.setPollListener(() -> {
+        // Subscribers are watching the data as it comes.
+        if (myDataSubscriptions.notifyDataStored(session)) {
+          poller.markDataRequested();
+        }
+      });
+      myRunners.put(processId, poller);
       myFetchExecutor.accept(myJvmtiRunners.get(processId));
-      myFetchExecutor.accept(myRunners.get(processId));
+      myFetchExecutor.accept(poller);
 
     }
     else {
@@ -91,6 +106,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     if (runner != null) {
       runner.stop();
     }
+    myDataSubscriptions.completeSubscriptions(request.getSession());
     // Our polling service can get shutdown if we unplug the device.
     // This should be the only function that gets called as StudioProfilers attempts
     // to stop monitoring the last app it was monitoring.
@@ -240,6 +256,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
   @Override
   public void getStackFrameInfo(StackFrameInfoRequest request,
                                 StreamObserver<StackFrameInfoResponse> responseObserver) {
+    markDataRequested(myJvmtiRunners, request.getProcessId());
     responseObserver.onNext(myAllocationsTable.getStackFrameInfo(request.getProcessId(), request.getSession(), request.getMethodId()));
     responseObserver.onCompleted();
   }
@@ -278,13 +295,43 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
 
   @Override
   public void getData(MemoryRequest request, StreamObserver<MemoryData> responseObserver) {
+    markDataRequested(myRunners, request.getProcessId());
     MemoryData response = myStatsTable.getData(request);
     responseObserver.onNext(response);
     responseObserver.onCompleted();
   }
 
+  /**
+   * Subscriptions only get the samples: heap dump and allocation infos are updated in place when they complete, so they are still
+   * queried for their range.
+   */
+  @NotNull
+  private MemoryData querySampleData(@NotNull MemoryRequest request) {
+    return myStatsTable.getData(request).toBuilder().clearHeapDumpInfos().clearAllocationsInfo().build();
+  }
+
+  @Nullable
+  private static MemoryRequest getNextDataRequest(@NotNull MemoryRequest request, @NotNull MemoryData response) {
+    if (response.getMemSamplesCount() == 0 && response.getAllocStatsSamplesCount() == 0 && response.getGcStatsSamplesCount() == 0) {
+      return null;
+    }
+    // Each poll stores the samples of every type up to the same time. The start of a request is exclusive.
+    long lastTimestamp = request.getStartTime();
+    for (MemoryData.MemorySample sample : response.getMemSamplesList()) {
+      lastTimestamp = Math.max(lastTimestamp, sample.getTimestamp());
+    }
+    for (MemoryData.AllocStatsSample sample : response.getAllocStatsSamplesList()) {
+      lastTimestamp = Math.max(lastTimestamp, sample.getTimestamp());
+    }
+    for (MemoryData.GcStatsSample sample : response.getGcStatsSamplesList()) {
+      lastTimestamp = Math.max(lastTimestamp, sample.getStartTime());
+    }
+    return request.toBuilder().setStartTime(lastTimestamp).build();
+  }
+
   @Override
   public void getAllocations(AllocationSnapshotRequest request, StreamObserver<BatchAllocationSample> responseObserver) {
+    markDataRequested(myJvmtiRunners, request.getProcessId());
     BatchAllocationSample response = myAllocationsTable.getAllocations(
       request.getProcessId(), request.getSession(), request.getStartTime(), request.getEndTime());
     responseObserver.onNext(response);
@@ -293,6 +340,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
 
   @Override
   public void getAllocationContexts(AllocationContextsRequest request, StreamObserver<AllocationContextsResponse> responseObserver) {
+    markDataRequested(myJvmtiRunners, request.getProcessId());
     AllocationContextsResponse response =
       myAllocationsTable.getAllocationContexts(request.getProcessId(), request.getSession(), request.getStartTime(), request.getEndTime());
     responseObserver.onNext(response);
@@ -311,20 +359,43 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     observer.onCompleted();
   }
 
+  /**
+   * Lets the poller of {@code processId} know its data is being looked at, so it keeps polling at full rate.
+   */
+  private static void markDataRequested(@NotNull Map<Integer, PollRunner> runners, int processId) {
+    PollRunner runner = runners.get(processId);
+    if (runner != null) {
+      runner.markDataRequested();
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<ServerMethodDefinition<?, ?>> getSubscriptionMethods() {
+    return Collections.singletonList(myDataSubscriptions.getMethodDefinition());
+  }
+
   @NotNull
   @Override
   public List<BackingNamespace> getBackingNamespaces() {
-    return Arrays.asList(BackingNamespace.DEFAULT_SHARED_NAMESPACE, LIVE_ALLOCATION_NAMESPACE);
+    return Arrays.asList(BackingNamespace.DEFAULT_SAMPLES_NAMESPACE, LIVE_ALLOCATION_NAMESPACE);
   }
 
   @Override
-  public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull Connection connection) {
+  public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull DataStoreDatabase database) {
     assert getBackingNamespaces().contains(namespace);
-    if (namespace.equals(BackingNamespace.DEFAULT_SHARED_NAMESPACE)) {
-      myStatsTable.initialize(connection);
+    if (namespace.equals(BackingNamespace.DEFAULT_SAMPLES_NAMESPACE)) {
+      myStatsTable.setSampleStorage(namespace.mySampleStorage);
+      myStatsTable.initialize(database);
     }
     else {
-      myAllocationsTable.initialize(connection);
+      myAllocationsTable.initialize(database);
     }
   }
+
+  @Override
+  public void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+    myStatsTable.setRetentionPolicy(session, policy);
+    myAllocationsTable.setRetentionPolicy(session, policy);
+  }
 }
\ No newline at end of file
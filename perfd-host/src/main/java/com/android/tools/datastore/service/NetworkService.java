@@ -15,45 +15,72 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.DataSubscriptions;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.NetworkTable;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.poller.NetworkDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
+import io.grpc.ServerMethodDefinition;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.sql.Connection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 // TODO: Implement a storage container that can read/write data to disk
 public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase implements ServicePassThrough {
   private final NetworkTable myNetworkTable;
   private final Consumer<Runnable> myFetchExecutor;
-  private final Map<Integer, PollRunner> myRunners = new HashMap<>();
+  private final Map<Integer, PollRunner> myRunners = new ConcurrentHashMap<>();
   private final DataStoreService myService;
+  private final DataSubscriptions<NetworkProfiler.NetworkDataRequest, NetworkProfiler.NetworkDataResponse> myDataSubscriptions;
 
   public NetworkService(@NotNull DataStoreService service, Consumer<Runnable> fetchExecutor,
                         @NotNull Map<Common.Session, Long> sessionIdLookup) {
     myFetchExecutor = fetchExecutor;
     myService = service;
     myNetworkTable = new NetworkTable(sessionIdLookup);
+    myDataSubscriptions = new DataSubscriptions<>(NetworkServiceGrpc.METHOD_GET_DATA, NetworkProfiler.NetworkDataRequest::getSession,
+                                                  this::queryData, NetworkService::getNextDataRequest);
   }
 
   @Override
   public void getData(NetworkProfiler.NetworkDataRequest request, StreamObserver<NetworkProfiler.NetworkDataResponse> responseObserver) {
+    markDataRequested(request.getProcessId());
+    responseObserver.onNext(queryData(request));
+    responseObserver.onCompleted();
+  }
+
+  @NotNull
+  private NetworkProfiler.NetworkDataResponse queryData(@NotNull NetworkProfiler.NetworkDataRequest request) {
     NetworkProfiler.NetworkDataResponse.Builder response = NetworkProfiler.NetworkDataResponse.newBuilder();
     List<NetworkProfiler.NetworkProfilerData> datas = myNetworkTable.getNetworkDataByRequest(request);
     response.addAllData(datas);
-    responseObserver.onNext(response.build());
-    responseObserver.onCompleted();
+    return response.build();
+  }
+
+  @Nullable
+  private static NetworkProfiler.NetworkDataRequest getNextDataRequest(@NotNull NetworkProfiler.NetworkDataRequest request,
+                                                                       @NotNull NetworkProfiler.NetworkDataResponse response) {
+    if (response.getDataCount() == 0) {
+      return null;
+    }
+    // Rows of different types aren't necessarily sorted by time. The start of a request is exclusive.
+    long lastTimestamp = request.getStartTimestamp();
+    for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
+      lastTimestamp = Math.max(lastTimestamp, data.getBasicInfo().getEndTimestamp());
+    }
+    return request.toBuilder().setStartTimestamp(lastTimestamp).build();
   }
 
   @Override
@@ -64,8 +91,16 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
       responseObserver.onNext(client.startMonitoringApp(request));
       responseObserver.onCompleted();
       int processId = request.getProcessId();
-      myRunners.put(processId, new NetworkDataPoller(processId, request.getSession(), myNetworkTable, client));
-      myFetchExecutor.accept(myRunners.get(processId));
+      Common.Session session = request.getSession();
+      NetworkDataPoller poller = new NetworkDataPoller(processId, session, myNetworkTable, client);
+      poller.setPollListener(() -> {
+        // Subscribers are watching the data as it comes.
+        if (myDataSubscriptions.notifyDataStored(session)) {
+          poller.markDataRequested();
+        }
+      });
+      myRunners.put(processId, poller);
+      myFetchExecutor.accept(poller);
     } else {
       responseObserver.onNext(NetworkProfiler.NetworkStartResponse.getDefaultInstance());
       responseObserver.onCompleted();
@@ -80,6 +115,7 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
     if (runner != null) {
       runner.stop();
     }
+    myDataSubscriptions.completeSubscriptions(request.getSession());
     // Our polling service can get shutdown if we unplug the device.
     // This should be the only function that gets called as StudioProfilers attempts
     // to stop monitoring the last app it was monitoring.
@@ -94,6 +130,7 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
 
   @Override
   public void getHttpRange(NetworkProfiler.HttpRangeRequest request, StreamObserver<NetworkProfiler.HttpRangeResponse> responseObserver) {
+    markDataRequested(request.getProcessId());
     NetworkProfiler.HttpRangeResponse.Builder response = NetworkProfiler.HttpRangeResponse.newBuilder();
     List<NetworkProfiler.HttpConnectionData> datas = myNetworkTable.getNetworkConnectionDataByRequest(request);
     response.addAllData(datas);
@@ -128,15 +165,37 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
     responseObserver.onCompleted();
   }
 
+  /**
+   * Lets the poller of {@code processId} know its data is being looked at, so it keeps polling at full rate.
+   */
+  private void markDataRequested(int processId) {
+    PollRunner runner = myRunners.get(processId);
+    if (runner != null) {
+      runner.markDataRequested();
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<ServerMethodDefinition<?, ?>> getSubscriptionMethods() {
+    return Collections.singletonList(myDataSubscriptions.getMethodDefinition());
+  }
+
   @NotNull
   @Override
   public List<DataStoreService.BackingNamespace> getBackingNamespaces() {
-    return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE);
+    return Collections.singletonList(DataStoreService.BackingNamespace.DEFAULT_SAMPLES_NAMESPACE);
+  }
+
+  @Override
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
+    assert namespace.equals(DataStoreService.BackingNamespace.DEFAULT_SAMPLES_NAMESPACE);
+    myNetworkTable.setSampleStorage(namespace.mySampleStorage);
+    myNetworkTable.initialize(database);
   }
 
   @Override
-  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
-    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myNetworkTable.initialize(connection);
+  public void setRetentionPolicy(@NotNull Common.Session session, @NotNull RetentionPolicy policy) {
+    myNetworkTable.setRetentionPolicy(session, policy);
   }
 }
\ No newline at end of file
@@ -15,9 +15,11 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.PayloadStore;
 import com.android.tools.datastore.database.ProfilerTable;
 import com.android.tools.datastore.poller.ProfilerDevicePoller;
 import com.android.tools.profiler.proto.Common;
@@ -28,7 +30,7 @@ import io.grpc.Channel;
 import io.grpc.stub.StreamObserver;
 import org.jetbrains.annotations.NotNull;
 
-import java.sql.Connection;
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +41,9 @@ import java.util.function.Consumer;
  * The data is populated from polling the service passed into the connectService function.
  */
 public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase implements ServicePassThrough {
+  // Cached bytes (e.g. network payloads) are stored in this directory of the datastore, see PayloadStore.
+  private static final String PAYLOAD_DIRECTORY = "payloads";
+
   private final Map<Channel, ProfilerDevicePoller> myPollers = Maps.newHashMap();
   private final Consumer<Runnable> myFetchExecutor;
   private final ProfilerTable myTable;
@@ -145,8 +150,12 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
   }
 
   @Override
-  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myTable.initialize(connection);
+    String datastoreDirectory = myService.getDatastoreDirectory();
+    if (datastoreDirectory != null) {
+      myTable.setPayloadStore(new PayloadStore(new File(datastoreDirectory + PAYLOAD_DIRECTORY)));
+    }
+    myTable.initialize(database);
   }
 }
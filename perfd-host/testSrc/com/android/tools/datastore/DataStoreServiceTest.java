@@ -32,13 +32,13 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
-import java.sql.Connection;
 import java.util.*;
 import java.util.function.Consumer;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.DURABLE;
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFORMANT;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class DataStoreServiceTest extends DataStorePollerTest {
@@ -95,6 +95,18 @@ public class DataStoreServiceTest extends DataStorePollerTest {
     assertEquals(expectedServices.size(), 0);
   }
 
+  @Test
+  public void testSampleServicesShareDefaultDatabaseWithColumnarStorage() {
+    assertNotEquals(BackingNamespace.DEFAULT_SHARED_NAMESPACE, BackingNamespace.DEFAULT_SAMPLES_NAMESPACE);
+    assertEquals(BackingNamespace.DEFAULT_SHARED_NAMESPACE, BackingNamespace.DEFAULT_SAMPLES_NAMESPACE.getDatabaseNamespace());
+    for (ServicePassThrough service : myDataStore.getRegisteredServices()) {
+      boolean hasSamples = service instanceof CpuService || service instanceof MemoryService || service instanceof NetworkService;
+      assertEquals(hasSamples, service.getBackingNamespaces().contains(BackingNamespace.DEFAULT_SAMPLES_NAMESPACE) &&
+                               service.getBackingNamespaces().stream()
+                                 .anyMatch(namespace -> namespace.mySampleStorage == DataStoreDatabase.SampleStorage.COLUMNAR));
+    }
+  }
+
   @Test
   public void testConnectServices() {
     ManagedChannel channel = InProcessChannelBuilder.forName(SERVER_NAME).build();
@@ -211,7 +223,7 @@ public class DataStoreServiceTest extends DataStorePollerTest {
     @NotNull private final List<BackingNamespace> myNamespaces = Arrays.asList(
       new BackingNamespace("durable", DURABLE), new BackingNamespace("inmemory", PERFORMANT));
 
-    @NotNull private final Map<BackingNamespace, Connection> myReceivedBackingStores = new HashMap<>();
+    @NotNull private final Map<BackingNamespace, DataStoreDatabase> myReceivedBackingStores = new HashMap<>();
 
     @NotNull
     @Override
@@ -226,10 +238,10 @@ public class DataStoreServiceTest extends DataStorePollerTest {
     }
 
     @Override
-    public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull Connection connection) {
+    public void setBackingStore(@NotNull BackingNamespace namespace, @NotNull DataStoreDatabase database) {
       assert myNamespaces.contains(namespace) && !myReceivedBackingStores.containsKey(namespace) && !myReceivedBackingStores
-        .containsValue(connection);
-      myReceivedBackingStores.put(namespace, connection);
+        .containsValue(database);
+      myReceivedBackingStores.put(namespace, database);
     }
 
     public void assertCorrectness() {
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class DataStoreWriterTest {
+  private DataStoreDatabase myDatabase;
+  private DataStoreWriter myWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    myDatabase = new DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT);
+    myWriter = myDatabase.getWriter();
+    assertThat(myWriter).isNotNull();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    myDatabase.disconnect();
+  }
+
+  @Test
+  public void testWritesAppliedInOrderOnWriterThread() throws Exception {
+    List<Integer> applied = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      int value = i;
+      myWriter.enqueue(() -> {
+        applied.add(value);
+        threads.add(Thread.currentThread());
+      });
+    }
+    myWriter.awaitPendingWrites();
+
+    assertThat(applied).hasSize(100);
+    for (int i = 0; i < applied.size(); i++) {
+      assertThat(applied.get(i)).isEqualTo(i);
+      assertThat(threads.get(i)).isNotSameAs(Thread.currentThread());
+    }
+  }
+
+  @Test
+  public void testCallReturnsResult() throws Exception {
+    assertThat(myWriter.call(() -> 42)).isEqualTo(42);
+  }
+
+  @Test
+  public void testAwaitPendingWritesOnlyWaitsForWritesOfKey() throws Exception {
+    Object table = new Object();
+    Object otherTable = new Object();
+    CountDownLatch blockWriter = new CountDownLatch(1);
+    List<Integer> applied = new ArrayList<>();
+    myWriter.enqueue(table, () -> applied.add(1));
+    myWriter.enqueue(otherTable, () -> {
+      try {
+        blockWriter.await();
+      }
+      catch (InterruptedException ignored) {
+      }
+    });
+
+    // Does not wait for the write of the other table, which is still blocked.
+    myWriter.awaitPendingWrites(table);
+    assertThat(applied).containsExactly(1);
+
+    myWriter.enqueue(table, () -> applied.add(2));
+    blockWriter.countDown();
+    myWriter.awaitPendingWrites(table);
+    assertThat(applied).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void testCommitsOnBatchSize() throws Exception {
+    for (int i = 0; i < DataStoreWriter.MAX_BATCH_SIZE; i++) {
+      myWriter.enqueue(() -> {
+      });
+    }
+    myWriter.awaitPendingWrites();
+    // The commit happens right after the last write of the batch is applied.
+    long deadline = System.currentTimeMillis() + 5000;
+    while (myWriter.getCommitCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(myWriter.getCommitCount()).isAtLeast(1L);
+  }
+
+  @Test
+  public void testBackpressureWhenQueueIsFull() throws Exception {
+    CountDownLatch blockWriter = new CountDownLatch(1);
+    myWriter.enqueue(() -> {
+      try {
+        blockWriter.await();
+      }
+      catch (InterruptedException ignored) {
+      }
+    });
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < DataStoreWriter.QUEUE_CAPACITY + 1; i++) {
+        myWriter.enqueue(() -> {
+        });
+      }
+    });
+    producer.start();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (myWriter.getBackpressureCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(myWriter.getBackpressureCount()).isEqualTo(1L);
+    assertThat(myWriter.getQueueDepth()).isEqualTo(DataStoreWriter.QUEUE_CAPACITY);
+
+    blockWriter.countDown();
+    producer.join();
+    myWriter.awaitPendingWrites();
+    assertThat(myWriter.getQueueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void testShutdownDrainsQueue() throws Exception {
+    List<Integer> applied = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      myWriter.enqueue(() -> applied.add(0));
+    }
+    myWriter.shutdown();
+    assertThat(applied).hasSize(10);
+
+    // Writes after shutdown are dropped.
+    myWriter.enqueue(() -> applied.add(0));
+    assertThat(applied).hasSize(10);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.CpuProfiler.CpuDataRequest;
+import com.android.tools.profiler.proto.CpuProfiler.CpuDataResponse;
+import com.android.tools.profiler.proto.CpuProfiler.CpuProfilerData;
+import com.android.tools.profiler.proto.CpuServiceGrpc;
+import com.android.tools.profilers.common.DataSubscriptionMethods;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class DataSubscriptionsTest {
+  private static final Common.Session SESSION = Common.Session.newBuilder().setDeviceSerial("Serial").setBootId("Boot").build();
+  private static final Common.Session OTHER_SESSION = Common.Session.newBuilder().setDeviceSerial("Other").setBootId("Boot").build();
+
+  private final List<Long> myStoredTimestamps = new ArrayList<>();
+  private DataSubscriptions<CpuDataRequest, CpuDataResponse> mySubscriptions;
+
+  @Before
+  public void setUp() {
+    mySubscriptions = new DataSubscriptions<>(CpuServiceGrpc.METHOD_GET_DATA, CpuDataRequest::getSession, request -> {
+      CpuDataResponse.Builder response = CpuDataResponse.newBuilder();
+      for (long timestamp : myStoredTimestamps) {
+        if (timestamp > request.getStartTimestamp() && timestamp <= request.getEndTimestamp()) {
+          response.addData(CpuProfilerData.newBuilder().setBasicInfo(Common.CommonData.newBuilder().setEndTimestamp(timestamp)));
+        }
+      }
+      return response.build();
+    }, (request, response) -> response.getDataCount() == 0
+                              ? null
+                              : request.toBuilder()
+                                .setStartTimestamp(response.getData(response.getDataCount() - 1).getBasicInfo().getEndTimestamp())
+                                .build());
+  }
+
+  @Test
+  public void testSubscriptionMethod() {
+    MethodDescriptor<CpuDataRequest, CpuDataResponse> method = DataSubscriptionMethods.createMethod(CpuServiceGrpc.METHOD_GET_DATA);
+    assertThat(method.getType()).isEqualTo(MethodDescriptor.MethodType.SERVER_STREAMING);
+    assertThat(method.getFullMethodName()).endsWith("/SubscribeGetData");
+    assertThat(MethodDescriptor.extractFullServiceName(method.getFullMethodName()))
+      .isEqualTo(MethodDescriptor.extractFullServiceName(CpuServiceGrpc.METHOD_GET_DATA.getFullMethodName()));
+    assertThat(mySubscriptions.getMethodDefinition().getMethodDescriptor().getFullMethodName()).isEqualTo(method.getFullMethodName());
+  }
+
+  @Test
+  public void testOnlyNewDataIsPushed() {
+    myStoredTimestamps.add(1L);
+    myStoredTimestamps.add(2L);
+    RecordingObserver observer = new RecordingObserver();
+    mySubscriptions.subscribe(createRequest(), observer);
+    assertThat(observer.myTimestamps).containsExactly(1L, 2L).inOrder();
+    assertThat(observer.myResponseCount).isEqualTo(1);
+
+    // Nothing new, nothing pushed.
+    mySubscriptions.notifyDataStored(SESSION);
+    assertThat(observer.myResponseCount).isEqualTo(1);
+
+    myStoredTimestamps.add(3L);
+    mySubscriptions.notifyDataStored(OTHER_SESSION);
+    assertThat(observer.myResponseCount).isEqualTo(1);
+    mySubscriptions.notifyDataStored(SESSION);
+    assertThat(observer.myTimestamps).containsExactly(1L, 2L, 3L).inOrder();
+    assertThat(observer.myResponseCount).isEqualTo(2);
+  }
+
+  @Test
+  public void testEmptyInitialResponseIsPushed() {
+    RecordingObserver observer = new RecordingObserver();
+    mySubscriptions.subscribe(createRequest(), observer);
+    assertThat(observer.myResponseCount).isEqualTo(1);
+    assertThat(observer.myTimestamps).isEmpty();
+  }
+
+  @Test
+  public void testCompletedAndCancelledSubscriptionsAreRemoved() {
+    RecordingObserver completed = new RecordingObserver();
+    RecordingObserver cancelled = new RecordingObserver();
+    mySubscriptions.subscribe(createRequest(), completed);
+    mySubscriptions.subscribe(createRequest(), cancelled);
+    assertThat(mySubscriptions.getSubscriptionCount()).isEqualTo(2);
+
+    cancelled.myIsCancelled = true;
+    myStoredTimestamps.add(1L);
+    mySubscriptions.notifyDataStored(SESSION);
+    assertThat(mySubscriptions.getSubscriptionCount()).isEqualTo(1);
+
+    mySubscriptions.completeSubscriptions(SESSION);
+    assertThat(completed.myIsCompleted).isTrue();
+    assertThat(mySubscriptions.getSubscriptionCount()).isEqualTo(0);
+  }
+
+  @NotNull
+  private static CpuDataRequest createRequest() {
+    return CpuDataRequest.newBuilder().setSession(SESSION).setStartTimestamp(Long.MIN_VALUE).setEndTimestamp(Long.MAX_VALUE).build();
+  }
+
+  private static class RecordingObserver implements StreamObserver<CpuDataResponse> {
+    private final List<Long> myTimestamps = new ArrayList<>();
+    private int myResponseCount;
+    private boolean myIsCancelled;
+    private boolean myIsCompleted;
+
+    @Override
+    public void onNext(CpuDataResponse response) {
+      if (myIsCancelled) {
+        throw Status.CANCELLED.asRuntimeException();
+      }
+      myResponseCount++;
+      for (CpuProfilerData data : response.getDataList()) {
+        myTimestamps.add(data.getBasicInfo().getEndTimestamp());
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+    }
+
+    @Override
+    public void onCompleted() {
+      myIsCompleted = true;
+    }
+  }
+}
@@ -26,12 +26,15 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.File;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class CpuTableTest {
 
@@ -73,29 +76,7 @@ public class CpuTableTest {
 
   private void populateDatabase() {
 
-    for (int i = 0; i < TEST_DATA; i++) {
-      CpuProfiler.CpuProfilerData testData = CpuProfiler.CpuProfilerData.newBuilder()
-        .setBasicInfo(Common.CommonData.newBuilder()
-                        .setProcessId(PROCESS_ID)
-                        .setEndTimestamp(SESSION_ONE_OFFSET + i))
-        .setCpuUsage(CpuProfiler.CpuUsageData.newBuilder()
-                       .setAppCpuTimeInMillisec(SESSION_ONE_OFFSET + i)
-                       .setSystemCpuTimeInMillisec(SESSION_ONE_OFFSET + i)
-                       .setElapsedTimeInMillisec(SESSION_ONE_OFFSET + i)).build();
-      myTable.insert(SESSION_HUNDREDS, testData);
-    }
-
-    for (int i = 0; i < TEST_DATA; i++) {
-      CpuProfiler.CpuProfilerData testData = CpuProfiler.CpuProfilerData.newBuilder()
-        .setBasicInfo(Common.CommonData.newBuilder()
-                        .setProcessId(PROCESS_ID)
-                        .setEndTimestamp(SESSION_TWO_OFFSET + i))
-        .setCpuUsage(CpuProfiler.CpuUsageData.newBuilder()
-                       .setAppCpuTimeInMillisec(SESSION_TWO_OFFSET + i)
-                       .setSystemCpuTimeInMillisec(SESSION_TWO_OFFSET + i)
-                       .setElapsedTimeInMillisec(SESSION_TWO_OFFSET + i)).build();
-      myTable.insert(SESSION_THOUSANDS, testData);
-    }
+    populateCpuData(myTable);
 
     List<CpuProfiler.GetThreadsResponse.ThreadActivity> activities = new ArrayList<>();
     for (int i = 0; i < TEST_DATA; i++) {
@@ -127,6 +108,27 @@ public class CpuTableTest {
     }
   }
 
+  private static void populateCpuData(CpuTable table) {
+    for (int i = 0; i < TEST_DATA; i++) {
+      table.insert(SESSION_HUNDREDS, createCpuData(SESSION_ONE_OFFSET + i));
+    }
+
+    for (int i = 0; i < TEST_DATA; i++) {
+      table.insert(SESSION_THOUSANDS, createCpuData(SESSION_TWO_OFFSET + i));
+    }
+  }
+
+  private static CpuProfiler.CpuProfilerData createCpuData(long value) {
+    return CpuProfiler.CpuProfilerData.newBuilder()
+      .setBasicInfo(Common.CommonData.newBuilder()
+                      .setProcessId(PROCESS_ID)
+                      .setEndTimestamp(value))
+      .setCpuUsage(CpuProfiler.CpuUsageData.newBuilder()
+                     .setAppCpuTimeInMillisec(value)
+                     .setSystemCpuTimeInMillisec(value)
+                     .setElapsedTimeInMillisec(value)).build();
+  }
+
   @Test
   public void testGetData() throws Exception {
     CpuProfiler.CpuDataRequest request = CpuProfiler.CpuDataRequest.newBuilder()
@@ -190,6 +192,67 @@ public class CpuTableTest {
     assertEquals(0, response.size());
   }
 
+  @Test
+  public void testColumnarStorageReturnsSameData() throws Exception {
+    DataStoreDatabase columnarDatabase = new DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT);
+    HashMap<Common.Session, Long> sessionLookup = new HashMap<>();
+    sessionLookup.put(SESSION_HUNDREDS, 1L);
+    sessionLookup.put(SESSION_THOUSANDS, 2L);
+    CpuTable columnarTable = new CpuTable(sessionLookup);
+    columnarTable.setSampleStorage(DataStoreDatabase.SampleStorage.COLUMNAR);
+    columnarTable.initialize(columnarDatabase.getConnection());
+    populateCpuData(columnarTable);
+
+    try {
+      for (Common.Session session : new Common.Session[]{SESSION_HUNDREDS, SESSION_THOUSANDS, Common.Session.getDefaultInstance()}) {
+        CpuProfiler.CpuDataRequest request = CpuProfiler.CpuDataRequest.newBuilder()
+          .setSession(session)
+          .setStartTimestamp(SESSION_ONE_OFFSET + 2)
+          .setEndTimestamp(SESSION_TWO_OFFSET + 5)
+          .setProcessId(PROCESS_ID)
+          .build();
+        assertEquals(myTable.getCpuDataByRequest(request), columnarTable.getCpuDataByRequest(request));
+      }
+    }
+    finally {
+      columnarDatabase.disconnect();
+    }
+  }
+
+  @Test
+  public void testDurableColumnarStorageKeepsRows() throws Exception {
+    File dbFile = FileUtil.createTempFile("CpuTableColumnar", "mysql");
+    DataStoreDatabase columnarDatabase = new DataStoreDatabase(dbFile.getAbsolutePath(), DataStoreDatabase.Characteristic.DURABLE);
+    HashMap<Common.Session, Long> sessionLookup = new HashMap<>();
+    sessionLookup.put(SESSION_HUNDREDS, 1L);
+    sessionLookup.put(SESSION_THOUSANDS, 2L);
+    CpuTable columnarTable = new CpuTable(sessionLookup);
+    columnarTable.setSampleStorage(DataStoreDatabase.SampleStorage.COLUMNAR);
+    columnarTable.initialize(columnarDatabase);
+    populateCpuData(columnarTable);
+
+    try {
+      CpuProfiler.CpuDataRequest request = CpuProfiler.CpuDataRequest.newBuilder()
+        .setSession(SESSION_HUNDREDS)
+        .setStartTimestamp(SESSION_ONE_OFFSET - 1)
+        .setEndTimestamp(SESSION_ONE_OFFSET + TEST_DATA)
+        .setProcessId(PROCESS_ID)
+        .build();
+      assertEquals(myTable.getCpuDataByRequest(request), columnarTable.getCpuDataByRequest(request));
+
+      columnarDatabase.getWriter().awaitPendingWrites();
+      try (Statement statement = columnarDatabase.getConnection().createStatement()) {
+        ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM Cpu_Data");
+        assertTrue(results.next());
+        assertEquals(TEST_DATA * 2, results.getInt(1));
+      }
+    }
+    finally {
+      columnarDatabase.disconnect();
+      FileUtil.delete(dbFile);
+    }
+  }
+
   @Test
   public void testGetThreadsDataByRequest() throws Exception {
     CpuProfiler.GetThreadsRequest request = CpuProfiler.GetThreadsRequest.newBuilder()
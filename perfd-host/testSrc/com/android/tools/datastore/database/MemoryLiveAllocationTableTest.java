@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class MemoryLiveAllocationTableTest {
   private static final int VALID_PID = 1;
@@ -214,7 +215,7 @@ public class MemoryLiveAllocationTableTest {
 
   @Test
   public void testPruningAllocationData() throws Exception {
-    myAllocationTable.setAllocationCountLimit(2);
+    myAllocationTable.setRetentionPolicy(VALID_SESSION, new RetentionPolicy(TimeUnit.MINUTES.toNanos(10), Long.MAX_VALUE, 2));
 
     AllocationContextsResponse contextSample = myAllocationTable.getAllocationContexts(VALID_PID, VALID_SESSION, 0, Long.MAX_VALUE);
     Truth.assertThat(contextSample.getAllocatedClassesCount()).isEqualTo(0);
@@ -455,6 +456,43 @@ public class MemoryLiveAllocationTableTest {
     Truth.assertThat(contexts.getTimestamp()).isEqualTo(CLASS2_TIME);
   }
 
+  @Test
+  public void testStacksSharingCallers() throws Exception {
+    // Both stacks are called from METHOD3, the first one is inserted in two separate batches.
+    EncodedAllocationStack stack1 =
+      EncodedAllocationStack.newBuilder().setStackId(STACK1).addAllMethodIds(Arrays.asList(METHOD1, METHOD3))
+        .addAllLineNumbers(Arrays.asList(LINE1, LINE3)).setTimestamp(STACK1_TIME).build();
+    EncodedAllocationStack stack2 =
+      EncodedAllocationStack.newBuilder().setStackId(STACK2).addAllMethodIds(Arrays.asList(METHOD2, METHOD1, METHOD3))
+        .addAllLineNumbers(Arrays.asList(LINE2, LINE1, LINE3)).setTimestamp(STACK2_TIME).build();
+    EncodedAllocationStack emptyStack = EncodedAllocationStack.newBuilder().setStackId(STACK2 + 1).setTimestamp(STACK2_TIME).build();
+    myAllocationTable.insertStackInfo(VALID_PID, VALID_SESSION, Arrays.asList(stack1));
+    myAllocationTable.insertStackInfo(VALID_PID, VALID_SESSION, Arrays.asList(stack2, emptyStack));
+
+    AllocationStack expectedStack1 = AllocationStack.newBuilder()
+      .setStackId(STACK1)
+      .setSmallStack(AllocationStack.SmallFrameWrapper.newBuilder()
+                       .addFrames(AllocationStack.SmallFrame.newBuilder().setMethodId(METHOD1).setLineNumber(LINE1))
+                       .addFrames(AllocationStack.SmallFrame.newBuilder().setMethodId(METHOD3).setLineNumber(LINE3)))
+      .build();
+    AllocationStack expectedStack2 = AllocationStack.newBuilder()
+      .setStackId(STACK2)
+      .setSmallStack(AllocationStack.SmallFrameWrapper.newBuilder()
+                       .addFrames(AllocationStack.SmallFrame.newBuilder().setMethodId(METHOD2).setLineNumber(LINE2))
+                       .addFrames(AllocationStack.SmallFrame.newBuilder().setMethodId(METHOD1).setLineNumber(LINE1))
+                       .addFrames(AllocationStack.SmallFrame.newBuilder().setMethodId(METHOD3).setLineNumber(LINE3)))
+      .build();
+    AllocationStack expectedEmptyStack =
+      AllocationStack.newBuilder().setStackId(STACK2 + 1).setSmallStack(AllocationStack.SmallFrameWrapper.getDefaultInstance()).build();
+
+    AllocationContextsResponse contexts = myAllocationTable.getAllocationContexts(VALID_PID, VALID_SESSION, 0, Long.MAX_VALUE);
+    Truth.assertThat(contexts.getAllocationStacksList()).containsExactly(expectedStack1, expectedStack2, expectedEmptyStack);
+
+    // Stacks are only visible to their own session.
+    contexts = myAllocationTable.getAllocationContexts(VALID_PID, INVALID_SESSION, 0, Long.MAX_VALUE);
+    Truth.assertThat(contexts.getAllocationStacksList()).isEmpty();
+  }
+
   @Test
   public void testJNIPrimitiveTypesConversion() throws Exception {
     BatchAllocationSample.Builder classesBuilder = BatchAllocationSample.newBuilder();
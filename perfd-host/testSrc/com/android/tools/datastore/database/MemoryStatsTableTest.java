@@ -30,6 +30,7 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -280,6 +281,38 @@ public class MemoryStatsTableTest {
     assertEquals(0, response.getAllocationStacksCount());
   }
 
+  @Test
+  public void testPruningGcStats() throws Exception {
+    myStatsTable.setRetentionPolicy(VALID_SESSION, new RetentionPolicy(TimeUnit.MINUTES.toNanos(10), Long.MAX_VALUE, 2));
+    for (int i = 1; i <= 4; i++) {
+      MemoryData.GcStatsSample gcStatsSample = MemoryData.GcStatsSample.newBuilder().setStartTime(i).setEndTime(i).build();
+      myStatsTable.insertGcStats(VALID_PID, VALID_SESSION, Collections.singletonList(gcStatsSample));
+    }
+
+    // Only the two latest samples are kept
+    MemoryData result = myStatsTable
+      .getData(MemoryRequest.newBuilder().setSession(VALID_SESSION).setProcessId(VALID_PID).setStartTime(0).setEndTime(4).build());
+    assertEquals(2, result.getGcStatsSamplesCount());
+    assertEquals(3, result.getGcStatsSamples(0).getStartTime());
+    assertEquals(4, result.getGcStatsSamples(1).getStartTime());
+  }
+
+  @Test
+  public void testPruningIgnoresDuplicateSamples() throws Exception {
+    myStatsTable.setRetentionPolicy(VALID_SESSION, new RetentionPolicy(TimeUnit.MINUTES.toNanos(10), Long.MAX_VALUE, 2));
+    for (int startTime : new int[]{1, 2, 2, 2, 3}) {
+      MemoryData.GcStatsSample gcStatsSample = MemoryData.GcStatsSample.newBuilder().setStartTime(startTime).setEndTime(startTime).build();
+      myStatsTable.insertGcStats(VALID_PID, VALID_SESSION, Collections.singletonList(gcStatsSample));
+    }
+
+    // The duplicates are not inserted, so they don't count towards the limit
+    MemoryData result = myStatsTable
+      .getData(MemoryRequest.newBuilder().setSession(VALID_SESSION).setProcessId(VALID_PID).setStartTime(0).setEndTime(4).build());
+    assertEquals(2, result.getGcStatsSamplesCount());
+    assertEquals(2, result.getGcStatsSamples(0).getStartTime());
+    assertEquals(3, result.getGcStatsSamples(1).getStartTime());
+  }
+
   private static void verifyMemoryDataResultCounts(@NotNull MemoryProfiler.MemoryData result,
                                                    int numMemSample,
                                                    int numAllocStatsSample,
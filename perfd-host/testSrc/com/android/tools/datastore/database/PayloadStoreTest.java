@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.google.protobuf3jarjar.ByteString;
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class PayloadStoreTest {
+  private File myDirectory;
+  private PayloadStore myStore;
+
+  @Before
+  public void setUp() throws Exception {
+    myDirectory = FileUtil.createTempDirectory("PayloadStoreTest", null);
+    myStore = new PayloadStore(myDirectory);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myDirectory);
+  }
+
+  @Test
+  public void testPayloadsAreDeduplicated() throws Exception {
+    String key1 = myStore.put(ByteString.copyFromUtf8("Payload"));
+    String key2 = myStore.put(ByteString.copyFromUtf8("Payload"));
+    String key3 = myStore.put(ByteString.copyFromUtf8("Other payload"));
+
+    assertEquals(key1, key2);
+    assertNotEquals(key1, key3);
+    assertEquals(2, myDirectory.listFiles().length);
+    assertEquals("Payload", myStore.get(key1).toStringUtf8());
+    assertEquals("Other payload", myStore.get(key3).toStringUtf8());
+  }
+
+  @Test
+  public void testPayloadsAreCompressed() throws Exception {
+    byte[] contents = new byte[1 << 20];
+    String key = myStore.put(ByteString.copyFrom(contents));
+
+    assertTrue(myDirectory.listFiles()[0].length() < contents.length / 100);
+    try (InputStream input = myStore.openStream(key)) {
+      assertNotNull(input);
+      assertEquals(ByteString.copyFrom(contents), ByteString.readFrom(input));
+    }
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    String key = myStore.put(ByteString.copyFromUtf8("Payload"));
+    myStore.clear();
+
+    assertEquals(0, myDirectory.listFiles().length);
+    assertNull(myStore.get(key));
+    key = myStore.put(ByteString.copyFromUtf8("Payload"));
+    assertEquals("Payload", myStore.get(key).toStringUtf8());
+  }
+
+  @Test
+  public void testMissingPayload() throws Exception {
+    assertNull(myStore.openStream("missing"));
+    assertNull(myStore.get("missing"));
+  }
+}
@@ -18,6 +18,7 @@ package com.android.tools.datastore.database;
 import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Profiler;
+import com.google.protobuf3jarjar.ByteString;
 import com.intellij.openapi.util.io.FileUtil;
 import org.junit.After;
 import org.junit.Before;
@@ -26,7 +27,7 @@ import org.junit.Test;
 import java.io.File;
 import java.util.HashMap;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class ProfilerTableTest {
 
@@ -108,4 +109,47 @@ public class ProfilerTableTest {
     myTable.insertOrUpdateProcess(session, process);
     assertEquals(Profiler.AgentStatusResponse.Status.ATTACHED, myTable.getAgentStatus(request).getStatus());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testBytesAreKeptInPayloadStore() throws Exception {
+    File payloadDirectory = FileUtil.createTempDirectory("ProfilerTablePayloads", null);
+    try {
+      myTable.setPayloadStore(new PayloadStore(payloadDirectory));
+      Common.Session session = Common.Session.newBuilder().setBootId("BootId").setDeviceSerial("DeviceSerial").build();
+      Profiler.BytesResponse response = Profiler.BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("Payload")).build();
+      myTable.insertOrUpdateBytes("1", session, response);
+      myTable.insertOrUpdateBytes("2", session, response);
+
+      assertEquals(response, myTable.getBytes(Profiler.BytesRequest.newBuilder().setId("1").setSession(session).build()));
+      assertEquals(response, myTable.getBytes(Profiler.BytesRequest.newBuilder().setId("2").setSession(session).build()));
+      // Identical payloads are only stored once.
+      File[] payloadFiles = payloadDirectory.listFiles();
+      assertEquals(1, payloadFiles.length);
+
+      // Bytes whose payload is gone are no longer cached.
+      assertTrue(payloadFiles[0].delete());
+      assertNull(myTable.getBytes(Profiler.BytesRequest.newBuilder().setId("1").setSession(session).build()));
+    }
+    finally {
+      FileUtil.delete(payloadDirectory);
+    }
+  }
+
+  @Test
+  public void testPayloadsAreDeletedWhenInitialized() throws Exception {
+    File payloadDirectory = FileUtil.createTempDirectory("ProfilerTablePayloads", null);
+    try {
+      myTable.setPayloadStore(new PayloadStore(payloadDirectory));
+      Common.Session session = Common.Session.newBuilder().setBootId("BootId").setDeviceSerial("DeviceSerial").build();
+      myTable.insertOrUpdateBytes("1", session, Profiler.BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("Payload")).build());
+      assertEquals(1, payloadDirectory.listFiles().length);
+
+      myTable.initialize(myDatabase.getConnection());
+      assertEquals(0, payloadDirectory.listFiles().length);
+      assertNull(myTable.getBytes(Profiler.BytesRequest.newBuilder().setId("1").setSession(session).build()));
+    }
+    finally {
+      FileUtil.delete(payloadDirectory);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TieredTimeSeriesTest {
+  private static final long SESSION_ID = 1;
+  private static final long SAMPLE_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(250);
+  private static final TieredTimeSeries.Aggregation[] AGGREGATIONS =
+    {TieredTimeSeries.Aggregation.MIN, TieredTimeSeries.Aggregation.MAX, TieredTimeSeries.Aggregation.AVG};
+
+  @Test
+  public void testNarrowRangeUsesRawSamples() throws Exception {
+    TieredTimeSeries series = createSeries(new TimeSeriesStore(), TimeUnit.MINUTES.toNanos(5));
+    List<Long> timestamps = new ArrayList<>();
+    series.forEachInRange(0, TimeUnit.SECONDS.toNanos(10), (timestamp, values) -> {
+      assertThat(values[0]).isEqualTo(timestamp / SAMPLE_PERIOD_NS);
+      timestamps.add(timestamp);
+    });
+    assertThat(timestamps).hasSize(40);
+  }
+
+  @Test
+  public void testWideRangeUsesBuckets() throws Exception {
+    TieredTimeSeries series = createSeries(new TimeSeriesStore(), TimeUnit.HOURS.toNanos(1));
+    List<long[]> samples = new ArrayList<>();
+    List<Long> timestamps = new ArrayList<>();
+    series.forEachInRange(0, TimeUnit.HOURS.toNanos(1), (timestamp, values) -> {
+      timestamps.add(timestamp);
+      samples.add(values.clone());
+    });
+
+    // 3600 one second buckets would exceed the limit, so the 10 seconds tier is used.
+    assertThat(timestamps.size()).isAtMost(TieredTimeSeries.MAX_SAMPLES_PER_QUERY);
+    assertThat(timestamps.size()).isAtLeast(360);
+    // First bucket covers the samples 1 to 39, timestamped by its last sample.
+    assertThat(timestamps.get(0)).isEqualTo(39 * SAMPLE_PERIOD_NS);
+    assertThat(samples.get(0)).isEqualTo(new long[]{1, 39, 20});
+    for (int i = 1; i < timestamps.size(); i++) {
+      assertThat(timestamps.get(i)).isGreaterThan(timestamps.get(i - 1));
+    }
+    // The open buckets are served from the raw samples, so the latest sample is always returned.
+    assertThat(timestamps.get(timestamps.size() - 1)).isEqualTo(TimeUnit.HOURS.toNanos(1));
+  }
+
+  @Test
+  public void testRawRetention() throws Exception {
+    TimeSeriesStore store = new TimeSeriesStore();
+    store.setRetentionPolicy(SESSION_ID, new RetentionPolicy(TimeUnit.MINUTES.toNanos(5), Long.MAX_VALUE));
+    TieredTimeSeries series = createSeries(store, TimeUnit.HOURS.toNanos(1));
+
+    // The raw samples of the first minutes are gone, but the range is still served from the 1 second tier.
+    List<Long> timestamps = new ArrayList<>();
+    series.forEachInRange(0, TimeUnit.SECONDS.toNanos(10), (timestamp, values) -> timestamps.add(timestamp));
+    assertThat(timestamps).hasSize(10);
+    assertThat(timestamps.get(0)).isEqualTo(3 * SAMPLE_PERIOD_NS);
+  }
+
+  @Test
+  public void testMemoryCeiling() throws Exception {
+    TimeSeriesStore store = new TimeSeriesStore();
+    TieredTimeSeries series = createSeries(store, TimeUnit.HOURS.toNanos(1));
+    long unboundedSize = store.getEncodedSize(SESSION_ID);
+
+    store.setRetentionPolicy(SESSION_ID, new RetentionPolicy(TimeUnit.MINUTES.toNanos(5), unboundedSize / 4));
+    assertThat(store.getEncodedSize(SESSION_ID)).isAtMost(unboundedSize / 4);
+
+    // The most recent data is still there.
+    List<Long> timestamps = new ArrayList<>();
+    series.forEachInRange(TimeUnit.HOURS.toNanos(1) - TimeUnit.SECONDS.toNanos(1), Long.MAX_VALUE,
+                          (timestamp, values) -> timestamps.add(timestamp));
+    assertThat(timestamps).hasSize(4);
+  }
+
+  private static TieredTimeSeries createSeries(TimeSeriesStore store, long durationNs) {
+    TieredTimeSeries series = store.getOrCreate(SESSION_ID, 1, 0, AGGREGATIONS);
+    for (long i = 1; i * SAMPLE_PERIOD_NS <= durationNs; i++) {
+      series.append(i * SAMPLE_PERIOD_NS, i, i, i);
+    }
+    return series;
+  }
+}
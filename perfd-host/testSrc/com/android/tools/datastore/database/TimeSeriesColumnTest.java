@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TimeSeriesColumnTest {
+  private static final int SAMPLE_COUNT = TimeSeriesColumn.PARTITION_SIZE * 3 + 7;
+
+  @Test
+  public void testRangeAcrossPartitions() throws Exception {
+    TimeSeriesColumn column = createColumn();
+    List<Long> timestamps = new ArrayList<>();
+    column.forEachInRange(10, TimeSeriesColumn.PARTITION_SIZE * 20 + 30, (timestamp, values) -> {
+      assertThat(values[0]).isEqualTo(timestamp / 10);
+      assertThat(values[1]).isEqualTo(-timestamp);
+      timestamps.add(timestamp);
+    });
+
+    // Start is exclusive, end is inclusive.
+    assertThat(timestamps.get(0)).isEqualTo(20L);
+    assertThat(timestamps.get(timestamps.size() - 1)).isEqualTo(TimeSeriesColumn.PARTITION_SIZE * 20L + 30);
+    assertThat(timestamps).hasSize(TimeSeriesColumn.PARTITION_SIZE * 2 + 2);
+  }
+
+  @Test
+  public void testOutOfRange() throws Exception {
+    TimeSeriesColumn column = createColumn();
+    List<Long> timestamps = new ArrayList<>();
+    column.forEachInRange(SAMPLE_COUNT * 10, Long.MAX_VALUE, (timestamp, values) -> timestamps.add(timestamp));
+    column.forEachInRange(Long.MIN_VALUE, 0, (timestamp, values) -> timestamps.add(timestamp));
+    column.forEachInRange(50, 50, (timestamp, values) -> timestamps.add(timestamp));
+    assertThat(timestamps).isEmpty();
+  }
+
+  @Test
+  public void testOlderAndDuplicateSamplesIgnored() throws Exception {
+    TimeSeriesColumn column = createColumn();
+    column.append(10, 100, 100);
+    column.append(SAMPLE_COUNT * 10 - 10, 100, 100);
+    assertThat(column.getSampleCount()).isEqualTo((long)SAMPLE_COUNT);
+
+    List<long[]> values = new ArrayList<>();
+    column.forEachInRange(0, 10, (timestamp, sample) -> values.add(sample.clone()));
+    assertThat(values).hasSize(1);
+    assertThat(values.get(0)).isEqualTo(new long[]{1, -10});
+  }
+
+  @Test
+  public void testEncodingIsCompact() throws Exception {
+    TimeSeriesColumn column = createColumn();
+    // A regularly polled series should take far less than the 24 bytes of raw (timestamp, value, value) longs per sample.
+    assertThat(column.getEncodedSize()).isLessThan(SAMPLE_COUNT * 8L);
+  }
+
+  private static TimeSeriesColumn createColumn() {
+    TimeSeriesColumn column = new TimeSeriesColumn(2);
+    for (int i = 1; i <= SAMPLE_COUNT; i++) {
+      column.append(i * 10, i, -i * 10);
+    }
+    return column;
+  }
+}
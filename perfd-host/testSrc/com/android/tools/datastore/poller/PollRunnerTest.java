@@ -20,6 +20,7 @@ import org.junit.Test;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class PollRunnerTest {
 
@@ -42,6 +43,54 @@ public class PollRunnerTest {
     assertEquals(runner.get(1, TimeUnit.SECONDS), null); // For code completion
   }
 
+  @Test
+  public void testIdleDataSlowsPollingDown() {
+    IdleRunner runner = new IdleRunner();
+    runner.markDataRequested();
+    runner.pollOnce();
+    assertTrue(runner.getNextDelayNs() <= POLLING_DELAY_NS);
+
+    runner.myHasNewData = false;
+    for (int i = 0; i < PollRunner.IDLE_POLL_COUNT; i++) {
+      runner.pollOnce();
+    }
+    // Half of the poll period covers the time the polls could take.
+    assertTrue(runner.getNextDelayNs() > POLLING_DELAY_NS * 3 / 2);
+    assertEquals(PollRunner.IDLE_POLL_COUNT + 1, runner.getPollCount());
+
+    runner.myHasNewData = true;
+    runner.pollOnce();
+    assertTrue(runner.getNextDelayNs() <= POLLING_DELAY_NS);
+  }
+
+  @Test
+  public void testFixedPeriodRunnerDoesNotSlowDown() {
+    PollRunner runner = new PollRunner(POLLING_DELAY_NS) {
+      @Override
+      public void poll() {
+      }
+    };
+    for (int i = 0; i < PollRunner.IDLE_POLL_COUNT * 2; i++) {
+      runner.pollOnce();
+    }
+    assertTrue(runner.getNextDelayNs() <= POLLING_DELAY_NS);
+  }
+
+  private static class IdleRunner extends PollRunner {
+    private boolean myHasNewData = true;
+
+    public IdleRunner() {
+      super(POLLING_DELAY_NS, MAX_POLLING_DELAY_NS);
+    }
+
+    @Override
+    public void poll() {
+      if (myHasNewData) {
+        markNewData();
+      }
+    }
+  }
+
   private static class PollRunnerMinimalImpl extends PollRunner {
     private long myLastCallbackTime = 0;
     private long myTickCallCount = 0;
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import io.grpc.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class PollSchedulerTest {
+  private static final long TEST_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final List<Runnable> myFallbackRunnables = new ArrayList<>();
+  private PollScheduler myScheduler;
+
+  @Before
+  public void setUp() {
+    myScheduler = new PollScheduler(myFallbackRunnables::add, 1);
+  }
+
+  @After
+  public void tearDown() {
+    myScheduler.shutdown();
+  }
+
+  @Test
+  public void testRunnersArePolledRepeatedly() throws Exception {
+    CountingRunner first = new CountingRunner(3);
+    CountingRunner second = new CountingRunner(3);
+    myScheduler.accept(first);
+    myScheduler.accept(second);
+    assertThat(first.myPolls.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(second.myPolls.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(first.getPollCount()).isAtLeast(3L);
+
+    first.stop();
+    assertThat(first.isDone()).isTrue();
+    assertThat(second.isDone()).isFalse();
+  }
+
+  @Test
+  public void testOtherRunnablesGoToFallbackExecutor() {
+    Runnable runnable = () -> {
+    };
+    myScheduler.accept(runnable);
+    assertThat(myFallbackRunnables).containsExactly(runnable);
+  }
+
+  @Test
+  public void testFailedPollEndsRunner() throws Exception {
+    CountingRunner runner = new CountingRunner(1) {
+      @Override
+      public void poll() {
+        super.poll();
+        throw Status.UNAVAILABLE.asRuntimeException();
+      }
+    };
+    myScheduler.accept(runner);
+    runner.get(10, TimeUnit.SECONDS);
+    assertThat(runner.isDone()).isTrue();
+    assertThat(runner.getPollCount()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testShutdownCancelsRunners() throws Exception {
+    CountingRunner runner = new CountingRunner(1);
+    myScheduler.accept(runner);
+    assertThat(runner.myPolls.await(10, TimeUnit.SECONDS)).isTrue();
+    myScheduler.shutdown();
+    runner.get(10, TimeUnit.SECONDS);
+    assertThat(runner.isCancelled()).isTrue();
+    assertThat(runner.isDone()).isTrue();
+  }
+
+  private static class CountingRunner extends PollRunner {
+    private final CountDownLatch myPolls;
+
+    public CountingRunner(int count) {
+      super(TEST_PERIOD_NS);
+      myPolls = new CountDownLatch(count);
+    }
+
+    @Override
+    public void poll() {
+      myPolls.countDown();
+    }
+  }
+}
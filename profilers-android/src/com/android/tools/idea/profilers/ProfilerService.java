@@ -16,6 +16,7 @@
 package com.android.tools.idea.profilers;
 
 import com.android.tools.datastore.DataStoreService;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.idea.sdk.IdeSdks;
 import com.android.tools.profilers.ProfilerClient;
 import com.intellij.openapi.Disposable;
@@ -41,11 +42,14 @@ public class ProfilerService implements Disposable {
   private final StudioProfilerDeviceManager myManager;
   @NotNull
   private final ProfilerClient myClient;
+  @NotNull
+  private final PollScheduler myPollScheduler;
 
   private ProfilerService() {
     String datastoreDirectory = Paths.get(System.getProperty("user.home"), ".android").toString() + File.separator;
-    DataStoreService dataStoreService =
-      new DataStoreService(DATASTORE_NAME, datastoreDirectory, ApplicationManager.getApplication()::executeOnPooledThread);
+    // The pollers of all the devices and processes share the scheduler's threads, other fetches run on pooled threads.
+    myPollScheduler = new PollScheduler(ApplicationManager.getApplication()::executeOnPooledThread);
+    DataStoreService dataStoreService = new DataStoreService(DATASTORE_NAME, datastoreDirectory, myPollScheduler);
     myManager = new StudioProfilerDeviceManager(dataStoreService);
     myClient = new ProfilerClient(DATASTORE_NAME);
     IdeSdks.subscribe(myManager, this);
@@ -54,6 +58,7 @@ public class ProfilerService implements Disposable {
   @Override
   public void dispose() {
     myManager.dispose();
+    myPollScheduler.shutdown();
   }
 
   @NotNull
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.common;
+
+import io.grpc.MethodDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The datastore serves a server-streaming subscription for some unary range queries such as CpuService/GetData. These methods are not
+ * part of the generated services: each one is named after its unary method with a {@link #SUBSCRIPTION_PREFIX} and uses the same
+ * messages, so both the datastore and its clients build the matching {@link MethodDescriptor} from the generated one.
+ */
+public final class DataSubscriptionMethods {
+  public static final String SUBSCRIPTION_PREFIX = "Subscribe";
+
+  private DataSubscriptionMethods() {
+  }
+
+  /**
+   * @return the server-streaming method subscribing to the data of {@code unaryMethod}.
+   */
+  @NotNull
+  public static <Req, Resp> MethodDescriptor<Req, Resp> createMethod(@NotNull MethodDescriptor<Req, Resp> unaryMethod) {
+    String fullMethodName = unaryMethod.getFullMethodName();
+    String serviceName = MethodDescriptor.extractFullServiceName(fullMethodName);
+    assert serviceName != null;
+    String methodName = fullMethodName.substring(serviceName.length() + 1);
+    return MethodDescriptor.create(MethodDescriptor.MethodType.SERVER_STREAMING,
+                                   MethodDescriptor.generateFullMethodName(serviceName, SUBSCRIPTION_PREFIX + methodName),
+                                   unaryMethod.getRequestMarshaller(), unaryMethod.getResponseMarshaller());
+  }
+}
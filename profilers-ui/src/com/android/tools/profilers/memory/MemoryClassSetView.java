@@ -191,7 +191,9 @@ final class MemoryClassSetView extends AspectObserver {
         "Retained Size",
         () -> new SimpleColumnRenderer<>(value -> {
           MemoryObject node = value.getAdapter();
-          return node instanceof ValueObject ? Long.toString(((ValueObject)node).getRetainedSize()) : "";
+          return node instanceof ValueObject
+                 ? MemoryClassifierView.formatRetainedSize(myCaptureObject, ((ValueObject)node).getRetainedSize())
+                 : "";
         }, value -> null, SwingConstants.RIGHT),
         SwingConstants.RIGHT,
         DEFAULT_COLUMN_WIDTH,
@@ -154,7 +154,7 @@ final class MemoryClassifierView extends AspectObserver {
       new AttributeColumn<>(
         "Retained Size",
         () -> new SimpleColumnRenderer<ClassifierSet>(
-          value -> Long.toString(value.getAdapter().getTotalRetainedSize()),
+          value -> formatRetainedSize(myCaptureObject, value.getAdapter().getTotalRetainedSize()),
           value -> null, SwingConstants.RIGHT),
         SwingConstants.RIGHT,
         DEFAULT_COLUMN_WIDTH,
@@ -593,6 +593,21 @@ final class MemoryClassifierView extends AspectObserver {
     return createTreeNodeComparator(Comparator.comparing(ClassifierSet::getName), classObjectComparator);
   }
 
+  /**
+   * @return the text of a retained size of {@code captureObject}, or a progress text while the retained sizes of a heap dump are
+   * still being computed in the background.
+   */
+  @NotNull
+  static String formatRetainedSize(@Nullable CaptureObject captureObject, long retainedSize) {
+    if (captureObject instanceof HeapDumpCaptureObject) {
+      HeapDumpCaptureObject heapDump = (HeapDumpCaptureObject)captureObject;
+      if (!heapDump.hasRetainedSizes()) {
+        return String.format("Computing... %d%%", (int)(heapDump.getRetainedSizesProgress() * 100));
+      }
+    }
+    return Long.toString(retainedSize);
+  }
+
   private static class MemoryClassifierTreeNode extends LazyMemoryObjectTreeNode<ClassifierSet> {
     private MemoryClassifierTreeNode(@NotNull ClassifierSet classifierSet) {
       super(classifierSet, false);
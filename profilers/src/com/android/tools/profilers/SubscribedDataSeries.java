@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.adtui.model.*;
+import gnu.trove.TLongArrayList;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A {@link DataSeries} fed by a datastore subscription: the datastore pushes the data of a request as its pollers store it, instead of
+ * the series querying its range again on every update. Ranges are answered from the data received so far.
+ *
+ * Only the samples of the last queried range are kept, plus {@link #BUFFER_RATIO} of its length before it and the samples after it. Older
+ * ranges, e.g. after scrolling back in time or zooming out, are queried from a polling series instead. This is also the case until the
+ * first response arrives, and once the subscription ends (e.g. the app stops being monitored, or the datastore doesn't serve
+ * subscriptions).
+ *
+ * The subscription is cancelled with the next push after the series has been garbage collected.
+ */
+public final class SubscribedDataSeries implements DataSeries<Long> {
+  static final double BUFFER_RATIO = 1;
+
+  @NotNull private final DataSeries<Long> myPolledSeries;
+
+  // Samples ranges are answered from, sorted by x. They are only changed by queries, so the views returned stay valid until the next
+  // query even though data keeps being pushed. All the samples received at or after myCoveredMin are there, plus the one before it.
+  @NotNull private final TLongArrayList myX = new TLongArrayList();
+  @NotNull private final TLongArrayList myY = new TLongArrayList();
+  private long myCoveredMin = Long.MIN_VALUE;
+
+  // Samples received since the last query, which follow the ones of myX unless some of them had to be dropped.
+  @NotNull private final TLongArrayList myPendingX = new TLongArrayList();
+  @NotNull private final TLongArrayList myPendingY = new TLongArrayList();
+  private long myPendingCoveredMin = Long.MIN_VALUE;
+  private boolean myIsPendingTrimmed;
+
+  // Length of the last queried range, or -1 if the series hasn't been queried yet.
+  private double myWindowLength = -1;
+  private boolean myIsLive;
+
+  /**
+   * @param unaryMethod  the unary range query to subscribe to
+   * @param request      the request to subscribe with, which should cover all the data the series can be queried for
+   * @param converter    converts each pushed response to samples, which must come after the samples of the previous responses
+   * @param polledSeries the series to query when the subscription doesn't cover a range
+   */
+  public <Req, Resp> SubscribedDataSeries(@NotNull Channel channel,
+                                          @NotNull MethodDescriptor<Req, Resp> unaryMethod,
+                                          @NotNull Req request,
+                                          @NotNull Function<Resp, List<SeriesData<Long>>> converter,
+                                          @NotNull DataSeries<Long> polledSeries) {
+    myPolledSeries = polledSeries;
+    SubscriptionObserver.subscribe(channel, unaryMethod, request, this, (series, response) -> series.addData(converter.apply(response)),
+                                   SubscribedDataSeries::end);
+  }
+
+  public synchronized boolean isLive() {
+    return myIsLive;
+  }
+
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(Range xRange) {
+    LongSeriesView view = getViewForXRange(xRange);
+    List<SeriesData<Long>> data = new ArrayList<>(view.size());
+    for (int i = 0; i < view.size(); i++) {
+      data.add(new SeriesData<>(view.getX(i), view.getY(i)));
+    }
+    return data;
+  }
+
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(Range xRange, int pixelWidth) {
+    return SeriesDecimator.decimate(getDataForXRange(xRange), xRange, pixelWidth);
+  }
+
+  /**
+   * The returned view is backed by the received samples, and is only valid until the next query.
+   */
+  @Override
+  public LongSeriesView getViewForXRange(Range xRange) {
+    synchronized (this) {
+      if (myIsLive) {
+        addPendingData();
+        long min = (long)xRange.getMin();
+        // Point ranges (e.g. the time under the mouse for legends) don't move the kept window.
+        if (!xRange.isPoint()) {
+          myWindowLength = xRange.getLength();
+          trim(min);
+        }
+        if (min >= myCoveredMin) {
+          // The samples in [min, max], plus the closest sample on each side so the data can be drawn up to the range edges.
+          int from = Math.max(0, lowerBound(myX, min + 1) - 1);
+          int to = Math.min(myX.size(), lowerBound(myX, (long)xRange.getMax()) + 1);
+          return LongSeriesView.of(myX, myY, from, Math.max(from, to));
+        }
+      }
+      else {
+        clear();
+      }
+    }
+    return LongSeriesView.of(myPolledSeries.getViewForXRange(xRange));
+  }
+
+  @Override
+  public LongSeriesView getViewForXRange(Range xRange, int pixelWidth) {
+    return SeriesDecimator.decimate(getViewForXRange(xRange), xRange, pixelWidth);
+  }
+
+  private synchronized void addData(@NotNull List<SeriesData<Long>> data) {
+    myIsLive = true;
+    for (SeriesData<Long> sample : data) {
+      TLongArrayList lastX = myPendingX.isEmpty() ? myX : myPendingX;
+      if (lastX.isEmpty() || sample.x >= lastX.get(lastX.size() - 1)) {
+        myPendingX.add(sample.x);
+        myPendingY.add(sample.value);
+      }
+    }
+    // Until the next query, e.g. while the series isn't shown, only keep enough to answer the last queried range at the latest data.
+    if (myWindowLength >= 0 && !myPendingX.isEmpty()) {
+      long keptMin = (long)(myPendingX.get(myPendingX.size() - 1) - myWindowLength * (1 + BUFFER_RATIO));
+      if (removeSamplesBefore(myPendingX, myPendingY, keptMin)) {
+        myPendingCoveredMin = keptMin;
+        myIsPendingTrimmed = true;
+      }
+    }
+  }
+
+  private void addPendingData() {
+    if (myIsPendingTrimmed) {
+      myX.clear();
+      myY.clear();
+      myCoveredMin = myPendingCoveredMin;
+      myIsPendingTrimmed = false;
+    }
+    for (int i = 0; i < myPendingX.size(); i++) {
+      myX.add(myPendingX.get(i));
+      myY.add(myPendingY.get(i));
+    }
+    myPendingX.clear();
+    myPendingY.clear();
+  }
+
+  /**
+   * Drops the samples more than {@link #BUFFER_RATIO} of the window length before the queried range, or before the window at the
+   * latest sample if the range is older than that.
+   */
+  private void trim(long min) {
+    if (myX.isEmpty()) {
+      return;
+    }
+    long latestWindowMin = (long)(myX.get(myX.size() - 1) - myWindowLength);
+    long keptMin = (long)(Math.max(min, latestWindowMin) - myWindowLength * BUFFER_RATIO);
+    if (keptMin > myCoveredMin && removeSamplesBefore(myX, myY, keptMin)) {
+      myCoveredMin = keptMin;
+    }
+  }
+
+  private synchronized void end() {
+    myIsLive = false;
+  }
+
+  /**
+   * Drops the received samples, which can't be done as the subscription ends since views over them may still be in use.
+   */
+  private void clear() {
+    myX.clear();
+    myY.clear();
+    myPendingX.clear();
+    myPendingY.clear();
+    myCoveredMin = Long.MIN_VALUE;
+    myIsPendingTrimmed = false;
+    myWindowLength = -1;
+  }
+
+  /**
+   * Removes the samples before {@code x}, except the last one so a range starting at {@code x} can still be drawn from its edge. They are
+   * only removed once they are at least half of the samples, so each sample is moved a bounded number of times on average.
+   *
+   * @return whether samples were removed.
+   */
+  private static boolean removeSamplesBefore(@NotNull TLongArrayList xs, @NotNull TLongArrayList ys, long x) {
+    int count = lowerBound(xs, x) - 1;
+    if (count <= 0 || count < xs.size() / 2) {
+      return false;
+    }
+    xs.remove(0, count);
+    ys.remove(0, count);
+    return true;
+  }
+
+  /**
+   * @return the index of the first sample whose x is greater or equal to {@code x}, or the number of samples if there is none.
+   */
+  private static int lowerBound(@NotNull TLongArrayList xs, long x) {
+    int index = xs.binarySearch(x);
+    return index >= 0 ? index : -index - 1;
+  }
+}
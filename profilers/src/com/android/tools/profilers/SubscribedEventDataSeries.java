@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.event.EventAction;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A {@link DataSeries} of events fed by a datastore subscription, like {@link SubscribedDataSeries}. Unlike samples, events are updated in
+ * place (e.g. when they end), so each push is merged into the events received so far, and ranges are answered from all of them. There are
+ * few events, so they are all kept.
+ *
+ * Until the first response arrives, and once the subscription ends, ranges are queried from a polling series instead.
+ */
+public final class SubscribedEventDataSeries<E> implements DataSeries<EventAction<E>> {
+  @NotNull private final DataSeries<EventAction<E>> myPolledSeries;
+
+  // All the events received, or null while the subscription isn't live. Each push replaces the list, so it can be read without locking.
+  @Nullable private List<SeriesData<EventAction<E>>> myEvents;
+
+  /**
+   * @param unaryMethod  the unary range query to subscribe to
+   * @param request      the request to subscribe with, which should cover all the data the series can be queried for
+   * @param merger       merges each pushed response into the events received before, and returns a new list of all of them
+   * @param polledSeries the series to query when the subscription isn't live
+   */
+  public <Req, Resp> SubscribedEventDataSeries(@NotNull Channel channel,
+                                               @NotNull MethodDescriptor<Req, Resp> unaryMethod,
+                                               @NotNull Req request,
+                                               @NotNull Function<Resp, List<SeriesData<EventAction<E>>>> merger,
+                                               @NotNull DataSeries<EventAction<E>> polledSeries) {
+    myPolledSeries = polledSeries;
+    SubscriptionObserver.subscribe(channel, unaryMethod, request, this, (series, response) -> series.setEvents(merger.apply(response)),
+                                   series -> series.setEvents(null));
+  }
+
+  public synchronized boolean isLive() {
+    return myEvents != null;
+  }
+
+  @Override
+  public List<SeriesData<EventAction<E>>> getDataForXRange(Range xRange) {
+    List<SeriesData<EventAction<E>>> events;
+    synchronized (this) {
+      events = myEvents;
+    }
+    if (events == null) {
+      return myPolledSeries.getDataForXRange(xRange);
+    }
+    List<SeriesData<EventAction<E>>> data = new ArrayList<>();
+    for (SeriesData<EventAction<E>> event : events) {
+      // Events that haven't ended yet have an end of 0.
+      long endUs = event.value.getEndUs();
+      if (event.value.getStartUs() <= xRange.getMax() && (endUs == 0 || endUs >= xRange.getMin())) {
+        data.add(event);
+      }
+    }
+    return data;
+  }
+
+  private synchronized void setEvents(@Nullable List<SeriesData<EventAction<E>>> events) {
+    myEvents = events;
+  }
+}
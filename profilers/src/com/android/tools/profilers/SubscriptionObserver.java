@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.profilers.common.DataSubscriptionMethods;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Passes the responses of a datastore subscription to a target, e.g. a series. Only keeps a weak reference to the target, so the
+ * subscription doesn't keep it alive: the subscription is cancelled with the next push after the target has been garbage collected.
+ */
+final class SubscriptionObserver<T, Resp> implements StreamObserver<Resp> {
+  @NotNull private final WeakReference<T> myTarget;
+  @NotNull private final ClientCall<?, Resp> myCall;
+  @NotNull private final BiConsumer<T, Resp> myDataConsumer;
+  @NotNull private final Consumer<T> myEndConsumer;
+
+  private SubscriptionObserver(@NotNull T target,
+                               @NotNull ClientCall<?, Resp> call,
+                               @NotNull BiConsumer<T, Resp> dataConsumer,
+                               @NotNull Consumer<T> endConsumer) {
+    myTarget = new WeakReference<>(target);
+    myCall = call;
+    myDataConsumer = dataConsumer;
+    myEndConsumer = endConsumer;
+  }
+
+  /**
+   * Subscribes to the data of {@code unaryMethod} for {@code request}. The consumers are called from the thread of the subscription, and
+   * must not hold a reference to {@code target}.
+   *
+   * @param dataConsumer gets each pushed response
+   * @param endConsumer  is called once the subscription ends, e.g. the app stops being monitored or the datastore doesn't serve it
+   */
+  static <T, Req, Resp> void subscribe(@NotNull Channel channel,
+                                       @NotNull MethodDescriptor<Req, Resp> unaryMethod,
+                                       @NotNull Req request,
+                                       @NotNull T target,
+                                       @NotNull BiConsumer<T, Resp> dataConsumer,
+                                       @NotNull Consumer<T> endConsumer) {
+    ClientCall<Req, Resp> call = channel.newCall(DataSubscriptionMethods.createMethod(unaryMethod), CallOptions.DEFAULT);
+    ClientCalls.asyncServerStreamingCall(call, request, new SubscriptionObserver<>(target, call, dataConsumer, endConsumer));
+  }
+
+  @Override
+  public void onNext(Resp response) {
+    T target = myTarget.get();
+    if (target == null) {
+      myCall.cancel("The subscriber was garbage collected", null);
+      return;
+    }
+    myDataConsumer.accept(target, response);
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    end();
+  }
+
+  @Override
+  public void onCompleted() {
+    end();
+  }
+
+  private void end() {
+    T target = myTarget.get();
+    if (target != null) {
+      myEndConsumer.accept(target);
+    }
+  }
+}
@@ -16,7 +16,6 @@
 package com.android.tools.profilers.cpu;
 
 import com.android.tools.adtui.model.HNode;
-import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
@@ -41,14 +40,14 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     List<CaptureNode> allNodes = new ArrayList<>();
     // Pre-order traversal with Stack.
     // The traversal will sort nodes by CaptureNode#getStart(), if they'll be equal then ancestor will come first.
-    Stack<CaptureNode> stack = new Stack<>();
-    stack.add(node);
+    Deque<CaptureNode> stack = new ArrayDeque<>();
+    stack.push(node);
     while (!stack.isEmpty()) {
       CaptureNode curNode = stack.pop();
       allNodes.add(curNode);
       // Adding in reverse order so that the first child is processed first
-      for (int i = curNode.getChildren().size() - 1; i >= 0; --i) {
-        stack.add(curNode.getChildren().get(i));
+      for (int i = curNode.getChildCount() - 1; i >= 0; --i) {
+        stack.push(curNode.getChildAt(i));
       }
     }
 
@@ -105,43 +104,6 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     return true;
   }
 
-  @Override
-  public void update(@NotNull Range range) {
-    // how much time was spent in this call stack path, and in the functions it called
-    myTotal = 0;
-    // how much time was spent doing work directly in this call stack path
-    double self = 0;
-
-    // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
-    // then the second method can't be outerSoFar.
-    // It's used to exclude nodes which aren't at the top of the
-    // call stack from the total time calculation.
-    HNode<MethodModel> outerSoFar = null;
-
-    // myNodes is sorted by CaptureNode#getStart() in increasing order,
-    // if they are equal then ancestor comes first
-    for (CaptureNode node: myNodes) {
-      if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
-        if (outerSoFar != null) {
-          // |outerSoFar| is at the top of the call stack
-          myTotal += getIntersection(range, outerSoFar);
-        }
-        outerSoFar = node;
-      }
-
-      self += getIntersection(range, node);
-      for (CaptureNode child : node.getChildren()) {
-        self -= getIntersection(range, child);
-      }
-    }
-
-    if (outerSoFar != null) {
-      // |outerSoFar| is at the top of the call stack
-      myTotal += getIntersection(range, outerSoFar);
-    }
-    myChildrenTotal = myTotal - self;
-  }
-
   @Override
   public String getMethodName() {
     if (myIsRoot) {
@@ -21,82 +21,70 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * A method call of a CPU capture. Parsers build the capture trees out of these nodes, which can then be compacted into a
+ * {@link CaptureTree}, whose nodes are lightweight views over the arrays of the tree.
+ */
 public class CaptureNode implements HNode<MethodModel> {
 
   /**
-   * Start time with GLOBAL clock.
-   */
-  private long myStartGlobal;
-
-  /**
-   * End time with GLOBAL clock.
+   * The state of a node built by a parser. The views of a {@link CaptureTree} read theirs from the arrays of the tree, so they don't
+   * have any, which keeps them small.
    */
-  private long myEndGlobal;
+  @Nullable
+  private final State myState;
 
-  /**
-   * Start time with THREAD clock.
-   */
-  private long myStartThread;
+  public CaptureNode() {
+    myState = new State();
+  }
 
   /**
-   * End time with THREAD clock.
+   * Constructor of the views of {@code tree}, which override every accessor.
    */
-  private long myEndThread;
-
-  @NotNull
-  private final List<CaptureNode> myChildren;
+  CaptureNode(@SuppressWarnings("unused") @NotNull CaptureTree tree) {
+    myState = null;
+  }
 
   @NotNull
-  private ClockType myClockType;
-
-  /**
-   * The parent of its child is set to it when it is added {@link #addChild(CaptureNode)}
-   */
-  private CaptureNode myParent;
-
-  /**
-   * The corresponding method of this node.
-   */
-  private MethodModel myMethodModel;
-
-  /**
-   * The shortest distance from the root.
-   */
-  private int myDepth;
-
-  public CaptureNode() {
-    myChildren = new ArrayList<>();
-    myClockType = ClockType.GLOBAL;
-    myDepth = 0;
+  private State getState() {
+    assert myState != null : "Views of a compact capture tree must override the accessors of CaptureNode";
+    return myState;
   }
 
   public void addChild(CaptureNode node) {
-    myChildren.add(node);
-    node.myParent = this;
+    State state = getState();
+    if (state.myChildren == null) {
+      state.myChildren = new ArrayList<>();
+    }
+    state.myChildren.add(node);
+    node.getState().myParent = this;
   }
 
   @NotNull
   public List<CaptureNode> getChildren() {
-    return myChildren;
+    List<CaptureNode> children = getState().myChildren;
+    return children == null ? Collections.emptyList() : children;
   }
 
   @Override
   public int getChildCount() {
-    return myChildren.size();
+    List<CaptureNode> children = getState().myChildren;
+    return children == null ? 0 : children.size();
   }
 
   @NotNull
   @Override
   public CaptureNode getChildAt(int index) {
-    return myChildren.get(index);
+    return getChildren().get(index);
   }
 
   @Nullable
   @Override
   public CaptureNode getParent() {
-    return myParent;
+    return getState().myParent;
   }
 
   @Nullable
@@ -113,85 +101,131 @@ public class CaptureNode implements HNode<MethodModel> {
 
   @Override
   public long getStart() {
-    return myClockType == ClockType.THREAD ? myStartThread : myStartGlobal;
+    return getClockType() == ClockType.THREAD ? getStartThread() : getStartGlobal();
   }
 
   @Override
   public long getEnd() {
-    return myClockType == ClockType.THREAD ? myEndThread : myEndGlobal;
+    return getClockType() == ClockType.THREAD ? getEndThread() : getEndGlobal();
   }
 
   @Nullable
   @Override
   public MethodModel getData() {
-    return myMethodModel;
+    return getMethodModel();
   }
 
   @Override
   public int getDepth() {
-    return myDepth;
+    return getState().myDepth;
   }
 
   public void setStartGlobal(long startGlobal) {
-    myStartGlobal = startGlobal;
+    getState().myStartGlobal = startGlobal;
   }
 
   public long getStartGlobal() {
-    return myStartGlobal;
+    return getState().myStartGlobal;
   }
 
   public void setEndGlobal(long endGlobal) {
-    myEndGlobal = endGlobal;
+    getState().myEndGlobal = endGlobal;
   }
 
   public long getEndGlobal() {
-    return myEndGlobal;
+    return getState().myEndGlobal;
   }
 
   public void setStartThread(long startThread) {
-    myStartThread = startThread;
+    getState().myStartThread = startThread;
   }
 
   public long getStartThread() {
-    return myStartThread;
+    return getState().myStartThread;
   }
 
   public void setEndThread(long endThread) {
-    myEndThread = endThread;
+    getState().myEndThread = endThread;
   }
 
   public long getEndThread() {
-    return myEndThread;
+    return getState().myEndThread;
   }
 
   public void setClockType(@NotNull ClockType clockType) {
-    myClockType = clockType;
+    getState().myClockType = clockType;
   }
 
   /**
    * Returns the proportion of time the method was using CPU relative to the total (wall-clock) time that passed.
    */
   public double threadGlobalRatio() {
-    long durationThread = myEndThread - myStartThread;
-    long durationGlobal = myEndGlobal - myStartGlobal;
+    long durationThread = getEndThread() - getStartThread();
+    long durationGlobal = getEndGlobal() - getStartGlobal();
     return (double)durationThread / durationGlobal;
   }
 
   @NotNull
   public ClockType getClockType() {
-    return myClockType;
+    return getState().myClockType;
   }
 
   @Nullable
   public MethodModel getMethodModel() {
-    return myMethodModel;
+    return getState().myMethodModel;
   }
 
   public void setMethodModel(MethodModel methodModel) {
-    myMethodModel = methodModel;
+    getState().myMethodModel = methodModel;
   }
 
   public void setDepth(int depth) {
-    myDepth = depth;
+    getState().myDepth = depth;
+  }
+
+  private static final class State {
+    /**
+     * Start time with GLOBAL clock.
+     */
+    private long myStartGlobal;
+
+    /**
+     * End time with GLOBAL clock.
+     */
+    private long myEndGlobal;
+
+    /**
+     * Start time with THREAD clock.
+     */
+    private long myStartThread;
+
+    /**
+     * End time with THREAD clock.
+     */
+    private long myEndThread;
+
+    /**
+     * Allocated when the first child is added, as most of the nodes are leaves.
+     */
+    @Nullable
+    private List<CaptureNode> myChildren;
+
+    @NotNull
+    private ClockType myClockType = ClockType.GLOBAL;
+
+    /**
+     * The parent of its child is set to it when it is added {@link #addChild(CaptureNode)}
+     */
+    private CaptureNode myParent;
+
+    /**
+     * The corresponding method of this node.
+     */
+    private MethodModel myMethodModel;
+
+    /**
+     * The shortest distance from the root.
+     */
+    private int myDepth;
   }
 }
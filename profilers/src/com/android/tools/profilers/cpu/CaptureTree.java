@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A capture tree stored as a structure of arrays, instead of a {@link CaptureNode} object (plus a list of children) per method call.
+ *
+ * The nodes are stored in breadth-first order, so the children of a node are contiguous and the children of consecutive nodes are
+ * consecutive: the children of node {@code i} are the nodes [myFirstChild[i], myFirstChild[i + 1]). Methods are stored once, in a
+ * table referenced by index.
+ *
+ * The tree is accessed through {@link CaptureNode} views, so it can be used anywhere a {@link CaptureNode} is expected. A view only
+ * holds the tree and its index, is created the first time its node is accessed and then reused. The views can't have children added
+ * or their method changed, but their times and depth can be updated. The clock type is shared by the whole tree.
+ */
+public final class CaptureTree {
+  private static final int NO_METHOD = -1;
+  private static final int NO_PARENT = -1;
+
+  @NotNull private final long[] myStartGlobal;
+  @NotNull private final long[] myEndGlobal;
+  @NotNull private final long[] myStartThread;
+  @NotNull private final long[] myEndThread;
+  @NotNull private final int[] myParent;
+  @NotNull private final int[] myDepth;
+  @NotNull private final int[] myFirstChild;
+  @NotNull private final int[] myMethod;
+  @NotNull private final MethodModel[] myMethods;
+  // The views of the nodes, created when first accessed.
+  @NotNull private final NodeView[] myViews;
+
+  @NotNull private ClockType myClockType;
+
+  private CaptureTree(@NotNull List<CaptureNode> nodes) {
+    int size = nodes.size();
+    myStartGlobal = new long[size];
+    myEndGlobal = new long[size];
+    myStartThread = new long[size];
+    myEndThread = new long[size];
+    myParent = new int[size];
+    myDepth = new int[size];
+    myFirstChild = new int[size + 1];
+    myMethod = new int[size];
+    myViews = new NodeView[size];
+    myClockType = nodes.get(0).getClockType();
+
+    Map<MethodModel, Integer> methodIndices = new IdentityHashMap<>();
+    List<MethodModel> methods = new ArrayList<>();
+    myParent[0] = NO_PARENT;
+    myFirstChild[0] = 1;
+    for (int i = 0; i < size; i++) {
+      CaptureNode node = nodes.get(i);
+      myStartGlobal[i] = node.getStartGlobal();
+      myEndGlobal[i] = node.getEndGlobal();
+      myStartThread[i] = node.getStartThread();
+      myEndThread[i] = node.getEndThread();
+      myDepth[i] = node.getDepth();
+      myFirstChild[i + 1] = myFirstChild[i] + node.getChildCount();
+      for (int child = myFirstChild[i]; child < myFirstChild[i + 1]; child++) {
+        myParent[child] = i;
+      }
+
+      MethodModel method = node.getMethodModel();
+      if (method == null) {
+        myMethod[i] = NO_METHOD;
+      }
+      else {
+        Integer index = methodIndices.get(method);
+        if (index == null) {
+          index = methods.size();
+          methodIndices.put(method, index);
+          methods.add(method);
+        }
+        myMethod[i] = index;
+      }
+    }
+    myMethods = methods.toArray(new MethodModel[methods.size()]);
+  }
+
+  /**
+   * Copies the tree under {@code root} into a {@link CaptureTree}. The nodes of the original tree can be discarded afterwards.
+   *
+   * @return the root of the compact tree.
+   */
+  @NotNull
+  public static CaptureNode compact(@NotNull CaptureNode root) {
+    if (root instanceof NodeView) {
+      return root;
+    }
+    List<CaptureNode> nodes = new ArrayList<>();
+    nodes.add(root);
+    for (int i = 0; i < nodes.size(); i++) {
+      nodes.addAll(nodes.get(i).getChildren());
+    }
+    return new CaptureTree(nodes).getNode(0);
+  }
+
+  /**
+   * @return whether {@code node} is a view over a {@link CaptureTree}, in which case its clock type is shared by the whole tree.
+   */
+  static boolean isCompact(@NotNull CaptureNode node) {
+    return node instanceof NodeView;
+  }
+
+  @NotNull
+  private CaptureNode getNode(int index) {
+    NodeView view = myViews[index];
+    if (view == null) {
+      view = new NodeView(this, index);
+      myViews[index] = view;
+    }
+    return view;
+  }
+
+  private static final class NodeView extends CaptureNode {
+    @NotNull private final CaptureTree myTree;
+    private final int myIndex;
+
+    NodeView(@NotNull CaptureTree tree, int index) {
+      super(tree);
+      myTree = tree;
+      myIndex = index;
+    }
+
+    @Override
+    public void addChild(CaptureNode node) {
+      throw new UnsupportedOperationException("Nodes can't be added to a compact capture tree");
+    }
+
+    @NotNull
+    @Override
+    public List<CaptureNode> getChildren() {
+      return new ChildrenList(myTree, myTree.myFirstChild[myIndex], getChildCount());
+    }
+
+    @Override
+    public int getChildCount() {
+      return myTree.myFirstChild[myIndex + 1] - myTree.myFirstChild[myIndex];
+    }
+
+    @NotNull
+    @Override
+    public CaptureNode getChildAt(int index) {
+      if (index < 0 || index >= getChildCount()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getChildCount());
+      }
+      return myTree.getNode(myTree.myFirstChild[myIndex] + index);
+    }
+
+    @Nullable
+    @Override
+    public CaptureNode getParent() {
+      int parent = myTree.myParent[myIndex];
+      return parent == NO_PARENT ? null : myTree.getNode(parent);
+    }
+
+    @Override
+    public int getDepth() {
+      return myTree.myDepth[myIndex];
+    }
+
+    @Override
+    public void setDepth(int depth) {
+      myTree.myDepth[myIndex] = depth;
+    }
+
+    @Override
+    public long getStartGlobal() {
+      return myTree.myStartGlobal[myIndex];
+    }
+
+    @Override
+    public void setStartGlobal(long startGlobal) {
+      myTree.myStartGlobal[myIndex] = startGlobal;
+    }
+
+    @Override
+    public long getEndGlobal() {
+      return myTree.myEndGlobal[myIndex];
+    }
+
+    @Override
+    public void setEndGlobal(long endGlobal) {
+      myTree.myEndGlobal[myIndex] = endGlobal;
+    }
+
+    @Override
+    public long getStartThread() {
+      return myTree.myStartThread[myIndex];
+    }
+
+    @Override
+    public void setStartThread(long startThread) {
+      myTree.myStartThread[myIndex] = startThread;
+    }
+
+    @Override
+    public long getEndThread() {
+      return myTree.myEndThread[myIndex];
+    }
+
+    @Override
+    public void setEndThread(long endThread) {
+      myTree.myEndThread[myIndex] = endThread;
+    }
+
+    @NotNull
+    @Override
+    public ClockType getClockType() {
+      return myTree.myClockType;
+    }
+
+    /**
+     * Sets the clock type of the whole tree.
+     */
+    @Override
+    public void setClockType(@NotNull ClockType clockType) {
+      myTree.myClockType = clockType;
+    }
+
+    @Nullable
+    @Override
+    public MethodModel getMethodModel() {
+      int method = myTree.myMethod[myIndex];
+      return method == NO_METHOD ? null : myTree.myMethods[method];
+    }
+
+    @Override
+    public void setMethodModel(MethodModel methodModel) {
+      throw new UnsupportedOperationException("The method of a node of a compact capture tree can't be changed");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof NodeView)) {
+        return false;
+      }
+      NodeView other = (NodeView)obj;
+      return myTree == other.myTree && myIndex == other.myIndex;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(myTree) + myIndex;
+    }
+  }
+
+  private static final class ChildrenList extends AbstractList<CaptureNode> implements RandomAccess {
+    @NotNull private final CaptureTree myTree;
+    private final int myFirstChild;
+    private final int mySize;
+
+    ChildrenList(@NotNull CaptureTree tree, int firstChild, int size) {
+      myTree = tree;
+      myFirstChild = firstChild;
+      mySize = size;
+    }
+
+    @Override
+    public CaptureNode get(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+      return myTree.getNode(myFirstChild + index);
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+}
@@ -129,6 +129,10 @@ public class CpuCapture implements ConfigurableDurationData {
       return;
     }
     node.setClockType(clockType);
+    if (CaptureTree.isCompact(node)) {
+      // The clock type is shared by all the nodes of a compact tree.
+      return;
+    }
     for (CaptureNode child : node.getChildren()) {
       // CpuTraceArt should parse the capture into CaptureNode objects
       updateClockType(child, clockType);
@@ -119,7 +119,8 @@ public class CpuCaptureParser {
     try {
       File trace = FileUtil.createTempFile("cpu_trace", ".trace");
       try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(traceData.toByteArray());
+        // Streams the trace into the file, instead of copying it into an array as large as the trace first.
+        traceData.writeTo(out);
       }
 
       TraceParser parser;
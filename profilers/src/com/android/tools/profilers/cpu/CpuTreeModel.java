@@ -38,6 +38,9 @@ abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTreeModel {
     myCurrentRange = new Range();
     myAspectObserver = new AspectObserver();
     myRange.addDependency(myAspectObserver).onChange(Range.Aspect.RANGE, this::rangeChanged);
+    // Updating the tree to a range takes logarithmic time per node, once the node has indexed the time its calls cover.
+    // Index the whole tree upfront, the children of the root in parallel, so selecting a range doesn't have to.
+    node.buildIntervalsInParallel();
     rangeChanged();
   }
 
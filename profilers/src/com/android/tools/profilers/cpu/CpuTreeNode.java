@@ -17,7 +17,9 @@ package com.android.tools.profilers.cpu;
 
 import com.android.tools.adtui.model.HNode;
 import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.ClockType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -34,6 +36,18 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myTotal = 0;
   protected double myChildrenTotal = 0;
 
+  /**
+   * Time covered by {@link #myNodes}, built when first needed and rebuilt if nodes are added or the clock type changes.
+   */
+  @Nullable private IntervalIndex myTotalIntervals;
+
+  /**
+   * Time of {@link #myNodes} minus the time of their children.
+   */
+  @Nullable private IntervalSum mySelfIntervals;
+
+  @Nullable private ClockType myIntervalsClockType;
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -44,6 +58,8 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    myTotalIntervals = null;
+    mySelfIntervals = null;
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -75,25 +91,58 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
     return getTotal() - getChildrenTotal();
   }
 
+  /**
+   * Updates the totals to the given range, in logarithmic time in the number of nodes.
+   *
+   * The total is the time covered by the nodes, so nested nodes (e.g. recursive calls in a bottom-up tree) are only counted once.
+   * The self time is the time of the nodes minus the time of their children.
+   */
   public void update(@NotNull Range range) {
-    myTotal = 0.0;
-    myChildrenTotal = 0;
+    buildIntervals();
+    assert myTotalIntervals != null && mySelfIntervals != null;
+    myTotal = myTotalIntervals.getIntersectionLength(range);
+    myChildrenTotal = myTotal - mySelfIntervals.get(range);
+  }
 
-    for (CaptureNode node : myNodes) {
-      myTotal += getIntersection(range, node);
-      for (HNode<MethodModel> child : node.getChildren()) {
-        myChildrenTotal += getIntersection(range, child);
-      }
-    }
+  public boolean inRange(Range range) {
+    buildIntervals();
+    assert myTotalIntervals != null;
+    return myTotalIntervals.overlaps(range);
   }
 
-  protected static double getIntersection(@NotNull Range range, @NotNull HNode<MethodModel> node) {
-    Range intersection = range.getIntersection(new Range(node.getStart(), node.getEnd()));
-    return intersection.isEmpty() ? 0.0 : intersection.getLength();
+  /**
+   * Builds what {@link #update(Range)} and {@link #inRange(Range)} need for this node and its descendants built so far, with the
+   * children of this node in parallel.
+   */
+  void buildIntervalsInParallel() {
+    buildIntervals();
+    myChildren.parallelStream().forEach(CpuTreeNode::buildSubtreeIntervals);
   }
 
-  public boolean inRange(Range range) {
-    return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
+  private void buildSubtreeIntervals() {
+    buildIntervals();
+    for (CpuTreeNode<?> child : myChildren) {
+      child.buildSubtreeIntervals();
+    }
+  }
+
+  private void buildIntervals() {
+    ClockType clockType = myNodes.isEmpty() ? null : myNodes.get(0).getClockType();
+    if (myTotalIntervals != null && mySelfIntervals != null && myIntervalsClockType == clockType) {
+      return;
+    }
+    IntervalIndex.Builder total = new IntervalIndex.Builder();
+    IntervalSum.Builder self = new IntervalSum.Builder();
+    for (CaptureNode node : myNodes) {
+      total.add(node.getStart(), node.getEnd());
+      self.add(node.getStart(), node.getEnd());
+      for (HNode<MethodModel> child : node.getChildren()) {
+        self.subtract(child.getStart(), child.getEnd());
+      }
+    }
+    myTotalIntervals = total.build();
+    mySelfIntervals = self.build();
+    myIntervalsClockType = clockType;
   }
 
   public void reset() {
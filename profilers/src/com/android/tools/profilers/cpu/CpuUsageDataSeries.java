@@ -18,14 +18,18 @@ package com.android.tools.profilers.cpu;
 import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesDecimator;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
@@ -45,6 +49,11 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
     mySession = session;
   }
 
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs, int pixelWidth) {
+    return SeriesDecimator.decimate(getDataForXRange(timeCurrentRangeUs), timeCurrentRangeUs, pixelWidth);
+  }
+
   @Override
   public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
     List<SeriesData<Long>> seriesData = new ArrayList<>();
@@ -57,8 +66,42 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
       .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     CpuProfiler.CpuDataResponse response = myClient.getData(dataRequestBuilder.build());
-    CpuProfiler.CpuProfilerData lastCpuData = null;
-    for (CpuProfiler.CpuProfilerData data : response.getDataList()) {
+    addSeriesData(response.getDataList(), null, seriesData);
+    return seriesData;
+  }
+
+  /**
+   * @return a series getting the usage pushed by the datastore as it is polled, which falls back to {@code polledSeries} while it can't.
+   */
+  @NotNull
+  public SubscribedDataSeries subscribe(@NotNull DataSeries<Long> polledSeries) {
+    CpuProfiler.CpuDataRequest request = CpuProfiler.CpuDataRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setStartTimestamp(Long.MIN_VALUE)
+      .setEndTimestamp(Long.MAX_VALUE)
+      .build();
+    // Each usage sample is computed from the previous data, which may have come in the previous response.
+    CpuProfiler.CpuProfilerData[] lastCpuData = new CpuProfiler.CpuProfilerData[1];
+    Function<CpuProfiler.CpuDataResponse, List<SeriesData<Long>>> converter = response -> {
+      List<SeriesData<Long>> seriesData = new ArrayList<>();
+      lastCpuData[0] = addSeriesData(response.getDataList(), lastCpuData[0], seriesData);
+      return seriesData;
+    };
+    return new SubscribedDataSeries(myClient.getChannel(), CpuServiceGrpc.METHOD_GET_DATA, request, converter, polledSeries);
+  }
+
+  /**
+   * Converts {@code dataList} to usage samples, added to {@code seriesData}.
+   *
+   * @param lastCpuData the data preceding {@code dataList}, if any
+   * @return the last data of {@code dataList}, or {@code lastCpuData} if it's empty
+   */
+  @Nullable
+  private CpuProfiler.CpuProfilerData addSeriesData(@NotNull List<CpuProfiler.CpuProfilerData> dataList,
+                                                    @Nullable CpuProfiler.CpuProfilerData lastCpuData,
+                                                    @NotNull List<SeriesData<Long>> seriesData) {
+    for (CpuProfiler.CpuProfilerData data : dataList) {
       long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getBasicInfo().getEndTimestamp());
 
       // If lastCpuData is null, it means the first CPU usage data was read. Assign it to lastCpuData and go to the next iteration.
@@ -75,7 +118,7 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
       }
       lastCpuData = data;
     }
-    return seriesData;
+    return lastCpuData;
   }
 
   private static CpuUsageDataSeries.CpuUsageData getCpuUsageData(CpuProfiler.CpuProfilerData data, CpuProfiler.CpuProfilerData lastData) {
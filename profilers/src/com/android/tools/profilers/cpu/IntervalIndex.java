@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A set of time intervals, sorted and with the overlapping ones merged, together with the prefix sums of their lengths. This answers
+ * how much of a range is covered by the intervals, and whether any interval overlaps a range, with two binary searches.
+ */
+final class IntervalIndex {
+  @NotNull private final long[] myStarts;
+  @NotNull private final long[] myEnds;
+
+  /**
+   * myPrefixLengths[i] is the sum of the lengths of the intervals [0, i).
+   */
+  @NotNull private final long[] myPrefixLengths;
+
+  private IntervalIndex(@NotNull long[] starts, @NotNull long[] ends) {
+    myStarts = starts;
+    myEnds = ends;
+    myPrefixLengths = new long[starts.length + 1];
+    for (int i = 0; i < starts.length; i++) {
+      myPrefixLengths[i + 1] = myPrefixLengths[i] + myEnds[i] - myStarts[i];
+    }
+  }
+
+  /**
+   * @return the length of {@code range} covered by the intervals.
+   */
+  double getIntersectionLength(@NotNull Range range) {
+    double min = range.getMin();
+    double max = range.getMax();
+    if (max <= min) {
+      return 0;
+    }
+    int first = firstEndingAfter(min);
+    int last = firstStartingAtOrAfter(max) - 1;
+    if (first > last) {
+      return 0;
+    }
+    double length = myPrefixLengths[last + 1] - myPrefixLengths[first];
+    length -= Math.max(0, min - myStarts[first]);
+    length -= Math.max(0, myEnds[last] - max);
+    return Math.max(0, length);
+  }
+
+  /**
+   * @return whether an interval starts before the end of {@code range} and ends after its start.
+   */
+  boolean overlaps(@NotNull Range range) {
+    int first = firstEndingAfter(range.getMin());
+    return first < myStarts.length && myStarts[first] < range.getMax();
+  }
+
+  /**
+   * The intervals are sorted and don't overlap, so their ends are sorted too.
+   */
+  private int firstEndingAfter(double value) {
+    int low = 0;
+    int high = myEnds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myEnds[mid] > value) {
+        high = mid;
+      }
+      else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private int firstStartingAtOrAfter(double value) {
+    int low = 0;
+    int high = myStarts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myStarts[mid] >= value) {
+        high = mid;
+      }
+      else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  static final class Builder {
+    @NotNull private final TLongArrayList myStarts = new TLongArrayList();
+    @NotNull private final TLongArrayList myEnds = new TLongArrayList();
+    private boolean mySorted = true;
+
+    @NotNull
+    Builder add(long start, long end) {
+      if (end < start) {
+        return this;
+      }
+      if (!myStarts.isEmpty() && start < myStarts.get(myStarts.size() - 1)) {
+        mySorted = false;
+      }
+      myStarts.add(start);
+      myEnds.add(end);
+      return this;
+    }
+
+    @NotNull
+    IntervalIndex build() {
+      int size = myStarts.size();
+      long[] starts = myStarts.toNativeArray();
+      long[] ends = myEnds.toNativeArray();
+      if (!mySorted) {
+        // Intervals are usually added in order, as they come from a tree traversal, so this copy is rarely needed.
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+          order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+        long[] sortedStarts = new long[size];
+        long[] sortedEnds = new long[size];
+        for (int i = 0; i < size; i++) {
+          sortedStarts[i] = starts[order[i]];
+          sortedEnds[i] = ends[order[i]];
+        }
+        return merge(sortedStarts, sortedEnds);
+      }
+      return merge(starts, ends);
+    }
+
+    /**
+     * Merges the overlapping intervals, in place. Intervals that only touch are kept apart, so {@link IntervalIndex#overlaps(Range)} stays exact.
+     */
+    @NotNull
+    private static IntervalIndex merge(@NotNull long[] starts, @NotNull long[] ends) {
+      int size = 0;
+      for (int i = 0; i < starts.length; i++) {
+        if (size > 0 && starts[i] < ends[size - 1]) {
+          ends[size - 1] = Math.max(ends[size - 1], ends[i]);
+        }
+        else {
+          starts[size] = starts[i];
+          ends[size] = ends[i];
+          size++;
+        }
+      }
+      return new IntervalIndex(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+    }
+  }
+}
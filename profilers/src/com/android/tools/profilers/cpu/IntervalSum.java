@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Answers, in logarithmic time, the sum of the lengths of the intersections of a range with some intervals, minus the sum of the
+ * lengths of its intersections with some other intervals. The intervals can overlap, and empty ones (ending before they start) are
+ * ignored.
+ *
+ * The length of the intersection of [start, end] with [min, max] is clamp(end) - clamp(start), clamp(x) being x clamped to
+ * [min, max]. So the sum only depends on the sums of the clamped ends and the clamped starts, which are computed from the sorted
+ * points and their prefix sums.
+ */
+final class IntervalSum {
+  /**
+   * Ends of the added intervals and starts of the subtracted ones, sorted and relative to {@link #myBase}.
+   */
+  @NotNull private final SortedPoints myPositive;
+
+  /**
+   * Starts of the added intervals and ends of the subtracted ones, sorted and relative to {@link #myBase}.
+   */
+  @NotNull private final SortedPoints myNegative;
+
+  /**
+   * Points are stored relative to it, so that their prefix sums don't overflow.
+   */
+  private final long myBase;
+
+  private IntervalSum(@NotNull long[] positive, @NotNull long[] negative, long base) {
+    myPositive = new SortedPoints(positive, base);
+    myNegative = new SortedPoints(negative, base);
+    myBase = base;
+  }
+
+  double get(@NotNull Range range) {
+    double min = range.getMin() - myBase;
+    double max = range.getMax() - myBase;
+    if (max <= min) {
+      return 0;
+    }
+    return myPositive.getClampedSum(min, max) - myNegative.getClampedSum(min, max);
+  }
+
+  private static final class SortedPoints {
+    @NotNull private final long[] myPoints;
+
+    /**
+     * myPrefixSums[i] is the sum of the points [0, i).
+     */
+    @NotNull private final long[] myPrefixSums;
+
+    SortedPoints(@NotNull long[] points, long base) {
+      Arrays.sort(points);
+      myPoints = points;
+      myPrefixSums = new long[points.length + 1];
+      for (int i = 0; i < points.length; i++) {
+        points[i] -= base;
+        myPrefixSums[i + 1] = myPrefixSums[i] + points[i];
+      }
+    }
+
+    /**
+     * @return the sum of the points, each clamped to [min, max].
+     */
+    double getClampedSum(double min, double max) {
+      int belowMin = firstAtOrAbove(min);
+      int upToMax = firstAbove(max);
+      return min * belowMin + (myPrefixSums[upToMax] - myPrefixSums[belowMin]) + max * (myPoints.length - upToMax);
+    }
+
+    private int firstAtOrAbove(double value) {
+      int low = 0;
+      int high = myPoints.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myPoints[mid] >= value) {
+          high = mid;
+        }
+        else {
+          low = mid + 1;
+        }
+      }
+      return low;
+    }
+
+    private int firstAbove(double value) {
+      int low = 0;
+      int high = myPoints.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myPoints[mid] > value) {
+          high = mid;
+        }
+        else {
+          low = mid + 1;
+        }
+      }
+      return low;
+    }
+  }
+
+  static final class Builder {
+    @NotNull private final TLongArrayList myPositive = new TLongArrayList();
+    @NotNull private final TLongArrayList myNegative = new TLongArrayList();
+    private long myBase = Long.MAX_VALUE;
+
+    @NotNull
+    Builder add(long start, long end) {
+      if (end < start) {
+        return this;
+      }
+      myPositive.add(end);
+      myNegative.add(start);
+      myBase = Math.min(myBase, start);
+      return this;
+    }
+
+    @NotNull
+    Builder subtract(long start, long end) {
+      if (end < start) {
+        return this;
+      }
+      myPositive.add(start);
+      myNegative.add(end);
+      myBase = Math.min(myBase, start);
+      return this;
+    }
+
+    @NotNull
+    IntervalSum build() {
+      return new IntervalSum(myPositive.toNativeArray(), myNegative.toNativeArray(), myBase == Long.MAX_VALUE ? 0 : myBase);
+    }
+  }
+}
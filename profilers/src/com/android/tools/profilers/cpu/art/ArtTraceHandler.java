@@ -17,16 +17,41 @@ package com.android.tools.profilers.cpu.art;
 
 import com.android.tools.perflib.vmtrace.*;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CaptureTree;
+import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.MethodModel;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Collects the events of an ART trace, as reported by {@link VmTraceParser}, and turns them into a {@link CaptureNode} tree per thread.
+ *
+ * {@link VmTraceParser} reads the trace sequentially, so the events are only recorded per thread while it runs, in the compact buffers
+ * of {@link ThreadTraceActions}. The trees are built afterwards, one task per thread, on a dedicated executor. The buffer of a thread is
+ * released as soon as its tree is built.
+ */
 public class ArtTraceHandler implements VmTraceHandler {
   private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+
+  /**
+   * Executor the trees are built on by default. Its threads are only kept while traces are being parsed.
+   */
+  private static final ExecutorService TREE_BUILDER_EXECUTOR;
+
+  static {
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+      new ThreadPoolExecutor(threadCount, threadCount, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                             new ThreadFactoryBuilder().setNameFormat("profiler-art-trace-builder-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    TREE_BUILDER_EXECUTOR = executor;
+  }
+
   private long myStartTimeUs;
   private long myElapsedTimeUs;
 
@@ -41,13 +66,27 @@ public class ArtTraceHandler implements VmTraceHandler {
   private final Map<Long, MethodModel> myMethods = new HashMap<>();
 
   /**
-   * Map from thread id to per thread stack call constructor.
+   * Map from thread id to the trace actions of the thread. An entry is removed once the tree of the thread is built.
    */
-  private final Map<Integer, CaptureNodeConstructor> myNodeConstructors = new HashMap<>();
+  private final Map<Integer, ThreadTraceActions> myThreadActions = new ConcurrentHashMap<>();
+
+  @NotNull
+  private final Executor myExecutor;
 
   @Nullable
   private Map<CpuThreadInfo, CaptureNode> myThreadsGraph;
 
+  public ArtTraceHandler() {
+    this(TREE_BUILDER_EXECUTOR);
+  }
+
+  /**
+   * @param executor executor used to build the trees of the threads in parallel.
+   */
+  public ArtTraceHandler(@NotNull Executor executor) {
+    myExecutor = executor;
+  }
+
   @Override
   public void addThread(int id, String name) {
     myThreads.put(id, name);
@@ -71,13 +110,13 @@ public class ArtTraceHandler implements VmTraceHandler {
       myMethods.put(methodId, new MethodModel("unknown", "unknown", "unknown"));
     }
 
-    CaptureNodeConstructor constructor = myNodeConstructors.get(threadId);
-    if (constructor == null) {
+    ThreadTraceActions actions = myThreadActions.get(threadId);
+    if (actions == null) {
       MethodModel topLevelModel = createUniqueMethodForThread(threadId);
-      constructor = new CaptureNodeConstructor(topLevelModel);
-      myNodeConstructors.put(threadId, constructor);
+      actions = new ThreadTraceActions(topLevelModel);
+      myThreadActions.put(threadId, actions);
     }
-    constructor.addTraceAction(myMethods.get(methodId), methodAction, threadTime, globalTime);
+    actions.add(myMethods.get(methodId), methodAction, threadTime, globalTime);
   }
 
   private MethodModel createUniqueMethodForThread(int threadId) {
@@ -98,27 +137,39 @@ public class ArtTraceHandler implements VmTraceHandler {
 
   @NotNull
   private Map<CpuThreadInfo, CaptureNode> createThreadsGraph() {
-    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(myThreads.size());
-
+    List<CpuThreadInfo> threads = new ArrayList<>(myThreadActions.size());
     for (Map.Entry<Integer, String> entry : myThreads.entrySet()) {
-      final int id = entry.getKey();
-      final String name = entry.getValue();
-
-      CaptureNodeConstructor constructor = myNodeConstructors.get(id);
-      if (constructor == null) {
-        continue;
+      if (myThreadActions.containsKey(entry.getKey())) {
+        threads.add(new CpuThreadInfo(entry.getKey(), entry.getValue()));
       }
-
-      CaptureNode topLevelCall = constructor.getTopLevel();
-      assert topLevelCall != null;
-      CpuThreadInfo info = new CpuThreadInfo(id, name);
-
-      long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
-      adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart, 0);
-
-      threadsGraph.put(info, topLevelCall);
+    }
+    // The main thread is the one selected when the capture is shown, so it's scheduled first. The other threads are scheduled from the
+    // largest to the smallest, so a large thread doesn't end up running alone at the end.
+    threads.sort(Comparator.comparing((CpuThreadInfo info) -> !CpuCapture.MAIN_THREAD_NAME.equals(info.getName()))
+                   .thenComparingInt(info -> -myThreadActions.get(info.getId()).size()));
+
+    List<CompletableFuture<CaptureNode>> tasks = new ArrayList<>(threads.size());
+    for (CpuThreadInfo info : threads) {
+      tasks.add(CompletableFuture.supplyAsync(() -> {
+        // The actions of the thread are not needed once its tree is built, so release them right away.
+        ThreadTraceActions actions = myThreadActions.remove(info.getId());
+        CaptureNode topLevelCall = actions.buildTree();
+        long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
+        adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart, 0);
+        return CaptureTree.compact(topLevelCall);
+      }, myExecutor));
     }
 
+    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(threads.size());
+    for (int i = 0; i < threads.size(); i++) {
+      try {
+        threadsGraph.put(threads.get(i), tasks.get(i).join());
+      }
+      catch (CompletionException e) {
+        // Report the failure as if the tree was built on this thread.
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+      }
+    }
     return threadsGraph;
   }
 
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import com.android.tools.perflib.vmtrace.TraceAction;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.MethodModel;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Trace actions (method entry/exit events) of a single thread, in the order they were traced.
+ *
+ * The actions are recorded while the trace file is read, which has to be done sequentially, and are only turned into a
+ * {@link CaptureNode} tree by {@link #buildTree()}. That way the trees of different threads can be built in parallel.
+ */
+class ThreadTraceActions {
+  /**
+   * Method model corresponding to the top level node under which all calls are nested.
+   */
+  @NotNull private final MethodModel myTopLevelMethodModel;
+
+  @NotNull private final List<MethodModel> myMethods = new ArrayList<>();
+  @NotNull private final BitSet myEnters = new BitSet();
+  @NotNull private final TIntArrayList myThreadTimes = new TIntArrayList();
+  @NotNull private final TIntArrayList myGlobalTimes = new TIntArrayList();
+
+  ThreadTraceActions(@NotNull MethodModel topLevelMethodModel) {
+    myTopLevelMethodModel = topLevelMethodModel;
+  }
+
+  void add(@NotNull MethodModel methodModel, @NotNull TraceAction action, int threadTime, int globalTime) {
+    if (action == TraceAction.METHOD_ENTER) {
+      myEnters.set(myMethods.size());
+    }
+    myMethods.add(methodModel);
+    myThreadTimes.add(threadTime);
+    myGlobalTimes.add(globalTime);
+  }
+
+  int size() {
+    return myMethods.size();
+  }
+
+  /**
+   * @return the top level node of the thread, with times relative to the start of the trace.
+   */
+  @NotNull
+  CaptureNode buildTree() {
+    CaptureNodeConstructor constructor = new CaptureNodeConstructor(myTopLevelMethodModel);
+    for (int i = 0; i < myMethods.size(); i++) {
+      TraceAction action = myEnters.get(i) ? TraceAction.METHOD_ENTER : TraceAction.METHOD_EXIT;
+      constructor.addTraceAction(myMethods.get(i), action, myThreadTimes.get(i), myGlobalTimes.get(i));
+    }
+    return constructor.getTopLevel();
+  }
+}
@@ -22,12 +22,15 @@ import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.MethodModel;
 import com.android.tools.profilers.cpu.TraceParser;
+import com.google.protobuf3jarjar.CodedInputStream;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
@@ -37,6 +40,11 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Parses a trace file obtained using simpleperf to a map threadId -> {@link CaptureNode}.
+ *
+ * The records are parsed one at a time, straight from the mapped trace file, and each sample is merged into the call tree of its
+ * thread as soon as it's read, so the memory used is proportional to the size of the trees rather than to the number of samples.
+ * Files and threads can be recorded after the samples, so the names of the methods and threads are only resolved once the whole
+ * file is read.
  */
 public class SimplePerfTraceParser implements TraceParser {
 
@@ -56,27 +64,30 @@ public class SimplePerfTraceParser implements TraceParser {
   private final Map<Integer, String> myThreads;
 
   /**
-   * List of samples containing method trace data.
+   * Call chain entries of the samples, interned by (file id, symbol id, address).
    */
-  @VisibleForTesting
-  final List<SimpleperfReport.Sample> mySamples;
+  private final Map<CallSite, CallSite> myCallSites;
 
   /**
-   * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
+   * Reset to each call chain entry that is looked up in {@link #myCallSites}, so the lookups don't allocate a key per entry.
    */
-  private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees;
+  private final CallSite myCallSiteProbe = new CallSite(0, 0, 0);
 
   /**
-   * Maps a thread id to its last callchain collected in samples.
+   * Maps the placeholder {@link MethodModel} of the nodes, used until the trace file is entirely read, to their {@link CallSite}.
    */
-  private final Map<Integer, List<SimpleperfReport.Sample.CallChainEntry>> myLastCallChain;
+  private final Map<MethodModel, CallSite> myPlaceholders;
 
   /**
-   * Stores the {@link CaptureNode} on the top of the last call stack corresponding to a thread.
-   * Storing a {@link CaptureNode} for each thread is important, for instance,
-   * to avoid parsing the same call chain multiple times.
+   * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
    */
-  private final Map<Integer, CaptureNode> myLastCallStackTopNode;
+  private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees;
+
+  /**
+   * Maps a thread id to the call stack of its last sample: the node representing the thread itself, followed by the nodes of the
+   * call chain, from the outermost call to the innermost one. The nodes of the stack are the ones still being called.
+   */
+  private final Map<Integer, List<CaptureNode>> myCallStacks;
 
   /**
    * Number of samples read from trace file.
@@ -88,6 +99,17 @@ public class SimplePerfTraceParser implements TraceParser {
    */
   private long myLostSampleCount;
 
+  /**
+   * Number of samples actually found in the trace file.
+   */
+  private long myParsedSampleCount;
+
+  /**
+   * Timestamps of the first and last samples, in nanoseconds.
+   */
+  private long myFirstTimestamp;
+  private long myLastTimestamp;
+
   /**
    * Capture range in absolute time, measured in microseconds.
    */
@@ -95,10 +117,10 @@ public class SimplePerfTraceParser implements TraceParser {
 
   public SimplePerfTraceParser() {
     myFiles = new HashMap<>();
-    mySamples = new ArrayList<>();
+    myCallSites = new HashMap<>();
+    myPlaceholders = new IdentityHashMap<>();
     myCaptureTrees = new HashMap<>();
-    myLastCallChain = new HashMap<>();
-    myLastCallStackTopNode = new HashMap<>();
+    myCallStacks = new HashMap<>();
     myThreads = new HashMap<>();
   }
 
@@ -110,10 +132,6 @@ public class SimplePerfTraceParser implements TraceParser {
     return splitPath[splitPath.length - 1];
   }
 
-  private static boolean equals(SimpleperfReport.Sample.CallChainEntry c1, SimpleperfReport.Sample.CallChainEntry c2) {
-    return c1.getVaddrInFile() == c2.getVaddrInFile() && c1.getFileId() == c2.getFileId() && c1.getSymbolId() == c2.getSymbolId();
-  }
-
   private static Logger getLog() {
     return Logger.getInstance(SimplePerfTraceParser.class);
   }
@@ -129,7 +147,7 @@ public class SimplePerfTraceParser implements TraceParser {
   @Override
   public void parse(File trace) throws IOException {
     parseTraceFile(trace);
-    parseSampleData();
+    buildCaptureTrees();
   }
 
   @Override
@@ -151,9 +169,9 @@ public class SimplePerfTraceParser implements TraceParser {
   }
 
   @NotNull
-  private static CaptureNode createCaptureNode(String name, long timestamp) {
+  private static CaptureNode createCaptureNode(@NotNull MethodModel method, long timestamp) {
     CaptureNode node = new CaptureNode();
-    node.setMethodModel(new MethodModel(name));
+    node.setMethodModel(method);
     setNodeStartTime(node, timestamp);
     node.setDepth(0);
     return node;
@@ -170,20 +188,23 @@ public class SimplePerfTraceParser implements TraceParser {
    * message Record(record_N) (having record_size_N bytes)
    * LittleEndian32(0)
    *
-   * Parsed data is stored in {@link #myFiles} and {@link #mySamples}.
+   * Files and threads are stored in {@link #myFiles} and {@link #myThreads}, and samples are merged into {@link #myCallStacks}.
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
-    ByteBuffer buffer = byteBufferFromFile(trace, ByteOrder.LITTLE_ENDIAN);
+    // Records are parsed from the mapped file through the stream buffer, instead of being copied to an array each.
+    CodedInputStream input = CodedInputStream.newInstance(new ByteBufferInputStream(byteBufferFromFile(trace, ByteOrder.LITTLE_ENDIAN)));
     // Read the first record size
-    int recordSize = buffer.getInt();
+    int recordSize = input.readRawLittleEndian32();
 
     // 0 is used to indicate the end of the trace
     while (recordSize != 0) {
       // The next recordSize bytes should represent the record
-      byte[] recordBytes = new byte[recordSize];
-      buffer.get(recordBytes);
-      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      int oldLimit = input.pushLimit(recordSize);
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(input);
+      input.popLimit(oldLimit);
+      // The size limit of the stream applies to each record, not to the whole file
+      input.resetSizeCounter();
 
       switch (record.getRecordDataCase()) {
         case FILE:
@@ -198,7 +219,12 @@ public class SimplePerfTraceParser implements TraceParser {
           break;
         case SAMPLE:
           SimpleperfReport.Sample sample = record.getSample();
-          mySamples.add(sample);
+          if (myParsedSampleCount == 0) {
+            myFirstTimestamp = sample.getTime();
+          }
+          myLastTimestamp = sample.getTime();
+          myParsedSampleCount++;
+          parseCallChain(sample.getCallchainList(), sample.getThreadId(), sample.getTime());
           break;
         case THREAD:
           SimpleperfReport.Thread thread = record.getThread();
@@ -209,39 +235,51 @@ public class SimplePerfTraceParser implements TraceParser {
       }
 
       // read the next record size
-      recordSize = buffer.getInt();
+      recordSize = input.readRawLittleEndian32();
     }
 
-    if (mySamples.size() != mySampleCount) {
+    if (myParsedSampleCount != mySampleCount) {
       // TODO: create a trace file to test this exception is thrown when it should.
       throw new IllegalStateException("Samples count doesn't match the number of samples read.");
     }
   }
 
   /**
-   * Parses the data from {@link #mySamples} into a map of tid -> {@link CaptureNode}.
+   * Names the threads and methods of the call trees merged from the samples, and puts the trees in {@link #myCaptureTrees}.
    */
-  private void parseSampleData() {
-    if (mySamples.isEmpty()) {
+  private void buildCaptureTrees() {
+    if (myParsedSampleCount == 0) {
       return;
     }
-    long startTimestamp = mySamples.get(0).getTime();
+    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(myFirstTimestamp), TimeUnit.NANOSECONDS.toMicros(myLastTimestamp));
 
-    // Process each sample
-    for (SimpleperfReport.Sample sample : mySamples) {
-      parseCallChain(sample.getCallchainList(), sample.getThreadId(), sample.getTime());
+    for (int threadId : myCallStacks.keySet()) {
+      if (!myThreads.containsKey(threadId)) {
+        throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
+      }
     }
 
-    // Update the end timestamp of the last active call chain of each thread
-    long endTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    myRange = new Range(TimeUnit.NANOSECONDS.toMicros(startTimestamp), TimeUnit.NANOSECONDS.toMicros(endTimestamp));
-    for (CaptureNode lastNode : myLastCallStackTopNode.values()) {
-      CaptureNode node = lastNode;
-      while (node != null && node.getEnd() == 0) {
-        setNodeEndTime(node, endTimestamp);
-        node = node.getParent();
+    for (Map.Entry<Integer, List<CaptureNode>> entry : myCallStacks.entrySet()) {
+      List<CaptureNode> callStack = entry.getValue();
+      // The calls of the last sample of each thread last until the end of the capture
+      for (CaptureNode node : callStack) {
+        setNodeEndTime(node, myLastTimestamp);
+      }
+
+      String threadName = myThreads.get(entry.getKey());
+      CaptureNode threadNode = callStack.get(0);
+      threadNode.setMethodModel(new MethodModel(threadName));
+      Deque<CaptureNode> nodes = new ArrayDeque<>(threadNode.getChildren());
+      while (!nodes.isEmpty()) {
+        CaptureNode node = nodes.pop();
+        node.setMethodModel(myPlaceholders.get(node.getMethodModel()).getMethodModel());
+        nodes.addAll(node.getChildren());
       }
+      myCaptureTrees.put(new CpuThreadInfo(entry.getKey(), threadName), threadNode);
     }
+    myCallStacks.clear();
+    myPlaceholders.clear();
+    myCallSites.clear();
   }
 
   // TODO: support thread time
@@ -257,101 +295,156 @@ public class SimplePerfTraceParser implements TraceParser {
   }
 
   /**
-   * Given a {@link SimpleperfReport.Sample.CallChainEntry}, a thread id and a sample timestamp, update the {@link CaptureNode}
-   * corresponding to that thread with the information obtained from the call chain.
+   * Given a call chain (innermost call first), a thread id and a sample timestamp, update the call tree corresponding to that
+   * thread: the calls of the previous sample that are not in the call chain anymore end, and the new calls start.
    */
   private void parseCallChain(List<SimpleperfReport.Sample.CallChainEntry> callChain, int threadId, long timestamp) {
-    if (!myLastCallStackTopNode.containsKey(threadId)) {
-      // if there is no entry for threadId in the map, create one to represent the thread itself.
-      CaptureNode main = createCaptureNode(myThreads.getOrDefault(threadId, "main"), timestamp);
-      main.setDepth(0);
-      if (!myThreads.containsKey(threadId)) {
-        throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
-      }
-      myCaptureTrees.put(new CpuThreadInfo(threadId, myThreads.get(threadId)), main);
-      myLastCallStackTopNode.put(threadId, main);
-      // Initiate the previous call chain as an empty list
-      myLastCallChain.put(threadId, new LinkedList<>());
+    List<CaptureNode> callStack = myCallStacks.get(threadId);
+    if (callStack == null) {
+      // if there is no call stack for threadId, create one with a node to represent the thread itself. It's named once the trace
+      // file is entirely read.
+      callStack = new ArrayList<>();
+      callStack.add(createCaptureNode(new MethodModel(""), timestamp));
+      myCallStacks.put(threadId, callStack);
     }
 
-    List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = myLastCallChain.get(threadId);
-    // First, identify where the call chains diverge, so we update the endTime of the nodes that are not in the call chain anymore.
-    // If the last call chain is empty, there is no divergent index and no end values need to be updated.
-    // TODO: We probably can just reverse the callchain in the beginning of the method with no performance impact.
-    // Revisit that later to check that and make the change to simplify the code. Make sure to benchmark to verify the efficiency.
-    int previousCallChainIndex = previousCallChain.size() - 1;
-    int newCallChainIndex = callChain.size() - 1;
-    CaptureNode divergentNodeParent = null;
-    if (!previousCallChain.isEmpty()) {
-      while (previousCallChainIndex >= 0 && newCallChainIndex >= 0 &&
-             equals(previousCallChain.get(previousCallChainIndex), callChain.get(newCallChainIndex))) {
-        previousCallChainIndex--;
-        newCallChainIndex--;
-      }
-      divergentNodeParent = findDivergenceAndUpdateEndTime(previousCallChainIndex, threadId, timestamp);
+    // First, find how many outermost calls the call chain has in common with the previous one.
+    int common = 0;
+    while (common < callChain.size() && common + 1 < callStack.size() &&
+           callStack.get(common + 1).getMethodModel() == getCallSite(callChain.get(callChain.size() - 1 - common)).getPlaceholder()) {
+      common++;
     }
 
-    // Now, add the nodes of the new call chain to the tree
-    if (newCallChainIndex >= 0) {
-      divergentNodeParent = divergentNodeParent == null ? myLastCallStackTopNode.get(threadId) : divergentNodeParent;
-      addNewNodes(callChain, divergentNodeParent, newCallChainIndex, timestamp, threadId);
+    // Then, end the calls that are not in the call chain anymore
+    for (int i = callStack.size() - 1; i > common; i--) {
+      setNodeEndTime(callStack.remove(i), timestamp);
     }
 
-    // Finally, update previous call chain and previous last node
-    myLastCallChain.put(threadId, callChain);
+    // Finally, add the new calls to the tree
+    for (int i = callChain.size() - 1 - common; i >= 0; i--) {
+      CaptureNode parent = callStack.get(callStack.size() - 1);
+      CaptureNode child = createCaptureNode(getCallSite(callChain.get(i)).getPlaceholder(), timestamp);
+      parent.addChild(child);
+      child.setDepth(parent.getDepth() + 1);
+      callStack.add(child);
+    }
+  }
+
+  @NotNull
+  private CallSite getCallSite(@NotNull SimpleperfReport.Sample.CallChainEntry entry) {
+    myCallSiteProbe.reset(entry.getFileId(), entry.getSymbolId(), entry.getVaddrInFile());
+    CallSite callSite = myCallSites.get(myCallSiteProbe);
+    if (callSite == null) {
+      callSite = new CallSite(entry.getFileId(), entry.getSymbolId(), entry.getVaddrInFile());
+      myCallSites.put(callSite, callSite);
+      myPlaceholders.put(callSite.getPlaceholder(), callSite);
+    }
+    return callSite;
   }
 
   /**
-   * Update the end timestamp of the last call chain node corresponding to a thread.
-   * Then, go backwards and do the same to the ancestors of the node until the newly read call chain
-   * matches with the previous one. When a divergence is found, return the parent of the divergent node.
+   * A distinct entry of the call chains, which is a method for the call trees.
    */
-  private CaptureNode findDivergenceAndUpdateEndTime(int divergenceCount, int tid, long endTimestamp) {
-    CaptureNode node = myLastCallStackTopNode.get(tid);
-    for (int i = 0; i < divergenceCount; i++) {
-      assert node != null;
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
+  private final class CallSite {
+    // Only reset on myCallSiteProbe, the call sites in myCallSites never change.
+    private int myFileId;
+    private int mySymbolId;
+    private long myVaddrInFile;
+
+    /**
+     * Unique to the call site, it identifies the call site in the call trees until the trace file is entirely read.
+     */
+    @Nullable private MethodModel myPlaceholder;
+
+    @Nullable private MethodModel myMethodModel;
+
+    CallSite(int fileId, int symbolId, long vaddrInFile) {
+      reset(fileId, symbolId, vaddrInFile);
     }
 
-    // Node should be the parent of the first divergent node
-    return node;
+    void reset(int fileId, int symbolId, long vaddrInFile) {
+      myFileId = fileId;
+      mySymbolId = symbolId;
+      myVaddrInFile = vaddrInFile;
+    }
+
+    @NotNull
+    MethodModel getPlaceholder() {
+      if (myPlaceholder == null) {
+        myPlaceholder = new MethodModel("");
+      }
+      return myPlaceholder;
+    }
+
+    @NotNull
+    MethodModel getMethodModel() {
+      if (myMethodModel == null) {
+        myMethodModel = new MethodModel(parseMethodName());
+      }
+      return myMethodModel;
+    }
+
+    private String parseMethodName() {
+      SimpleperfReport.File symbolFile = myFiles.get(myFileId);
+      if (symbolFile == null) {
+        throw new IllegalStateException("Symbol file with id \"" + myFileId + "\" not found.");
+      }
+      String methodName;
+      if (mySymbolId == INVALID_SYMBOL_ID) {
+        // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
+        String hexAddress = "0x" + Long.toHexString(myVaddrInFile);
+        methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
+      }
+      else {
+        // otherwise, read the method name from the symbol table
+        methodName = symbolFile.getSymbol(mySymbolId);
+      }
+      return methodName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CallSite)) {
+        return false;
+      }
+      CallSite other = (CallSite)obj;
+      return myFileId == other.myFileId && mySymbolId == other.mySymbolId && myVaddrInFile == other.myVaddrInFile;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * myFileId + mySymbolId) + Long.hashCode(myVaddrInFile);
+    }
   }
 
   /**
-   * Given a list of call chain entries and a start index, convert them to {@link CaptureNode}
-   * and add them to the call tree corresponding to the thread id passed as argument, as descendants
-   * of a given node.
+   * Reads a {@link ByteBuffer}, so a {@link CodedInputStream} can read a mapped file without copying it to the heap first.
    */
-  private void addNewNodes(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                           CaptureNode node, int startIndex, long startTimestamp, int tid) {
-    assert node != null;
-    for (int i = startIndex; i >= 0; i--) {
-      CaptureNode child = createCaptureNode(parseMethodName(callChain.get(i)), startTimestamp);
-      node.addChild(child);
-      child.setDepth(node.getDepth() + 1);
-      node = child;
+  private static final class ByteBufferInputStream extends InputStream {
+    @NotNull private final ByteBuffer myBuffer;
+
+    ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      myBuffer = buffer;
     }
-    // Update the pointer to the last call chain node
-    myLastCallStackTopNode.put(tid, node);
-  }
 
-  private String parseMethodName(SimpleperfReport.Sample.CallChainEntry callChainEntry) {
-    int symbolId = callChainEntry.getSymbolId();
-    SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
-    if (symbolFile == null) {
-      throw new IllegalStateException("Symbol file with id \"" + callChainEntry.getFileId() + "\" not found.");
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
     }
-    String methodName;
-    if (symbolId == INVALID_SYMBOL_ID) {
-      // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
-      String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
-      methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) {
+      if (!myBuffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, myBuffer.remaining());
+      myBuffer.get(bytes, offset, count);
+      return count;
     }
-    else {
-      // otherwise, read the method name from the symbol table
-      methodName = symbolFile.getSymbol(symbolId);
+
+    @Override
+    public int available() {
+      return myBuffer.remaining();
     }
-    return methodName;
   }
 }
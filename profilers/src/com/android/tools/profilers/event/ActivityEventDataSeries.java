@@ -25,11 +25,15 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.EventProfiler;
 import com.android.tools.profiler.proto.EventServiceGrpc;
 import com.android.tools.profilers.ProfilerClient;
+import com.android.tools.profilers.SubscribedEventDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class ActivityEventDataSeries implements DataSeries<EventAction<StackedEventType>> {
 
@@ -64,83 +68,131 @@ public class ActivityEventDataSeries implements DataSeries<EventAction<StackedEv
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()));
     EventProfiler.ActivityDataResponse response = eventService.getActivityData(dataRequestBuilder.build());
     for (EventProfiler.ActivityData data : response.getDataList()) {
-      long actionStart = 0;
-      long actionEnd = 0;
-      // If we are listening to only fragments filter non-fragment types.
-      // If we only want non-fragment types then filter fragments.
-      boolean isFragment = !data.getFragmentData().equals(EventProfiler.FragmentData.getDefaultInstance());
-      if (myFragmentsOnly != isFragment) {
-        continue;
-      }
+      addEvents(data, seriesData);
+    }
 
-      boolean haveEvent = false;
-      for (int i = 0; i < data.getStateChangesCount(); i++) {
-        EventProfiler.ActivityStateData state = data.getStateChanges(i);
-        StackedEventType action = StackedEventType.NONE;
-        String displayString = data.getName();
-        // Match start states with end states.
-        switch (state.getState()) {
-          case ADDED:
-          case RESUMED:
-            action = StackedEventType.ACTIVITY_STARTED;
-            actionStart = TimeUnit.NANOSECONDS.toMicros(state.getTimestamp());
-            break;
-          case DESTROYED:
-            // This case is a fallthrough to set the action, and end time used in creating the proper UI event.
+    return seriesData;
+  }
 
-            // In the UI we track the end of an activity when the activity gets paused.
-            // We also listen to the destroyed event here in case the app stops and we force a destroyed event.
-            // If we only listen for a destroyed event, the timeline may jump, or never get called depending on
-            // how the application is handling references.
-            // If we get a destroyed event out of order, and it is the last event we encounter then we know
-            // the activity was unexpectedly terminated.
-            if (i != data.getStateChangesCount() - 1) {
-              break;
-            }
-            displayString = String.format("%s - %s", displayString, state.getState().toString().toLowerCase());
-          case REMOVED:
-            // Remove is also a fallthrough as this is the event that gets set when we terminate a fragment.
-          case PAUSED:
-            action = StackedEventType.ACTIVITY_COMPLETED;
-            actionEnd = TimeUnit.NANOSECONDS.toMicros(state.getTimestamp());
-            haveEvent = true;
-            break;
-          default:
-            break;
+  /**
+   * @return a series getting the activities pushed by the datastore as they are polled, which falls back to this series while it can't.
+   */
+  @NotNull
+  public SubscribedEventDataSeries<StackedEventType> subscribe() {
+    EventProfiler.EventDataRequest request = EventProfiler.EventDataRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setStartTimestamp(Long.MIN_VALUE)
+      .setEndTimestamp(Long.MAX_VALUE)
+      .build();
+    // Each push has the state changes after the ones of the previous push, plus the last state change before them.
+    Map<Long, EventProfiler.ActivityData> activities = new LinkedHashMap<>();
+    Function<EventProfiler.ActivityDataResponse, List<SeriesData<EventAction<StackedEventType>>>> merger = response -> {
+      for (EventProfiler.ActivityData data : response.getDataList()) {
+        EventProfiler.ActivityData known = activities.get(data.getHash());
+        if (known == null) {
+          activities.put(data.getHash(), data);
+          continue;
         }
-        //Peek at the upcoming stages. If it is resume, started, or create we need to add the current
-        //activity range to the results to be displayed in the UI. If it is not one of those, then
-        //we want to get the state the activity is currently in to set the name properly.
-        while (haveEvent && ++i < data.getStateChangesCount()) {
-          state = data.getStateChanges(i);
-          EventProfiler.ActivityStateData.ActivityState activityState = state.getState();
-          if (getComponentInStartingOrRunningState(activityState)) {
-            i--;
-            break;
-          }
-          else {
-            displayString = String.format("%s - %s", displayString, state.getState().toString().toLowerCase());
+        long lastTimestamp = known.getStateChangesCount() == 0
+                             ? Long.MIN_VALUE
+                             : known.getStateChanges(known.getStateChangesCount() - 1).getTimestamp();
+        EventProfiler.ActivityData.Builder builder = known.toBuilder();
+        for (EventProfiler.ActivityStateData state : data.getStateChangesList()) {
+          if (state.getTimestamp() > lastTimestamp) {
+            builder.addStateChanges(state);
           }
         }
+        activities.put(data.getHash(), builder.build());
+      }
+      List<SeriesData<EventAction<StackedEventType>>> seriesData = new ArrayList<>();
+      for (EventProfiler.ActivityData data : activities.values()) {
+        addEvents(data, seriesData);
+      }
+      return seriesData;
+    };
+    return new SubscribedEventDataSeries<>(myClient.getEventClient().getChannel(), EventServiceGrpc.METHOD_GET_ACTIVITY_DATA, request,
+                                           merger, this);
+  }
+
+  /**
+   * Adds the UI events of {@code data}, if it is of the type of component this series is listening to.
+   */
+  private void addEvents(@NotNull EventProfiler.ActivityData data, @NotNull List<SeriesData<EventAction<StackedEventType>>> seriesData) {
+    long actionStart = 0;
+    long actionEnd = 0;
+    // If we are listening to only fragments filter non-fragment types.
+    // If we only want non-fragment types then filter fragments.
+    boolean isFragment = !data.getFragmentData().equals(EventProfiler.FragmentData.getDefaultInstance());
+    if (myFragmentsOnly != isFragment) {
+      return;
+    }
 
-        // We create a UI event each time we match a start and end event, or if we are at the end of our events, and we
-        // have a start, or end event. We can have a start event if we scrubbed and the end event is out of range.
-        // We can have an end only event if we scrubbed and the start event is out of range.
-        if (haveEvent || (i == data.getStateChangesCount() - 1 && action != StackedEventType.NONE)) {
-          seriesData.add(new SeriesData<>(actionStart, new ActivityAction(actionStart, actionEnd, action, displayString, data.getHash(),
-                                                                          data.getFragmentData().getActivityContextHash())));
-          actionEnd = 0;
-          actionStart = 0;
-          // This is needed as we may have the following scenario,
-          // [STARTED, RESUMED, PAUSED, SAVED, STARTED, RESUMED, PAUSED, SAVED].
-          // In this state we have 2 UI events for one ActivityData, as such we need to reset our internal state
-          // to capture the second event.
-          haveEvent = false;
+    boolean haveEvent = false;
+    for (int i = 0; i < data.getStateChangesCount(); i++) {
+      EventProfiler.ActivityStateData state = data.getStateChanges(i);
+      StackedEventType action = StackedEventType.NONE;
+      String displayString = data.getName();
+      // Match start states with end states.
+      switch (state.getState()) {
+        case ADDED:
+        case RESUMED:
+          action = StackedEventType.ACTIVITY_STARTED;
+          actionStart = TimeUnit.NANOSECONDS.toMicros(state.getTimestamp());
+          break;
+        case DESTROYED:
+          // This case is a fallthrough to set the action, and end time used in creating the proper UI event.
+
+          // In the UI we track the end of an activity when the activity gets paused.
+          // We also listen to the destroyed event here in case the app stops and we force a destroyed event.
+          // If we only listen for a destroyed event, the timeline may jump, or never get called depending on
+          // how the application is handling references.
+          // If we get a destroyed event out of order, and it is the last event we encounter then we know
+          // the activity was unexpectedly terminated.
+          if (i != data.getStateChangesCount() - 1) {
+            break;
+          }
+          displayString = String.format("%s - %s", displayString, state.getState().toString().toLowerCase());
+        case REMOVED:
+          // Remove is also a fallthrough as this is the event that gets set when we terminate a fragment.
+        case PAUSED:
+          action = StackedEventType.ACTIVITY_COMPLETED;
+          actionEnd = TimeUnit.NANOSECONDS.toMicros(state.getTimestamp());
+          haveEvent = true;
+          break;
+        default:
+          break;
+      }
+      //Peek at the upcoming stages. If it is resume, started, or create we need to add the current
+      //activity range to the results to be displayed in the UI. If it is not one of those, then
+      //we want to get the state the activity is currently in to set the name properly.
+      while (haveEvent && ++i < data.getStateChangesCount()) {
+        state = data.getStateChanges(i);
+        EventProfiler.ActivityStateData.ActivityState activityState = state.getState();
+        if (getComponentInStartingOrRunningState(activityState)) {
+          i--;
+          break;
+        }
+        else {
+          displayString = String.format("%s - %s", displayString, state.getState().toString().toLowerCase());
         }
       }
-    }
 
-    return seriesData;
+      // We create a UI event each time we match a start and end event, or if we are at the end of our events, and we
+      // have a start, or end event. We can have a start event if we scrubbed and the end event is out of range.
+      // We can have an end only event if we scrubbed and the start event is out of range.
+      if (haveEvent || (i == data.getStateChangesCount() - 1 && action != StackedEventType.NONE)) {
+        seriesData.add(new SeriesData<>(actionStart, new ActivityAction(actionStart, actionEnd, action, displayString, data.getHash(),
+                                                                        data.getFragmentData().getActivityContextHash())));
+        actionEnd = 0;
+        actionStart = 0;
+        // This is needed as we may have the following scenario,
+        // [STARTED, RESUMED, PAUSED, SAVED, STARTED, RESUMED, PAUSED, SAVED].
+        // In this state we have 2 UI events for one ActivityData, as such we need to reset our internal state
+        // to capture the second event.
+        haveEvent = false;
+      }
+    }
   }
 
   /**
@@ -42,19 +42,19 @@ public class EventMonitor extends ProfilerMonitor {
     SimpleEventDataSeries events = new SimpleEventDataSeries(myProfilers.getClient(),
                                                              myProfilers.getProcessId(),
                                                              myProfilers.getSession());
-    mySimpleEvents = new EventModel<>(new RangedSeries<>(getTimeline().getViewRange(), events));
+    mySimpleEvents = new EventModel<>(new RangedSeries<>(getTimeline().getViewRange(), events.subscribe()));
 
     ActivityEventDataSeries activities = new ActivityEventDataSeries(myProfilers.getClient(),
                                                                      myProfilers.getProcessId(),
                                                                      myProfilers.getSession(),
                                                                      false);
-    myActivityEvents = new EventModel<>(new RangedSeries<>(getTimeline().getViewRange(), activities));
+    myActivityEvents = new EventModel<>(new RangedSeries<>(getTimeline().getViewRange(), activities.subscribe()));
 
     ActivityEventDataSeries fragments = new ActivityEventDataSeries(myProfilers.getClient(),
                                                                      myProfilers.getProcessId(),
                                                                      myProfilers.getSession(),
                                                                     true);
-    myFragmentEvents = new EventModel<>(new RangedSeries<>(getTimeline().getViewRange(), fragments));
+    myFragmentEvents = new EventModel<>(new RangedSeries<>(getTimeline().getViewRange(), fragments.subscribe()));
 
     myProfilers.addDependency(this).onChange(ProfilerAspect.AGENT, this::onAgentStatusChanged);
     onAgentStatusChanged();
@@ -26,11 +26,16 @@ import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.EventProfiler;
 import com.android.tools.profiler.proto.EventServiceGrpc;
 import com.android.tools.profilers.ProfilerClient;
+import com.android.tools.profilers.SubscribedEventDataSeries;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * This class is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
@@ -59,25 +64,53 @@ public class SimpleEventDataSeries implements DataSeries<EventAction<SimpleEvent
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()));
     EventProfiler.SystemDataResponse response = eventService.getSystemData(dataRequestBuilder.build());
     for (EventProfiler.SystemData data : response.getDataList()) {
-      long actionStart = TimeUnit.NANOSECONDS.toMicros(data.getStartTimestamp());
-      long actionEnd = TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp());
-      switch (data.getType()) {
-        case ROTATION:
-          seriesData.add(new SeriesData<>(actionStart, new EventAction<>(actionStart, actionEnd, SimpleEventType.ROTATION)));
-          break;
-        case UNSPECIFIED:
-          break;
-        case TOUCH:
-          seriesData.add(new SeriesData<>(actionStart, new EventAction<>(actionStart, actionEnd, SimpleEventType.TOUCH)));
-          break;
-        case KEY:
-          seriesData.add(
-            new SeriesData<>(actionStart, new KeyboardAction(actionStart, actionEnd, new KeyboardData(data.getEventData()))));
-          break;
-        case UNRECOGNIZED:
-          break;
+      SeriesData<EventAction<SimpleEventType>> event = createEvent(data);
+      if (event != null) {
+        seriesData.add(event);
       }
     }
     return seriesData;
   }
+
+  /**
+   * @return a series getting the events pushed by the datastore as it is polled, which falls back to this series while it can't.
+   */
+  @NotNull
+  public SubscribedEventDataSeries<SimpleEventType> subscribe() {
+    EventProfiler.EventDataRequest request = EventProfiler.EventDataRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setStartTimestamp(Long.MIN_VALUE)
+      .setEndTimestamp(Long.MAX_VALUE)
+      .build();
+    // Events are pushed again when they are updated, e.g. once they end, so the latest version of each one replaces the previous ones.
+    Map<Long, SeriesData<EventAction<SimpleEventType>>> events = new LinkedHashMap<>();
+    Function<EventProfiler.SystemDataResponse, List<SeriesData<EventAction<SimpleEventType>>>> merger = response -> {
+      for (EventProfiler.SystemData data : response.getDataList()) {
+        SeriesData<EventAction<SimpleEventType>> event = createEvent(data);
+        if (event != null) {
+          events.put(data.getEventId(), event);
+        }
+      }
+      return new ArrayList<>(events.values());
+    };
+    return new SubscribedEventDataSeries<>(myClient.getEventClient().getChannel(), EventServiceGrpc.METHOD_GET_SYSTEM_DATA, request, merger,
+                                           this);
+  }
+
+  @Nullable
+  private static SeriesData<EventAction<SimpleEventType>> createEvent(@NotNull EventProfiler.SystemData data) {
+    long actionStart = TimeUnit.NANOSECONDS.toMicros(data.getStartTimestamp());
+    long actionEnd = TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp());
+    switch (data.getType()) {
+      case ROTATION:
+        return new SeriesData<>(actionStart, new EventAction<>(actionStart, actionEnd, SimpleEventType.ROTATION));
+      case TOUCH:
+        return new SeriesData<>(actionStart, new EventAction<>(actionStart, actionEnd, SimpleEventType.TOUCH));
+      case KEY:
+        return new SeriesData<>(actionStart, new KeyboardAction(actionStart, actionEnd, new KeyboardData(data.getEventData())));
+      default:
+        return null;
+    }
+  }
 }
@@ -21,6 +21,7 @@ import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -56,7 +57,25 @@ public final class AllocStatsDataSeries implements DataSeries<Long> {
       .setStartTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     MemoryProfiler.MemoryData response = myClient.getData(dataRequestBuilder.build());
+    return getSeriesData(response);
+  }
 
+  /**
+   * @return a series getting the samples pushed by the datastore as it is polled, which falls back to {@code polledSeries} while it can't.
+   */
+  @NotNull
+  public SubscribedDataSeries subscribe(@NotNull DataSeries<Long> polledSeries) {
+    MemoryProfiler.MemoryRequest request = MemoryProfiler.MemoryRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setStartTime(Long.MIN_VALUE)
+      .setEndTime(Long.MAX_VALUE)
+      .build();
+    return new SubscribedDataSeries(myClient.getChannel(), MemoryServiceGrpc.METHOD_GET_DATA, request, this::getSeriesData, polledSeries);
+  }
+
+  @NotNull
+  private List<SeriesData<Long>> getSeriesData(@NotNull MemoryProfiler.MemoryData response) {
     List<SeriesData<Long>> seriesData = new ArrayList<>();
     for (MemoryProfiler.MemoryData.AllocStatsSample sample : response.getAllocStatsSamplesList()) {
       long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
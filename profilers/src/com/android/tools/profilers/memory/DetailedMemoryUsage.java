@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.memory;
 
+import com.android.tools.adtui.model.CachedDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
@@ -51,7 +52,8 @@ public class DetailedMemoryUsage extends MemoryUsage {
     MemoryServiceGrpc.MemoryServiceBlockingStub client = profilers.getClient().getMemoryClient();
     AllocStatsDataSeries series = new AllocStatsDataSeries(client, profilers.getProcessId(), profilers.getSession(),
                                                      sample -> (long)(sample.getJavaAllocationCount() - sample.getJavaFreeCount()));
-    myObjectsSeries = new RangedContinuousSeries("Allocated", profilers.getTimeline().getViewRange(), getObjectsRange(), series);
+    myObjectsSeries = new RangedContinuousSeries("Allocated", profilers.getTimeline().getViewRange(), getObjectsRange(),
+                                                 series.subscribe(new CachedDataSeries(series)));
 
     add(myJavaSeries);
     add(myNativeSeries);
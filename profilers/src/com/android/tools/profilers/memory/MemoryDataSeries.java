@@ -18,10 +18,12 @@ package com.android.tools.profilers.memory;
 import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesDecimator;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData.MemorySample;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -48,6 +50,11 @@ public final class MemoryDataSeries implements DataSeries<Long> {
     mySampleTransformer = transformer;
   }
 
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs, int pixelWidth) {
+    return SeriesDecimator.decimate(getDataForXRange(timeCurrentRangeUs), timeCurrentRangeUs, pixelWidth);
+  }
+
   @Override
   public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
     // TODO: Change the Memory API to allow specifying padding in the request as number of samples.
@@ -58,7 +65,25 @@ public final class MemoryDataSeries implements DataSeries<Long> {
       .setStartTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     MemoryProfiler.MemoryData response = myClient.getData(dataRequestBuilder.build());
+    return getSeriesData(response);
+  }
+
+  /**
+   * @return a series getting the samples pushed by the datastore as it is polled, which falls back to {@code polledSeries} while it can't.
+   */
+  @NotNull
+  public SubscribedDataSeries subscribe(@NotNull DataSeries<Long> polledSeries) {
+    MemoryProfiler.MemoryRequest request = MemoryProfiler.MemoryRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setStartTime(Long.MIN_VALUE)
+      .setEndTime(Long.MAX_VALUE)
+      .build();
+    return new SubscribedDataSeries(myClient.getChannel(), MemoryServiceGrpc.METHOD_GET_DATA, request, this::getSeriesData, polledSeries);
+  }
 
+  @NotNull
+  private List<SeriesData<Long>> getSeriesData(@NotNull MemoryProfiler.MemoryData response) {
     List<SeriesData<Long>> seriesData = new ArrayList<>();
     for (MemoryProfiler.MemoryData.MemorySample sample : response.getMemSamplesList()) {
       long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
@@ -87,6 +87,11 @@ public class MemoryProfilerStage extends Stage implements CodeNavigator.Listener
   private boolean myTrackingAllocations;
   private boolean myUpdateCaptureOnSelection = true;
   private final CaptureElapsedTimeUpdatable myCaptureElapsedTimeUpdatable = new CaptureElapsedTimeUpdatable();
+  private final AspectObserver myCaptureObserver = new AspectObserver();
+  /**
+   * The heap dump whose retained sizes {@link #myCaptureObserver} waits for, if any.
+   */
+  @Nullable private HeapDumpCaptureObject myObservedHeapDump;
   private long myPendingCaptureStartTime = INVALID_START_TIME;
   private long myPendingLegacyAllocationStartTimeNs = INVALID_START_TIME;
 
@@ -177,6 +182,7 @@ public class MemoryProfilerStage extends Stage implements CodeNavigator.Listener
   @Override
   public void exit() {
     enableSelectLatestCapture(false, null);
+    stopObservingHeapDump();
 
     myEventMonitor.exit();
     getStudioProfilers().getUpdater().unregister(myDetailedMemoryUsage);
@@ -424,6 +430,13 @@ public class MemoryProfilerStage extends Stage implements CodeNavigator.Listener
     myAspect.changed(MemoryProfilerAspect.CURRENT_HEAP_CONTENTS);
   }
 
+  private void stopObservingHeapDump() {
+    if (myObservedHeapDump != null) {
+      myObservedHeapDump.getAspect().removeDependencies(myCaptureObserver);
+      myObservedHeapDump = null;
+    }
+  }
+
   public void selectHeapSet(@Nullable HeapSet heapSet) {
     mySelection.selectHeapSet(heapSet);
   }
@@ -440,6 +453,7 @@ public class MemoryProfilerStage extends Stage implements CodeNavigator.Listener
     if (!mySelection.selectCaptureEntry(durationData == null ? null : durationData.getCaptureEntry())) {
       return;
     }
+    stopObservingHeapDump();
 
     myUpdateCaptureOnSelection = false;
     ProfilerTimeline timeline = getStudioProfilers().getTimeline();
@@ -472,6 +486,17 @@ public class MemoryProfilerStage extends Stage implements CodeNavigator.Listener
         try {
           CaptureObject loadedCaptureObject = future.get();
           if (mySelection.finishSelectingCaptureObject(loadedCaptureObject)) {
+            if (loadedCaptureObject instanceof HeapDumpCaptureObject) {
+              // Retained sizes are computed after the heap dump is loaded, so the heap contents are refreshed once they're available.
+              myObservedHeapDump = (HeapDumpCaptureObject)loadedCaptureObject;
+              myObservedHeapDump.getAspect().addDependency(myCaptureObserver)
+                .onChange(HeapDumpCaptureObject.Aspect.RETAINED_SIZES, () -> {
+                  if (mySelection.getCaptureObject() == loadedCaptureObject) {
+                    refreshSelectedHeap();
+                  }
+                });
+            }
+
             Collection<HeapSet> heaps = loadedCaptureObject.getHeapSets();
             if (heaps.isEmpty()) {
               return;
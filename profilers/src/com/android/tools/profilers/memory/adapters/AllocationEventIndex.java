@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The allocation and deallocation events of a live allocation capture, sorted by time and stored column by column, so the events of
+ * any time range are found with a binary search instead of being queried again.
+ *
+ * Events are expected to be added in batches covering consecutive time ranges, as they are fetched from the datastore. The earliest events
+ * can be removed, so the index only covers a window of the capture.
+ */
+final class AllocationEventIndex {
+  @NotNull private final TLongArrayList myTimestamps = new TLongArrayList();
+  @NotNull private BitSet myDeallocations = new BitSet();
+  @NotNull private final TIntArrayList myTags = new TIntArrayList();
+  @NotNull private final TIntArrayList myClassTags = new TIntArrayList();
+  @NotNull private final TIntArrayList myStackIds = new TIntArrayList();
+  @NotNull private final TIntArrayList myThreadIds = new TIntArrayList();
+  @NotNull private final TIntArrayList myHeapIds = new TIntArrayList();
+  @NotNull private final TLongArrayList mySizes = new TLongArrayList();
+
+  /**
+   * Adds a batch of events, which must not be earlier than the events already added. The batch itself doesn't need to be sorted.
+   */
+  void addEvents(@NotNull List<AllocationEvent> events) {
+    List<AllocationEvent> sortedEvents = new ArrayList<>(events);
+    sortedEvents.sort(Comparator.comparingLong(AllocationEvent::getTimestamp));
+    assert sortedEvents.isEmpty() || size() == 0 || sortedEvents.get(0).getTimestamp() >= myTimestamps.get(size() - 1);
+
+    for (AllocationEvent event : sortedEvents) {
+      if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
+        AllocationEvent.Allocation allocation = event.getAllocData();
+        add(event.getTimestamp(), false, allocation.getTag(), allocation.getClassTag(), allocation.getStackId(), allocation.getThreadId(),
+            allocation.getHeapId(), allocation.getSize());
+      }
+      else if (event.getEventCase() == AllocationEvent.EventCase.FREE_DATA) {
+        AllocationEvent.Deallocation deallocation = event.getFreeData();
+        add(event.getTimestamp(), true, deallocation.getTag(), deallocation.getClassTag(), deallocation.getStackId(),
+            deallocation.getThreadId(), deallocation.getHeapId(), deallocation.getSize());
+      }
+      else {
+        assert false;
+      }
+    }
+  }
+
+  private void add(long timestamp, boolean isDeallocation, int tag, int classTag, int stackId, int threadId, int heapId, long size) {
+    myDeallocations.set(size(), isDeallocation);
+    myTimestamps.add(timestamp);
+    myTags.add(tag);
+    myClassTags.add(classTag);
+    myStackIds.add(stackId);
+    myThreadIds.add(threadId);
+    myHeapIds.add(heapId);
+    mySizes.add(size);
+  }
+
+  int size() {
+    return myTimestamps.size();
+  }
+
+  /**
+   * Removes the events earlier than {@code timeNs}.
+   */
+  void removeEventsBefore(long timeNs) {
+    int count = getFirstEventAtOrAfter(timeNs);
+    if (count == 0) {
+      return;
+    }
+    myDeallocations = myDeallocations.get(count, Math.max(count, size()));
+    myTimestamps.remove(0, count);
+    myTags.remove(0, count);
+    myClassTags.remove(0, count);
+    myStackIds.remove(0, count);
+    myThreadIds.remove(0, count);
+    myHeapIds.remove(0, count);
+    mySizes.remove(0, count);
+  }
+
+  void clear() {
+    myDeallocations.clear();
+    myTimestamps.clear();
+    myTags.clear();
+    myClassTags.clear();
+    myStackIds.clear();
+    myThreadIds.clear();
+    myHeapIds.clear();
+    mySizes.clear();
+  }
+
+  /**
+   * @return the index of the first event at or after {@code timeNs}, or {@link #size()} if there is none. The events of [start, end)
+   * are the events from {@code getFirstEventAtOrAfter(start)} to {@code getFirstEventAtOrAfter(end)}, exclusive.
+   */
+  int getFirstEventAtOrAfter(long timeNs) {
+    int low = 0;
+    int high = size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myTimestamps.get(mid) >= timeNs) {
+        high = mid;
+      }
+      else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  long getTimestamp(int event) {
+    return myTimestamps.get(event);
+  }
+
+  boolean isDeallocation(int event) {
+    return myDeallocations.get(event);
+  }
+
+  int getTag(int event) {
+    return myTags.get(event);
+  }
+
+  int getClassTag(int event) {
+    return myClassTags.get(event);
+  }
+
+  int getStackId(int event) {
+    return myStackIds.get(event);
+  }
+
+  int getThreadId(int event) {
+    return myThreadIds.get(event);
+  }
+
+  int getHeapId(int event) {
+    return myHeapIds.get(event);
+  }
+
+  long getSize(int event) {
+    return mySizes.get(event);
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.android.annotations.VisibleForTesting;
+import gnu.trove.TLongObjectHashMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashMap;
@@ -28,8 +29,9 @@ public final class ClassDb {
   public static final String JAVA_LANG_STRING = "java.lang.String";
   public static final String JAVA_LANG_CLASS = "java.lang.Class";
 
-  private final Map<Long, Map<String, ClassEntry>> myClassEntries = new HashMap<>();
-  private final Map<Long, ClassEntry> myTagMap = new HashMap<>();
+  // Keyed by primitive class loader ids and tags, as there is one lookup per allocation event or heap dump class.
+  private final TLongObjectHashMap<Map<String, ClassEntry>> myClassEntries = new TLongObjectHashMap<>();
+  private final TLongObjectHashMap<ClassEntry> myTagMap = new TLongObjectHashMap<>();
 
   public void clear() {
     myClassEntries.clear();
@@ -38,7 +40,12 @@ public final class ClassDb {
 
   @NotNull
   public ClassEntry registerClass(long classLoaderId, @NotNull String className) {
-    return myClassEntries.computeIfAbsent(classLoaderId, id -> new HashMap<>()).computeIfAbsent(className, ClassEntry::new);
+    Map<String, ClassEntry> entries = myClassEntries.get(classLoaderId);
+    if (entries == null) {
+      entries = new HashMap<>();
+      myClassEntries.put(classLoaderId, entries);
+    }
+    return entries.computeIfAbsent(className, ClassEntry::new);
   }
 
   @NotNull
@@ -49,13 +56,15 @@ public final class ClassDb {
   }
 
   public boolean containsClassEntry(long classLoaderId, @NotNull String className) {
-    return myClassEntries.containsKey(classLoaderId) && myClassEntries.get(classLoaderId).containsKey(className);
+    Map<String, ClassEntry> entries = myClassEntries.get(classLoaderId);
+    return entries != null && entries.containsKey(className);
   }
 
   @NotNull
   public ClassEntry getEntry(long tag) {
-    assert myTagMap.containsKey(tag);
-    return myTagMap.get(tag);
+    ClassEntry entry = myTagMap.get(tag);
+    assert entry != null;
+    return entry;
   }
 
   public static class ClassEntry {
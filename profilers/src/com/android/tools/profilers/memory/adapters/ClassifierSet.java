@@ -21,6 +21,7 @@ import org.jetbrains.annotations.Nullable;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -182,6 +183,22 @@ public abstract class ClassifierSet implements MemoryObject {
     return instanceRemoved;
   }
 
+  // Recompute the retained size of this set and of its partitions from their instances, for captures (e.g. heap dumps) whose instances
+  // are all allocations and whose retained sizes are only known after the instances are added.
+  void refreshTotalRetainedSize() {
+    long totalRetainedSize = 0;
+    for (InstanceObject instance : myInstances) {
+      totalRetainedSize += instance.getRetainedSize() == INVALID_VALUE ? 0 : instance.getRetainedSize();
+    }
+    if (myClassifier != null) {
+      for (ClassifierSet set : myClassifier.getClassifierSets()) {
+        set.refreshTotalRetainedSize();
+        totalRetainedSize += set.myTotalRetainedSize;
+      }
+    }
+    myTotalRetainedSize = totalRetainedSize;
+  }
+
   public void clearClassifierSets() {
     myInstances.clear();
     myClassifier = createSubClassifier();
@@ -330,21 +347,31 @@ public abstract class ClassifierSet implements MemoryObject {
      * This will consume the instance from the input.
      */
     public final void partition(@NotNull Set<InstanceObject> instances) {
+      partition(instances, this::getOrCreateClassifierSet);
+    }
+
+    /**
+     * Same as {@link #partition(Set)}, but the child ClassifierSet of each instance is given by {@code classifierSetLookup}, which must
+     * return the same set as {@link #getOrCreateClassifierSet(InstanceObject)}. This lets callers that already know the partition of
+     * the instances skip classifying them again.
+     */
+    final void partition(@NotNull Set<InstanceObject> instances, @NotNull Function<InstanceObject, ClassifierSet> classifierSetLookup) {
       List<InstanceObject> partitionedInstances = new ArrayList<>(instances.size());
 
       if (!isTerminalClassifier()) {
         instances.forEach(instance -> {
+          ClassifierSet classifierSet = classifierSetLookup.apply(instance);
           if (instance.hasTimeData()) {
             if (instance.hasAllocData()) {
-              getOrCreateClassifierSet(instance).addInstanceObject(instance);
+              classifierSet.addInstanceObject(instance);
             }
             if (instance.hasDeallocData()) {
-              getOrCreateClassifierSet(instance).freeInstanceObject(instance);
+              classifierSet.freeInstanceObject(instance);
             }
             partitionedInstances.add(instance);
           }
           else {
-            getOrCreateClassifierSet(instance).addInstanceObject(instance);
+            classifierSet.addInstanceObject(instance);
             partitionedInstances.add(instance);
           }
         });
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The dominator tree of a reference graph, together with the retained sizes and the depths (distances to a root) of its nodes.
+ *
+ * The nodes are numbered from 0 to n - 1, and the graph is given as compressed sparse rows of predecessors: the nodes referencing node
+ * {@code i} are {@code predecessors[predecessorOffsets[i]]} to {@code predecessors[predecessorOffsets[i + 1] - 1]}. Negative
+ * predecessors (e.g. referrers that aren't part of the graph) are ignored. The roots are referenced by a virtual node, which dominates
+ * every reachable node.
+ *
+ * The immediate dominators are computed with the semi-NCA algorithm: the semi-dominators are computed as in Lengauer-Tarjan (with
+ * path compression), then each immediate dominator is found as the nearest common ancestor, in the tree built so far, of the node's
+ * parent and semi-dominator. Every pass works on flat int arrays indexed by depth-first preorder number.
+ */
+final class DominatorTree {
+  static final int NO_DOMINATOR = -1;
+  static final int UNREACHABLE_DEPTH = Integer.MAX_VALUE;
+
+  private static final int UNVISITED = -1;
+
+  @NotNull private final int[] myImmediateDominators;
+  @NotNull private final long[] myRetainedSizes;
+  @NotNull private final int[] myDepths;
+
+  DominatorTree(@NotNull int[] predecessorOffsets, @NotNull int[] predecessors, @NotNull int[] roots, @NotNull long[] sizes) {
+    int nodeCount = sizes.length;
+    // The virtual root is the last node.
+    int virtualRoot = nodeCount;
+
+    // Successors are needed for the depth-first and breadth-first traversals. The successors of the virtual root are the roots.
+    int[] successorOffsets = new int[nodeCount + 2];
+    for (int node = 0; node < nodeCount; node++) {
+      for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+        if (predecessors[i] >= 0) {
+          successorOffsets[predecessors[i] + 1]++;
+        }
+      }
+    }
+    successorOffsets[virtualRoot + 1] = roots.length;
+    for (int node = 0; node <= virtualRoot; node++) {
+      successorOffsets[node + 1] += successorOffsets[node];
+    }
+    int[] successors = new int[successorOffsets[virtualRoot + 1]];
+    int[] cursors = Arrays.copyOf(successorOffsets, virtualRoot + 1);
+    for (int node = 0; node < nodeCount; node++) {
+      for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+        if (predecessors[i] >= 0) {
+          successors[cursors[predecessors[i]]++] = node;
+        }
+      }
+    }
+    System.arraycopy(roots, 0, successors, cursors[virtualRoot], roots.length);
+    boolean[] isRoot = new boolean[nodeCount];
+    for (int root : roots) {
+      isRoot[root] = true;
+    }
+
+    // Depth-first numbering from the virtual root.
+    int[] preorder = new int[virtualRoot + 1];
+    Arrays.fill(preorder, UNVISITED);
+    int[] vertex = new int[virtualRoot + 1];
+    int[] parent = new int[virtualRoot + 1];
+    int visitedCount = 0;
+    int[] stack = new int[virtualRoot + 1];
+    int[] stackCursors = new int[virtualRoot + 1];
+    int stackSize = 0;
+    preorder[virtualRoot] = visitedCount;
+    vertex[visitedCount++] = virtualRoot;
+    stack[stackSize] = virtualRoot;
+    stackCursors[stackSize++] = successorOffsets[virtualRoot];
+    while (stackSize > 0) {
+      int node = stack[stackSize - 1];
+      int cursor = stackCursors[stackSize - 1];
+      if (cursor == successorOffsets[node + 1]) {
+        stackSize--;
+        continue;
+      }
+      stackCursors[stackSize - 1]++;
+      int successor = successors[cursor];
+      if (preorder[successor] == UNVISITED) {
+        preorder[successor] = visitedCount;
+        parent[visitedCount] = preorder[node];
+        vertex[visitedCount++] = successor;
+        stack[stackSize] = successor;
+        stackCursors[stackSize++] = successorOffsets[successor];
+      }
+    }
+
+    // Semi-dominators, in reverse preorder. Everything below is indexed by preorder number.
+    int[] semi = new int[visitedCount];
+    int[] label = new int[visitedCount];
+    int[] ancestor = new int[visitedCount];
+    for (int i = 0; i < visitedCount; i++) {
+      semi[i] = i;
+      label[i] = i;
+      ancestor[i] = UNVISITED;
+    }
+    for (int w = visitedCount - 1; w > 0; w--) {
+      int node = vertex[w];
+      if (isRoot[node]) {
+        // Referenced by the virtual root, whose preorder number is 0.
+        semi[w] = 0;
+      }
+      for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+        int predecessor = predecessors[i];
+        if (predecessor < 0 || preorder[predecessor] == UNVISITED) {
+          continue;
+        }
+        int u = eval(preorder[predecessor], ancestor, label, semi, stack);
+        semi[w] = Math.min(semi[w], semi[u]);
+      }
+      ancestor[w] = parent[w];
+    }
+
+    // Immediate dominators, as the nearest common ancestors of the parents and semi-dominators, in preorder.
+    int[] idom = new int[visitedCount];
+    for (int w = 1; w < visitedCount; w++) {
+      int dominator = parent[w];
+      while (dominator > semi[w]) {
+        dominator = idom[dominator];
+      }
+      idom[w] = dominator;
+    }
+
+    // Retained sizes, rolled up from the leaves of the dominator tree, which come after their dominators in preorder.
+    long[] retained = new long[visitedCount];
+    for (int w = visitedCount - 1; w > 0; w--) {
+      retained[w] += sizes[vertex[w]];
+      retained[idom[w]] += retained[w];
+    }
+
+    myImmediateDominators = new int[nodeCount];
+    myRetainedSizes = new long[nodeCount];
+    Arrays.fill(myImmediateDominators, NO_DOMINATOR);
+    for (int w = 1; w < visitedCount; w++) {
+      int node = vertex[w];
+      myImmediateDominators[node] = idom[w] == 0 ? NO_DOMINATOR : vertex[idom[w]];
+      myRetainedSizes[node] = retained[w];
+    }
+
+    // Depths, breadth-first from the roots.
+    myDepths = new int[nodeCount];
+    Arrays.fill(myDepths, UNREACHABLE_DEPTH);
+    int[] queue = stack;
+    int head = 0;
+    int tail = 0;
+    for (int root : roots) {
+      if (myDepths[root] == UNREACHABLE_DEPTH) {
+        myDepths[root] = 0;
+        queue[tail++] = root;
+      }
+    }
+    while (head < tail) {
+      int node = queue[head++];
+      for (int i = successorOffsets[node]; i < successorOffsets[node + 1]; i++) {
+        int successor = successors[i];
+        if (myDepths[successor] == UNREACHABLE_DEPTH) {
+          myDepths[successor] = myDepths[node] + 1;
+          queue[tail++] = successor;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the node with the smallest semi-dominator on the path from {@code v} to the root of its tree in the forest linked so far,
+   * compressing that path on the way.
+   */
+  private static int eval(int v, @NotNull int[] ancestor, @NotNull int[] label, @NotNull int[] semi, @NotNull int[] stack) {
+    if (ancestor[v] == UNVISITED) {
+      return v;
+    }
+    // Compress the path iteratively, from the node closest to the root of the tree down to v.
+    int stackSize = 0;
+    int node = v;
+    while (ancestor[ancestor[node]] != UNVISITED) {
+      stack[stackSize++] = node;
+      node = ancestor[node];
+    }
+    while (stackSize > 0) {
+      node = stack[--stackSize];
+      int nodeAncestor = ancestor[node];
+      if (semi[label[nodeAncestor]] < semi[label[node]]) {
+        label[node] = label[nodeAncestor];
+      }
+      ancestor[node] = ancestor[nodeAncestor];
+    }
+    return label[v];
+  }
+
+  /**
+   * @return the immediate dominator of {@code node}, or {@link #NO_DOMINATOR} if it's only dominated by the virtual root (or
+   * unreachable).
+   */
+  int getImmediateDominator(int node) {
+    return myImmediateDominators[node];
+  }
+
+  /**
+   * @return the sum of the sizes of the nodes dominated by {@code node}, itself included, or 0 if it's unreachable.
+   */
+  long getRetainedSize(int node) {
+    return myRetainedSizes[node];
+  }
+
+  /**
+   * @return the length of the shortest path from a root to {@code node}, or {@link #UNREACHABLE_DEPTH} if it's unreachable.
+   */
+  int getDepth(int node) {
+    return myDepths[node];
+  }
+}
@@ -15,14 +15,16 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
+import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.formatter.TimeAxisFormatter;
+import com.android.tools.perflib.captures.MemoryMappedFileBuffer;
 import com.android.tools.perflib.heap.ClassObj;
 import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.RootObj;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
-import com.android.tools.perflib.heap.io.InMemoryBuffer;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataRequest;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataResponse;
@@ -32,20 +34,47 @@ import com.android.tools.profilers.RelativeTimeConverter;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static com.android.tools.profilers.memory.adapters.CaptureObject.ClassifierAttribute.*;
 
 public class HeapDumpCaptureObject implements CaptureObject {
+  private static final long MIN_DUMP_POLL_INTERVAL_MS = 50;
+  private static final long MAX_DUMP_POLL_INTERVAL_MS = 1000;
+
+  /**
+   * Computes the dominator trees of the loaded heap dumps, so they don't occupy the common pool the parallel streams of the
+   * computation itself run on.
+   */
+  private static final ExecutorService DOMINATOR_TREE_EXECUTOR =
+    Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("profiler-heap-dump-dominators-%d").setDaemon(true).build());
+
+  public enum Aspect {
+    /**
+     * Fired once the dominators and retained sizes, computed in the background after the capture is loaded, are available.
+     */
+    RETAINED_SIZES
+  }
 
   @NotNull
   private final MemoryServiceBlockingStub myClient;
@@ -84,8 +113,36 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   private volatile boolean myIsLoadingError = false;
 
+  /**
+   * Dominators, retained sizes and depths of the instances, indexed by {@link #myDominatorTreeIndices}. Null until computed, in which
+   * case perflib's values are used.
+   */
+  @Nullable
+  private volatile DominatorTree myDominatorTree;
+
+  @NotNull
+  private final TObjectIntHashMap<Instance> myDominatorTreeIndices = new TObjectIntHashMap<>();
+
+  private volatile double myRetainedSizesProgress = 0;
+
+  /**
+   * Guards the hprof file and the snapshot mapping it, which are released once the capture is unloaded and nothing reads them anymore.
+   */
+  @NotNull
+  private final Object myResourceLock = new Object();
+
+  @Nullable
+  private File myHprofFile;
+
+  private int myResourceUsers;
+
+  private boolean myIsUnloaded;
+
   private boolean myHasNativeAllocations;
 
+  @NotNull
+  private final AspectModel<Aspect> myAspect = new AspectModel<>();
+
   public HeapDumpCaptureObject(@NotNull MemoryServiceBlockingStub client,
                                @Nullable Common.Session session,
                                int appId,
@@ -106,12 +163,21 @@ public class HeapDumpCaptureObject implements CaptureObject {
     myFeatureTracker = featureTracker;
   }
 
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @NotNull
   @Override
   public String getName() {
     return myLabel;
   }
 
+  @NotNull
+  public AspectModel<Aspect> getAspect() {
+    return myAspect;
+  }
+
   @Override
   public boolean isExportable() {
     return true;
@@ -125,6 +191,24 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Override
   public void saveToFile(@NotNull OutputStream outputStream) throws IOException {
+    if (retainResources()) {
+      try {
+        File hprofFile;
+        synchronized (myResourceLock) {
+          hprofFile = myHprofFile;
+        }
+        if (hprofFile != null) {
+          // The dump was already fetched to load the capture, so it isn't fetched again.
+          Files.copy(hprofFile.toPath(), outputStream);
+          myFeatureTracker.trackExportHeap();
+          return;
+        }
+      }
+      finally {
+        releaseResources();
+      }
+    }
+
     DumpDataResponse response = myClient.getHeapDump(
       DumpDataRequest.newBuilder().setProcessId(myProcessId).setSession(mySession).setDumpTime(myHeapDumpInfo.getStartTime()).build());
     if (response.getStatus() == DumpDataResponse.Status.SUCCESS) {
@@ -182,45 +266,85 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myHasNativeAllocations;
   }
 
+  /**
+   * @return whether the depths and retained sizes of the instances have been computed. Until then, they're reported as 0.
+   */
+  public boolean hasRetainedSizes() {
+    return myDominatorTree != null;
+  }
+
+  /**
+   * @return the progress, between 0 and 1, of the computation of the dominators and retained sizes: 0.5 once the reference graph is
+   * built, 1 once the dominators are computed.
+   */
+  public double getRetainedSizesProgress() {
+    return myRetainedSizesProgress;
+  }
+
+  long getRetainedSize(@NotNull Instance instance) {
+    DominatorTree tree = myDominatorTree;
+    int index = tree == null ? -1 : indexOf(myDominatorTreeIndices, instance);
+    return index < 0 ? instance.getTotalRetainedSize() : tree.getRetainedSize(index);
+  }
+
+  int getDepth(@NotNull Instance instance) {
+    DominatorTree tree = myDominatorTree;
+    int index = tree == null ? -1 : indexOf(myDominatorTreeIndices, instance);
+    return index < 0 ? instance.getDistanceToGcRoot() : tree.getDepth(index);
+  }
+
+  private static int indexOf(@NotNull TObjectIntHashMap<Instance> indices, @Nullable Instance instance) {
+    return instance != null && indices.containsKey(instance) ? indices.get(instance) : -1;
+  }
+
+  /**
+   * Loads the heap dump in two phases: first, the instances are sorted into heaps, so their counts and sizes can be shown; then,
+   * if a {@code queryJoiner} is given, the dominators and retained sizes are computed in the background, and {@link Aspect#RETAINED_SIZES}
+   * is fired on the {@code queryJoiner} once they're available. Otherwise, both phases are done before returning.
+   */
   @Override
   public boolean load(@Nullable Range queryRange, @Nullable Executor queryJoiner) {
-    DumpDataResponse response;
-    while (true) {
-      // TODO move this to another thread and complete before we notify
-      response = myClient.getHeapDump(DumpDataRequest.newBuilder()
-                                        .setProcessId(myProcessId)
-                                        .setSession(mySession)
-                                        .setDumpTime(myHeapDumpInfo.getStartTime()).build());
-      if (response.getStatus() == DumpDataResponse.Status.SUCCESS) {
-        break;
-      }
-      else if (response.getStatus() == DumpDataResponse.Status.NOT_READY) {
-        try {
-          Thread.sleep(50L);
-        }
-        catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-          myIsLoadingError = true;
-          return false;
-        }
-        continue;
+    if (!retainResources()) {
+      myIsLoadingError = true;
+      return false;
+    }
+    boolean isLoaded = false;
+    try {
+      isLoaded = doLoad(queryJoiner);
+      return isLoaded;
+    }
+    finally {
+      // Otherwise, the resources are released once the dominators are computed in the background.
+      if (!isLoaded || queryJoiner == null) {
+        releaseResources();
       }
+    }
+  }
+
+  private boolean doLoad(@Nullable Executor queryJoiner) {
+    File hprofFile = fetchHeapDump();
+    if (hprofFile == null) {
       myIsLoadingError = true;
       return false;
     }
+    synchronized (myResourceLock) {
+      myHprofFile = hprofFile;
+    }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
     Snapshot snapshot;
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
-    if (myProguardMap != null) {
-      snapshot = Snapshot.createSnapshot(buffer, myProguardMap, Arrays.asList(nativeRegistryPostProcessor));
+    try {
+      // The dump is mapped from disk, so it isn't kept on the heap for as long as the snapshot is used.
+      MemoryMappedFileBuffer buffer = new MemoryMappedFileBuffer(hprofFile);
+      snapshot = Snapshot.createSnapshot(buffer, myProguardMap != null ? myProguardMap : new ProguardMap(),
+                                         Arrays.asList(nativeRegistryPostProcessor));
     }
-    else {
-      snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Arrays.asList(nativeRegistryPostProcessor));
+    catch (IOException e) {
+      getLogger().warn("Could not read hprof dump", e);
+      myIsLoadingError = true;
+      return false;
     }
-    snapshot.computeDominators();
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
-    mySnapshot = snapshot;
 
     Map<Heap, HeapSet> heapSets = new HashMap<>(snapshot.getHeaps().size());
     InstanceObject javaLangClassObject = null;
@@ -260,10 +384,128 @@ public class HeapDumpCaptureObject implements CaptureObject {
       });
     }
     heapSets.entrySet().forEach(entry -> myHeapSets.put(entry.getKey().getId(), entry.getValue()));
+    mySnapshot = snapshot;
 
+    if (queryJoiner == null) {
+      computeDominatorTree(snapshot);
+      myHeapSets.values().forEach(ClassifierSet::refreshTotalRetainedSize);
+    }
+    else {
+      CompletableFuture<Void> dominatorTree = CompletableFuture.runAsync(() -> computeDominatorTree(snapshot), DOMINATOR_TREE_EXECUTOR);
+      dominatorTree.whenComplete((result, throwable) -> releaseResources());
+      dominatorTree.whenCompleteAsync((result, throwable) -> {
+        if (throwable != null) {
+          getLogger().warn("Could not compute the dominators of the heap dump", throwable);
+          return;
+        }
+        if (mySnapshot == null) {
+          // Unloaded in the meantime
+          return;
+        }
+        // The instances were added to the heaps before their retained sizes were known.
+        myHeapSets.values().forEach(ClassifierSet::refreshTotalRetainedSize);
+        myAspect.changed(Aspect.RETAINED_SIZES);
+      }, queryJoiner);
+    }
     return true;
   }
 
+  private void computeDominatorTree(@NotNull Snapshot snapshot) {
+    Instance[] instances = myInstanceIndex.keySet().toArray(new Instance[myInstanceIndex.size()]);
+    myDominatorTreeIndices.ensureCapacity(instances.length);
+    for (int i = 0; i < instances.length; i++) {
+      myDominatorTreeIndices.put(instances[i], i);
+    }
+    DominatorTree tree = computeDominatorTree(snapshot, instances, myDominatorTreeIndices, () -> myRetainedSizesProgress = 0.5);
+    myRetainedSizesProgress = 1;
+    myDominatorTree = tree;
+  }
+
+  /**
+   * Computes the dominator tree of {@code instances}, following their hard references from the GC roots of {@code snapshot}. The
+   * reference graph is gathered from the instances in parallel, as compressed sparse rows, then handed to {@link DominatorTree}.
+   *
+   * @param indices            maps each of {@code instances} to its index. Other referrers (e.g. roots) are ignored.
+   * @param graphBuiltNotifier run once the reference graph is gathered.
+   */
+  @VisibleForTesting
+  @NotNull
+  static DominatorTree computeDominatorTree(@NotNull Snapshot snapshot,
+                                            @NotNull Instance[] instances,
+                                            @NotNull TObjectIntHashMap<Instance> indices,
+                                            @NotNull Runnable graphBuiltNotifier) {
+    int[] predecessorOffsets = new int[instances.length + 1];
+    IntStream.range(0, instances.length).parallel()
+      .forEach(i -> predecessorOffsets[i + 1] = instances[i].getHardReverseReferences().size());
+    Arrays.parallelPrefix(predecessorOffsets, Integer::sum);
+
+    int[] predecessors = new int[predecessorOffsets[instances.length]];
+    long[] sizes = new long[instances.length];
+    IntStream.range(0, instances.length).parallel().forEach(i -> {
+      int offset = predecessorOffsets[i];
+      for (Instance referrer : instances[i].getHardReverseReferences()) {
+        predecessors[offset++] = indexOf(indices, referrer);
+      }
+      sizes[i] = instances[i].getSize();
+    });
+    int[] roots = snapshot.getGCRoots().stream()
+      .map(RootObj::getReferredInstance)
+      .filter(Objects::nonNull)
+      .mapToInt(instance -> indexOf(indices, instance))
+      .filter(index -> index >= 0)
+      .toArray();
+    graphBuiltNotifier.run();
+
+    return new DominatorTree(predecessorOffsets, predecessors, roots, sizes);
+  }
+
+  /**
+   * Waits for the heap dump to be ready, and copies it to a temporary file. This runs on the thread loading the capture, so waiting
+   * doesn't block the UI.
+   *
+   * @return the temporary file, or null if the heap dump couldn't be retrieved.
+   */
+  @Nullable
+  private File fetchHeapDump() {
+    DumpDataResponse response;
+    long pollIntervalMs = MIN_DUMP_POLL_INTERVAL_MS;
+    while (true) {
+      response = myClient.getHeapDump(DumpDataRequest.newBuilder()
+                                        .setProcessId(myProcessId)
+                                        .setSession(mySession)
+                                        .setDumpTime(myHeapDumpInfo.getStartTime()).build());
+      if (response.getStatus() == DumpDataResponse.Status.SUCCESS) {
+        break;
+      }
+      else if (response.getStatus() == DumpDataResponse.Status.NOT_READY) {
+        try {
+          // Large dumps take seconds to be written, so the datastore isn't queried every 50ms for as long.
+          Thread.sleep(pollIntervalMs);
+          pollIntervalMs = Math.min(2 * pollIntervalMs, MAX_DUMP_POLL_INTERVAL_MS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+        continue;
+      }
+      return null;
+    }
+
+    try {
+      File file = FileUtil.createTempFile("heapdump", ".hprof", true);
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        // The response holds the whole dump, but it is dropped once written, so the dump isn't kept on the heap while it's parsed.
+        response.getData().writeTo(out);
+      }
+      return file;
+    }
+    catch (IOException e) {
+      getLogger().warn("Could not write hprof dump", e);
+      return null;
+    }
+  }
+
   @Override
   public boolean isDoneLoading() {
     return mySnapshot != null || myIsLoadingError;
@@ -274,9 +516,56 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myIsLoadingError;
   }
 
+  /**
+   * Unmaps the snapshot and deletes the temporary hprof file, once the dominators are no longer computed from them.
+   */
   @Override
   public void unload() {
+    synchronized (myResourceLock) {
+      if (myIsUnloaded) {
+        return;
+      }
+      myIsUnloaded = true;
+      if (myResourceUsers == 0) {
+        disposeResources();
+      }
+    }
+  }
+
+  /**
+   * @return whether the hprof file and the snapshot can be used, i.e. the capture isn't unloaded, in which case
+   * {@link #releaseResources()} must be called once they aren't used anymore.
+   */
+  private boolean retainResources() {
+    synchronized (myResourceLock) {
+      if (myIsUnloaded) {
+        return false;
+      }
+      myResourceUsers++;
+      return true;
+    }
+  }
 
+  private void releaseResources() {
+    synchronized (myResourceLock) {
+      myResourceUsers--;
+      if (myResourceUsers == 0 && myIsUnloaded) {
+        disposeResources();
+      }
+    }
+  }
+
+  private void disposeResources() {
+    Snapshot snapshot = mySnapshot;
+    mySnapshot = null;
+    if (snapshot != null) {
+      // Reading the buffer once unmapped would crash, hence the resources being retained by the computations reading them.
+      snapshot.dispose();
+    }
+    if (myHprofFile != null) {
+      FileUtil.delete(myHprofFile);
+      myHprofFile = null;
+    }
   }
 
   @NotNull
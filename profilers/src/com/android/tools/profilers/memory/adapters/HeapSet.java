@@ -16,9 +16,12 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +32,13 @@ public class HeapSet extends ClassifierSet {
   @NotNull private ClassGrouping myClassGrouping = ClassGrouping.ARRANGE_BY_CLASS;
   private final int myId;
 
+  // Dense ids of the instances, assigned the first time the grouping changes. They index the cached partitions below.
+  @Nullable private TObjectIntHashMap<InstanceObject> myInstanceIds = null;
+  @NotNull private final List<InstanceObject> myInstancesById = new ArrayList<>();
+  // How each grouping that was used partitioned the heap, so switching back to it doesn't classify every instance again. Only the
+  // child of each instance is kept, not the child ClassifierSets and their instance sets, so the heap isn't held once per grouping.
+  @NotNull private final Map<ClassGrouping, CachedPartition> myCachedPartitions = new EnumMap<>(ClassGrouping.class);
+
   public HeapSet(@NotNull CaptureObject captureObject, @NotNull String heapName, int id) {
     super(heapName);
     myCaptureObject = captureObject;
@@ -40,6 +50,9 @@ public class HeapSet extends ClassifierSet {
     if (myClassGrouping == classGrouping) {
       return;
     }
+    if (myClassifier != null) {
+      cachePartition();
+    }
     myClassGrouping = classGrouping;
 
     // Gather all the instances from the descendants and add them to the heap node.
@@ -54,6 +67,84 @@ public class HeapSet extends ClassifierSet {
     return myId;
   }
 
+  @Override
+  public void clearClassifierSets() {
+    super.clearClassifierSets();
+    // The instances added from now on are new objects, so the ids of the previous ones are no longer needed.
+    myInstanceIds = null;
+    myInstancesById.clear();
+    myCachedPartitions.clear();
+  }
+
+  @Override
+  protected void ensurePartition() {
+    CachedPartition cachedPartition = myCachedPartitions.get(myClassGrouping);
+    if (myClassifier != null || cachedPartition == null) {
+      super.ensurePartition();
+      return;
+    }
+
+    Classifier classifier = createSubClassifier();
+    myClassifier = classifier;
+    ClassifierSet[] children = new ClassifierSet[cachedPartition.myRepresentatives.size()];
+    Function<InstanceObject, ClassifierSet> classifierSetLookup = instance -> {
+      int child = cachedPartition.getChild(getInstanceId(instance));
+      if (child < 0) {
+        // Added since the partition was cached.
+        return classifier.getOrCreateClassifierSet(instance);
+      }
+      if (children[child] == null) {
+        children[child] = classifier.getOrCreateClassifierSet(cachedPartition.myRepresentatives.get(child));
+      }
+      return children[child];
+    };
+    classifier.partition(myInstances, classifierSetLookup);
+  }
+
+  /**
+   * Records the child of each instance in the partition of the current grouping.
+   */
+  private void cachePartition() {
+    assert myClassifier != null;
+    List<ClassifierSet> children = myClassifier.getClassifierSets();
+    int instanceCount = getInstancesCount();
+    if (myInstanceIds == null || myInstancesById.size() > 2 * instanceCount) {
+      // Don't keep the instances that left the heap forever. The partitions of the other groupings are dropped with their ids.
+      myInstanceIds = new TObjectIntHashMap<>(instanceCount);
+      myInstancesById.clear();
+      myCachedPartitions.clear();
+    }
+
+    CachedPartition partition = new CachedPartition(children.size(), myInstancesById.size() + instanceCount);
+    for (int child = 0; child < children.size(); child++) {
+      int finalChild = child;
+      children.get(child).getInstancesStream().forEach(instance -> {
+        if (partition.myRepresentatives.size() == finalChild) {
+          partition.myRepresentatives.add(instance);
+        }
+        partition.setChild(getOrCreateInstanceId(instance), finalChild);
+      });
+    }
+    if (partition.myRepresentatives.size() == children.size()) {
+      myCachedPartitions.put(myClassGrouping, partition);
+    }
+  }
+
+  private int getInstanceId(@NotNull InstanceObject instance) {
+    return myInstanceIds != null && myInstanceIds.containsKey(instance) ? myInstanceIds.get(instance) : -1;
+  }
+
+  private int getOrCreateInstanceId(@NotNull InstanceObject instance) {
+    assert myInstanceIds != null;
+    int id = getInstanceId(instance);
+    if (id < 0) {
+      id = myInstancesById.size();
+      myInstancesById.add(instance);
+      myInstanceIds.put(instance, id);
+    }
+    return id;
+  }
+
   @NotNull
   @Override
   public Classifier createSubClassifier() {
@@ -68,4 +159,32 @@ public class HeapSet extends ClassifierSet {
         throw new RuntimeException("Classifier type not implemented: " + myClassGrouping);
     }
   }
+
+  /**
+   * The child index of each instance in a partition of the heap, indexed by instance id, and an instance of each child to find the child
+   * again from.
+   */
+  private static final class CachedPartition {
+    @NotNull private final List<InstanceObject> myRepresentatives;
+    @NotNull private int[] myChildren;
+
+    private CachedPartition(int childCount, int instanceCount) {
+      myRepresentatives = new ArrayList<>(childCount);
+      myChildren = new int[instanceCount];
+      Arrays.fill(myChildren, -1);
+    }
+
+    private int getChild(int instanceId) {
+      return instanceId >= 0 && instanceId < myChildren.length ? myChildren[instanceId] : -1;
+    }
+
+    private void setChild(int instanceId, int child) {
+      if (instanceId >= myChildren.length) {
+        int oldLength = myChildren.length;
+        myChildren = Arrays.copyOf(myChildren, Math.max(instanceId + 1, 2 * oldLength));
+        Arrays.fill(myChildren, oldLength, myChildren.length, -1);
+      }
+      myChildren[instanceId] = child;
+    }
+  }
 }
@@ -54,6 +54,9 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   static final String ZYGOTE_HEAP_NAME = "zygote";
   static final String APP_HEAP_NAME = "app";
 
+  // About 36MB of events. Past it, the oldest events are dropped from the index, and queried again if the selection goes back to them.
+  private static final int MAX_INDEXED_EVENT_COUNT = 1 << 20;
+
   @Nullable private MemoryProfilerStage myStage;
 
   @VisibleForTesting final ExecutorService myExecutorService;
@@ -62,6 +65,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final TIntObjectHashMap<LiveAllocationInstanceObject> myInstanceMap;
   private final TIntObjectHashMap<AllocationStack> myCallstackMap;
   private final TIntObjectHashMap<ThreadId> myThreadIdMap;
+  // Events fetched from myEventsStartTimeNs to myEventsEndTimeNs. Only accessed from myExecutorService.
+  private final AllocationEventIndex myEventIndex;
 
   private final MemoryServiceBlockingStub myClient;
   private final Common.Session mySession;
@@ -70,6 +75,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final List<HeapSet> myHeapSets;
   private final AspectObserver myAspectObserver;
 
+  private long myEventsStartTimeNs;
   private long myEventsEndTimeNs;
   private long myContextEndTimeNs;
   private long myPreviousQueryStartTimeNs;
@@ -97,6 +103,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     myInstanceMap = new TIntObjectHashMap<>();
     myCallstackMap = new TIntObjectHashMap<>();
     myThreadIdMap = new TIntObjectHashMap<>();
+    myEventIndex = new AllocationEventIndex();
 
     myClient = client;
     mySession = session;
@@ -110,6 +117,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
                                new HeapSet(this, ZYGOTE_HEAP_NAME, 2),  // zygote
                                new HeapSet(this, APP_HEAP_NAME, 3)); // app
 
+    myEventsStartTimeNs = Long.MIN_VALUE;
     myEventsEndTimeNs = Long.MIN_VALUE;
     myContextEndTimeNs = Long.MIN_VALUE;
     myPreviousQueryStartTimeNs = Long.MIN_VALUE;
@@ -278,6 +286,14 @@ public class LiveAllocationCaptureObject implements CaptureObject {
         joiner.execute(() -> myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING));
         updateAllocationContexts(newEndTimeNs);
 
+        // Events dropped from the index are queried again rather than kept, as the datastore may have pruned them in the meantime.
+        boolean isIndexReset = newStartTimeNs < myEventsStartTimeNs;
+        if (isIndexReset) {
+          myEventIndex.clear();
+          myEventsStartTimeNs = newStartTimeNs;
+          myEventsEndTimeNs = newStartTimeNs - 1;
+        }
+
         // myEventEndTimeNs represents latest timestamp we have event data
         // If newEndTimeNs > myEventEndTimeNs + 1, we set newEndTimeNs as myEventEndTimeNs + 1
         // We +1 because current range is left close and right open
@@ -286,6 +302,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
             myClient.getAllocations(AllocationSnapshotRequest.newBuilder().setProcessId(myProcessId).setSession(mySession)
                                       .setStartTime(myEventsEndTimeNs + 1).setEndTime(newEndTimeNs).build());
 
+          // The events are kept, so that the segments below are read from the index instead of being queried again.
+          myEventIndex.addEvents(sampleResponse.getEventsList());
           myEventsEndTimeNs = Math.max(myEventsEndTimeNs, sampleResponse.getTimestamp());
           if (newEndTimeNs > myEventsEndTimeNs + 1) {
             newEndTimeNs = myEventsEndTimeNs + 1;
@@ -295,8 +313,10 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
         // Split the two ranges into three segments by sorting their end points and analyzing segments with adjacent points
         long[] timestamps = {myPreviousQueryStartTimeNs, myPreviousQueryEndTimeNs, newStartTimeNs, newEndTimeNs};
-        // Clear myDefaultHeapSet If previous range does not intersect with the new one
-        boolean clear = myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs;
+        // Clear myDefaultHeapSet If previous range does not intersect with the new one, or if it's cheaper to add the events of the new
+        // range than to add and remove the events entering and leaving it
+        boolean clear = isIndexReset || myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs ||
+                        countChangedEvents(newStartTimeNs, newEndTimeNs) > countEvents(newStartTimeNs, newEndTimeNs);
         if (clear) {
           long[] newTimeStamps = {newStartTimeNs, newEndTimeNs};
           timestamps = newTimeStamps;
@@ -319,25 +339,21 @@ public class LiveAllocationCaptureObject implements CaptureObject {
             continue;
           }
 
-          boolean insidePreviousRange = startTimeNs >= myPreviousQueryStartTimeNs && endTimeNs <= myPreviousQueryEndTimeNs;
+          boolean insidePreviousRange = !clear && startTimeNs >= myPreviousQueryStartTimeNs && endTimeNs <= myPreviousQueryEndTimeNs;
           boolean insideCurrentRange = startTimeNs >= newStartTimeNs && endTimeNs <= newEndTimeNs;
 
           if (insidePreviousRange == insideCurrentRange) {
             continue;
           }
 
-          BatchAllocationSample sampleResponse =
-            myClient.getAllocations(AllocationSnapshotRequest.newBuilder().setProcessId(myProcessId).setSession(mySession)
-                                      .setStartTime(startTimeNs).setEndTime(endTimeNs).build());
-
-          for (AllocationEvent event : sampleResponse.getEventsList()) {
-            if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
-              AllocationEvent.Allocation allocation = event.getAllocData();
-              LiveAllocationInstanceObject instance =
-                getOrCreateInstanceObject(allocation.getTag(), allocation.getClassTag(), allocation.getStackId(), allocation.getThreadId(),
-                                          allocation.getSize(), allocation.getHeapId());
+          int endEvent = myEventIndex.getFirstEventAtOrAfter(endTimeNs);
+          for (int event = myEventIndex.getFirstEventAtOrAfter(startTimeNs); event < endEvent; event++) {
+            LiveAllocationInstanceObject instance =
+              getOrCreateInstanceObject(myEventIndex.getTag(event), myEventIndex.getClassTag(event), myEventIndex.getStackId(event),
+                                        myEventIndex.getThreadId(event), myEventIndex.getSize(event), myEventIndex.getHeapId(event));
+            if (!myEventIndex.isDeallocation(event)) {
               if (insideCurrentRange) {
-                instance.setAllocationTime(event.getTimestamp());
+                instance.setAllocationTime(myEventIndex.getTimestamp(event));
                 setAllocationList.add(instance);
               }
               else {
@@ -345,13 +361,9 @@ public class LiveAllocationCaptureObject implements CaptureObject {
                 resetAllocationList.add(instance);
               }
             }
-            else if (event.getEventCase() == AllocationEvent.EventCase.FREE_DATA) {
-              AllocationEvent.Deallocation deallocation = event.getFreeData();
-              LiveAllocationInstanceObject instance =
-                getOrCreateInstanceObject(deallocation.getTag(), deallocation.getClassTag(), deallocation.getStackId(),
-                                          deallocation.getThreadId(), deallocation.getSize(), deallocation.getHeapId());
+            else {
               if (insideCurrentRange) {
-                instance.setDeallocTime(event.getTimestamp());
+                instance.setDeallocTime(myEventIndex.getTimestamp(event));
                 setDeallocationList.add(instance);
               }
               else {
@@ -359,24 +371,28 @@ public class LiveAllocationCaptureObject implements CaptureObject {
                 resetDeallocationList.add(instance);
               }
             }
-            else {
-              assert false;
-            }
           }
         }
 
         myPreviousQueryStartTimeNs = newStartTimeNs;
         myPreviousQueryEndTimeNs = newEndTimeNs;
+        if (myEventIndex.size() > MAX_INDEXED_EVENT_COUNT) {
+          trimEventIndex(newStartTimeNs);
+        }
 
         joiner.execute(() -> {
           myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
           if (clear ||
               setAllocationList.size() + setDeallocationList.size() + resetAllocationList.size() + resetDeallocationList.size() > 0) {
+            // The classifier sets are recreated when the heaps are cleared, so the selected class set is found again once they're rebuilt.
+            ClassSet selectedClassSet = myStage.getSelectedClassSet();
+            HeapSet selectedHeapSet = myStage.getSelectedHeapSet();
+            List<Object> selectedClassSetPath = null;
             if (clear) {
-              myHeapSets.forEach(heap -> heap.clearClassifierSets());
-              if (myStage.getSelectedClassSet() != null) {
-                myStage.selectClassSet(ClassSet.EMPTY_SET);
+              if (selectedClassSet != null && selectedHeapSet != null && myHeapSets.contains(selectedHeapSet)) {
+                selectedClassSetPath = findClassifierSetPath(selectedHeapSet, selectedClassSet);
               }
+              myHeapSets.forEach(heap -> heap.clearClassifierSets());
             }
             setAllocationList.forEach(instance -> {
               myHeapSets.get(instance.getHeapId()).addInstanceObject(instance);
@@ -390,6 +406,10 @@ public class LiveAllocationCaptureObject implements CaptureObject {
             resetDeallocationList.forEach(instance -> {
               myHeapSets.get(instance.getHeapId()).removeFreeingInstanceObject(instance);
             });
+            if (clear && selectedClassSet != null) {
+              ClassSet rebuiltClassSet = selectedClassSetPath == null ? null : findClassSet(selectedHeapSet, selectedClassSetPath);
+              myStage.selectClassSet(rebuiltClassSet == null ? ClassSet.EMPTY_SET : rebuiltClassSet);
+            }
             myStage.refreshSelectedHeap();
           }
         });
@@ -401,6 +421,92 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
+  /**
+   * @return the keys of the classifier sets leading from {@code parent} to {@code target}, or null if {@code target} isn't one of its
+   * descendants. Only the sets that have already been partitioned are searched, which the ancestors of a selected set are.
+   */
+  @Nullable
+  private static List<Object> findClassifierSetPath(@NotNull ClassifierSet parent, @NotNull ClassSet target) {
+    if (parent.myClassifier == null) {
+      return null;
+    }
+    for (ClassifierSet child : parent.myClassifier.getClassifierSets()) {
+      List<Object> path;
+      if (child == target) {
+        path = new ArrayList<>();
+      }
+      else if (child instanceof ClassSet) {
+        continue;
+      }
+      else {
+        path = findClassifierSetPath(child, target);
+      }
+      if (path != null) {
+        path.add(0, getClassifierSetKey(child));
+        return path;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the class set found by following {@code path} from {@code parent}, or null if there's no longer such a set.
+   */
+  @Nullable
+  private static ClassSet findClassSet(@NotNull ClassifierSet parent, @NotNull List<Object> path) {
+    ClassifierSet set = parent;
+    for (Object key : path) {
+      set = set.getChildrenClassifierSets().stream().filter(child -> key.equals(getClassifierSetKey(child))).findFirst().orElse(null);
+      if (set == null) {
+        return null;
+      }
+    }
+    return set instanceof ClassSet ? (ClassSet)set : null;
+  }
+
+  /**
+   * @return what tells a classifier set apart from its siblings: the class of a {@link ClassSet}, whose simple names can collide, or the
+   * name of the other sets.
+   */
+  @NotNull
+  private static Object getClassifierSetKey(@NotNull ClassifierSet set) {
+    return set instanceof ClassSet ? ((ClassSet)set).getClassEntry() : set.getName();
+  }
+
+  /**
+   * @return the number of events entering or leaving the range when it changes from the previous query range to [startTimeNs, endTimeNs).
+   */
+  private int countChangedEvents(long startTimeNs, long endTimeNs) {
+    int commonEventCount = countEvents(Math.max(startTimeNs, myPreviousQueryStartTimeNs), Math.min(endTimeNs, myPreviousQueryEndTimeNs));
+    return countEvents(myPreviousQueryStartTimeNs, myPreviousQueryEndTimeNs) + countEvents(startTimeNs, endTimeNs) - 2 * commonEventCount;
+  }
+
+  private int countEvents(long startTimeNs, long endTimeNs) {
+    if (startTimeNs >= endTimeNs) {
+      return 0;
+    }
+    return myEventIndex.getFirstEventAtOrAfter(endTimeNs) - myEventIndex.getFirstEventAtOrAfter(startTimeNs);
+  }
+
+  /**
+   * Drops the oldest half of the index, except for the events from {@code rangeStartTimeNs}, which are needed to update the heaps once
+   * the range changes again.
+   */
+  private void trimEventIndex(long rangeStartTimeNs) {
+    long trimTimeNs = Math.min(rangeStartTimeNs, myEventIndex.getTimestamp(myEventIndex.size() - MAX_INDEXED_EVENT_COUNT / 2));
+    int trimEvent = myEventIndex.getFirstEventAtOrAfter(trimTimeNs);
+    for (int event = 0; event < trimEvent; event++) {
+      // Instances that are in the range through another event are kept, so the heaps can still find them.
+      int tag = myEventIndex.getTag(event);
+      LiveAllocationInstanceObject instance = myInstanceMap.get(tag);
+      if (instance != null && !instance.hasTimeData()) {
+        myInstanceMap.remove(tag);
+      }
+    }
+    myEventIndex.removeEventsBefore(trimTimeNs);
+    myEventsStartTimeNs = Math.max(myEventsStartTimeNs, trimTimeNs);
+  }
+
   @NotNull
   private LiveAllocationInstanceObject getOrCreateInstanceObject(int tag, int classTag, int stackId, int threadId, long size, int heapId) {
     LiveAllocationInstanceObject instance = myInstanceMap.get(tag);
@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import com.android.tools.profilers.StudioProfilers;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 public class DetailedNetworkUsage extends NetworkUsage {
@@ -41,9 +42,11 @@ public class DetailedNetworkUsage extends NetworkUsage {
   }
 
   @NotNull
-  private NetworkOpenConnectionsDataSeries createOpenConnectionsSeries(@NotNull StudioProfilers profilers) {
+  private static SubscribedDataSeries createOpenConnectionsSeries(@NotNull StudioProfilers profilers) {
     NetworkServiceGrpc.NetworkServiceBlockingStub client = profilers.getClient().getNetworkClient();
-    return new NetworkOpenConnectionsDataSeries(client, profilers.getProcessId(), profilers.getSession());
+    NetworkOpenConnectionsDataSeries series =
+      new NetworkOpenConnectionsDataSeries(client, profilers.getProcessId(), profilers.getSession());
+    return series.subscribe(series);
   }
 
   @NotNull
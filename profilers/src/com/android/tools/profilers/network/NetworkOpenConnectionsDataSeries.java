@@ -21,6 +21,7 @@ import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -48,8 +49,6 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
 
   @Override
   public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
-
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     NetworkProfiler.NetworkDataRequest.Builder dataRequestBuilder = NetworkProfiler.NetworkDataRequest.newBuilder()
@@ -59,6 +58,28 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
       .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     NetworkProfiler.NetworkDataResponse response = myClient.getData(dataRequestBuilder.build());
+    return getSeriesData(response);
+  }
+
+  /**
+   * @return a series getting the connections pushed by the datastore as it is polled, which falls back to {@code polledSeries} while it
+   * can't.
+   */
+  @NotNull
+  public SubscribedDataSeries subscribe(@NotNull DataSeries<Long> polledSeries) {
+    NetworkProfiler.NetworkDataRequest request = NetworkProfiler.NetworkDataRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setType(NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS)
+      .setStartTimestamp(Long.MIN_VALUE)
+      .setEndTimestamp(Long.MAX_VALUE)
+      .build();
+    return new SubscribedDataSeries(myClient.getChannel(), NetworkServiceGrpc.METHOD_GET_DATA, request, this::getSeriesData, polledSeries);
+  }
+
+  @NotNull
+  private static List<SeriesData<Long>> getSeriesData(@NotNull NetworkProfiler.NetworkDataResponse response) {
+    List<SeriesData<Long>> seriesData = new ArrayList<>();
     for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
       long xTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getBasicInfo().getEndTimestamp());
       NetworkProfiler.ConnectionData connectionData = data.getConnectionData();
@@ -18,9 +18,11 @@ package com.android.tools.profilers.network;
 import com.android.tools.adtui.model.DataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesDecimator;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -78,9 +80,12 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
   }
 
   @Override
-  public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+  public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs, int pixelWidth) {
+    return SeriesDecimator.decimate(getDataForXRange(timeCurrentRangeUs), timeCurrentRangeUs, pixelWidth);
+  }
 
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     NetworkProfiler.NetworkDataRequest.Builder dataRequestBuilder = NetworkProfiler.NetworkDataRequest.newBuilder()
@@ -90,6 +95,27 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
       .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     NetworkProfiler.NetworkDataResponse response = myClient.getData(dataRequestBuilder.build());
+    return getSeriesData(response);
+  }
+
+  /**
+   * @return a series getting the traffic pushed by the datastore as it is polled, which falls back to {@code polledSeries} while it can't.
+   */
+  @NotNull
+  public SubscribedDataSeries subscribe(@NotNull DataSeries<Long> polledSeries) {
+    NetworkProfiler.NetworkDataRequest request = NetworkProfiler.NetworkDataRequest.newBuilder()
+      .setProcessId(myProcessId)
+      .setSession(mySession)
+      .setType(NetworkProfiler.NetworkDataRequest.Type.SPEED)
+      .setStartTimestamp(Long.MIN_VALUE)
+      .setEndTimestamp(Long.MAX_VALUE)
+      .build();
+    return new SubscribedDataSeries(myClient.getChannel(), NetworkServiceGrpc.METHOD_GET_DATA, request, this::getSeriesData, polledSeries);
+  }
+
+  @NotNull
+  private List<SeriesData<Long>> getSeriesData(@NotNull NetworkProfiler.NetworkDataResponse response) {
+    List<SeriesData<Long>> seriesData = new ArrayList<>();
     for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
       long xTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getBasicInfo().getEndTimestamp());
       NetworkProfiler.SpeedData speedData = data.getSpeedData();
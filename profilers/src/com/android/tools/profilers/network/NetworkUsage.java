@@ -15,11 +15,13 @@
  */
 package com.android.tools.profilers.network;
 
+import com.android.tools.adtui.model.CachedDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import com.android.tools.profilers.StudioProfilers;
+import com.android.tools.profilers.SubscribedDataSeries;
 import org.jetbrains.annotations.NotNull;
 
 public class NetworkUsage extends LineChartModel {
@@ -38,16 +40,23 @@ public class NetworkUsage extends LineChartModel {
     myRxSeries = new RangedContinuousSeries(NetworkTrafficDataSeries.Type.BYTES_RECEIVED.getLabel(false),
                                             viewRange,
                                             myTrafficRange,
-                                            createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_RECEIVED));
+                                            createSubscribedSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_RECEIVED));
     myTxSeries = new RangedContinuousSeries(NetworkTrafficDataSeries.Type.BYTES_SENT.getLabel(false),
                                             viewRange,
                                             myTrafficRange,
-                                            createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_SENT));
+                                            createSubscribedSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_SENT));
 
     add(myRxSeries);
     add(myTxSeries);
   }
 
+  @NotNull
+  private SubscribedDataSeries createSubscribedSeries(@NotNull StudioProfilers profilers,
+                                                      @NotNull NetworkTrafficDataSeries.Type trafficType) {
+    NetworkTrafficDataSeries series = createSeries(profilers, trafficType);
+    return series.subscribe(new CachedDataSeries(series));
+  }
+
   @NotNull
   public NetworkTrafficDataSeries createSeries(@NotNull StudioProfilers profilers, @NotNull NetworkTrafficDataSeries.Type trafficType) {
     NetworkServiceGrpc.NetworkServiceBlockingStub client = profilers.getClient().getNetworkClient();
@@ -23,7 +23,9 @@ import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,6 +39,18 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
   private final int myPid;
   private final Common.Session mySession;
 
+  private static final int MAX_COMPLETED_CONNECTION_COUNT = 1000;
+
+  // Connections whose details can't change anymore, so they aren't fetched again each time connections still downloading are polled.
+  // The response bodies are not part of the details, they are only fetched on demand by requestResponsePayload. The least recently
+  // queried connections are dropped past MAX_COMPLETED_CONNECTION_COUNT, and fetched again if they are queried later.
+  private final Map<Long, HttpData> myCompletedConnections = new LinkedHashMap<Long, HttpData>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, HttpData> eldest) {
+      return size() > MAX_COMPLETED_CONNECTION_COUNT;
+    }
+  };
+
   public RpcNetworkConnectionsModel(@NotNull ProfilerServiceGrpc.ProfilerServiceBlockingStub profilerService,
                                     @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
                                     int pid, Common.Session session) {
@@ -58,6 +72,12 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
 
     List<HttpData> httpDataList = new ArrayList<>(response.getDataList().size());
     for (NetworkProfiler.HttpConnectionData connection : response.getDataList()) {
+      HttpData completedData = myCompletedConnections.get(connection.getConnId());
+      if (completedData != null) {
+        httpDataList.add(completedData);
+        continue;
+      }
+
       long startTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getStartTimestamp());
       long endTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getEndTimestamp());
       long downloadTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getDownloadingTimestamp());
@@ -66,11 +86,17 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
       requestHttpRequest(connection.getConnId(), httpBuilder);
       requestAccessingThreads(connection.getConnId(), httpBuilder);
 
+      HttpData data;
       if (connection.getEndTimestamp() != 0) {
         requestHttpResponse(connection.getConnId(), httpBuilder);
         requestHttpResponseBody(connection.getConnId(), httpBuilder);
+        data = httpBuilder.build();
+        myCompletedConnections.put(connection.getConnId(), data);
+      }
+      else {
+        data = httpBuilder.build();
       }
-      httpDataList.add(httpBuilder.build());
+      httpDataList.add(data);
     }
 
     return httpDataList;
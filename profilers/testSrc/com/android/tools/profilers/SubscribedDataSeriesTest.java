@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.CpuProfiler.CpuDataRequest;
+import com.android.tools.profiler.proto.CpuProfiler.CpuDataResponse;
+import com.android.tools.profiler.proto.CpuProfiler.CpuProfilerData;
+import com.android.tools.profiler.proto.CpuServiceGrpc;
+import com.android.tools.profilers.common.DataSubscriptionMethods;
+import com.android.tools.profilers.cpu.FakeCpuService;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SubscribedDataSeriesTest {
+  private static final String SERVER_NAME = "SubscribedDataSeriesTest";
+  private static final Common.Session SESSION = Common.Session.newBuilder().setDeviceSerial("Serial").setBootId("Boot").build();
+  private static final Range ALL = new Range(0, 1000);
+  private static final long POLLED_TIMESTAMP = 500;
+
+  private final List<Long> myStoredTimestamps = new ArrayList<>();
+  private final List<StreamObserver<CpuDataResponse>> mySubscribers = new ArrayList<>();
+
+  private Server myServer;
+  private ManagedChannel myChannel;
+
+  @After
+  public void tearDown() {
+    myChannel.shutdownNow();
+    myServer.shutdownNow();
+  }
+
+  @Test
+  public void testPushedDataIsReturned() throws Exception {
+    startServer(true);
+    myStoredTimestamps.add(1L);
+    myStoredTimestamps.add(2L);
+    SubscribedDataSeries series = createSeries();
+    assertThat(series.isLive()).isTrue();
+    assertThat(getTimestamps(series, ALL)).containsExactly(1L, 2L).inOrder();
+    assertThat(series.getDataForXRange(ALL).get(1).value).isEqualTo(20L);
+
+    push(3, 3);
+    assertThat(getTimestamps(series, ALL)).containsExactly(1L, 2L, 3L).inOrder();
+    assertThat(series.getViewForXRange(ALL).size()).isEqualTo(3);
+  }
+
+  @Test
+  public void testPolledSeriesIsQueriedWhenSubscriptionsAreNotServed() throws Exception {
+    startServer(false);
+    myStoredTimestamps.add(1L);
+    SubscribedDataSeries series = createSeries();
+    assertThat(series.isLive()).isFalse();
+    assertThat(getTimestamps(series, ALL)).containsExactly(POLLED_TIMESTAMP);
+  }
+
+  @Test
+  public void testPolledSeriesIsQueriedOnceSubscriptionCompletes() throws Exception {
+    startServer(true);
+    myStoredTimestamps.add(1L);
+    SubscribedDataSeries series = createSeries();
+    assertThat(getTimestamps(series, ALL)).containsExactly(1L);
+
+    mySubscribers.forEach(StreamObserver::onCompleted);
+    assertThat(series.isLive()).isFalse();
+    assertThat(getTimestamps(series, ALL)).containsExactly(POLLED_TIMESTAMP);
+  }
+
+  @Test
+  public void testSamplesBeforeQueriedRangeAreDropped() throws Exception {
+    startServer(true);
+    SubscribedDataSeries series = createSeries();
+    push(1, 100);
+    assertThat(getTimestamps(series, new Range(90, 100))).containsExactly(90L, 91L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L);
+
+    // Samples are kept for one more range length before the queried range, older ones are queried from the polled series.
+    assertThat(getTimestamps(series, new Range(80, 90))).containsExactly(80L, 81L, 82L, 83L, 84L, 85L, 86L, 87L, 88L, 89L, 90L);
+    assertThat(getTimestamps(series, new Range(0, 100))).containsExactly(POLLED_TIMESTAMP);
+  }
+
+  @Test
+  public void testPushedSamplesAreDroppedUntilQueried() throws Exception {
+    startServer(true);
+    SubscribedDataSeries series = createSeries();
+    push(1, 10);
+    assertThat(getTimestamps(series, new Range(0, 10))).hasSize(10);
+
+    // Only the samples needed to show the last queried range at the latest sample are kept.
+    push(11, 200);
+    assertThat(getTimestamps(series, new Range(190, 200))).containsExactly(190L, 191L, 192L, 193L, 194L, 195L, 196L, 197L, 198L, 199L,
+                                                                           200L);
+    assertThat(getTimestamps(series, new Range(100, 200))).containsExactly(POLLED_TIMESTAMP);
+  }
+
+  /**
+   * Serves a fake cpu service, with the subscription to its data if {@code servesSubscriptions}. Both ends run the calls on the calling
+   * thread, so the pushes are received by the time {@link #push} returns.
+   */
+  private void startServer(boolean servesSubscriptions) throws Exception {
+    ServerServiceDefinition definition = new FakeCpuService().bindService();
+    if (servesSubscriptions) {
+      ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(definition.getServiceDescriptor().getName());
+      definition.getMethods().forEach(builder::addMethod);
+      builder.addMethod(DataSubscriptionMethods.createMethod(CpuServiceGrpc.METHOD_GET_DATA),
+                        ServerCalls.asyncServerStreamingCall((request, observer) -> {
+                          mySubscribers.add(observer);
+                          observer.onNext(createResponse(myStoredTimestamps));
+                        }));
+      definition = builder.build();
+    }
+    myServer = InProcessServerBuilder.forName(SERVER_NAME).directExecutor().addService(definition).build().start();
+    myChannel = InProcessChannelBuilder.forName(SERVER_NAME).usePlaintext(true).directExecutor().build();
+  }
+
+  /**
+   * Pushes the samples from {@code first} to {@code last} to the subscribers.
+   */
+  private void push(long first, long last) {
+    List<Long> timestamps = new ArrayList<>();
+    for (long timestamp = first; timestamp <= last; timestamp++) {
+      timestamps.add(timestamp);
+    }
+    mySubscribers.forEach(subscriber -> subscriber.onNext(createResponse(timestamps)));
+  }
+
+  @NotNull
+  private static CpuDataResponse createResponse(@NotNull List<Long> timestamps) {
+    CpuDataResponse.Builder response = CpuDataResponse.newBuilder();
+    for (long timestamp : timestamps) {
+      response.addData(CpuProfilerData.newBuilder().setBasicInfo(Common.CommonData.newBuilder().setEndTimestamp(timestamp)));
+    }
+    return response.build();
+  }
+
+  @NotNull
+  private SubscribedDataSeries createSeries() {
+    CpuDataRequest request =
+      CpuDataRequest.newBuilder().setSession(SESSION).setStartTimestamp(Long.MIN_VALUE).setEndTimestamp(Long.MAX_VALUE).build();
+    DataSeries<Long> polledSeries = range -> Collections.singletonList(new SeriesData<>(POLLED_TIMESTAMP, 0L));
+    return new SubscribedDataSeries(myChannel, CpuServiceGrpc.METHOD_GET_DATA, request, response -> {
+      List<SeriesData<Long>> data = new ArrayList<>();
+      for (CpuProfilerData cpuData : response.getDataList()) {
+        data.add(new SeriesData<>(cpuData.getBasicInfo().getEndTimestamp(), cpuData.getBasicInfo().getEndTimestamp() * 10));
+      }
+      return data;
+    }, polledSeries);
+  }
+
+  @NotNull
+  private static List<Long> getTimestamps(@NotNull SubscribedDataSeries series, @NotNull Range range) {
+    List<Long> timestamps = new ArrayList<>();
+    for (SeriesData<Long> data : series.getDataForXRange(range)) {
+      timestamps.add(data.x);
+    }
+    return timestamps;
+  }
+}
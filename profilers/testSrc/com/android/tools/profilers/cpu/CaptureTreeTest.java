@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureTreeTest {
+
+  @Test
+  public void compactTreeHasSameStructure() {
+    CaptureNode root = createTree();
+    CaptureNode compact = CaptureTree.compact(root);
+    assertSameTree(root, compact);
+    assertNull(compact.getParent());
+    assertEquals(compact, compact.getChildAt(1).getParent());
+    assertEquals(compact.getChildAt(1), compact.getChildAt(1).getFirstChild().getParent());
+  }
+
+  @Test
+  public void methodsAreShared() {
+    CaptureNode compact = CaptureTree.compact(createTree());
+    assertSame(compact.getChildAt(0).getMethodModel(), compact.getChildAt(1).getChildAt(0).getMethodModel());
+  }
+
+  @Test
+  public void clockTypeIsSharedByTheTree() {
+    CaptureNode compact = CaptureTree.compact(createTree());
+    assertEquals(ClockType.GLOBAL, compact.getChildAt(1).getChildAt(0).getClockType());
+    assertEquals(40, compact.getChildAt(1).getChildAt(0).getStart());
+
+    compact.setClockType(ClockType.THREAD);
+    assertEquals(ClockType.THREAD, compact.getChildAt(1).getChildAt(0).getClockType());
+    assertEquals(5, compact.getChildAt(1).getChildAt(0).getStart());
+  }
+
+  @Test
+  public void timesCanBeUpdated() {
+    CaptureNode compact = CaptureTree.compact(createTree());
+    compact.getChildAt(0).setEndGlobal(12);
+    assertEquals(12, compact.getChildAt(0).getEndGlobal());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void childrenCantBeAdded() {
+    CaptureTree.compact(createTree()).addChild(new CaptureNode());
+  }
+
+  @Test
+  public void topDownOfCompactTreeMatches() {
+    TopDownNode expected = new TopDownNode(createTree());
+    TopDownNode actual = new TopDownNode(CaptureTree.compact(createTree()));
+    assertSameTopDown(expected, actual);
+  }
+
+  /**
+   * Creates the tree:
+   * main [0..100]
+   *   A [10..20]
+   *   B [30..90]
+   *     A [40..50]
+   */
+  private static CaptureNode createTree() {
+    MethodModel methodA = new MethodModel("A");
+    CaptureNode root = newNode(new MethodModel("main"), 0, 100, 0);
+    CaptureNode b = newNode(new MethodModel("B"), 30, 90, 1);
+    root.addChild(newNode(methodA, 10, 20, 1));
+    root.addChild(b);
+    b.addChild(newNode(methodA, 40, 50, 2));
+    return root;
+  }
+
+  private static CaptureNode newNode(MethodModel method, long start, long end, int depth) {
+    CaptureNode node = new CaptureNode();
+    node.setMethodModel(method);
+    node.setStartGlobal(start);
+    node.setEndGlobal(end);
+    node.setStartThread(start - 10 * depth - 15);
+    node.setEndThread(end - 10 * depth - 15);
+    node.setDepth(depth);
+    return node;
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertSame(expected.getMethodModel(), actual.getMethodModel());
+    assertEquals(expected.getStartGlobal(), actual.getStartGlobal());
+    assertEquals(expected.getEndGlobal(), actual.getEndGlobal());
+    assertEquals(expected.getStartThread(), actual.getStartThread());
+    assertEquals(expected.getEndThread(), actual.getEndThread());
+    assertEquals(expected.getDepth(), actual.getDepth());
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    assertEquals(expected.getChildren().size(), actual.getChildren().size());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildAt(i), actual.getChildAt(i));
+    }
+  }
+
+  private static void assertSameTopDown(TopDownNode expected, TopDownNode actual) {
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.getNodes().size(), actual.getNodes().size());
+    assertEquals(expected.getChildren().size(), actual.getChildren().size());
+    for (int i = 0; i < expected.getChildren().size(); i++) {
+      assertSameTopDown(expected.getChildren().get(i), actual.getChildren().get(i));
+    }
+  }
+}
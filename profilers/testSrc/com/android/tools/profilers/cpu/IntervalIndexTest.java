@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntervalIndexTest {
+  private static final double EPS = 1e-6;
+
+  @Test
+  public void intersectionLengthCountsOverlapsOnce() {
+    IntervalIndex index = new IntervalIndex.Builder().add(0, 10).add(5, 15).add(20, 30).build();
+    assertEquals(15, index.getIntersectionLength(new Range(0, 20)), EPS);
+    assertEquals(8, index.getIntersectionLength(new Range(12, 25)), EPS);
+    assertEquals(0, index.getIntersectionLength(new Range(16, 19)), EPS);
+    assertEquals(25, index.getIntersectionLength(new Range(-Double.MAX_VALUE, Double.MAX_VALUE)), EPS);
+  }
+
+  @Test
+  public void overlapsIsStrict() {
+    IntervalIndex index = new IntervalIndex.Builder().add(0, 10).add(10, 10).add(20, 30).build();
+    assertTrue(index.overlaps(new Range(5, 6)));
+    assertFalse(index.overlaps(new Range(30, 40)));
+    assertFalse(index.overlaps(new Range(15, 20)));
+    assertTrue(index.overlaps(new Range(9, 11)));
+    assertFalse(index.overlaps(new Range(10, 15)));
+  }
+
+  @Test
+  public void unsortedIntervals() {
+    IntervalIndex index = new IntervalIndex.Builder().add(20, 30).add(0, 10).add(5, 15).build();
+    assertEquals(25, index.getIntersectionLength(new Range(0, 30)), EPS);
+  }
+
+  @Test
+  public void intervalSumMatchesBruteForce() {
+    Random random = new Random(42);
+    long[][] added = randomIntervals(random, 50);
+    long[][] subtracted = randomIntervals(random, 50);
+    IntervalSum.Builder builder = new IntervalSum.Builder();
+    for (long[] interval : added) {
+      builder.add(interval[0], interval[1]);
+    }
+    for (long[] interval : subtracted) {
+      builder.subtract(interval[0], interval[1]);
+    }
+    IntervalSum sum = builder.build();
+
+    for (int i = 0; i < 100; i++) {
+      double min = random.nextInt(1200) - 100;
+      Range range = new Range(min, min + random.nextInt(300) + random.nextDouble());
+      double expected = 0;
+      for (long[] interval : added) {
+        expected += getIntersectionLength(range, interval);
+      }
+      for (long[] interval : subtracted) {
+        expected -= getIntersectionLength(range, interval);
+      }
+      assertEquals(expected, sum.get(range), EPS);
+    }
+  }
+
+  @Test
+  public void intervalSumOfLargeTimestamps() {
+    long start = 1374703971214985L;
+    IntervalSum sum = new IntervalSum.Builder().add(start, start + 100).subtract(start + 10, start + 20).build();
+    assertEquals(90, sum.get(new Range(start, start + 100)), EPS);
+  }
+
+  private static long[][] randomIntervals(Random random, int count) {
+    long[][] intervals = new long[count][];
+    for (int i = 0; i < count; i++) {
+      long start = random.nextInt(1000);
+      intervals[i] = new long[]{start, start + random.nextInt(100)};
+    }
+    return intervals;
+  }
+
+  private static double getIntersectionLength(Range range, long[] interval) {
+    return Math.max(0, Math.min(range.getMax(), interval[1]) - Math.max(range.getMin(), interval[0]));
+  }
+}
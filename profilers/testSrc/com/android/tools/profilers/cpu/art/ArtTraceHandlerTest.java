@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -97,8 +98,25 @@ public class ArtTraceHandlerTest {
     }
   }
 
+  @Test
+  public void testTreesBuiltOnGivenPool() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      CaptureNode node = parseCaptureNode(new ArtTraceHandler(pool));
+      assertEquals("AsyncTask #1", node.getData().getId());
+      assertEquals(0, node.getDepth());
+      assertEquals(3, node.getChildren().size());
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
   private static CaptureNode parseCaptureNode() throws IOException {
-    ArtTraceHandler handler = new ArtTraceHandler();
+    return parseCaptureNode(new ArtTraceHandler());
+  }
+
+  private static CaptureNode parseCaptureNode(ArtTraceHandler handler) throws IOException {
     VmTraceParser parser = new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler);
     parser.parse();
 
@@ -17,17 +17,23 @@ package com.android.tools.profilers.cpu.simpleperf;
 
 import com.android.tools.adtui.model.HNode;
 import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.proto.SimpleperfReport;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.MethodModel;
 import com.google.protobuf3jarjar.ByteString;
+import com.google.protobuf3jarjar.CodedInputStream;
+import com.google.protobuf3jarjar.CodedOutputStream;
 import com.intellij.openapi.util.io.FileUtil;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -167,10 +173,92 @@ public class SimplePerfTraceParserTest {
   @Test
   public void rangeShouldBeFromFirstToLastTimestamp() throws IOException {
     myParser.parse(myTraceFile);
-    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(0).getTime());
-    long endTimeUs = TimeUnit.NANOSECONDS.toMicros( myParser.mySamples.get(myParser.mySamples.size() - 1).getTime());
+    List<Long> sampleTimes = readSampleTimes(myTraceFile);
+    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(sampleTimes.get(0));
+    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(sampleTimes.get(sampleTimes.size() - 1));
     Range expected = new Range(startTimeUs, endTimeUs);
     assertEquals(expected.getMin(), myParser.getRange().getMin(), 0);
     assertEquals(expected.getMax(), myParser.getRange().getMax(), 0);
   }
+
+  @Test
+  public void divergingCallEndsThePreviousLeaf() throws IOException {
+    // Call chains are innermost call first: A > B > C, then A > B > D, then A.
+    File trace = writeTrace(
+      SimpleperfReport.Record.newBuilder().setFile(
+        SimpleperfReport.File.newBuilder().setId(0).setPath("/data/app/libtest.so").addSymbol("A").addSymbol("B").addSymbol("C")
+          .addSymbol("D")).build(),
+      SimpleperfReport.Record.newBuilder().setThread(SimpleperfReport.Thread.newBuilder().setThreadId(7).setThreadName("main")).build(),
+      createSampleRecord(7, 1000, 2, 1, 0),
+      createSampleRecord(7, 2000, 3, 1, 0),
+      createSampleRecord(7, 3000, 0),
+      SimpleperfReport.Record.newBuilder().setLost(SimpleperfReport.LostSituation.newBuilder().setSampleCount(3)).build());
+    myParser.parse(trace);
+
+    CaptureNode thread = myParser.getCaptureTrees().values().iterator().next();
+    assertEquals(1, thread.getChildCount());
+    CaptureNode a = thread.getChildAt(0);
+    assertEquals("A", a.getData().getName());
+    assertEquals(1, a.getChildCount());
+    CaptureNode b = a.getChildAt(0);
+    assertEquals("B", b.getData().getName());
+
+    // D is called by B once C returns, it's not called by C
+    assertEquals(2, b.getChildCount());
+    CaptureNode c = b.getChildAt(0);
+    CaptureNode d = b.getChildAt(1);
+    assertEquals("C", c.getData().getName());
+    assertEquals(0, c.getChildCount());
+    assertEquals(1, c.getStartGlobal());
+    assertEquals(2, c.getEndGlobal());
+    assertEquals("D", d.getData().getName());
+    assertEquals(2, d.getStartGlobal());
+    assertEquals(3, d.getEndGlobal());
+    assertEquals(3, b.getEndGlobal());
+  }
+
+  private static SimpleperfReport.Record createSampleRecord(int threadId, long timeNs, int... symbolIds) {
+    SimpleperfReport.Sample.Builder sample = SimpleperfReport.Sample.newBuilder().setThreadId(threadId).setTime(timeNs);
+    for (int symbolId : symbolIds) {
+      sample.addCallchain(SimpleperfReport.Sample.CallChainEntry.newBuilder().setFileId(0).setSymbolId(symbolId).setVaddrInFile(symbolId));
+    }
+    return SimpleperfReport.Record.newBuilder().setSample(sample).build();
+  }
+
+  /**
+   * Writes the records in the format of the simpleperf traces: each record is preceded by its size, and a size of 0 ends the file.
+   */
+  private static File writeTrace(SimpleperfReport.Record... records) throws IOException {
+    File trace = FileUtil.createTempFile("cpu_trace", ".trace");
+    try (FileOutputStream out = new FileOutputStream(trace)) {
+      CodedOutputStream output = CodedOutputStream.newInstance(out);
+      for (SimpleperfReport.Record record : records) {
+        output.writeFixed32NoTag(record.getSerializedSize());
+        record.writeTo(output);
+      }
+      output.writeFixed32NoTag(0);
+      output.flush();
+    }
+    return trace;
+  }
+
+  /**
+   * @return the timestamps of the samples of a trace, in the order they are recorded.
+   */
+  private static List<Long> readSampleTimes(File trace) throws IOException {
+    List<Long> sampleTimes = new ArrayList<>();
+    try (FileInputStream in = new FileInputStream(trace)) {
+      CodedInputStream input = CodedInputStream.newInstance(in);
+      for (int recordSize = input.readRawLittleEndian32(); recordSize != 0; recordSize = input.readRawLittleEndian32()) {
+        int oldLimit = input.pushLimit(recordSize);
+        SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(input);
+        input.popLimit(oldLimit);
+        input.resetSizeCounter();
+        if (record.getRecordDataCase() == SimpleperfReport.Record.RecordDataCase.SAMPLE) {
+          sampleTimes.add(record.getSample().getTime());
+        }
+      }
+    }
+    return sampleTimes;
+  }
 }
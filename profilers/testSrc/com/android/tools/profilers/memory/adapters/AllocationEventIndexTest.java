@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AllocationEventIndexTest {
+
+  @Test
+  public void testEventsAreSortedByTime() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    index.addEvents(Arrays.asList(allocation(30, 3), allocation(10, 1), free(20, 1)));
+    index.addEvents(Arrays.asList(free(40, 3)));
+
+    assertEquals(4, index.size());
+    assertEquals(10, index.getTimestamp(0));
+    assertFalse(index.isDeallocation(0));
+    assertEquals(1, index.getTag(0));
+    assertEquals(20, index.getTimestamp(1));
+    assertTrue(index.isDeallocation(1));
+    assertEquals(30, index.getTimestamp(2));
+    assertEquals(40, index.getTimestamp(3));
+    assertTrue(index.isDeallocation(3));
+    assertEquals(3, index.getTag(3));
+    assertEquals(6, index.getClassTag(3));
+    assertEquals(9, index.getStackId(3));
+    assertEquals(300, index.getSize(3));
+  }
+
+  @Test
+  public void testTimeRangeLookup() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    index.addEvents(Arrays.asList(allocation(10, 1), allocation(20, 2), free(20, 1), allocation(30, 3)));
+
+    assertEquals(0, index.getFirstEventAtOrAfter(Long.MIN_VALUE));
+    assertEquals(0, index.getFirstEventAtOrAfter(10));
+    assertEquals(1, index.getFirstEventAtOrAfter(11));
+    assertEquals(1, index.getFirstEventAtOrAfter(20));
+    assertEquals(3, index.getFirstEventAtOrAfter(21));
+    assertEquals(4, index.getFirstEventAtOrAfter(31));
+  }
+
+  @Test
+  public void testEarliestEventsAreRemoved() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    index.addEvents(Arrays.asList(allocation(10, 1), free(20, 1), allocation(20, 2), free(30, 2)));
+
+    index.removeEventsBefore(20);
+    assertEquals(3, index.size());
+    assertEquals(20, index.getTimestamp(0));
+    assertTrue(index.isDeallocation(0));
+    assertEquals(1, index.getTag(0));
+    assertFalse(index.isDeallocation(1));
+    assertEquals(2, index.getTag(1));
+    assertTrue(index.isDeallocation(2));
+    assertEquals(0, index.getFirstEventAtOrAfter(20));
+
+    index.addEvents(Arrays.asList(allocation(40, 4)));
+    assertEquals(4, index.size());
+    assertFalse(index.isDeallocation(3));
+    assertEquals(400, index.getSize(3));
+
+    index.clear();
+    assertEquals(0, index.size());
+    assertEquals(0, index.getFirstEventAtOrAfter(Long.MIN_VALUE));
+  }
+
+  @NotNull
+  private static AllocationEvent allocation(long timestamp, int tag) {
+    return AllocationEvent.newBuilder().setTimestamp(timestamp).setAllocData(
+      AllocationEvent.Allocation.newBuilder().setTag(tag).setClassTag(tag * 2).setStackId(tag * 3).setSize(tag * 100)).build();
+  }
+
+  @NotNull
+  private static AllocationEvent free(long timestamp, int tag) {
+    return AllocationEvent.newBuilder().setTimestamp(timestamp).setFreeData(
+      AllocationEvent.Deallocation.newBuilder().setTag(tag).setClassTag(tag * 2).setStackId(tag * 3).setSize(tag * 100)).build();
+  }
+}
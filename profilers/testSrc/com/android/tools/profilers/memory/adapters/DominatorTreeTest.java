@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.perflib.heap.Heap;
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.Snapshot;
+import com.android.tools.perflib.heap.SnapshotBuilder;
+import com.android.tools.perflib.heap.io.InMemoryBuffer;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DominatorTreeTest {
+
+  /**
+   * Graph:
+   * root 0 -> 1, 2
+   * 1 -> 3
+   * 2 -> 3
+   * 3 -> 4
+   * 5 (unreachable) -> 4
+   */
+  @Test
+  public void testDiamond() {
+    int[][] predecessors = {{}, {0}, {0}, {1, 2}, {3, 5}, {}};
+    DominatorTree tree = createTree(predecessors, new int[]{0}, new long[]{1, 2, 4, 8, 16, 32});
+
+    assertEquals(DominatorTree.NO_DOMINATOR, tree.getImmediateDominator(0));
+    assertEquals(0, tree.getImmediateDominator(1));
+    assertEquals(0, tree.getImmediateDominator(2));
+    assertEquals(0, tree.getImmediateDominator(3));
+    assertEquals(3, tree.getImmediateDominator(4));
+    assertEquals(DominatorTree.NO_DOMINATOR, tree.getImmediateDominator(5));
+
+    assertEquals(31, tree.getRetainedSize(0));
+    assertEquals(2, tree.getRetainedSize(1));
+    assertEquals(24, tree.getRetainedSize(3));
+    assertEquals(0, tree.getRetainedSize(5));
+
+    assertEquals(0, tree.getDepth(0));
+    assertEquals(2, tree.getDepth(3));
+    assertEquals(3, tree.getDepth(4));
+    assertEquals(DominatorTree.UNREACHABLE_DEPTH, tree.getDepth(5));
+  }
+
+  @Test
+  public void testNodeReferencedByTwoRootsIsNotDominated() {
+    // Roots 0 and 1 both reference 2, and 2 references 0 back.
+    int[][] predecessors = {{2}, {}, {0, 1}};
+    DominatorTree tree = createTree(predecessors, new int[]{0, 1}, new long[]{1, 1, 1});
+    assertEquals(DominatorTree.NO_DOMINATOR, tree.getImmediateDominator(2));
+    assertEquals(1, tree.getRetainedSize(0));
+    assertEquals(1, tree.getRetainedSize(2));
+  }
+
+  @Test
+  public void testNegativePredecessorsAreIgnored() {
+    int[][] predecessors = {{-1}, {0, -1}};
+    DominatorTree tree = createTree(predecessors, new int[]{0}, new long[]{1, 1});
+    assertEquals(0, tree.getImmediateDominator(1));
+    assertEquals(2, tree.getRetainedSize(0));
+  }
+
+  @Test
+  public void testMatchesDefinitionOnRandomGraphs() {
+    Random random = new Random(1);
+    for (int iteration = 0; iteration < 50; iteration++) {
+      int nodeCount = 1 + random.nextInt(40);
+      int[][] predecessors = new int[nodeCount][];
+      for (int node = 0; node < nodeCount; node++) {
+        predecessors[node] = new int[random.nextInt(4)];
+        for (int i = 0; i < predecessors[node].length; i++) {
+          predecessors[node][i] = random.nextInt(nodeCount);
+        }
+      }
+      int[] roots = new int[1 + random.nextInt(3)];
+      for (int i = 0; i < roots.length; i++) {
+        roots[i] = random.nextInt(nodeCount);
+      }
+      long[] sizes = new long[nodeCount];
+      for (int node = 0; node < nodeCount; node++) {
+        sizes[node] = 1 + random.nextInt(100);
+      }
+
+      DominatorTree tree = createTree(predecessors, roots, sizes);
+      boolean[] reachable = reachable(predecessors, roots, -1);
+      for (int node = 0; node < nodeCount; node++) {
+        // The retained size of a node is the size of the nodes that become unreachable without it.
+        long expectedRetainedSize = 0;
+        if (reachable[node]) {
+          boolean[] reachableWithout = reachable(predecessors, roots, node);
+          for (int other = 0; other < nodeCount; other++) {
+            if (reachable[other] && !reachableWithout[other]) {
+              expectedRetainedSize += sizes[other];
+            }
+          }
+        }
+        assertEquals(expectedRetainedSize, tree.getRetainedSize(node));
+      }
+    }
+  }
+
+  /**
+   * Heap: a binary tree of objects rooted at 1, plus one random reference per object. The dominators and retained sizes of the objects
+   * reachable from the root must match the ones perflib computes. Each snapshot is only used once, as perflib keeps its results in the
+   * instances.
+   */
+  @Test
+  public void testMatchesPerflibOnSyntheticHeap() {
+    int objectCount = 10_000;
+    Random random = new Random(0);
+    SnapshotBuilder builder = new SnapshotBuilder(objectCount, 0, 0).addRoot(1);
+    for (int node = 1; node <= objectCount; node++) {
+      int left = 2 * node;
+      int right = 2 * node + 1;
+      int extra = 1 + random.nextInt(objectCount);
+      if (right <= objectCount) {
+        builder.addReferences(node, left, right, extra);
+      }
+      else if (left <= objectCount) {
+        builder.addReferences(node, left, extra);
+      }
+      else {
+        builder.addReferences(node, extra);
+      }
+    }
+    byte[] hprof = builder.getByteBuffer();
+
+    Snapshot perflibSnapshot = Snapshot.createSnapshot(new InMemoryBuffer(ByteBuffer.wrap(hprof)));
+    perflibSnapshot.computeDominators();
+    Snapshot snapshot = Snapshot.createSnapshot(new InMemoryBuffer(ByteBuffer.wrap(hprof)));
+    Instance[] instances = getInstances(snapshot);
+    TObjectIntHashMap<Instance> indices = new TObjectIntHashMap<>(instances.length);
+    for (int i = 0; i < instances.length; i++) {
+      indices.put(instances[i], i);
+    }
+    DominatorTree tree = HeapDumpCaptureObject.computeDominatorTree(snapshot, instances, indices, () -> {
+    });
+
+    Instance[] perflibInstances = getInstances(perflibSnapshot);
+    assertEquals(perflibInstances.length, instances.length);
+    int reachableCount = 0;
+    for (int i = 0; i < instances.length; i++) {
+      Instance perflibInstance = perflibInstances[i];
+      assertEquals(perflibInstance.getId(), instances[i].getId());
+      if (!perflibInstance.isReachable()) {
+        continue;
+      }
+      reachableCount++;
+      Instance perflibDominator = perflibInstance.getImmediateDominator();
+      int dominator = tree.getImmediateDominator(i);
+      if (perflibDominator == Snapshot.SENTINEL_ROOT) {
+        assertEquals(DominatorTree.NO_DOMINATOR, dominator);
+      }
+      else {
+        assertEquals(perflibDominator.getId(), instances[dominator].getId());
+      }
+      assertEquals(perflibInstance.getTotalRetainedSize(), tree.getRetainedSize(i));
+    }
+    assertTrue(reachableCount >= objectCount);
+
+    perflibSnapshot.dispose();
+    snapshot.dispose();
+  }
+
+  @NotNull
+  private static Instance[] getInstances(@NotNull Snapshot snapshot) {
+    List<Instance> instances = new ArrayList<>();
+    for (Heap heap : snapshot.getHeaps()) {
+      instances.addAll(heap.getClasses());
+      heap.forEachInstance(instance -> instances.add(instance));
+    }
+    return instances.toArray(new Instance[instances.size()]);
+  }
+
+  @NotNull
+  private static DominatorTree createTree(@NotNull int[][] predecessors, @NotNull int[] roots, @NotNull long[] sizes) {
+    int[] offsets = new int[predecessors.length + 1];
+    List<Integer> flat = new ArrayList<>();
+    for (int node = 0; node < predecessors.length; node++) {
+      for (int predecessor : predecessors[node]) {
+        flat.add(predecessor);
+      }
+      offsets[node + 1] = flat.size();
+    }
+    return new DominatorTree(offsets, flat.stream().mapToInt(Integer::intValue).toArray(), roots, sizes);
+  }
+
+  /**
+   * @return the nodes reachable from the roots without going through {@code removed}.
+   */
+  @NotNull
+  private static boolean[] reachable(@NotNull int[][] predecessors, @NotNull int[] roots, int removed) {
+    boolean[] reachable = new boolean[predecessors.length];
+    Deque<Integer> queue = new ArrayDeque<>();
+    for (int root : roots) {
+      if (root != removed && !reachable[root]) {
+        reachable[root] = true;
+        queue.add(root);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int node = queue.poll();
+      for (int successor = 0; successor < predecessors.length; successor++) {
+        if (successor == removed || reachable[successor]) {
+          continue;
+        }
+        for (int predecessor : predecessors[successor]) {
+          if (predecessor == node) {
+            reachable[successor] = true;
+            queue.add(successor);
+            break;
+          }
+        }
+      }
+    }
+    return reachable;
+  }
+}
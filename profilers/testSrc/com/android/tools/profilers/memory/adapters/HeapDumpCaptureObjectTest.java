@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.memory.adapters;
 
+import com.android.tools.adtui.model.AspectObserver;
 import com.android.tools.perflib.heap.SnapshotBuilder;
 import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profilers.FakeGrpcChannel;
@@ -127,6 +128,40 @@ public class HeapDumpCaptureObjectTest {
     assertEquals(reference1.getReferenceInstance(), instance0);
   }
 
+  @Test
+  public void testRetainedSizesComputedAfterLoading() throws Exception {
+    MemoryProfiler.HeapDumpInfo dumpInfo = MemoryProfiler.HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(myGrpcChannel.getClient().getMemoryClient(), ProfilersTestData.SESSION_DATA, -1, dumpInfo, null,
+                                myRelativeTimeConverter, myIdeProfilerServices.getFeatureTracker());
+
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myService.setExplicitSnapshotBuffer(snapshotBuilder.getByteBuffer());
+    myService.setExplicitDumpDataStatus(MemoryProfiler.DumpDataResponse.Status.SUCCESS);
+
+    final CountDownLatch retainedSizesLatch = new CountDownLatch(1);
+    AspectObserver observer = new AspectObserver();
+    capture.getAspect().addDependency(observer).onChange(HeapDumpCaptureObject.Aspect.RETAINED_SIZES, retainedSizesLatch::countDown);
+    // The heaps are available as soon as load returns, the retained sizes are computed in the background.
+    assertTrue(capture.load(null, Runnable::run));
+    assertTrue(capture.isDoneLoading());
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+
+    retainedSizesLatch.await();
+    assertTrue(capture.hasRetainedSizes());
+    assertEquals(1, capture.getRetainedSizesProgress(), 0);
+    assertEquals(testHeap.getInstancesStream().mapToLong(InstanceObject::getRetainedSize).sum(), testHeap.getTotalRetainedSize());
+
+    ClassifierSet.Classifier classClassifier = ClassSet.createDefaultClassifier();
+    classClassifier.partition(testHeap.getInstancesStream().collect(HashSet::new, HashSet::add, HashSet::addAll));
+    InstanceObject instance1 = findChildClassSetWithName(classClassifier, "Class1").getInstancesStream().findFirst().orElse(null);
+    assertEquals(1, instance1.getDepth());
+  }
+
   @Test
   public void testLoadingFailure() throws Exception {
     MemoryProfiler.HeapDumpInfo dumpInfo = MemoryProfiler.HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
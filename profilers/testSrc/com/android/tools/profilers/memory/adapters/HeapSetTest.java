@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class HeapSetTest {
+  private FakeCaptureObject myCaptureObject;
+  private HeapSet myHeapSet;
+
+  @Before
+  public void setUp() {
+    myCaptureObject = new FakeCaptureObject.Builder().setHeapIdToNameMap(ImmutableMap.of(0, "default")).build();
+    myCaptureObject.addInstanceObjects(ImmutableSet.of(new FakeInstanceObject.Builder(myCaptureObject, "com.foo.Foo").build(),
+                                                       new FakeInstanceObject.Builder(myCaptureObject, "com.bar.Bar").build()));
+    myHeapSet = myCaptureObject.getHeapSet(0);
+  }
+
+  @Test
+  public void testSwitchingGroupingRepartitionsAllInstances() {
+    assertEquals(2, myHeapSet.getChildrenClassifierSets().size());
+
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+    List<ClassifierSet> packageSets = myHeapSet.getChildrenClassifierSets();
+    assertEquals(1, packageSets.size());
+    assertTrue(packageSets.get(0) instanceof PackageSet);
+    assertEquals(2, myHeapSet.getInstancesCount());
+
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_CLASS);
+    List<ClassifierSet> classSets = myHeapSet.getChildrenClassifierSets();
+    assertEquals(2, classSets.size());
+    assertTrue(classSets.stream().allMatch(set -> set instanceof ClassSet));
+    assertEquals(2, myHeapSet.getInstancesCount());
+  }
+
+  @Test
+  public void testSwitchingBackRestoresTheSamePartition() {
+    List<String> classSetNames = getChildNames(myHeapSet);
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+    List<String> packageSetNames = getChildNames(myHeapSet);
+
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_CLASS);
+    assertEquals(classSetNames, getChildNames(myHeapSet));
+    myHeapSet.getChildrenClassifierSets().forEach(set -> assertEquals(1, set.getInstancesCount()));
+
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+    assertEquals(packageSetNames, getChildNames(myHeapSet));
+    assertEquals(2, myHeapSet.getChildrenClassifierSets().get(0).getInstancesCount());
+  }
+
+  @Test
+  public void testPartitionIsRebuiltAfterHeapIsCleared() {
+    myHeapSet.getChildrenClassifierSets();
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+    myHeapSet.getChildrenClassifierSets();
+
+    myHeapSet.clearClassifierSets();
+    myHeapSet.addInstanceObject(new FakeInstanceObject.Builder(myCaptureObject, "com.foo.Foo").build());
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_CLASS);
+    assertEquals(1, myHeapSet.getChildrenClassifierSets().size());
+    assertEquals(1, myHeapSet.getInstancesCount());
+  }
+
+  @Test
+  public void testPartitionIncludesAddedInstances() {
+    myHeapSet.getChildrenClassifierSets();
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+    myHeapSet.getChildrenClassifierSets();
+
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_CLASS);
+    myHeapSet.addInstanceObject(new FakeInstanceObject.Builder(myCaptureObject, "com.foo.Baz").build());
+    assertEquals(3, myHeapSet.getChildrenClassifierSets().size());
+
+    myHeapSet.setClassGrouping(ClassGrouping.ARRANGE_BY_PACKAGE);
+    assertEquals(3, myHeapSet.getInstancesCount());
+    assertEquals(3, myHeapSet.getChildrenClassifierSets().get(0).getInstancesCount());
+  }
+
+  @NotNull
+  private static List<String> getChildNames(@NotNull ClassifierSet set) {
+    return set.getChildrenClassifierSets().stream().map(ClassifierSet::getName).collect(Collectors.toList());
+  }
+}
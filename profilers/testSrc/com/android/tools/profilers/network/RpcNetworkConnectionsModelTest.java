@@ -28,7 +28,7 @@ import org.junit.Test;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class RpcNetworkConnectionsModelTest {
   private static final String FAKE_PAYLOAD_ID = "Test Payload";
@@ -113,6 +113,19 @@ public class RpcNetworkConnectionsModelTest {
     checkGetData(6, 8, 0, 1, 2, 3);
   }
 
+  @Test
+  public void completedConnectionsAreNotFetchedAgain() {
+    Range range = new Range(0, TimeUnit.SECONDS.toMicros(10));
+    List<HttpData> firstData = myModel.getData(range);
+    List<HttpData> secondData = myModel.getData(range);
+    assertEquals(4, secondData.size());
+    // Connection 2 is still downloading, so it is the only one fetched again.
+    assertSame(firstData.get(0), secondData.get(0));
+    assertSame(firstData.get(1), secondData.get(1));
+    assertNotSame(firstData.get(2), secondData.get(2));
+    assertSame(firstData.get(3), secondData.get(3));
+  }
+
   private void checkGetData(long startTimeS, long endTimeS, long... expectedIds) {
     Range range = new Range(TimeUnit.SECONDS.toMicros(startTimeS), TimeUnit.SECONDS.toMicros(endTimeS));
     List<HttpData> actualData = myModel.getData(range);